@@ -23,9 +23,14 @@ import com.martiansoftware.jsap.JSAP;
 import com.martiansoftware.jsap.JSAPException;
 import com.martiansoftware.jsap.JSAPResult;
 import net.lmxm.suafe.api.SubversionConstants;
+import net.lmxm.suafe.api.access.AccessResolver;
+import net.lmxm.suafe.api.access.EffectiveAccess;
 import net.lmxm.suafe.api.beans.*;
+import net.lmxm.suafe.api.exceptions.ParserException;
+import net.lmxm.suafe.api.parser.AtomicFileWriter;
 import net.lmxm.suafe.api.parser.FileGenerator;
 import net.lmxm.suafe.api.parser.FileParser;
+import net.lmxm.suafe.api.parser.SnapshotCache;
 import net.lmxm.suafe.exceptions.AppException;
 import net.lmxm.suafe.reports.StatisticsReport;
 import net.lmxm.suafe.reports.SummaryReport;
@@ -34,10 +39,20 @@ import net.lmxm.suafe.utils.ArgumentParser;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
-import java.util.Arrays;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public final class CommandLineApplication {
     private static final String ARGS_ACCESS = "access";
@@ -50,6 +65,8 @@ public final class CommandLineApplication {
 
     private static final String ARGS_ADD_RULE = "addrule";
 
+    private static final String ARGS_BACKUPS = "backups";
+
     private static final String ARGS_CLONE_GROUP = "clonegroup";
 
     private static final String ARGS_CLONE_USER = "cloneuser";
@@ -72,6 +89,12 @@ public final class CommandLineApplication {
 
     private static final String ARGS_EDIT_RULE = "editrule";
 
+    private static final String ARGS_ENCODING = "encoding";
+
+    private static final String ARGS_FILES = "files";
+
+    private static final String ARGS_GET_EFFECTIVE_ACCESS = "geteffectiveaccess";
+
     private static final String ARGS_GET_GROUP_GROUP_MEMBERS = "getgroupgroupmembers";
 
     private static final String ARGS_GET_GROUP_MEMBERS = "getgroupmembers";
@@ -108,6 +131,8 @@ public final class CommandLineApplication {
 
     private static final char ARGS_INPUT_FILE_SHORTFLAG = 'i';
 
+    private static final String ARGS_LINT = "lint";
+
     private static final String ARGS_NAME = "name";
 
     private static final String ARGS_NEW_ACCESS = "newaccess";
@@ -128,6 +153,8 @@ public final class CommandLineApplication {
 
     private static final char ARGS_OUTPUT_FILE_SHORTFLAG = 'o';
 
+    private static final String ARGS_PARALLEL = "parallel";
+
     private static final String ARGS_PATH = "path";
 
     private static final String ARGS_REMOVE_GROUPS = "removegroups";
@@ -142,6 +169,8 @@ public final class CommandLineApplication {
 
     private static final String ARGS_REPOS = "repos";
 
+    private static final String ARGS_SNAPSHOT_CACHE = "snapshotcache";
+
     private static final String ARGS_STATISTICS_REPORT = "statisticsreport";
 
     private static final String ARGS_SUMMARY_REPORT = "summaryreport";
@@ -156,21 +185,23 @@ public final class CommandLineApplication {
 
     private static final char ARGS_VERSION_SHORTFLAG = 'v';
 
+    /**
+     * Number of characters of a generated Document written to the output at a time.
+     */
+    private static final int OUTPUT_BUFFER_LENGTH = 1 << 16;
+
     /**
      * Adds a new group.
      *
      * @param groupName Name of new group
      * @throws AppException Error occurred
      */
-    @Nonnull
-    static String addGroup(@Nonnull final Document document, @Nullable final String groupName) throws AppException {
+    static void addGroup(@Nonnull final Document document, @Nullable final String groupName) throws AppException {
         if (groupName == null) {
             throw new AppException("application.error.grouprequired");
         }
 
         document.addGroup(groupName);
-
-        return new FileGenerator(document).generate(true);
     }
 
     /**
@@ -180,8 +211,7 @@ public final class CommandLineApplication {
      * @param groupNames List of groups
      * @throws AppException Error occurred
      */
-    @Nonnull
-    static String addGroups(@Nonnull final Document document, @Nullable final String userName,
+    static void addGroups(@Nonnull final Document document, @Nullable final String userName,
                             @Nullable final String[] groupNames) throws AppException {
         if (userName == null) {
             throw new AppException("application.error.userrequired");
@@ -197,6 +227,8 @@ public final class CommandLineApplication {
             user = document.addUser(userName);
         }
 
+        final List<Group> groups = new ArrayList<>(groupNames.length);
+
         for (final String groupName : groupNames) {
             final Group group = document.findGroup(groupName);
 
@@ -204,11 +236,10 @@ public final class CommandLineApplication {
                 throw new AppException("application.error.unabletofindgroup", groupName);
             }
 
-            user.addGroup(group);
-            group.addUserMember(user);
+            groups.add(group);
         }
 
-        return new FileGenerator(document).generate(true);
+        document.addToGroups(user, groups);
     }
 
     /**
@@ -220,8 +251,7 @@ public final class CommandLineApplication {
      * @param groupNames Group names of new members
      * @throws AppException Error occurred
      */
-    @Nonnull
-    static String addMembers(@Nonnull final Document document, @Nullable final String groupName,
+    static void addMembers(@Nonnull final Document document, @Nullable final String groupName,
                              @Nullable final String[] userNames, @Nullable final String[] groupNames)
             throws AppException {
         if (groupName == null) {
@@ -237,6 +267,8 @@ public final class CommandLineApplication {
             throw new AppException("application.error.unabletofindgroup", groupName);
         }
 
+        final List<GroupMemberObject> members = new ArrayList<>();
+
         for (final String memberUserName : userNames) {
             User memberUser = document.findUser(memberUserName);
 
@@ -245,11 +277,9 @@ public final class CommandLineApplication {
                 memberUser = document.addUser(memberUserName);
             }
 
-            group.addUserMember(memberUser);
+            members.add(memberUser);
         }
 
-        document.checkForCircularReference(group, document.findGroups(Arrays.asList(groupNames)));
-
         for (final String memberGroupName : groupNames) {
             final Group memberGroup = document.findGroup(memberGroupName);
 
@@ -257,10 +287,10 @@ public final class CommandLineApplication {
                 throw new AppException("application.error.unabletofindgroup", memberGroupName);
             }
 
-            group.addGroupMember(memberGroup);
+            members.add(memberGroup);
         }
 
-        return new FileGenerator(document).generate(true);
+        document.addGroupMembers(group, members);
     }
 
     /**
@@ -274,8 +304,7 @@ public final class CommandLineApplication {
      * @param access         Access level
      * @throws AppException Error occurred
      */
-    @Nonnull
-    static String addRule(@Nonnull final Document document, @Nullable final String repositoryName,
+    static void addRule(@Nonnull final Document document, @Nullable final String repositoryName,
                           @Nullable final String path, @Nullable final String userName,
                           @Nullable final String groupName, @Nullable final String access) throws AppException {
         if (path == null) {
@@ -312,8 +341,6 @@ public final class CommandLineApplication {
                         .addGroup(groupName), effectiveAccess);
             }
         }
-
-        return new FileGenerator(document).generate(true);
     }
 
     /**
@@ -323,8 +350,7 @@ public final class CommandLineApplication {
      * @param cloneName Clone name
      * @throws AppException Error occurred
      */
-    @Nonnull
-    private String cloneGroup(@Nonnull final Document document, @Nullable final String groupName,
+    private void cloneGroup(@Nonnull final Document document, @Nullable final String groupName,
                               @Nullable final String cloneName) throws AppException {
         if (groupName == null) {
             throw new AppException("application.error.grouprequired");
@@ -341,8 +367,6 @@ public final class CommandLineApplication {
         }
 
         document.cloneGroup(group, cloneName);
-
-        return new FileGenerator(document).generate(true);
     }
 
     /**
@@ -352,8 +376,7 @@ public final class CommandLineApplication {
      * @param cloneName Name for the clone
      * @throws AppException Error occurred
      */
-    @Nonnull
-    private String cloneUser(@Nonnull final Document document, @Nullable final String userName,
+    private void cloneUser(@Nonnull final Document document, @Nullable final String userName,
                              @Nullable final String cloneName) throws AppException {
         if (userName == null) {
             throw new AppException("application.error.userrequired");
@@ -370,8 +393,6 @@ public final class CommandLineApplication {
         }
 
         document.cloneUser(user, cloneName);
-
-        return new FileGenerator(document).generate(true);
     }
 
     /**
@@ -420,8 +441,7 @@ public final class CommandLineApplication {
      * @param groupName Name of group to delete
      * @throws AppException Error occurred
      */
-    @Nonnull
-    private String deleteGroup(@Nonnull final Document document, @Nullable final String groupName) throws AppException {
+    private void deleteGroup(@Nonnull final Document document, @Nullable final String groupName) throws AppException {
         if (groupName == null) {
             throw new AppException("application.error.grouprequired");
         }
@@ -433,8 +453,6 @@ public final class CommandLineApplication {
         }
 
         document.deleteGroup(group);
-
-        return new FileGenerator(document).generate(true);
     }
 
     /**
@@ -443,8 +461,7 @@ public final class CommandLineApplication {
      * @param repositoryName Name of repository
      * @throws AppException Error occurred
      */
-    @Nonnull
-    private String deleteRepository(@Nonnull final Document document, @Nullable final String repositoryName)
+    private void deleteRepository(@Nonnull final Document document, @Nullable final String repositoryName)
             throws AppException {
         if (repositoryName == null) {
             throw new AppException("application.error.repositoryrequired");
@@ -457,8 +474,6 @@ public final class CommandLineApplication {
         }
 
         document.deleteRepository(repository);
-
-        return new FileGenerator(document).generate(true);
     }
 
     /**
@@ -471,8 +486,7 @@ public final class CommandLineApplication {
      * @param groupName      Group name
      * @throws AppException Error occurred
      */
-    @Nonnull
-    private String deleteRule(@Nonnull final Document document, @Nullable final String repositoryName,
+    private void deleteRule(@Nonnull final Document document, @Nullable final String repositoryName,
                               @Nullable final String path, @Nullable final String userName,
                               @Nullable final String groupName)
             throws AppException {
@@ -529,8 +543,6 @@ public final class CommandLineApplication {
         else {
             throw new AppException("application.error.userorgrouprequired");
         }
-
-        return new FileGenerator(document).generate(true);
     }
 
     /**
@@ -539,8 +551,7 @@ public final class CommandLineApplication {
      * @param userName Name of user
      * @throws AppException Error occurred
      */
-    @Nonnull
-    private String deleteUser(@Nonnull final Document document, @Nullable final String userName) throws AppException {
+    private void deleteUser(@Nonnull final Document document, @Nullable final String userName) throws AppException {
         if (userName == null) {
             throw new AppException("application.error.userrequired");
         }
@@ -552,8 +563,6 @@ public final class CommandLineApplication {
         }
 
         document.deleteUser(user);
-
-        return new FileGenerator(document).generate(true);
     }
 
     /**
@@ -647,6 +656,13 @@ public final class CommandLineApplication {
         args[2] = ARGS_NAME;
         out.println(ResourceUtil.getFormattedString("application.args.verbose.getuserrules", args));
 
+        args[0] = SUAFE_EXECUTABLE;
+        args[1] = ARGS_GET_EFFECTIVE_ACCESS;
+        args[2] = ARGS_NAME;
+        args[3] = ARGS_REPOS;
+        args[4] = ARGS_PATH;
+        out.println(ResourceUtil.getFormattedString("application.args.verbose.geteffectiveaccess", args));
+
         args[0] = SUAFE_EXECUTABLE;
         args[1] = ARGS_GET_USER_RULES;
         args[2] = ARGS_NAME;
@@ -733,6 +749,7 @@ public final class CommandLineApplication {
         args[0] = SUAFE_EXECUTABLE;
         args[1] = ARGS_GET_REPOS_RULES;
         args[2] = ARGS_NAME;
+        args[3] = ARGS_PATH;
         out.println(ResourceUtil.getFormattedString("application.args.verbose.getreposrules", args));
 
         args[0] = SUAFE_EXECUTABLE;
@@ -806,8 +823,7 @@ public final class CommandLineApplication {
      * @param newAccess         New access level
      * @throws AppException Error occurred
      */
-    @Nonnull
-    private String editRule(@Nonnull final Document document, @Nullable final String repositoryName,
+    private void editRule(@Nonnull final Document document, @Nullable final String repositoryName,
                             @Nullable final String path, @Nullable final String userName,
                             @Nullable final String groupName, @Nullable final String newRepositoryName,
                             @Nullable final String newPathString, @Nullable final String newUserName,
@@ -888,13 +904,15 @@ public final class CommandLineApplication {
                 throw new AppException("application.error.unabletofindrepository", repositoryName);
             }
 
-            rule.getPath().setRepository(newRepository);
+            document.movePath(rule.getPath(), newRepository, rule.getPath().getPath());
         }
 
         if (newPathString != null) {
             final Path newPath = document.addPath(rule.getPath().getRepository(), newPathString);
 
+            rule.getPath().removeAccessRule(rule);
             rule.setPath(newPath);
+            newPath.addAccessRule(rule);
         }
 
         if (newUserName != null) {
@@ -904,8 +922,10 @@ public final class CommandLineApplication {
                 throw new AppException("application.error.unabletofinduser", userName);
             }
 
+            removeRuleFromPrincipal(rule);
             rule.setUser(newUser);
             rule.setGroup(null);
+            newUser.addAccessRule(rule);
         }
 
         if (newGroupName != null) {
@@ -915,8 +935,10 @@ public final class CommandLineApplication {
                 throw new AppException("application.error.unabletofindgroup", groupName);
             }
 
+            removeRuleFromPrincipal(rule);
             rule.setUser(null);
             rule.setGroup(newGroup);
+            newGroup.addAccessRule(rule);
         }
 
         if (newAccess != null) {
@@ -926,7 +948,7 @@ public final class CommandLineApplication {
             rule.setLevel(newAccessLevel);
         }
 
-        return new FileGenerator(document).generate(true);
+        document.invalidateSortOrder(rule);
     }
 
     /**
@@ -961,24 +983,90 @@ public final class CommandLineApplication {
                 System.exit(0);
             }
 
-            // Parse input from file or stdin
+            // Parse input from file or stdin, in the specified encoding or else the detected one
+            final String encoding = config.getString(ARGS_ENCODING);
+
+            // Check the input files for errors, rather than running a command against one input
+            if (config.getBoolean(ARGS_LINT)) {
+                final List<File> files = new ArrayList<>();
+
+                if (config.getString(ARGS_INPUT_FILE) != null) {
+                    files.add(new File(config.getString(ARGS_INPUT_FILE)));
+                }
+
+                for (final String fileName : config.getStringArray(ARGS_FILES)) {
+                    files.add(new File(fileName));
+                }
+
+                final String report = lint(files, encoding, ForkJoinPool.commonPool());
+
+                if (config.getString(ARGS_OUTPUT_FILE) != null) {
+                    out = Utilities.openOutputFile(config.getString(ARGS_OUTPUT_FILE));
+                }
+
+                out.print(report);
+                out.flush();
+
+                if (config.getString(ARGS_OUTPUT_FILE) != null) {
+                    out.close();
+                }
+
+                System.exit(report.isEmpty() ? 0 : 1);
+            }
+
             if (config.getString(ARGS_INPUT_FILE) == null) {
-                document = new FileParser().parse(System.in);
+                document = (encoding == null) ? new FileParser().parse(System.in)
+                        : new FileParser().parse(new BufferedReader(new InputStreamReader(System.in, encoding)));
             }
             else {
-                document = new FileParser().parse(new File(config.getString(ARGS_INPUT_FILE)));
+                final FileParser parser = config.getBoolean(ARGS_PARALLEL) ? new FileParser(ForkJoinPool.commonPool())
+                        : new FileParser();
+
+                final File inputFile = new File(config.getString(ARGS_INPUT_FILE));
+
+                if (config.getBoolean(ARGS_SNAPSHOT_CACHE)) {
+                    parser.setSnapshotCache(SnapshotCache.inUserHome());
+                }
+
+                // Queries about one repository only need to parse the sections of that repository
+                if (config.getString(ARGS_REPOS) != null && (config.getBoolean(ARGS_GET_REPOS_RULES)
+                        || config.getBoolean(ARGS_GET_EFFECTIVE_ACCESS))) {
+                    document = parser.parseLazily(inputFile, encoding);
+                }
+                else {
+                    document = parser.parse(inputFile, encoding);
+                }
             }
 
-            // Initialize the output stream
-            if (config.getString(ARGS_OUTPUT_FILE) != null) {
-                out = Utilities.openOutputFile(config.getString(ARGS_OUTPUT_FILE));
+            final int backupCount = config.getInt(ARGS_BACKUPS, 0);
+
+            if (backupCount < 0) {
+                throw new AppException("application.error.invalidbackups");
             }
 
+            final ForkJoinPool pool = config.getBoolean(ARGS_PARALLEL) ? ForkJoinPool.commonPool() : null;
+
             // Process the specified command
             final String result = processCommands(document, config);
 
-            // Print output
-            out.print(result);
+            if (result == null && config.getString(ARGS_OUTPUT_FILE) != null) {
+                // Replace the output file in one step, since a server may be reading it
+                writeDocument(document, new File(config.getString(ARGS_OUTPUT_FILE)), backupCount, pool);
+                return;
+            }
+
+            // Initialize the output stream
+            if (config.getString(ARGS_OUTPUT_FILE) != null) {
+                out = Utilities.openOutputFile(config.getString(ARGS_OUTPUT_FILE));
+            }
+
+            // Print output, or the whole Document if the command changed it
+            if (result == null) {
+                writeDocument(document, out, pool);
+            }
+            else {
+                out.print(result);
+            }
 
             // Close the output stream
             if (config.getString(ARGS_OUTPUT_FILE) != null) {
@@ -992,6 +1080,34 @@ public final class CommandLineApplication {
         }
     }
 
+    /**
+     * Gets the access a user effectively has to a path, taking group membership, parent paths and server level rules
+     * into account. The result is rw, r or none.
+     *
+     * @param document       Document
+     * @param userName       Name of user
+     * @param repositoryName Name of repository, null for server level rules only
+     * @param pathString     Path within the repository
+     * @throws AppException Error occurred
+     */
+    @Nonnull
+    static String getEffectiveAccess(@Nonnull final Document document, @Nullable final String userName,
+                                     @Nullable final String repositoryName, @Nullable final String pathString)
+            throws AppException {
+        if (userName == null) {
+            throw new AppException("application.error.userrequired");
+        }
+
+        if (pathString == null) {
+            throw new AppException("application.error.pathrequired");
+        }
+
+        final EffectiveAccess access = new AccessResolver(document).getEffectiveAccess(userName, repositoryName,
+                pathString);
+
+        return (access.canRead() ? access.getLevel() : SubversionConstants.SVN_ACCESS_LEVEL_NONE) + "\n";
+    }
+
     /**
      * Get list of groups that are a member of a group.
      *
@@ -1182,11 +1298,12 @@ public final class CommandLineApplication {
      *
      * @param document       Document
      * @param repositoryName Name of repository
+     * @param pathString     Path at the top of the subtree, null for all paths of the repository
      * @throws AppException Error occurred
      */
     @Nonnull
-    private String getRepositoryRules(@Nonnull final Document document, @Nullable final String repositoryName)
-            throws AppException {
+    static String getRepositoryRules(@Nonnull final Document document, @Nullable final String repositoryName,
+                                     @Nullable final String pathString) throws AppException {
         if (repositoryName == null) {
             throw new AppException("application.error.repositoryrequired");
         }
@@ -1198,7 +1315,7 @@ public final class CommandLineApplication {
             throw new AppException("application.error.unabletofindrepository", repositoryName);
         }
 
-        final Object[][] accessRules = document.getRepositoryAccessRules(repository);
+        final Object[][] accessRules = document.getRepositoryAccessRules(repository, pathString);
 
         for (final Object[] accessRule : accessRules) {
             final Path path = (Path) accessRule[0];
@@ -1359,6 +1476,74 @@ public final class CommandLineApplication {
         return builder.toString();
     }
 
+    /**
+     * Checks authz files for errors on a pool, one file per task, and reports every error found. Each error is one
+     * line of the report, holding the file name, line number and message separated by tabs, with the files in the
+     * order given and the errors of each file in line order. A file that cannot be read at all is reported as an
+     * error on line 0.
+     *
+     * @param files    Files to be checked
+     * @param encoding Encoding of the files, or null to detect the encoding of each file
+     * @param pool     Pool to check the files on
+     * @return Report, empty if no errors were found
+     * @throws AppException No files were specified
+     */
+    @Nonnull
+    static String lint(@Nonnull final List<File> files, @Nullable final String encoding,
+                       @Nonnull final ForkJoinPool pool) throws AppException {
+        if (files.isEmpty()) {
+            throw new AppException("application.error.inputfilerequired");
+        }
+
+        final List<ForkJoinTask<List<ParserException>>> tasks = new ArrayList<>();
+
+        for (final File file : files) {
+            tasks.add(pool.submit(() -> lint(file, encoding)));
+        }
+
+        final StringBuilder report = new StringBuilder();
+
+        for (int i = 0; i < files.size(); i++) {
+            final String fileName = toReportField(files.get(i).getPath());
+
+            for (final ParserException error : tasks.get(i).join()) {
+                report.append(fileName).append('\t').append(Math.max(0, error.getLineNumber())).append('\t')
+                        .append(toReportField(error.getDetail())).append('\n');
+            }
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Checks one authz file for errors.
+     *
+     * @param file     File to be checked
+     * @param encoding Encoding of the file, or null to detect it
+     * @return Errors found, in line order
+     */
+    @Nonnull
+    private static List<ParserException> lint(@Nonnull final File file, @Nullable final String encoding) {
+        try {
+            return new FileParser().lint(file, encoding);
+        }
+        catch (final ParserException pe) {
+            return Collections.singletonList(pe);
+        }
+        catch (final AppException ae) {
+            return Collections.singletonList(ParserException.generateException(0, ae));
+        }
+    }
+
+    /**
+     * Runs the command specified by the arguments. Commands that change the Document return null, and the whole
+     * Document is then written out by {@link #writeDocument}, rather than being built up as one String first.
+     *
+     * @param document Document to run the command against
+     * @param config   JSAP results
+     * @return Output of the command, or null if the command changed the Document
+     * @throws AppException Error occurred
+     */
     @Nullable
     private String processCommands(@Nonnull final Document document, @Nonnull final JSAPResult config)
             throws AppException {
@@ -1371,19 +1556,24 @@ public final class CommandLineApplication {
             retval = new SummaryReport(document).generate();
         }
         else if (config.getBoolean(ARGS_CLONE_USER)) {
-            retval = cloneUser(document, config.getString(ARGS_NAME), config.getString(ARGS_NEW_NAME));
+            cloneUser(document, config.getString(ARGS_NAME), config.getString(ARGS_NEW_NAME));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_RENAME_USER)) {
-            retval = renameUser(document, config.getString(ARGS_NAME), config.getString(ARGS_NEW_NAME));
+            renameUser(document, config.getString(ARGS_NAME), config.getString(ARGS_NEW_NAME));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_DELETE_USER)) {
-            retval = deleteUser(document, config.getString(ARGS_NAME));
+            deleteUser(document, config.getString(ARGS_NAME));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_ADD_GROUPS)) {
-            retval = addGroups(document, config.getString(ARGS_NAME), config.getStringArray(ARGS_GROUPS));
+            addGroups(document, config.getString(ARGS_NAME), config.getStringArray(ARGS_GROUPS));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_REMOVE_GROUPS)) {
-            retval = removeGroups(document, config.getString(ARGS_NAME), config.getStringArray(ARGS_GROUPS));
+            removeGroups(document, config.getString(ARGS_NAME), config.getStringArray(ARGS_GROUPS));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_COUNT_USERS)) {
             retval = countUsers(document);
@@ -1397,27 +1587,37 @@ public final class CommandLineApplication {
         else if (config.getBoolean(ARGS_GET_USER_RULES)) {
             retval = getUserRules(document, config.getString(ARGS_NAME));
         }
+        else if (config.getBoolean(ARGS_GET_EFFECTIVE_ACCESS)) {
+            retval = getEffectiveAccess(document, config.getString(ARGS_NAME), config.getString(ARGS_REPOS),
+                    config.getString(ARGS_PATH));
+        }
         else if (config.getBoolean(ARGS_ADD_GROUP)) {
-            retval = addGroup(document, config.getString(ARGS_NAME));
+            addGroup(document, config.getString(ARGS_NAME));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_CLONE_GROUP)) {
-            retval = cloneGroup(document, config.getString(ARGS_NAME), config.getString(ARGS_NEW_NAME));
+            cloneGroup(document, config.getString(ARGS_NAME), config.getString(ARGS_NEW_NAME));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_RENAME_GROUP)) {
-            retval = renameGroup(document, config.getString(ARGS_NAME), config.getString(ARGS_NEW_NAME));
+            renameGroup(document, config.getString(ARGS_NAME), config.getString(ARGS_NEW_NAME));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_DELETE_GROUP)) {
-            retval = deleteGroup(document, config.getString(ARGS_NAME));
+            deleteGroup(document, config.getString(ARGS_NAME));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_ADD_MEMBERS)) {
-            retval = addMembers(document, config.getString(ARGS_NAME),
+            addMembers(document, config.getString(ARGS_NAME),
                     config.getStringArray(ARGS_USERS),
                     config.getStringArray(ARGS_GROUPS));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_REMOVE_MEMBERS)) {
-            retval = removeMembers(document, config.getString(ARGS_NAME),
+            removeMembers(document, config.getString(ARGS_NAME),
                     config.getStringArray(ARGS_USERS),
                     config.getStringArray(ARGS_GROUPS));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_COUNT_GROUPS)) {
             retval = countGroups(document);
@@ -1438,10 +1638,12 @@ public final class CommandLineApplication {
             retval = getGroupRules(document, config.getString(ARGS_NAME));
         }
         else if (config.getBoolean(ARGS_RENAME_REPOS)) {
-            retval = renameRepository(document, config.getString(ARGS_NAME), config.getString(ARGS_NEW_NAME));
+            renameRepository(document, config.getString(ARGS_NAME), config.getString(ARGS_NEW_NAME));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_DELETE_REPOS)) {
-            retval = deleteRepository(document, config.getString(ARGS_NAME));
+            deleteRepository(document, config.getString(ARGS_NAME));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_COUNT_REPOS)) {
             retval = countRepositories(document);
@@ -1450,21 +1652,24 @@ public final class CommandLineApplication {
             retval = getRepositories(document);
         }
         else if (config.getBoolean(ARGS_GET_REPOS_RULES)) {
-            retval = getRepositoryRules(document, config.getString(ARGS_NAME));
+            retval = getRepositoryRules(document, config.getString(ARGS_NAME), config.getString(ARGS_PATH));
         }
         else if (config.getBoolean(ARGS_ADD_RULE)) {
-            retval = addRule(document, config.getString(ARGS_REPOS), config.getString(ARGS_PATH), config
+            addRule(document, config.getString(ARGS_REPOS), config.getString(ARGS_PATH), config
                     .getString(ARGS_USER), config.getString(ARGS_GROUP), config.getString(ARGS_ACCESS));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_EDIT_RULE)) {
-            retval = editRule(document, config.getString(ARGS_REPOS), config.getString(ARGS_PATH), config
+            editRule(document, config.getString(ARGS_REPOS), config.getString(ARGS_PATH), config
                             .getString(ARGS_USER), config.getString(ARGS_GROUP), config.getString(ARGS_NEW_REPOS), config
                             .getString(ARGS_NEW_PATH), config.getString(ARGS_NEW_USER), config.getString(ARGS_NEW_GROUP),
                     config.getString(ARGS_NEW_ACCESS));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_DELETE_RULE)) {
-            retval = deleteRule(document, config.getString(ARGS_REPOS), config.getString(ARGS_PATH), config
+            deleteRule(document, config.getString(ARGS_REPOS), config.getString(ARGS_PATH), config
                     .getString(ARGS_USER), config.getString(ARGS_GROUP));
+            retval = null;
         }
         else if (config.getBoolean(ARGS_COUNT_RULES)) {
             retval = countRules(document);
@@ -1473,7 +1678,7 @@ public final class CommandLineApplication {
             retval = getRules(document);
         }
         else {
-            retval = null;
+            retval = "";
         }
 
         return retval;
@@ -1486,8 +1691,7 @@ public final class CommandLineApplication {
      * @param groupNames List of groups
      * @throws AppException Error occurred
      */
-    @Nonnull
-    private String removeGroups(@Nonnull final Document document, @Nullable final String userName,
+    private void removeGroups(@Nonnull final Document document, @Nullable final String userName,
                                 @Nullable final String[] groupNames) throws AppException {
         if (userName == null) {
             throw new AppException("application.error.userrequired");
@@ -1503,6 +1707,8 @@ public final class CommandLineApplication {
             throw new AppException("application.error.unabletofinduser", userName);
         }
 
+        final List<Group> groups = new ArrayList<>(groupNames.length);
+
         for (final String groupName : groupNames) {
             final Group group = document.findGroup(groupName);
 
@@ -1510,11 +1716,10 @@ public final class CommandLineApplication {
                 throw new AppException("application.error.unabletofindgroup", groupName);
             }
 
-            user.removeGroup(group);
-            group.removeUserMember(user);
+            groups.add(group);
         }
 
-        return new FileGenerator(document).generate(true);
+        document.removeFromGroups(user, groups);
     }
 
     /**
@@ -1526,8 +1731,7 @@ public final class CommandLineApplication {
      * @param groupNames Group names of groups to be removed
      * @throws AppException Error occurred.
      */
-    @Nonnull
-    private String removeMembers(@Nonnull final Document document, @Nullable final String groupName,
+    private void removeMembers(@Nonnull final Document document, @Nullable final String groupName,
                                  @Nullable final String[] userNames, @Nullable final String[] groupNames)
             throws AppException {
         if (groupName == null) {
@@ -1544,6 +1748,8 @@ public final class CommandLineApplication {
             throw new AppException("application.error.unabletofindgroup", groupName);
         }
 
+        final List<GroupMemberObject> members = new ArrayList<>();
+
         for (final String memberUserName : userNames) {
             final User memberUser = document.findUser(memberUserName);
 
@@ -1551,7 +1757,7 @@ public final class CommandLineApplication {
                 throw new AppException("application.error.unabletofinduser", memberUserName);
             }
 
-            group.removeUserMember(memberUser);
+            members.add(memberUser);
         }
 
         for (final String memberGroupName : groupNames) {
@@ -1561,10 +1767,25 @@ public final class CommandLineApplication {
                 throw new AppException("application.error.unabletofindgroup", memberGroupName);
             }
 
-            group.removeGroupMember(memberGroup);
+            members.add(memberGroup);
+        }
+
+        document.removeGroupMembers(group, members);
+    }
+
+    /**
+     * Removes an access rule from the rule list of the user or group it currently applies to.
+     *
+     * @param rule Access rule being reassigned
+     */
+    private void removeRuleFromPrincipal(@Nonnull final AccessRule rule) {
+        if (rule.getUser() != null) {
+            rule.getUser().removeAccessRule(rule);
         }
 
-        return new FileGenerator(document).generate(true);
+        if (rule.getGroup() != null) {
+            rule.getGroup().removeAccessRule(rule);
+        }
     }
 
     /**
@@ -1574,8 +1795,7 @@ public final class CommandLineApplication {
      * @param newGroupName New name for group
      * @throws AppException Error occurred
      */
-    @Nonnull
-    private String renameGroup(@Nonnull final Document document, @Nullable final String groupName,
+    private void renameGroup(@Nonnull final Document document, @Nullable final String groupName,
                                @Nullable final String newGroupName) throws AppException {
         if (groupName == null) {
             throw new AppException("application.error.grouprequired");
@@ -1591,9 +1811,7 @@ public final class CommandLineApplication {
             throw new AppException("application.error.unabletofindgroup", groupName);
         }
 
-        group.setName(newGroupName);
-
-        return new FileGenerator(document).generate(true);
+        document.renameGroup(group, newGroupName);
     }
 
     /**
@@ -1603,8 +1821,7 @@ public final class CommandLineApplication {
      * @param newRepositoryName Repository new name
      * @throws AppException Error occurred
      */
-    @Nonnull
-    private String renameRepository(@Nonnull final Document document, @Nullable final String repositoryName,
+    private void renameRepository(@Nonnull final Document document, @Nullable final String repositoryName,
                                     @Nullable final String newRepositoryName) throws AppException {
         if (repositoryName == null) {
             throw new AppException("application.error.repositoryrequired");
@@ -1620,9 +1837,7 @@ public final class CommandLineApplication {
             throw new AppException("application.error.unabletofindrepository", repositoryName);
         }
 
-        repository.setName(newRepositoryName);
-
-        return new FileGenerator(document).generate(true);
+        document.renameRepository(repository, newRepositoryName);
     }
 
     /**
@@ -1632,8 +1847,7 @@ public final class CommandLineApplication {
      * @param newUserName User new name
      * @throws AppException Error occurred
      */
-    @Nonnull
-    private String renameUser(@Nonnull final Document document, @Nullable final String userName,
+    private void renameUser(@Nonnull final Document document, @Nullable final String userName,
                               @Nullable final String newUserName) throws AppException {
         if (userName == null) {
             throw new AppException("application.error.userrequired");
@@ -1649,9 +1863,7 @@ public final class CommandLineApplication {
             throw new AppException("application.error.unabletofinduser", userName);
         }
 
-        user.setName(newUserName);
-
-        return new FileGenerator(document).generate(true);
+        document.renameUser(user, newUserName, user.getAlias());
     }
 
     /**
@@ -1664,6 +1876,12 @@ public final class CommandLineApplication {
             // Input and Output Options
             jsap.addStringOption(ARGS_INPUT_FILE, ARGS_INPUT_FILE_SHORTFLAG, ARGS_INPUT_FILE_LONGFLAG, "inputfile");
             jsap.addStringOption(ARGS_OUTPUT_FILE, ARGS_OUTPUT_FILE_SHORTFLAG, ARGS_OUTPUT_FILE_LONGFLAG, "outputfile");
+            jsap.addStringOption(ARGS_ENCODING, null, ARGS_ENCODING, "encoding");
+            jsap.addIntegerOption(ARGS_BACKUPS, null, ARGS_BACKUPS, "backups");
+            jsap.addSwitchOption(ARGS_PARALLEL, null, ARGS_PARALLEL, "parallel");
+            jsap.addSwitchOption(ARGS_SNAPSHOT_CACHE, null, ARGS_SNAPSHOT_CACHE, "snapshotcache");
+            jsap.addSwitchOption(ARGS_LINT, null, ARGS_LINT, "lint");
+            jsap.addUnflaggedListOption(ARGS_FILES, "files");
 
             // Help Options
             jsap.addSwitchOption(ARGS_HELP, ARGS_HELP_SHORTFLAG, ARGS_HELP, "help");
@@ -1701,6 +1919,7 @@ public final class CommandLineApplication {
             jsap.addSwitchOption(ARGS_REMOVE_GROUPS, null, ARGS_REMOVE_GROUPS, "removegroups");
             jsap.addSwitchOption(ARGS_GET_USER_GROUPS, null, ARGS_GET_USER_GROUPS, "getusergroups");
             jsap.addSwitchOption(ARGS_GET_USER_RULES, null, ARGS_GET_USER_RULES, "getuserrules");
+            jsap.addSwitchOption(ARGS_GET_EFFECTIVE_ACCESS, null, ARGS_GET_EFFECTIVE_ACCESS, "geteffectiveaccess");
 
             // Group Actions
             jsap.addSwitchOption(ARGS_ADD_GROUP, null, ARGS_ADD_GROUP, "addgroup");
@@ -1756,4 +1975,69 @@ public final class CommandLineApplication {
             System.err.println();
         }
     }
+
+    /**
+     * Replaces the tabs and line breaks in a field of the lint report with spaces, so that they cannot be mistaken
+     * for the separators between fields and errors.
+     *
+     * @param field Field value
+     * @return Field value without tabs or line breaks
+     */
+    @Nonnull
+    private static String toReportField(@Nonnull final String field) {
+        return field.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Writes a Document to the output as it is generated. The text goes through the PrintStream in blocks, so it is
+     * encoded the same way as the output of every other command.
+     *
+     * @param document Document to be written
+     * @param out      Output stream
+     * @param pool     Pool to generate the rule sections on, null to generate them on the calling thread
+     * @throws AppException Error occurred
+     */
+    private static void writeDocument(@Nonnull final Document document, @Nonnull final PrintStream out,
+                                      @Nullable final ForkJoinPool pool) throws AppException {
+        final Writer writer = new Writer() {
+            @Override
+            public void write(@Nonnull final char[] buffer, final int offset, final int length) {
+                out.append(CharBuffer.wrap(buffer, offset, length));
+            }
+
+            @Override
+            public void flush() {
+                out.flush();
+            }
+
+            @Override
+            public void close() {
+                out.flush();
+            }
+        };
+
+        new FileGenerator(document, pool).generate(new BufferedWriter(writer, OUTPUT_BUFFER_LENGTH), true);
+    }
+
+    /**
+     * Writes a Document to a file through an AtomicFileWriter, encoded the same way as output to any other file.
+     *
+     * @param document    Document to be written
+     * @param file        Output file
+     * @param backupCount Number of backups of the old file to keep
+     * @param pool        Pool to generate the rule sections on, null to generate them on the calling thread
+     * @throws AppException Error occurred
+     */
+    private static void writeDocument(@Nonnull final Document document, @Nonnull final File file,
+                                      final int backupCount, @Nullable final ForkJoinPool pool) throws AppException {
+        new AtomicFileWriter(file, backupCount).write(channel -> {
+            final PrintStream out = new PrintStream(Channels.newOutputStream(channel));
+
+            writeDocument(document, out, pool);
+
+            if (out.checkError()) {
+                throw new IOException("Unable to write " + file);
+            }
+        });
+    }
 }
@@ -49,6 +49,16 @@ public final class UserPreferences {
      */
     private static final String MULTILINE_GROUP_DEFINITIONS = "multiline.group.defintions";
 
+    /**
+     * Preference name for the number of backups kept when a file is saved.
+     */
+    private static final String BACKUP_COUNT = "backup.count";
+
+    /**
+     * Preference name for the "cache snapshots of large files" setting.
+     */
+    private static final String SNAPSHOT_CACHE = "snapshot.cache";
+
     /**
      * Preference name for the user selected font style.
      */
@@ -80,6 +90,11 @@ public final class UserPreferences {
      */
     public static final int MAXIMUM_RECENT_FILES = 10;
 
+    /**
+     * Number of backups kept when the "keep backups" setting is enabled.
+     */
+    public static final int DEFAULT_BACKUP_COUNT = 3;
+
     /**
      * Default font style.
      */
@@ -99,6 +114,15 @@ public final class UserPreferences {
         }
     }
 
+    /**
+     * Retrieves the number of backups kept when a file is saved from Preferences.
+     *
+     * @return Number of backups, 0 if none are kept
+     */
+    public static int getBackupCount() {
+        return Math.max(0, prefs.getInt(BACKUP_COUNT, 0));
+    }
+
     public static int getGroupDetailsDividerLocation() {
         return Integer.parseInt(prefs.get(GROUP_DETAILS_DIVIDER_LOCATION,
                 ApplicationDefaultsConstants.DEFAULT_DIVIDER_LOCATION));
@@ -131,6 +155,18 @@ public final class UserPreferences {
         return Boolean.parseBoolean(selected);
     }
 
+    /**
+     * Retrieves "cache snapshots of large files" setting from Preferences. The setting is off unless the user turns it
+     * on, since snapshots hold a copy of every rule in the files that are opened.
+     *
+     * @return true if setting is enabled, otherwise false
+     */
+    public static boolean getSnapshotCache() {
+        final String selected = prefs.get(SNAPSHOT_CACHE, Boolean.toString(false));
+
+        return Boolean.parseBoolean(selected);
+    }
+
     /**
      * Retrieves a list of recently opened files as a Stack. Files are ordered
      * by the last time each was opened.
@@ -254,11 +290,13 @@ public final class UserPreferences {
     }
 
     public static void resetSettings() {
+        prefs.remove(BACKUP_COUNT);
         prefs.remove(FONT_STYLE);
         prefs.remove(GROUP_DETAILS_DIVIDER_LOCATION);
         prefs.remove(GROUPS_PANE_DIVIDER_LOCATION);
         prefs.remove(OPEN_LAST_FILE);
         prefs.remove(RULES_PANE_DIVIDER_LOCATION);
+        prefs.remove(SNAPSHOT_CACHE);
         prefs.remove(USER_DETAILS_DIVIDER_LOCATION);
         prefs.remove(USERS_PANE_DIVIDER_LOCATION);
         prefs.remove(WINDOW_LOCATION);
@@ -266,6 +304,15 @@ public final class UserPreferences {
         prefs.remove(WINDOW_STATE);
     }
 
+    /**
+     * Persists the number of backups kept when a file is saved to Preferences.
+     *
+     * @param backupCount Number of backups, 0 if none are kept
+     */
+    public static void setBackupCount(final int backupCount) {
+        prefs.putInt(BACKUP_COUNT, backupCount);
+    }
+
     public static void setGroupDetailsDividerLocation(final int location) {
         prefs.put(GROUP_DETAILS_DIVIDER_LOCATION, Integer.toString(location));
     }
@@ -292,6 +339,15 @@ public final class UserPreferences {
         prefs.put(OPEN_LAST_FILE, Boolean.toString(selected));
     }
 
+    /**
+     * Persists "cache snapshots of large files" setting to Preferences.
+     *
+     * @param selected true if setting is enabled.
+     */
+    public static void setSnapshotCache(final boolean selected) {
+        prefs.put(SNAPSHOT_CACHE, Boolean.toString(selected));
+    }
+
     /**
      * Persists a list of recently opened files into Preferences.
      *
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.access;
+
+import net.lmxm.suafe.api.SubversionConstants;
+import net.lmxm.suafe.api.beans.AccessRule;
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.GroupClosureIndex;
+import net.lmxm.suafe.api.beans.Path;
+import net.lmxm.suafe.api.beans.Repository;
+import net.lmxm.suafe.api.beans.User;
+import net.lmxm.suafe.exceptions.AppException;
+import net.lmxm.suafe.exceptions.ValidatorException;
+import net.lmxm.suafe.validators.Validator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out the access a User effectively has to a location in a Repository, the same way Subversion does when it
+ * reads the authz file.
+ * <ul>
+ * <li>A rule applies to a User if it names the User, names all users (*), or names a Group the User belongs to
+ * directly or through nested Groups.</li>
+ * <li>The most specific section wins. Starting at the requested path and moving up to "/", the first section with
+ * a rule that applies to the User decides the access.</li>
+ * <li>At the same path, the Repository section [repository:/path] is checked before the server section [/path].</li>
+ * <li>When several rules in the deciding section apply, the User gets the combined access of all of them.</li>
+ * <li>If no section applies, the User has no access.</li>
+ * </ul>
+ * Group membership is answered by the GroupClosureIndex of the Document. Results are remembered for each User and
+ * location, and everything remembered is thrown away as soon as the Document is modified.
+ *
+ * @author Shaun Johnson
+ */
+public final class AccessResolver {
+    /**
+     * Document being examined.
+     */
+    private final Document document;
+
+    /**
+     * Modification count of the Document when the caches were last valid.
+     */
+    private long modificationCount;
+
+    /**
+     * Remembered results by User, then Repository (null for server level), then path string.
+     */
+    private final Map<User, Map<Repository, Map<String, EffectiveAccess>>> results = new IdentityHashMap<>();
+
+    /**
+     * Creates a resolver for the Document.
+     *
+     * @param document Document to examine
+     */
+    public AccessResolver(@Nonnull final Document document) {
+        this.document = document;
+        this.modificationCount = document.getModificationCount();
+    }
+
+    /**
+     * Gets the access a User effectively has to a location.
+     *
+     * @param user       User whose access is wanted
+     * @param repository Repository containing the location, or null to consider server level sections only
+     * @param pathString Path within the Repository
+     * @return Effective access of the User
+     * @throws AppException
+     */
+    @Nonnull
+    public EffectiveAccess getEffectiveAccess(@Nonnull final User user, @Nullable final Repository repository,
+                                              @Nonnull final String pathString) throws AppException {
+        if (user == null) {
+            throw new ValidatorException("application.error.usermissing");
+        }
+
+        Validator.validatePath(pathString);
+
+        discardIfStale();
+
+        final Map<String, EffectiveAccess> cache = results
+                .computeIfAbsent(user, key -> new HashMap<>())
+                .computeIfAbsent(repository, key -> new HashMap<>());
+
+        EffectiveAccess access = cache.get(pathString);
+
+        if (access == null) {
+            access = resolve(user, repository, pathString);
+            cache.put(pathString, access);
+        }
+
+        return access;
+    }
+
+    /**
+     * Gets the access a User effectively has to a location, looking up the User and Repository by name.
+     *
+     * @param userName       Name of the User
+     * @param repositoryName Name of the Repository, or null to consider server level sections only
+     * @param pathString     Path within the Repository
+     * @return Effective access of the User
+     * @throws AppException
+     */
+    @Nonnull
+    public EffectiveAccess getEffectiveAccess(@Nonnull final String userName, @Nullable final String repositoryName,
+                                              @Nonnull final String pathString) throws AppException {
+        Repository repository = null;
+
+        // Look up the Repository first, since loading it into a partly loaded Document can add the User
+        if (repositoryName != null) {
+            repository = document.findRepository(repositoryName);
+
+            if (repository == null) {
+                throw new AppException("application.error.unabletofindrepository", repositoryName);
+            }
+        }
+
+        User user = document.findUser(userName);
+
+        // The User may only be named in the sections of Repositories that have not been loaded
+        if (user == null && document.isPartiallyLoaded()) {
+            document.loadAllRepositories();
+            user = document.findUser(userName);
+        }
+
+        if (user == null) {
+            throw new AppException("application.error.unabletofinduser", userName);
+        }
+
+        return getEffectiveAccess(user, repository, pathString);
+    }
+
+    /**
+     * Gets the Document this resolver examines.
+     *
+     * @return Document
+     */
+    @Nonnull
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Throws away remembered results if the Document has been modified since they were worked out.
+     */
+    private void discardIfStale() {
+        if (modificationCount != document.getModificationCount()) {
+            results.clear();
+            modificationCount = document.getModificationCount();
+        }
+    }
+
+    /**
+     * Ranks an access level so that levels can be combined.
+     */
+    private static int rank(final String level) {
+        if (SubversionConstants.SVN_ACCESS_LEVEL_READWRITE.equalsIgnoreCase(level)) {
+            return 2;
+        }
+        else if (SubversionConstants.SVN_ACCESS_LEVEL_READONLY.equalsIgnoreCase(level)) {
+            return 1;
+        }
+        else {
+            return 0;
+        }
+    }
+
+    private EffectiveAccess resolve(final User user, final Repository repository, final String pathString)
+            throws AppException {
+        String current = pathString;
+
+        while (current != null) {
+            EffectiveAccess access = null;
+
+            if (repository != null) {
+                access = resolveSection(user, repository.findPath(current));
+            }
+
+            if (access == null) {
+                access = resolveSection(user, document.findServerPath(current));
+            }
+
+            if (access != null) {
+                return access;
+            }
+
+            current = parentOf(current);
+        }
+
+        return EffectiveAccess.NO_ACCESS;
+    }
+
+    /**
+     * Combines the rules of one section that apply to the User.
+     *
+     * @return Effective access, or null if no rule in the section applies
+     */
+    private EffectiveAccess resolveSection(final User user, final Path path) {
+        if (path == null || path.getAccessRules().isEmpty()) {
+            return null;
+        }
+
+        final GroupClosureIndex groupClosureIndex = document.getGroupClosureIndex();
+        final List<AccessRule> applied = new ArrayList<>();
+        String level = SubversionConstants.SVN_ACCESS_LEVEL_DENY_ACCESS;
+
+        for (final AccessRule rule : path.getAccessRules()) {
+            final User ruleUser = rule.getUser();
+            final Group ruleGroup = rule.getGroup();
+
+            final boolean applies = (ruleUser != null) ? (ruleUser == user || ruleUser.isAllUsers()) :
+                    (ruleGroup != null && groupClosureIndex.isMember(user, ruleGroup));
+
+            if (applies) {
+                applied.add(rule);
+
+                if (rank(rule.getLevel()) > rank(level)) {
+                    level = rule.getLevel().toLowerCase();
+                }
+            }
+        }
+
+        return applied.isEmpty() ? null : new EffectiveAccess(level, path, applied);
+    }
+
+    /**
+     * Gets the parent of a path, "/" for top level paths and null for "/" itself or paths without a slash.
+     */
+    private static String parentOf(final String pathString) {
+        final int index = pathString.lastIndexOf('/');
+
+        if (index < 0 || pathString.length() == 1) {
+            return null;
+        }
+
+        return (index == 0) ? SubversionConstants.SVN_PATH_SEPARATOR : pathString.substring(0, index);
+    }
+}
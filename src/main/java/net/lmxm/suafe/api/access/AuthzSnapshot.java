@@ -0,0 +1,532 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.access;
+
+import net.lmxm.suafe.api.SubversionConstants;
+import net.lmxm.suafe.api.beans.AccessRule;
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.GroupClosureIndex;
+import net.lmxm.suafe.api.beans.Path;
+import net.lmxm.suafe.api.beans.Repository;
+import net.lmxm.suafe.api.beans.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Frozen copy of the access rules of a Document, laid out in arrays for answering large numbers of access checks.
+ * Users and Repositories are given integer ids, the Groups of each User are resolved in advance into a bit set, and
+ * the sections of each Repository and of the server are stored in a trie of path segments.
+ * <p>
+ * Checks follow the same rules as AccessResolver and do not allocate. A snapshot never changes once compiled, so it
+ * can be shared between threads without locking; compile a new one after the Document changes.
+ * <p>
+ * Paths are split on "/" and empty segments are ignored, so "/trunk", "trunk" and "/trunk/" all name the same
+ * location. Sections whose path does not start with "/" are not included.
+ *
+ * @author Shaun Johnson
+ */
+public final class AuthzSnapshot {
+    /**
+     * Rule principal standing for all users (*).
+     */
+    private static final int ALL_USERS = -1;
+
+    private static final int LEVEL_DENY = 0;
+
+    private static final int LEVEL_READONLY = 1;
+
+    private static final int LEVEL_READWRITE = 2;
+
+    /**
+     * Level returned by a section that has no rule for the User.
+     */
+    private static final int LEVEL_UNDECIDED = -1;
+
+    /**
+     * Section trie under construction.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new TreeMap<>();
+
+        private final List<AccessRule> accessRules = new ArrayList<>();
+    }
+
+    /**
+     * User ids by name.
+     */
+    private final Map<String, Integer> userIds;
+
+    /**
+     * Repository ids by name.
+     */
+    private final Map<String, Integer> repositoryIds;
+
+    /**
+     * Groups of each User, by User id, as a bit set of Group ids.
+     */
+    private final long[][] userGroups;
+
+    /**
+     * Root node of each Repository, by Repository id, -1 if the Repository has no sections.
+     */
+    private final int[] repositoryRoots;
+
+    /**
+     * Root node of the server level sections.
+     */
+    private final int serverRoot;
+
+    /**
+     * Children of node n are childSegments[childStart[n]] up to childStart[n + 1], sorted by segment.
+     */
+    private final int[] childStart;
+
+    private final String[] childSegments;
+
+    private final int[] childNodes;
+
+    /**
+     * Rules of node n are rulePrincipals[ruleStart[n]] up to ruleStart[n + 1].
+     */
+    private final int[] ruleStart;
+
+    /**
+     * User id, ALL_USERS, or -(Group id + 2) for each rule.
+     */
+    private final int[] rulePrincipals;
+
+    private final byte[] ruleLevels;
+
+    private AuthzSnapshot(final Map<String, Integer> userIds, final Map<String, Integer> repositoryIds,
+                          final long[][] userGroups, final int[] repositoryRoots, final int serverRoot,
+                          final List<Node> nodes, final Map<Group, Integer> groupIds,
+                          final Map<User, Integer> userIdsByObject) {
+        this.userIds = userIds;
+        this.repositoryIds = repositoryIds;
+        this.userGroups = userGroups;
+        this.repositoryRoots = repositoryRoots;
+        this.serverRoot = serverRoot;
+
+        int childCount = 0;
+        int ruleCount = 0;
+
+        for (final Node node : nodes) {
+            childCount += node.children.size();
+            ruleCount += node.accessRules.size();
+        }
+
+        this.childStart = new int[nodes.size() + 1];
+        this.childSegments = new String[childCount];
+        this.childNodes = new int[childCount];
+        this.ruleStart = new int[nodes.size() + 1];
+        this.rulePrincipals = new int[ruleCount];
+        this.ruleLevels = new byte[ruleCount];
+
+        final Map<Node, Integer> nodeIds = new IdentityHashMap<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeIds.put(nodes.get(i), i);
+        }
+
+        int child = 0;
+        int rule = 0;
+
+        for (int i = 0; i < nodes.size(); i++) {
+            final Node node = nodes.get(i);
+
+            childStart[i] = child;
+            ruleStart[i] = rule;
+
+            for (final Map.Entry<String, Node> entry : node.children.entrySet()) {
+                childSegments[child] = entry.getKey();
+                childNodes[child] = nodeIds.get(entry.getValue());
+                child++;
+            }
+
+            for (final AccessRule accessRule : node.accessRules) {
+                if (accessRule.getGroup() != null) {
+                    rulePrincipals[rule] = -(groupIds.get(accessRule.getGroup()) + 2);
+                }
+                else if (accessRule.getUser().isAllUsers()) {
+                    rulePrincipals[rule] = ALL_USERS;
+                }
+                else {
+                    rulePrincipals[rule] = userIdsByObject.get(accessRule.getUser());
+                }
+
+                ruleLevels[rule] = (byte) toLevel(accessRule.getLevel());
+                rule++;
+            }
+        }
+
+        childStart[nodes.size()] = child;
+        ruleStart[nodes.size()] = rule;
+    }
+
+    /**
+     * Compiles a snapshot of the access rules in a Document.
+     *
+     * @param document Document to compile
+     * @return Snapshot of the Document as it is now
+     */
+    @Nonnull
+    public static AuthzSnapshot compile(@Nonnull final Document document) {
+        final Map<String, Integer> userIds = new HashMap<>();
+        final Map<User, Integer> userIdsByObject = new IdentityHashMap<>();
+        final List<User> users = new ArrayList<>();
+
+        for (final User user : document.getUsers()) {
+            if (!user.isAllUsers() && !userIds.containsKey(user.getName())) {
+                userIds.put(user.getName(), users.size());
+                userIdsByObject.put(user, users.size());
+                users.add(user);
+            }
+        }
+
+        final Map<Group, Integer> groupIds = new IdentityHashMap<>();
+
+        for (final Group group : document.getGroups()) {
+            groupIds.putIfAbsent(group, groupIds.size());
+        }
+
+        final GroupClosureIndex groupClosureIndex = document.getGroupClosureIndex();
+        final long[][] userGroups = new long[users.size()][];
+
+        for (int i = 0; i < users.size(); i++) {
+            final long[] bits = new long[(groupIds.size() + 63) >>> 6];
+
+            for (final Group group : groupClosureIndex.getGroups(users.get(i))) {
+                final Integer groupId = groupIds.get(group);
+
+                if (groupId != null) {
+                    bits[groupId >>> 6] |= 1L << groupId;
+                }
+            }
+
+            userGroups[i] = bits;
+        }
+
+        final Map<String, Integer> repositoryIds = new HashMap<>();
+        final Map<Repository, Node> repositoryTries = new IdentityHashMap<>();
+
+        for (final Repository repository : document.getRepositories()) {
+            repositoryIds.putIfAbsent(repository.getName(), repositoryIds.size());
+        }
+
+        final Node server = new Node();
+
+        for (final Path path : document.getPaths()) {
+            final String pathString = path.getPath();
+
+            if (path.getAccessRules().isEmpty() || pathString == null || !pathString.startsWith("/")) {
+                continue;
+            }
+
+            Node node = (path.getRepository() == null) ? server :
+                    repositoryTries.computeIfAbsent(path.getRepository(), key -> new Node());
+
+            for (final String segment : pathString.split("/")) {
+                if (!segment.isEmpty()) {
+                    node = node.children.computeIfAbsent(segment, key -> new Node());
+                }
+            }
+
+            for (final AccessRule accessRule : path.getAccessRules()) {
+                final boolean known = (accessRule.getGroup() != null) ? groupIds.containsKey(accessRule.getGroup()) :
+                        accessRule.getUser().isAllUsers() || userIdsByObject.containsKey(accessRule.getUser());
+
+                if (known) {
+                    node.accessRules.add(accessRule);
+                }
+            }
+        }
+
+        final List<Node> nodes = new ArrayList<>();
+        final int serverRoot = flatten(server, nodes);
+        final int[] repositoryRoots = new int[repositoryIds.size()];
+
+        for (final Repository repository : document.getRepositories()) {
+            final Node root = repositoryTries.get(repository);
+
+            repositoryRoots[repositoryIds.get(repository.getName())] = (root == null) ? -1 : flatten(root, nodes);
+        }
+
+        return new AuthzSnapshot(Collections.unmodifiableMap(userIds), Collections.unmodifiableMap(repositoryIds),
+                userGroups, repositoryRoots, serverRoot, nodes, groupIds, userIdsByObject);
+    }
+
+    /**
+     * Checks whether a User may read a location.
+     *
+     * @param userId       User id from findUser, -1 for a user that is not in the Document
+     * @param repositoryId Repository id from findRepository, -1 to consider server level sections only
+     * @param pathString   Path within the Repository
+     * @return true if the User has read or read/write access
+     */
+    public boolean canRead(final int userId, final int repositoryId, @Nonnull final String pathString) {
+        return resolve(userId, repositoryId, pathString) >= LEVEL_READONLY;
+    }
+
+    /**
+     * Checks whether a User may read a location, looking up the User and Repository by name.
+     *
+     * @param userName       Name of the User
+     * @param repositoryName Name of the Repository, or null to consider server level sections only
+     * @param pathString     Path within the Repository
+     * @return true if the User has read or read/write access
+     */
+    public boolean canRead(@Nonnull final String userName, @Nullable final String repositoryName,
+                           @Nonnull final String pathString) {
+        return canRead(findUser(userName), findRepository(repositoryName), pathString);
+    }
+
+    /**
+     * Checks whether a User may write to a location.
+     *
+     * @param userId       User id from findUser, -1 for a user that is not in the Document
+     * @param repositoryId Repository id from findRepository, -1 to consider server level sections only
+     * @param pathString   Path within the Repository
+     * @return true if the User has read/write access
+     */
+    public boolean canWrite(final int userId, final int repositoryId, @Nonnull final String pathString) {
+        return resolve(userId, repositoryId, pathString) == LEVEL_READWRITE;
+    }
+
+    /**
+     * Checks whether a User may write to a location, looking up the User and Repository by name.
+     *
+     * @param userName       Name of the User
+     * @param repositoryName Name of the Repository, or null to consider server level sections only
+     * @param pathString     Path within the Repository
+     * @return true if the User has read/write access
+     */
+    public boolean canWrite(@Nonnull final String userName, @Nullable final String repositoryName,
+                            @Nonnull final String pathString) {
+        return canWrite(findUser(userName), findRepository(repositoryName), pathString);
+    }
+
+    /**
+     * Gets the id of a Repository.
+     *
+     * @param repositoryName Name of the Repository, may be null
+     * @return Repository id, or -1 if the name is null or no such Repository exists
+     */
+    public int findRepository(@Nullable final String repositoryName) {
+        final Integer id = (repositoryName == null) ? null : repositoryIds.get(repositoryName);
+
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * Gets the id of a User.
+     *
+     * @param userName Name of the User
+     * @return User id, or -1 if no such User exists. Rules for all users (*) still apply to unknown users.
+     */
+    public int findUser(@Nonnull final String userName) {
+        final Integer id = userIds.get(userName);
+
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * Gets the level of access a User has to a location.
+     *
+     * @param userId       User id from findUser, -1 for a user that is not in the Document
+     * @param repositoryId Repository id from findRepository, -1 to consider server level sections only
+     * @param pathString   Path within the Repository
+     * @return SVN_ACCESS_LEVEL_READWRITE, SVN_ACCESS_LEVEL_READONLY or SVN_ACCESS_LEVEL_DENY_ACCESS
+     */
+    @Nonnull
+    public String getLevel(final int userId, final int repositoryId, @Nonnull final String pathString) {
+        switch (resolve(userId, repositoryId, pathString)) {
+            case LEVEL_READWRITE:
+                return SubversionConstants.SVN_ACCESS_LEVEL_READWRITE;
+            case LEVEL_READONLY:
+                return SubversionConstants.SVN_ACCESS_LEVEL_READONLY;
+            default:
+                return SubversionConstants.SVN_ACCESS_LEVEL_DENY_ACCESS;
+        }
+    }
+
+    /**
+     * Finds the child of a node for the segment path[start, end), by binary search over the sorted child segments.
+     *
+     * @return Child node, or -1 if there is none
+     */
+    private int child(final int node, final String pathString, final int start, final int end) {
+        if (node < 0) {
+            return -1;
+        }
+
+        int low = childStart[node];
+        int high = childStart[node + 1] - 1;
+
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int result = compareSegment(childSegments[middle], pathString, start, end);
+
+            if (result < 0) {
+                low = middle + 1;
+            }
+            else if (result > 0) {
+                high = middle - 1;
+            }
+            else {
+                return childNodes[middle];
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Compares a segment with part of a path string the same way String.compareTo would.
+     */
+    private static int compareSegment(final String segment, final String pathString, final int start, final int end) {
+        final int length = Math.min(segment.length(), end - start);
+
+        for (int i = 0; i < length; i++) {
+            final int difference = segment.charAt(i) - pathString.charAt(start + i);
+
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return segment.length() - (end - start);
+    }
+
+    /**
+     * Combines the rules of one section that apply to the User.
+     *
+     * @return Level of access, or LEVEL_UNDECIDED if the node is missing or none of its rules apply
+     */
+    private int decide(final int node, final int userId) {
+        if (node < 0) {
+            return LEVEL_UNDECIDED;
+        }
+
+        int level = LEVEL_UNDECIDED;
+
+        for (int rule = ruleStart[node]; rule < ruleStart[node + 1]; rule++) {
+            final int principal = rulePrincipals[rule];
+            final boolean applies;
+
+            if (principal == ALL_USERS) {
+                applies = true;
+            }
+            else if (principal >= 0) {
+                applies = principal == userId;
+            }
+            else if (userId >= 0) {
+                final int groupId = -principal - 2;
+
+                applies = (userGroups[userId][groupId >>> 6] & (1L << groupId)) != 0;
+            }
+            else {
+                applies = false;
+            }
+
+            if (applies && ruleLevels[rule] > level) {
+                level = ruleLevels[rule];
+            }
+        }
+
+        return level;
+    }
+
+    private int decideAt(final int repositoryNode, final int serverNode, final int userId, final int level) {
+        int decided = decide(repositoryNode, userId);
+
+        if (decided == LEVEL_UNDECIDED) {
+            decided = decide(serverNode, userId);
+        }
+
+        return (decided == LEVEL_UNDECIDED) ? level : decided;
+    }
+
+    /**
+     * Adds the nodes of a trie to the list in depth first order.
+     *
+     * @return Index of the root node
+     */
+    private static int flatten(final Node root, final List<Node> nodes) {
+        final int index = nodes.size();
+
+        nodes.add(root);
+
+        for (final Node child : root.children.values()) {
+            flatten(child, nodes);
+        }
+
+        return index;
+    }
+
+    /**
+     * Walks down the Repository and server tries together. A section deeper in the path overrides the ones above it,
+     * and at the same depth the Repository section is used before the server section.
+     */
+    private int resolve(final int userId, final int repositoryId, final String pathString) {
+        int repositoryNode = (repositoryId >= 0 && repositoryId < repositoryRoots.length) ?
+                repositoryRoots[repositoryId] : -1;
+        int serverNode = serverRoot;
+        int level = decideAt(repositoryNode, serverNode, userId, LEVEL_DENY);
+        int start = 0;
+
+        while (start < pathString.length() && (repositoryNode >= 0 || serverNode >= 0)) {
+            int end = pathString.indexOf('/', start);
+
+            if (end < 0) {
+                end = pathString.length();
+            }
+
+            if (end > start) {
+                repositoryNode = child(repositoryNode, pathString, start, end);
+                serverNode = child(serverNode, pathString, start, end);
+                level = decideAt(repositoryNode, serverNode, userId, level);
+            }
+
+            start = end + 1;
+        }
+
+        return level;
+    }
+
+    private static int toLevel(final String level) {
+        if (SubversionConstants.SVN_ACCESS_LEVEL_READWRITE.equalsIgnoreCase(level)) {
+            return LEVEL_READWRITE;
+        }
+        else if (SubversionConstants.SVN_ACCESS_LEVEL_READONLY.equalsIgnoreCase(level)) {
+            return LEVEL_READONLY;
+        }
+        else {
+            return LEVEL_DENY;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.access;
+
+import net.lmxm.suafe.api.SubversionConstants;
+import net.lmxm.suafe.api.beans.AccessRule;
+import net.lmxm.suafe.api.beans.Path;
+import net.lmxm.suafe.resources.ResourceUtil;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Access that a User effectively has to a location, along with the rules that decided it.
+ *
+ * @author Shaun Johnson
+ */
+public final class EffectiveAccess {
+    /**
+     * Result used when no rule applies to the User anywhere above the location.
+     */
+    static final EffectiveAccess NO_ACCESS = new EffectiveAccess(SubversionConstants.SVN_ACCESS_LEVEL_DENY_ACCESS,
+            null, Collections.emptyList());
+
+    /**
+     * Level of access, one of the SubversionConstants access levels.
+     */
+    private final String level;
+
+    /**
+     * Path whose section decided the access, null if no section applied.
+     */
+    private final Path path;
+
+    /**
+     * AccessRules in the deciding section that apply to the User.
+     */
+    private final List<AccessRule> accessRules;
+
+    EffectiveAccess(@Nonnull final String level, @Nullable final Path path,
+                    @Nonnull final List<AccessRule> accessRules) {
+        this.level = level;
+        this.path = path;
+        this.accessRules = Collections.unmodifiableList(accessRules);
+    }
+
+    /**
+     * Gets the AccessRules that decided the access. These all belong to the same section and their levels are combined
+     * to give the effective level.
+     *
+     * @return AccessRules that apply, empty if no rule applies.
+     */
+    @Nonnull
+    public List<AccessRule> getAccessRules() {
+        return accessRules;
+    }
+
+    /**
+     * Gets the effective level of access.
+     *
+     * @return SVN_ACCESS_LEVEL_READWRITE, SVN_ACCESS_LEVEL_READONLY or SVN_ACCESS_LEVEL_DENY_ACCESS.
+     */
+    @Nonnull
+    public String getLevel() {
+        return level;
+    }
+
+    /**
+     * Gets the full English form of the effective level of access.
+     *
+     * @return Level of access in English.
+     */
+    @Nonnull
+    public String getLevelFullName() {
+        if (canWrite()) {
+            return ResourceUtil.getString("accesslevel.readwrite");
+        }
+        else if (canRead()) {
+            return ResourceUtil.getString("accesslevel.readonly");
+        }
+        else {
+            return ResourceUtil.getString("accesslevel.denyaccess");
+        }
+    }
+
+    /**
+     * Gets the Path whose section decided the access. This is the requested location or its closest parent that has
+     * a rule for the User, and may be a server level path.
+     *
+     * @return Deciding Path, or null if no rule applies.
+     */
+    @CheckForNull
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Determines if the User may read the location.
+     *
+     * @return true if the level is read only or read/write.
+     */
+    public boolean canRead() {
+        return !level.equals(SubversionConstants.SVN_ACCESS_LEVEL_DENY_ACCESS);
+    }
+
+    /**
+     * Determines if the User may write to the location.
+     *
+     * @return true if the level is read/write.
+     */
+    public boolean canWrite() {
+        return level.equals(SubversionConstants.SVN_ACCESS_LEVEL_READWRITE);
+    }
+}
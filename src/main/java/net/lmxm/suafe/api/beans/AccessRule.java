@@ -213,7 +213,34 @@ public final class AccessRule implements Comparable<AccessRule> {
      * @param otherAccessRule The other AccessRule to use for comparison.
      */
     public int compareTo(final AccessRule otherAccessRule) {
-        return this.toString().compareTo(otherAccessRule.toString());
+        return SortKeys.compare(this, otherAccessRule, AccessRule::getSortKeyPiece);
+    }
+
+    /**
+     * Gets a piece of the AccessRule's display string, as returned by toString, without building the string.
+     *
+     * @param accessRule AccessRule to read
+     * @param index      Index of the piece
+     * @return Piece of the display string, or null when there are no more pieces
+     */
+    private static String getSortKeyPiece(final AccessRule accessRule, final int index) {
+        final Path path = accessRule.path;
+
+        switch (index) {
+            case 0:
+                return (path == null || path.getRepository() == null) ? "" : path.getRepository().toString();
+            case 1:
+            case 3:
+            case 5:
+                return ":";
+            case 2:
+                return (path == null) ? "" : path.toString();
+            case 4:
+                return (accessRule.group == null) ? "" : accessRule.group.toString();
+            default:
+                return (accessRule.user == null) ? ((index == 6) ? "" : null) :
+                        User.getSortKeyPiece(accessRule.user, index - 6);
+        }
     }
 
     @Override
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.beans;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * List of all AccessRules in a Document. Rules are tracked by identity, through a map from each rule to its slot, so
+ * that finding and removing a rule does not search the list: a delete costs time in the number of rules removed
+ * rather than in the size of the list. A removed rule leaves its slot empty, and the empty slots are squeezed out by
+ * a later change to the list once they make up a quarter of the list, or before it is sorted.
+ * <p>
+ * While there are empty slots, an index is turned into a slot through a Fenwick tree of the used slots, in
+ * logarithmic time. The slots are kept by the list, not by the rules, and only methods that change the list move
+ * rules between slots. Reading the list never changes it, so any number of threads can read it at once while it is
+ * not being changed.
+ *
+ * @author Shaun Johnson
+ */
+final class AccessRuleList extends AbstractList<AccessRule> {
+    /**
+     * Rules in insertion order, with null in the slots of removed rules until the next compaction.
+     */
+    private AccessRule[] elements = new AccessRule[16];
+
+    /**
+     * Fenwick tree over the slots of elements, counting 1 for each used slot. Entry i, counting from 1, holds the
+     * number of rules in the slots from i - (i &amp; -i) up to i - 1.
+     */
+    private int[] usedSlots = new int[elements.length + 1];
+
+    /**
+     * Slot of each rule in elements.
+     */
+    private final Map<AccessRule, Integer> positions = new IdentityHashMap<>();
+
+    /**
+     * Number of slots in elements that have been used, including those of removed rules.
+     */
+    private int end = 0;
+
+    /**
+     * Number of rules in the list, not counting removed ones.
+     */
+    private int size = 0;
+
+    /**
+     * modCount after the last sort, or -1 if the list is not known to be sorted.
+     */
+    private int sortedModCount = -1;
+
+    /**
+     * Comparator used by the last sort, null for natural ordering.
+     */
+    private Comparator<? super AccessRule> sortedBy;
+
+    /**
+     * Appends an AccessRule. Adding a rule instance that is already in the list has no effect.
+     *
+     * @param accessRule AccessRule to be added
+     * @return true if the rule was added
+     */
+    @Override
+    public boolean add(final AccessRule accessRule) {
+        if (positions.containsKey(accessRule)) {
+            return false;
+        }
+
+        if (end == elements.length) {
+            compact();
+
+            if (end == elements.length) {
+                elements = Arrays.copyOf(elements, elements.length * 2);
+                rebuildUsedSlots();
+            }
+        }
+
+        positions.put(accessRule, end);
+        elements[end] = accessRule;
+        updateUsedSlots(end, 1);
+        end++;
+        size++;
+        modCount++;
+
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, 0, end, null);
+        Arrays.fill(usedSlots, 0);
+        positions.clear();
+        end = 0;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return o instanceof AccessRule && positions.containsKey(o);
+    }
+
+    @Override
+    public AccessRule get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        return elements[(end == size) ? index : findSlot(index)];
+    }
+
+    @Override
+    public AccessRule remove(final int index) {
+        final AccessRule accessRule = get(index);
+
+        removeRule(accessRule);
+
+        return accessRule;
+    }
+
+    /**
+     * Removes a specific AccessRule instance. Unlike most lists, rules are matched by identity rather than equality.
+     *
+     * @param o AccessRule to be removed
+     * @return true if the rule was found and removed
+     */
+    @Override
+    public boolean remove(final Object o) {
+        return o instanceof AccessRule && removeRule((AccessRule) o);
+    }
+
+    /**
+     * Forgets that the list is sorted, because the path, user or group of one of its rules has changed.
+     */
+    void markUnsorted() {
+        sortedModCount = -1;
+    }
+
+    /**
+     * Removes a specific AccessRule instance. Other rules that are equal to it, but are different objects, are kept.
+     *
+     * @param accessRule AccessRule to be removed
+     * @return true if the rule was found and removed
+     */
+    boolean removeRule(final AccessRule accessRule) {
+        if (!clearSlot(accessRule)) {
+            return false;
+        }
+
+        compactIfSparse();
+
+        return true;
+    }
+
+    /**
+     * Removes a collection of specific AccessRule instances.
+     *
+     * @param accessRules AccessRules to be removed
+     */
+    void removeRules(final Collection<AccessRule> accessRules) {
+        for (final AccessRule accessRule : accessRules) {
+            clearSlot(accessRule);
+        }
+
+        compactIfSparse();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the list, unless it is already sorted by the same comparator and has not changed since.
+     *
+     * @param comparator Comparator to sort by, null for natural ordering
+     */
+    @Override
+    public void sort(final Comparator<? super AccessRule> comparator) {
+        if (sortedModCount == modCount && Objects.equals(sortedBy, comparator)) {
+            return;
+        }
+
+        compact();
+
+        Arrays.sort(elements, 0, end, comparator);
+
+        for (int i = 0; i < end; i++) {
+            positions.put(elements[i], i);
+        }
+
+        modCount++;
+        sortedModCount = modCount;
+        sortedBy = comparator;
+    }
+
+    /**
+     * Empties the slot of a rule.
+     *
+     * @return true if the rule was in the list
+     */
+    private boolean clearSlot(final AccessRule accessRule) {
+        final Integer position = positions.remove(accessRule);
+
+        if (position == null) {
+            return false;
+        }
+
+        elements[position] = null;
+        updateUsedSlots(position, -1);
+        size--;
+        modCount++;
+
+        return true;
+    }
+
+    /**
+     * Squeezes out the slots of removed rules.
+     */
+    private void compact() {
+        if (end == size) {
+            return;
+        }
+
+        int target = 0;
+
+        for (int i = 0; i < end; i++) {
+            final AccessRule accessRule = elements[i];
+
+            if (accessRule != null) {
+                if (target != i) {
+                    elements[target] = accessRule;
+                    positions.put(accessRule, target);
+                }
+
+                target++;
+            }
+        }
+
+        Arrays.fill(elements, target, end, null);
+        end = target;
+        rebuildUsedSlots();
+    }
+
+    /**
+     * Compacts the list once the slots of removed rules make up a quarter of it, so that each removal pays for moving
+     * at most a few rules.
+     */
+    private void compactIfSparse() {
+        if ((end - size) * 4 > end) {
+            compact();
+        }
+    }
+
+    /**
+     * Finds the slot of the rule at an index, by descending the Fenwick tree.
+     */
+    private int findSlot(final int index) {
+        int remaining = index + 1;
+        int slot = 0;
+
+        for (int step = Integer.highestOneBit(elements.length); step > 0; step >>>= 1) {
+            final int next = slot + step;
+
+            if (next <= elements.length && usedSlots[next] < remaining) {
+                slot = next;
+                remaining -= usedSlots[next];
+            }
+        }
+
+        return slot;
+    }
+
+    /**
+     * Builds the Fenwick tree from scratch, for when elements has been compacted or has grown.
+     */
+    private void rebuildUsedSlots() {
+        usedSlots = new int[elements.length + 1];
+
+        for (int i = 1; i <= elements.length; i++) {
+            if (elements[i - 1] != null) {
+                usedSlots[i]++;
+            }
+
+            final int parent = i + (i & -i);
+
+            if (parent <= elements.length) {
+                usedSlots[parent] += usedSlots[i];
+            }
+        }
+    }
+
+    /**
+     * Adds delta to the count of a slot in the Fenwick tree.
+     */
+    private void updateUsedSlots(final int slot, final int delta) {
+        for (int i = slot + 1; i <= elements.length; i += i & -i) {
+            usedSlots[i] += delta;
+        }
+    }
+}
@@ -55,7 +55,17 @@ public final class Document {
     /**
      * List of all AccessRules.
      */
-    private List<AccessRule> accessRules = null;
+    private AccessRuleList accessRules = null;
+
+    /**
+     * Indicates whether a bulk load is in progress.
+     */
+    private boolean bulkLoading = false;
+
+    /**
+     * Indicates whether the bulk load in progress has changed the document.
+     */
+    private boolean bulkLoadChanges = false;
 
     /**
      * Authentication file being edited.
@@ -67,21 +77,52 @@ public final class Document {
      */
     protected List<Group> groups = null;
 
+    /**
+     * Transitive Group membership of every User and Group.
+     */
+    private final GroupClosureIndex groupClosureIndex = new GroupClosureIndex(this);
+
+    /**
+     * Groups indexed by name.
+     */
+    private Map<String, Group> groupsByName = null;
+
     /**
      * Indicator whether undo recording is enabled or not.
      */
     private boolean isUndoEnabled = true;
 
+    /**
+     * Number of modifications made to the Document. Never reset, so that caches built from an earlier state of the
+     * Document can tell that they are stale.
+     */
+    private long modificationCount = 0;
+
     /**
      * List of all Paths.
      */
     protected List<Path> paths = null;
 
+    /**
+     * Server level Paths indexed by path.
+     */
+    private PathTrie serverPathIndex = null;
+
     /**
      * List of all Repositories.
      */
     protected List<Repository> repositories = null;
 
+    /**
+     * Repositories indexed by name.
+     */
+    private Map<String, Repository> repositoriesByName = null;
+
+    /**
+     * Loads Repositories on first use when only part of the file was parsed, null if the whole file was parsed.
+     */
+    private RepositoryLoader repositoryLoader = null;
+
     /**
      * List of undo-able actions
      */
@@ -97,6 +138,16 @@ public final class Document {
      */
     protected List<User> users = null;
 
+    /**
+     * Users indexed by alias. Users without an alias are not included.
+     */
+    private Map<String, User> usersByAlias = null;
+
+    /**
+     * Users indexed by name.
+     */
+    private Map<String, User> usersByName = null;
+
     /**
      * Default constructor.
      */
@@ -273,15 +324,16 @@ public final class Document {
     public Group addGroup(final String groupName) throws AppException {
         Validator.validateGroupName(groupName);
 
-        Group group = findGroup(groupName);
+        Group group = groupsByName.get(groupName);
 
         if (group == null) {
-            final List<Group> groupMemberList = new ArrayList<>();
-            final List<User> userMemberList = new ArrayList<>();
+            final List<Group> groupMemberList = new SortableList<>();
+            final List<User> userMemberList = new SortableList<>();
 
             group = new Group(groupName, groupMemberList, userMemberList);
 
             groups.add(group);
+            groupsByName.put(group.getName(), group);
         }
 
         setUnsavedChanges();
@@ -298,11 +350,11 @@ public final class Document {
             AppException {
         Validator.validateGroupName(groupName);
 
-        Group group = findGroup(groupName);
+        Group group = groupsByName.get(groupName);
 
         if (group == null) {
-            List<Group> groupMemberList = new ArrayList<>();
-            List<User> userMemberList = new ArrayList<>();
+            List<Group> groupMemberList = new SortableList<>();
+            List<User> userMemberList = new SortableList<>();
 
             group = new Group(groupName, groupMemberList, userMemberList);
 
@@ -311,6 +363,7 @@ public final class Document {
                 for (Group member : groupMembers) {
                     member.addGroup(group);
                     groupMemberList.add(member);
+                    groupClosureIndex.addMember(group, member);
                 }
             }
 
@@ -319,10 +372,12 @@ public final class Document {
                 for (User member : userMembers) {
                     member.addGroup(group);
                     userMemberList.add(member);
+                    groupClosureIndex.updateUser(member);
                 }
             }
 
             groups.add(group);
+            groupsByName.put(group.getName(), group);
 
             // Record action
             UndoableAction action = new UndoableAction(ActionConstants.ADD_GROUP_ACTION);
@@ -340,12 +395,13 @@ public final class Document {
             throws AppException {
         Validator.validateGroupName(groupName);
 
-        Group group = findGroup(groupName);
+        Group group = groupsByName.get(groupName);
 
         if (group == null) {
             group = new Group(groupName);
             addMembersByName(group, groupMemberNames, userMemberNames, aliasMemberNames);
             groups.add(group);
+            groupsByName.put(group.getName(), group);
         }
 
         setUnsavedChanges();
@@ -358,6 +414,66 @@ public final class Document {
         return group;
     }
 
+    /**
+     * Adds Users and Groups to an existing Group. Members that already belong to the Group are left alone.
+     *
+     * @param group   Group to be updated.
+     * @param members New User and Group members.
+     * @throws AppException
+     */
+    public void addGroupMembers(@Nonnull final Group group, @Nonnull final List<? extends GroupMemberObject> members)
+            throws AppException {
+        if (group == null) {
+            throw new ValidatorException("application.error.groupmissing");
+        }
+
+        final List<Group> groupMembers = new ArrayList<>();
+
+        for (final GroupMemberObject member : members) {
+            if (member instanceof Group) {
+                groupMembers.add((Group) member);
+            }
+            else if (!(member instanceof User)) {
+                throw new AppException("application.erroroccurred");
+            }
+        }
+
+        checkForCircularReference(group, groupMembers);
+
+        for (final GroupMemberObject member : members) {
+            if (member instanceof Group) {
+                final Group groupMember = (Group) member;
+
+                if (!isDirectMember(group, groupMember.getGroups())) {
+                    group.addGroupMember(groupMember);
+                    groupMember.addGroup(group);
+                    groupClosureIndex.addMember(group, groupMember);
+                }
+            }
+            else {
+                final User userMember = (User) member;
+
+                if (!isDirectMember(group, userMember.getGroups())) {
+                    group.addUserMember(userMember);
+                    userMember.addGroup(group);
+                    groupClosureIndex.updateUser(userMember);
+                }
+            }
+        }
+
+        setUnsavedChanges();
+    }
+
+    /**
+     * Adds Users and Groups to a Group by name, adding any that are not yet in the Document. Members that already
+     * belong to the Group are skipped, including Users listed once by name and once by alias.
+     *
+     * @param group            Group to be updated.
+     * @param groupMemberNames Names of Group members, may be null.
+     * @param userMemberNames  Names of User members, may be null.
+     * @param aliasMemberNames Aliases of User members, may be null.
+     * @throws AppException
+     */
     public void addMembersByName(final Group group, final List<String> groupMemberNames,
                                  final List<String> userMemberNames, final List<String> aliasMemberNames)
             throws AppException {
@@ -368,8 +484,14 @@ public final class Document {
         if (groupMemberNames != null) {
             for (String groupMemberName : groupMemberNames) {
                 Group member = addGroup(groupMemberName);
+
+                if (isDirectMember(group, member.getGroups())) {
+                    continue;
+                }
+
                 member.addGroup(group);
                 groupMemberList.add(member);
+                groupClosureIndex.addMember(group, member);
             }
         }
 
@@ -377,8 +499,14 @@ public final class Document {
         if (userMemberNames != null) {
             for (String userMemberName : userMemberNames) {
                 User member = addUser(userMemberName);
+
+                if (isDirectMember(group, member.getGroups())) {
+                    continue;
+                }
+
                 member.addGroup(group);
                 userMemberList.add(member);
+                groupClosureIndex.updateUser(member);
             }
         }
 
@@ -391,10 +519,17 @@ public final class Document {
                     throw new AppException("Alias is not defined");
                 }
 
+                if (isDirectMember(group, member.getGroups())) {
+                    continue;
+                }
+
                 member.addGroup(group);
                 userMemberList.add(member);
+                groupClosureIndex.updateUser(member);
             }
         }
+
+        setUnsavedChanges();
     }
 
     /**
@@ -409,14 +544,17 @@ public final class Document {
     public Path addPath(final Repository repository, final String relativePath) throws AppException {
         Validator.validatePath(relativePath);
 
-        Path path = findPath(repository, relativePath);
+        Path path = (repository == null) ? serverPathIndex.find(relativePath) : repository.findPath(relativePath);
 
         if (path == null) {
             path = new Path(repository, relativePath);
 
             paths.add(path);
 
-            if (repository != null) {
+            if (repository == null) {
+                serverPathIndex.add(path);
+            }
+            else {
                 repository.addPath(path);
             }
         }
@@ -437,12 +575,13 @@ public final class Document {
     public Repository addRepository(final String repositoryName) throws AppException {
         Validator.validateRepositoryName(repositoryName);
 
-        Repository repository = findRepository(repositoryName);
+        Repository repository = loadRepository(repositoryName);
 
         if (repository == null) {
             repository = new Repository(repositoryName);
 
             repositories.add(repository);
+            repositoriesByName.put(repository.getName(), repository);
         }
 
         setUnsavedChanges();
@@ -512,13 +651,37 @@ public final class Document {
         return accessRule;
     }
 
+    /**
+     * Adds a User to Groups. Groups the User already belongs to are left alone.
+     *
+     * @param user   User to be updated.
+     * @param groups Groups the User is to join.
+     * @throws AppException
+     */
+    public void addToGroups(@Nonnull final User user, @Nonnull final List<Group> groups) throws AppException {
+        if (user == null) {
+            throw new ValidatorException("application.error.usermissing");
+        }
+
+        for (final Group group : groups) {
+            if (!user.getGroups().contains(group)) {
+                user.addGroup(group);
+                group.addUserMember(user);
+            }
+        }
+
+        groupClosureIndex.updateUser(user);
+
+        setUnsavedChanges();
+    }
+
     /**
      * Adds an undo-able action to the stack if undo is enabled.
      *
      * @param action Action to add to the stack if undo is enabled
      */
     private void addUndoAction(UndoableAction action) {
-        if (isUndoEnabled()) {
+        if (isUndoEnabled() && !bulkLoading) {
             undoActions.add(action);
         }
     }
@@ -549,12 +712,13 @@ public final class Document {
             Validator.validateAlias(alias);
         }
 
-        User user = findUser(userName);
+        User user = usersByName.get(userName);
 
         if (user == null) {
             user = new User(userName, alias);
 
             users.add(user);
+            indexUser(user);
 
             setUnsavedChanges();
 
@@ -575,6 +739,16 @@ public final class Document {
         return user;
     }
 
+    /**
+     * Starts loading a whole authz file, or another large batch of data, into the document. Until endBulkLoad() is
+     * called, changes are not recorded for undo, since undoing part of a load makes no sense, and the unsaved changes
+     * flag is only set once, by endBulkLoad(). Validation is unchanged.
+     */
+    public void beginBulkLoad() {
+        bulkLoading = true;
+        bulkLoadChanges = false;
+    }
+
     /**
      * Changes the list of members of a Group. Current Group members are removed. All new Group and User members are
      * added.
@@ -605,11 +779,13 @@ public final class Document {
         for (final Group member : groupMembers) {
             member.addGroup(group);
             group.addGroupMember(member);
+            groupClosureIndex.addMember(group, member);
         }
 
         for (final User member : userMembers) {
             member.addGroup(group);
             group.addUserMember(member);
+            groupClosureIndex.updateUser(member);
         }
 
         setUnsavedChanges();
@@ -636,18 +812,26 @@ public final class Document {
         removeUserFromAssignedGroups(user);
 
         // Add to new groups
-        final List<Group> newGroups = new ArrayList<Group>(newGroupObjects.size());
+        final List<Group> newGroups = new SortableList<>(newGroupObjects);
 
         for (final Group group : newGroupObjects) {
             group.addUserMember(user);
-            newGroups.add(group);
         }
 
         user.setGroups(newGroups);
+        groupClosureIndex.updateUser(user);
 
         setUnsavedChanges();
     }
 
+    /**
+     * Checks that making groupMembers members of group would not create a cycle of nested groups. The error message
+     * lists the full cycle, starting and ending with group.
+     *
+     * @param group        Group that the members are being added to.
+     * @param groupMembers Proposed Group members.
+     * @throws AppException
+     */
     public void checkForCircularReference(Group group, Collection<Group> groupMembers) throws AppException {
         if (group == null) {
             throw new ValidatorException("application.error.groupmissing");
@@ -657,13 +841,20 @@ public final class Document {
             throw new ValidatorException("application.error.groupsmissing");
         }
 
-        final Group results = hasCircularReference(group, groupMembers);
+        final List<Group> chain = findCircularReference(group, groupMembers);
+
+        if (chain != null) {
+            final StringBuilder cycle = new StringBuilder(group.toString());
+
+            for (final Group member : chain) {
+                cycle.append(" -> ").append(member);
+            }
 
-        if (results != null) {
-            Object[] args = new Object[2];
+            Object[] args = new Object[3];
 
-            args[0] = results;
+            args[0] = chain.get(0);
             args[1] = group;
+            args[2] = cycle.toString();
 
             throw new AppException("application.error.circularreference", args);
         }
@@ -695,7 +886,8 @@ public final class Document {
 
         for (final Group groupObject : group.getGroups()) {
             groupObject.addGroupMember(clone);
-            clone.addGroup(group);
+            clone.addGroup(groupObject);
+            groupClosureIndex.addMember(groupObject, clone);
         }
 
         for (final AccessRule rule : group.getAccessRules()) {
@@ -749,6 +941,8 @@ public final class Document {
             clone.addGroup(group);
         }
 
+        groupClosureIndex.updateUser(clone);
+
         for (final AccessRule rule : user.getAccessRules()) {
             addAccessRuleForUser(rule.getPath(), clone, rule.getLevel());
         }
@@ -802,7 +996,7 @@ public final class Document {
         }
 
         accessRule.getPath().removeAccessRule(accessRule);
-        accessRules.remove(accessRule);
+        accessRules.removeRule(accessRule);
 
         setUnsavedChanges();
     }
@@ -818,7 +1012,9 @@ public final class Document {
 
         deleteGroupAccessRules(group);
         removeGroupMembers(group);
+        groupClosureIndex.removeGroup(group);
         groups.remove(group);
+        groupsByName.remove(group.getName(), group);
 
         setUnsavedChanges();
 
@@ -836,36 +1032,74 @@ public final class Document {
     }
 
     /**
-     * Deletes all AccessRules that apply to a specific Group.
+     * Deletes a set of AccessRules. Each rule is detached from its Path, Group and User, and all rules are removed from
+     * the Document in a single pass. The cost depends on the number of rules deleted rather than on the size of the
+     * Document.
      *
-     * @param group Group whose AccessRules are to be deleted.
+     * @param deleteSet Identity set of AccessRules to be deleted.
      */
-    private void deleteGroupAccessRules(final Group group) {
-        logger.debug("in deleteGroupAccessRules()");
+    private void deleteAccessRules(final Set<AccessRule> deleteSet) {
+        if (deleteSet.isEmpty()) {
+            return;
+        }
 
-        final List<AccessRule> deleteList = new ArrayList<>();
+        final Set<Path> affectedPaths = newIdentitySet();
+        final Set<Group> affectedGroups = newIdentitySet();
+        final Set<User> affectedUsers = newIdentitySet();
 
-        for (final AccessRule rule : accessRules) {
-            if (rule.getGroup() != null && rule.getGroup().equals(group)) {
-                logger.debug("remove group " + rule.getGroup().getName() + " from " + rule);
+        for (final AccessRule rule : deleteSet) {
+            if (rule.getPath() != null) {
+                affectedPaths.add(rule.getPath());
+            }
 
-                deleteList.add(rule);
-                group.removeAccessRule(rule);
-                rule.getPath().removeAccessRule(rule);
+            if (rule.getGroup() != null) {
+                affectedGroups.add(rule.getGroup());
             }
+
+            if (rule.getUser() != null) {
+                affectedUsers.add(rule.getUser());
+            }
+        }
+
+        for (final Path path : affectedPaths) {
+            path.getAccessRules().removeIf(deleteSet::contains);
         }
 
-        accessRules.removeAll(deleteList);
+        for (final Group group : affectedGroups) {
+            group.getAccessRules().removeIf(deleteSet::contains);
+        }
+
+        for (final User user : affectedUsers) {
+            user.getAccessRules().removeIf(deleteSet::contains);
+        }
+
+        accessRules.removeRules(deleteSet);
 
         setUnsavedChanges();
+    }
+
+    /**
+     * Deletes all AccessRules that apply to a specific Group.
+     *
+     * @param group Group whose AccessRules are to be deleted.
+     */
+    private void deleteGroupAccessRules(final Group group) {
+        logger.debug("in deleteGroupAccessRules()");
+
+        if (group != null) {
+            final Set<AccessRule> deleteSet = newIdentitySet();
+            deleteSet.addAll(group.getAccessRules());
+
+            deleteAccessRules(deleteSet);
+        }
 
         logger.debug("out deleteGroupAccessRules()");
     }
 
     /**
-     * Delete all groups in array.
+     * Deletes all Groups in the list. AccessRules for all of the Groups are removed together in a single pass.
      *
-     * @param groups Array of Groups to be deleted.
+     * @param groups List of Groups to be deleted.
      * @throws AppException
      */
     public void deleteGroups(final List<Group> groups) throws AppException {
@@ -873,10 +1107,28 @@ public final class Document {
             throw new ValidatorException("application.error.groupsmissing");
         }
 
+        final Set<Group> deleteGroups = newIdentitySet();
+        final Set<AccessRule> deleteRules = newIdentitySet();
+
         for (final Group group : groups) {
-            deleteGroup(group);
+            if (group == null) {
+                throw new ValidatorException("application.error.groupmissing");
+            }
+
+            deleteGroups.add(group);
+            deleteRules.addAll(group.getAccessRules());
+        }
+
+        deleteAccessRules(deleteRules);
+
+        for (final Group group : deleteGroups) {
+            removeGroupMembers(group);
+            groupClosureIndex.removeGroup(group);
+            groupsByName.remove(group.getName(), group);
         }
 
+        this.groups.removeIf(deleteGroups::contains);
+
         setUnsavedChanges();
     }
 
@@ -893,7 +1145,10 @@ public final class Document {
 
         deletePathAccessRules(path);
 
-        if (path.getRepository() != null) {
+        if (path.getRepository() == null) {
+            serverPathIndex.remove(path);
+        }
+        else {
             path.getRepository().removePath(path);
         }
 
@@ -908,25 +1163,10 @@ public final class Document {
      * @param path Path whose AccessRules are to be deleted.
      */
     private void deletePathAccessRules(final Path path) {
-        final List<AccessRule> deleteList = new ArrayList<AccessRule>();
-
-        for (final AccessRule rule : accessRules) {
-            if (rule.getPath() != null && rule.getPath().equals(path)) {
-                deleteList.add(rule);
-
-                if (rule.getGroup() != null) {
-                    rule.getGroup().removeAccessRule(rule);
-                }
-
-                if (rule.getUser() != null) {
-                    rule.getUser().removeAccessRule(rule);
-                }
-            }
-        }
-
-        accessRules.removeAll(deleteList);
+        final Set<AccessRule> deleteSet = newIdentitySet();
+        deleteSet.addAll(path.getAccessRules());
 
-        setUnsavedChanges();
+        deleteAccessRules(deleteSet);
     }
 
     /**
@@ -957,6 +1197,7 @@ public final class Document {
         deleteRepositoryAccessRules(repository);
         deleteRepositoryPaths(repository);
         repositories.remove(repository);
+        repositoriesByName.remove(repository.getName(), repository);
 
         setUnsavedChanges();
     }
@@ -977,25 +1218,17 @@ public final class Document {
      * @param repository Repository whose AccessRules are to be deleted.
      */
     private void deleteRepositoryAccessRules(final Repository repository) {
-        final List<AccessRule> deleteList = new ArrayList<>();
-
-        for (final AccessRule rule : accessRules) {
-            if (rule.getPath().getRepository() != null && rule.getPath().getRepository().equals(repository)) {
-                deleteList.add(rule);
+        if (repository == null) {
+            return;
+        }
 
-                if (rule.getGroup() != null) {
-                    rule.getGroup().removeAccessRule(rule);
-                }
+        final Set<AccessRule> deleteSet = newIdentitySet();
 
-                if (rule.getUser() != null) {
-                    rule.getUser().removeAccessRule(rule);
-                }
-            }
+        for (final Path path : repository.getPaths()) {
+            deleteSet.addAll(path.getAccessRules());
         }
 
-        accessRules.removeAll(deleteList);
-
-        setUnsavedChanges();
+        deleteAccessRules(deleteSet);
     }
 
     /**
@@ -1009,14 +1242,14 @@ public final class Document {
             throw new ValidatorException("application.error.repositorymissing");
         }
 
-        final List<Path> deleteList = new ArrayList<>();
+        final Set<Path> deleteSet = newIdentitySet();
 
         for (final Path path : repository.getPaths()) {
-            deleteList.add(path);
+            deleteSet.add(path);
             deletePathAccessRules(path);
         }
 
-        paths.removeAll(deleteList);
+        paths.removeIf(deleteSet::contains);
 
         setUnsavedChanges();
     }
@@ -1040,7 +1273,9 @@ public final class Document {
     public void deleteUser(final User user) throws AppException {
         deleteUserAccessRules(user);
         removeUserFromAssignedGroups(user);
+        groupClosureIndex.removeUser(user);
         users.remove(user);
+        unindexUser(user);
 
         setUnsavedChanges();
     }
@@ -1051,21 +1286,12 @@ public final class Document {
      * @param user User whose AccessRules are to be deleted.
      */
     private void deleteUserAccessRules(final User user) {
-        final List<AccessRule> deleteList = new ArrayList<>();
+        if (user != null) {
+            final Set<AccessRule> deleteSet = newIdentitySet();
+            deleteSet.addAll(user.getAccessRules());
 
-        for (final AccessRule rule : accessRules) {
-            if (rule.getUser() != null && rule.getUser().equals(user)) {
-                // Remove access rule from path
-                rule.getPath().removeAccessRule(rule);
-
-                // Add rule to list for deletion1
-                deleteList.add(rule);
-            }
+            deleteAccessRules(deleteSet);
         }
-
-        accessRules.removeAll(deleteList);
-
-        setUnsavedChanges();
     }
 
     /**
@@ -1079,7 +1305,7 @@ public final class Document {
     }
 
     /**
-     * Deletes an array of Users.
+     * Deletes all Users in the list. AccessRules for all of the Users are removed together in a single pass.
      *
      * @param users Users to be deleted.
      * @throws AppException
@@ -1089,10 +1315,28 @@ public final class Document {
             throw new ValidatorException("application.error.usersmissing");
         }
 
+        final Set<User> deleteUsers = newIdentitySet();
+        final Set<AccessRule> deleteRules = newIdentitySet();
+
         for (final User user : users) {
-            deleteUser(user);
+            if (user == null) {
+                throw new ValidatorException("application.error.usermissing");
+            }
+
+            deleteUsers.add(user);
+            deleteRules.addAll(user.getAccessRules());
+        }
+
+        deleteAccessRules(deleteRules);
+
+        for (final User user : deleteUsers) {
+            removeUserFromAssignedGroups(user);
+            groupClosureIndex.removeUser(user);
+            unindexUser(user);
         }
 
+        this.users.removeIf(deleteUsers::contains);
+
         setUnsavedChanges();
     }
 
@@ -1111,36 +1355,74 @@ public final class Document {
     }
 
     /**
-     * Locates an existing Group by name.
+     * Finishes a bulk load started by beginBulkLoad(). If the load changed the document it now has unsaved changes.
+     */
+    public void endBulkLoad() {
+        bulkLoading = false;
+
+        if (bulkLoadChanges) {
+            setUnsavedChanges();
+        }
+    }
+
+    /**
+     * Searches the Groups nested within groupMembers for group. Each Group is visited at most once, so the cost is
+     * linear in the number of Groups and memberships however the Groups are nested.
      *
-     * @param groupName Name of Group to find.
-     * @return Found group.
-     * @throws AppException
+     * @param group        Group to search for.
+     * @param groupMembers Groups to start searching from.
+     * @return Chain of Groups from one of groupMembers down to group, each a member of the one before, or null if group
+     * is not nested within any of groupMembers.
      */
-    public Group findGroup(final String groupName) throws AppException {
-        Validator.validateGroupName(groupName);
+    private List<Group> findCircularReference(final Group group, final Collection<Group> groupMembers) {
+        // Visited Groups, mapped to the Group in which they were found
+        final Map<Group, Group> foundIn = new IdentityHashMap<>();
+        final Deque<Group> pending = new ArrayDeque<>();
 
-        Group group = null;
-        boolean found = false;
+        for (final Group member : groupMembers) {
+            if (!foundIn.containsKey(member)) {
+                foundIn.put(member, null);
+                pending.push(member);
+            }
+        }
 
-        if (groups != null) {
-            final int size = groups.size();
+        while (!pending.isEmpty()) {
+            final Group current = pending.pop();
 
-            for (int i = 0; i < size; i++) {
-                group = groups.get(i);
+            if (current == group) {
+                final LinkedList<Group> chain = new LinkedList<>();
 
-                if (group.getName().equals(groupName)) {
-                    found = true;
-                    break;
+                for (Group link = current; link != null; link = foundIn.get(link)) {
+                    chain.addFirst(link);
                 }
+
+                return chain;
             }
 
-            if (!found) {
-                group = null;
+            if (current.getGroupMembers() != null) {
+                for (final Group member : current.getGroupMembers()) {
+                    if (!foundIn.containsKey(member)) {
+                        foundIn.put(member, current);
+                        pending.push(member);
+                    }
+                }
             }
         }
 
-        return group;
+        return null;
+    }
+
+    /**
+     * Locates an existing Group by name.
+     *
+     * @param groupName Name of Group to find.
+     * @return Found group.
+     * @throws AppException
+     */
+    public Group findGroup(final String groupName) throws AppException {
+        Validator.validateGroupName(groupName);
+
+        return groupsByName.get(groupName);
     }
 
     /**
@@ -1186,9 +1468,13 @@ public final class Document {
             return null;
         }
 
+        // Search whichever side has fewer rules
+        final List<AccessRule> candidates = (path.getAccessRules().size() < group.getAccessRules().size()) ?
+                path.getAccessRules() : group.getAccessRules();
+
         AccessRule foundRule = null;
-        for (final AccessRule rule : group.getAccessRules()) {
-            if (rule.getPath() == path) {
+        for (final AccessRule rule : candidates) {
+            if (rule.getPath() == path && rule.getGroup() == group) {
                 foundRule = rule;
                 break;
             }
@@ -1208,27 +1494,7 @@ public final class Document {
     public Path findPath(final Repository repository, final String pathString) throws AppException {
         Validator.validatePath(pathString);
 
-        Path path = null;
-        boolean found = false;
-
-        if (paths != null) {
-            final int size = paths.size();
-
-            for (int i = 0; i < size; i++) {
-                path = paths.get(i);
-
-                if (path.getRepository() == repository && path.getPath().equals(pathString)) {
-                    found = true;
-                    break;
-                }
-            }
-
-            if (!found) {
-                path = null;
-            }
-        }
-
-        return path;
+        return (repository == null) ? serverPathIndex.find(pathString) : repository.findPath(pathString);
     }
 
     /**
@@ -1245,6 +1511,26 @@ public final class Document {
         return findPath(repository, pathString);
     }
 
+    /**
+     * Locates a Path by Repository and path along with all Paths below it. For example "/trunk" matches "/trunk",
+     * "/trunk/src" and "/trunk/src/main", but not "/trunk2".
+     *
+     * @param repository Repository referenced by the Paths, null for server level Paths.
+     * @param pathString Path at the top of the subtree.
+     * @return Found Paths, sorted.
+     * @throws AppException
+     */
+    public List<Path> findPathsUnder(final Repository repository, final String pathString) throws AppException {
+        Validator.validatePath(pathString);
+
+        final List<Path> found = (repository == null) ? serverPathIndex.findAllUnder(pathString) :
+                repository.findPathsUnder(pathString);
+
+        found.sort(new PathComparator());
+
+        return found;
+    }
+
     /**
      * Locates a repository by name.
      *
@@ -1255,27 +1541,7 @@ public final class Document {
     public Repository findRepository(final String repositoryName) throws AppException {
         Validator.validateRepositoryName(repositoryName);
 
-        Repository repository = null;
-        boolean found = false;
-
-        if (repositories != null) {
-            final int size = repositories.size();
-
-            for (int i = 0; i < size; i++) {
-                repository = repositories.get(i);
-
-                if (repository.getName().equals(repositoryName)) {
-                    found = true;
-                    break;
-                }
-            }
-
-            if (!found) {
-                repository = null;
-            }
-        }
-
-        return repository;
+        return loadRepository(repositoryName);
     }
 
     /**
@@ -1286,27 +1552,7 @@ public final class Document {
      * @throws AppException
      */
     public Path findServerPath(final String pathString) throws AppException {
-        Path path = null;
-        boolean found = false;
-
-        if (paths != null) {
-            final int size = paths.size();
-
-            for (int i = 0; i < size; i++) {
-                path = paths.get(i);
-
-                if (path.getRepository() == null && path.getPath().equals(pathString)) {
-                    found = true;
-                    break;
-                }
-            }
-
-            if (!found) {
-                path = null;
-            }
-        }
-
-        return path;
+        return serverPathIndex.find(pathString);
     }
 
     /**
@@ -1319,27 +1565,7 @@ public final class Document {
     public User findUser(final String userName) throws AppException {
         Validator.validateUserName(userName);
 
-        User user = null;
-        boolean found = false;
-
-        if (users != null) {
-            final int size = users.size();
-
-            for (int i = 0; i < size; i++) {
-                user = users.get(i);
-
-                if (user.getName().equals(userName)) {
-                    found = true;
-                    break;
-                }
-            }
-
-            if (!found) {
-                user = null;
-            }
-        }
-
-        return user;
+        return usersByName.get(userName);
     }
 
     /**
@@ -1362,9 +1588,13 @@ public final class Document {
             return null;
         }
 
+        // Search whichever side has fewer rules
+        final List<AccessRule> candidates = (path.getAccessRules().size() < user.getAccessRules().size()) ?
+                path.getAccessRules() : user.getAccessRules();
+
         AccessRule foundRule = null;
-        for (final AccessRule rule : user.getAccessRules()) {
-            if (rule.getPath() == path) {
+        for (final AccessRule rule : candidates) {
+            if (rule.getPath() == path && rule.getUser() == user) {
                 foundRule = rule;
                 break;
             }
@@ -1387,27 +1617,7 @@ public final class Document {
 
         Validator.validateAlias(alias);
 
-        User user = null;
-        boolean found = false;
-
-        if (users != null) {
-            final int size = users.size();
-
-            for (int i = 0; i < size; i++) {
-                user = users.get(i);
-
-                if (user.getAlias() != null && user.getAlias().equals(alias)) {
-                    found = true;
-                    break;
-                }
-            }
-
-            if (!found) {
-                user = null;
-            }
-        }
-
-        return user;
+        return usersByAlias.get(alias);
     }
 
     /**
@@ -1455,6 +1665,17 @@ public final class Document {
         }
     }
 
+    /**
+     * Gets the index of transitive Group membership. It is kept up to date as long as membership is only changed
+     * through the Document.
+     *
+     * @return GroupClosureIndex of this Document
+     */
+    @Nonnull
+    public GroupClosureIndex getGroupClosureIndex() {
+        return groupClosureIndex;
+    }
+
     /**
      * Gets names of all Groups that are a member of a Group.
      *
@@ -1638,6 +1859,16 @@ public final class Document {
         }
     }
 
+    /**
+     * Gets a counter that increases every time the Document is modified. Objects that cache information derived from
+     * the Document compare it to the value they saw when their cache was built.
+     *
+     * @return Modification count
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
     /**
      * Gets an array of AccessRules data for the AccessRules defined for the Path. The two dimensional array returned
      * contains the User or Group name and level of access for each AccessRule defined for the Path.
@@ -1676,6 +1907,19 @@ public final class Document {
         return paths;
     }
 
+    /**
+     * Gets all server level Paths, those not tied to a Repository.
+     *
+     * @return Server level Paths, sorted.
+     */
+    public List<Path> getServerPaths() {
+        final List<Path> serverPaths = serverPathIndex.getAll();
+
+        serverPaths.sort(new PathComparator());
+
+        return serverPaths;
+    }
+
     /**
      * Gets list of all Repositories.
      *
@@ -1695,13 +1939,29 @@ public final class Document {
      * @throws AppException
      */
     public Object[][] getRepositoryAccessRules(final Repository repository) throws AppException {
+        return getRepositoryAccessRules(repository, null);
+    }
+
+    /**
+     * Gets an array of AccessRules data in which the Repository is referenced, limited to the AccessRules of a path
+     * and the paths below it. The array has the same layout as the one returned by getRepositoryAccessRules.
+     *
+     * @param repository Repository.
+     * @param pathString Path at the top of the subtree, null for all paths of the Repository.
+     * @return Object array of AccessRule information.
+     * @throws AppException
+     */
+    public Object[][] getRepositoryAccessRules(final Repository repository, final String pathString)
+            throws AppException {
         if (repository == null || repository.getPaths() == null) {
             return null;
         }
         else {
             final List<AccessRule> accessRules = new ArrayList<>();
+            final List<Path> paths = (pathString == null) ? repository.getPaths() :
+                    findPathsUnder(repository, pathString);
 
-            for (Path path : repository.getPaths()) {
+            for (Path path : paths) {
                 if (path.getAccessRules() != null) {
                     for (AccessRule rule : path.getAccessRules()) {
                         accessRules.add(rule);
@@ -2029,15 +2289,15 @@ public final class Document {
             return null;
         }
         else {
-            final List<User> filteredUsers = users;
+            Collections.sort(users);
+
+            final List<User> filteredUsers = new ArrayList<>(users);
             final User allUsers = findUser(SubversionConstants.SVN_ALL_USERS_NAME);
 
             if (allUsers != null) {
                 filteredUsers.remove(allUsers);
             }
 
-            Collections.sort(filteredUsers);
-
             return filteredUsers.toArray(new User[0]);
         }
     }
@@ -2046,22 +2306,6 @@ public final class Document {
         return users;
     }
 
-    private Group hasCircularReference(final Group group, final Collection<Group> groupMembers) {
-        for (final Group member : groupMembers) {
-            if (group == member) {
-                return group;
-            }
-
-            final Group results = hasCircularReference(group, member.getGroupMembers());
-
-            if (results != null) {
-                return member;
-            }
-        }
-
-        return null;
-    }
-
     /**
      * Determines if there are any undo actions in the stack.
      *
@@ -2080,20 +2324,151 @@ public final class Document {
         return unsavedChanges;
     }
 
+    /**
+     * Adds a User to the name and alias indexes.
+     *
+     * @param user User to be indexed
+     */
+    private void indexUser(final User user) {
+        usersByName.put(user.getName(), user);
+
+        if (user.getAlias() != null) {
+            usersByAlias.put(user.getAlias(), user);
+        }
+    }
+
     /**
      * Resets all data stored within the document.
      */
     public void initialize() {
         file = null;
         unsavedChanges = false;
-
-        users = new ArrayList<>();
-        groups = new ArrayList<>();
-        repositories = new ArrayList<>();
-        accessRules = new ArrayList<>();
-        paths = new ArrayList<>();
+        modificationCount++;
+        groupClosureIndex.clear();
+
+        users = new SortableList<>();
+        usersByName = new HashMap<>();
+        usersByAlias = new HashMap<>();
+        groups = new SortableList<>();
+        groupsByName = new HashMap<>();
+        repositories = new SortableList<>();
+        repositoriesByName = new HashMap<>();
+        serverPathIndex = new PathTrie();
+        accessRules = new AccessRuleList();
+        paths = new SortableList<>();
         undoActions = new Stack<>();
         isUndoEnabled = true;
+        bulkLoading = false;
+        bulkLoadChanges = false;
+        repositoryLoader = null;
+    }
+
+    /**
+     * Marks every list whose order depends on an AccessRule as unsorted. Call this after changing the Path, User or
+     * Group of an existing rule.
+     *
+     * @param accessRule AccessRule that has changed
+     */
+    public void invalidateSortOrder(final AccessRule accessRule) {
+        if (accessRule.getPath() != null) {
+            SortableList.markUnsorted(accessRule.getPath().getAccessRules());
+        }
+
+        if (accessRule.getGroup() != null) {
+            SortableList.markUnsorted(accessRule.getGroup().getAccessRules());
+        }
+
+        if (accessRule.getUser() != null) {
+            SortableList.markUnsorted(accessRule.getUser().getAccessRules());
+        }
+
+        accessRules.markUnsorted();
+    }
+
+    /**
+     * Marks every list whose order depends on the name of a Group as unsorted.
+     *
+     * @param group Group that has been renamed
+     */
+    private void invalidateSortOrder(final Group group) {
+        SortableList.markUnsorted(groups);
+
+        for (final Group parent : group.getGroups()) {
+            SortableList.markUnsorted(parent.getGroupMembers());
+        }
+
+        for (final Group member : group.getGroupMembers()) {
+            SortableList.markUnsorted(member.getGroups());
+        }
+
+        for (final User member : group.getUserMembers()) {
+            SortableList.markUnsorted(member.getGroups());
+        }
+
+        for (final AccessRule accessRule : group.getAccessRules()) {
+            invalidateSortOrder(accessRule);
+        }
+    }
+
+    /**
+     * Marks every list whose order depends on the location of a Path as unsorted.
+     *
+     * @param path Path that has been moved
+     */
+    private void invalidateSortOrder(final Path path) {
+        SortableList.markUnsorted(paths);
+
+        for (final AccessRule accessRule : path.getAccessRules()) {
+            invalidateSortOrder(accessRule);
+        }
+    }
+
+    /**
+     * Marks every list whose order depends on the name of a Repository as unsorted.
+     *
+     * @param repository Repository that has been renamed
+     */
+    private void invalidateSortOrder(final Repository repository) {
+        SortableList.markUnsorted(repositories);
+
+        for (final Path path : repository.getPaths()) {
+            invalidateSortOrder(path);
+        }
+    }
+
+    /**
+     * Marks every list whose order depends on the name or alias of a User as unsorted.
+     *
+     * @param user User that has been renamed
+     */
+    private void invalidateSortOrder(final User user) {
+        SortableList.markUnsorted(users);
+
+        for (final Group group : user.getGroups()) {
+            SortableList.markUnsorted(group.getUserMembers());
+        }
+
+        for (final AccessRule accessRule : user.getAccessRules()) {
+            invalidateSortOrder(accessRule);
+        }
+    }
+
+    /**
+     * Determines if a Group directly contains a member, given the Groups the member belongs to. A member belongs to
+     * far fewer Groups than a large Group has members, so this stays cheap however many members the Group has.
+     *
+     * @param group        Group to look for.
+     * @param memberGroups Groups the User or Group member belongs to.
+     * @return true if the member is already in the Group.
+     */
+    private static boolean isDirectMember(final Group group, final List<Group> memberGroups) {
+        for (final Group memberGroup : memberGroups) {
+            if (memberGroup == group) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     /**
@@ -2107,6 +2482,17 @@ public final class Document {
                 && paths.size() == 0;
     }
 
+    /**
+     * Determines if only part of the file has been loaded. Repositories are then added as they are looked up by name,
+     * and the lists of the whole Document, such as getRepositories() and getAccessRules(), only hold the Repositories
+     * loaded so far.
+     *
+     * @return true if Repositories are still loaded on first use
+     */
+    public boolean isPartiallyLoaded() {
+        return repositoryLoader != null;
+    }
+
     /**
      * Determines if undo recording is enabled.
      *
@@ -2116,6 +2502,91 @@ public final class Document {
         return isUndoEnabled;
     }
 
+    /**
+     * Loads every Repository that has not been loaded yet, if the Document was only partly parsed, so that the lists
+     * of the whole Document are complete. Like loading one Repository, this is not an unsaved change.
+     *
+     * @throws AppException if a Repository cannot be loaded
+     */
+    public void loadAllRepositories() throws AppException {
+        if (repositoryLoader == null) {
+            return;
+        }
+
+        final boolean hadUnsavedChanges = unsavedChanges;
+
+        repositoryLoader.loadAllRepositories(this);
+        unsavedChanges = hadUnsavedChanges;
+    }
+
+    /**
+     * Gets a Repository by name, loading it first if the Document was only partly parsed. Loading a Repository is not
+     * an unsaved change, but it does count as a modification, so that caches built from the Document are refreshed.
+     */
+    private Repository loadRepository(final String repositoryName) throws AppException {
+        final Repository repository = repositoriesByName.get(repositoryName);
+
+        if (repository != null || repositoryLoader == null) {
+            return repository;
+        }
+
+        final boolean hadUnsavedChanges = unsavedChanges;
+
+        repositoryLoader.loadRepository(this, repositoryName);
+        unsavedChanges = hadUnsavedChanges;
+
+        return repositoriesByName.get(repositoryName);
+    }
+
+    /**
+     * Moves an existing Path to a different Repository, relative path or both. All AccessRules defined for the Path
+     * move with it.
+     *
+     * @param path       Path to be moved.
+     * @param repository New Repository, null for a server level Path.
+     * @param pathString New relative path.
+     * @return The moved Path.
+     * @throws AppException
+     */
+    public Path movePath(final Path path, final Repository repository, final String pathString) throws AppException {
+        Validator.validatePath(pathString);
+
+        if (path == null) {
+            throw new ValidatorException("application.error.pathmissing");
+        }
+
+        if (path.getRepository() == null) {
+            serverPathIndex.remove(path);
+        }
+        else {
+            path.getRepository().removePath(path);
+        }
+
+        path.setRepository(repository);
+        path.setPath(pathString);
+        invalidateSortOrder(path);
+
+        if (repository == null) {
+            serverPathIndex.add(path);
+        }
+        else {
+            repository.addPath(path);
+        }
+
+        setUnsavedChanges();
+
+        return path;
+    }
+
+    /**
+     * Creates an empty Set that compares its elements by identity.
+     *
+     * @return New identity based Set
+     */
+    private static <T> Set<T> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
     public void removeFromGroups(final User user, final List<Group> groups) throws AppException {
         for (final Object groupObject : groups) {
             if (groupObject instanceof Group) {
@@ -2128,6 +2599,10 @@ public final class Document {
                 throw new AppException("application.erroroccurred");
             }
         }
+
+        groupClosureIndex.updateUser(user);
+
+        setUnsavedChanges();
     }
 
     /**
@@ -2144,6 +2619,7 @@ public final class Document {
         // Remove groups
         for (final Group member : group.getGroupMembers()) {
             member.removeGroup(group);
+            groupClosureIndex.removeMember(member);
         }
 
         group.getGroupMembers().clear();
@@ -2151,6 +2627,7 @@ public final class Document {
         // Removed users
         for (final User member : group.getUserMembers()) {
             member.removeGroup(group);
+            groupClosureIndex.updateUser(member);
         }
 
         group.getUserMembers().clear();
@@ -2167,17 +2644,21 @@ public final class Document {
 
                 group.removeGroupMember(groupMember);
                 groupMember.removeGroup(group);
+                groupClosureIndex.removeMember(groupMember);
             }
             else if (member instanceof User) {
                 final User userMember = (User) member;
 
                 group.removeUserMember(userMember);
                 userMember.removeGroup(group);
+                groupClosureIndex.updateUser(userMember);
             }
             else {
                 throw new AppException("application.erroroccurred");
             }
         }
+
+        setUnsavedChanges();
     }
 
     /**
@@ -2195,7 +2676,8 @@ public final class Document {
             group.getUserMembers().remove(user);
         }
 
-        user.setGroups(new ArrayList<>());
+        user.setGroups(new SortableList<>());
+        groupClosureIndex.updateUser(user);
 
         setUnsavedChanges();
     }
@@ -2206,7 +2688,7 @@ public final class Document {
      * @param group        Group to be renamed
      * @param newGroupName New group name
      * @return Renamed group
-     * @throws AppException
+     * @throws AppException if the name is invalid or belongs to another group
      */
     public Group renameGroup(final Group group, final String newGroupName) throws AppException {
         Validator.validateUserName(newGroupName);
@@ -2215,18 +2697,61 @@ public final class Document {
             throw new ValidatorException("application.error.groupmissing");
         }
 
+        final Group existing = groupsByName.get(newGroupName);
+
+        if (existing != null && existing != group) {
+            throw new AppException("renamegroup.error.groupalreadyexists", newGroupName);
+        }
+
+        groupsByName.remove(group.getName(), group);
         group.setName(newGroupName);
+        groupsByName.put(group.getName(), group);
+        invalidateSortOrder(group);
+
+        setUnsavedChanges();
 
         return group;
     }
 
+    /**
+     * Renames the provided repository to the new repositoryName.
+     *
+     * @param repository        Repository to be renamed
+     * @param newRepositoryName New repository name
+     * @return Renamed repository
+     * @throws AppException if the name is invalid or belongs to another repository
+     */
+    public Repository renameRepository(final Repository repository, final String newRepositoryName)
+            throws AppException {
+        Validator.validateRepositoryName(newRepositoryName);
+
+        if (repository == null) {
+            throw new ValidatorException("application.error.repositorymissing");
+        }
+
+        final Repository existing = loadRepository(newRepositoryName);
+
+        if (existing != null && existing != repository) {
+            throw new AppException("renamerepository.error.repositoryalreadyexists", newRepositoryName);
+        }
+
+        repositoriesByName.remove(repository.getName(), repository);
+        repository.setName(newRepositoryName);
+        repositoriesByName.put(repository.getName(), repository);
+        invalidateSortOrder(repository);
+
+        setUnsavedChanges();
+
+        return repository;
+    }
+
     /**
      * Renames the provided user to the new userName.
      *
      * @param user        User to be renamed
      * @param newUserName New user name
      * @return Renamed user
-     * @throws AppException
+     * @throws AppException if the name is invalid or belongs to another user
      */
     public User renameUser(final User user, final String newUserName, final String alias) throws AppException {
         Validator.validateUserName(newUserName);
@@ -2235,8 +2760,19 @@ public final class Document {
             throw new ValidatorException("application.error.usermissing");
         }
 
+        final User existing = usersByName.get(newUserName);
+
+        if (existing != null && existing != user) {
+            throw new AppException("renameuser.error.useralreadyexists", newUserName);
+        }
+
+        unindexUser(user);
         user.setAlias(alias);
         user.setName(newUserName);
+        indexUser(user);
+        invalidateSortOrder(user);
+
+        setUnsavedChanges();
 
         return user;
     }
@@ -2257,11 +2793,26 @@ public final class Document {
         this.file = file;
     }
 
+    /**
+     * Sets the loader that adds Repositories to a partly parsed Document as they are looked up.
+     *
+     * @param repositoryLoader Loader of Repositories, null once every Repository is loaded
+     */
+    public void setRepositoryLoader(final RepositoryLoader repositoryLoader) {
+        this.repositoryLoader = repositoryLoader;
+    }
+
     /**
      * Sets the unsaved changes flag to true. Indicates that there are changes not persisted to a file.
      */
     public void setUnsavedChanges() {
+        if (bulkLoading) {
+            bulkLoadChanges = true;
+            return;
+        }
+
         unsavedChanges = true;
+        modificationCount++;
     }
 
     /**
@@ -2327,6 +2878,19 @@ public final class Document {
         }
     }
 
+    /**
+     * Removes a User from the name and alias indexes.
+     *
+     * @param user User to be removed from the indexes
+     */
+    private void unindexUser(final User user) {
+        usersByName.remove(user.getName(), user);
+
+        if (user.getAlias() != null) {
+            usersByAlias.remove(user.getAlias(), user);
+        }
+    }
+
     public String validateDocument() {
         final StringBuilder buffer = new StringBuilder();
         final ArrayList<String> unsavedObjects = new ArrayList<>();
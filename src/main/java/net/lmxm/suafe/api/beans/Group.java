@@ -19,7 +19,6 @@
 
 package net.lmxm.suafe.api.beans;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -41,22 +40,22 @@ public final class Group extends GroupMemberObject implements Comparable<Group>
     /**
      * List of Groups in which this Group is a member.
      */
-    protected List<Group> groups = new ArrayList<>();
+    protected List<Group> groups = new SortableList<>();
 
     /**
      * List of Users that are a member of the Group.
      */
-    private List<User> userMembers = new ArrayList<>();
+    private List<User> userMembers = new SortableList<>();
 
     /**
      * List of Groups that are a member of the Group.
      */
-    private List<Group> groupMembers = new ArrayList<>();
+    private List<Group> groupMembers = new SortableList<>();
 
     /**
      * List of AccessRules that reference the Group.
      */
-    private List<AccessRule> accessRules = new ArrayList<>();
+    private List<AccessRule> accessRules = new SortableList<>();
 
     /**
      * Default Constructor.
@@ -212,7 +211,7 @@ public final class Group extends GroupMemberObject implements Comparable<Group>
      * @param accessRule The AccessRule to remove.
      */
     public void removeAccessRule(final AccessRule accessRule) {
-        accessRules.remove(accessRule);
+        accessRules.removeIf(rule -> rule == accessRule);
     }
 
     /**
@@ -0,0 +1,529 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.beans;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the complete, transitive Group membership of every User and Group in a Document. Each Group and User is
+ * given a small integer id and the Groups a principal belongs to, directly or through nested Groups, are stored as a
+ * bit set of Group ids. Asking whether a User is a member of a Group is a single bit test.
+ * <p>
+ * The reverse is stored as well: for each Group, the bit sets of all Groups and Users nested inside it. Adding a
+ * member only has to OR the sets above the new link into the sets below it. Removing a member recomputes the sets of
+ * the principals below the removed link from their direct Groups.
+ * <p>
+ * The index is built the first time it is queried, so that loading a file does not pay for it, and is kept up to
+ * date by the Document from then on.
+ *
+ * @author Shaun Johnson
+ */
+public final class GroupClosureIndex {
+    /**
+     * Principals of one kind, Groups or Users, and the ids given to them.
+     */
+    private static final class Ids<T> {
+        private final Map<T, Integer> ids = new IdentityHashMap<>();
+
+        private final List<T> objects = new ArrayList<>();
+
+        private final Deque<Integer> freeIds = new ArrayDeque<>();
+
+        /**
+         * Groups each principal belongs to, by principal id.
+         */
+        private final List<BitSet> groups = new ArrayList<>();
+
+        private void clear() {
+            ids.clear();
+            objects.clear();
+            freeIds.clear();
+            groups.clear();
+        }
+
+        private Integer find(final T object) {
+            return ids.get(object);
+        }
+
+        private int idOf(final T object) {
+            Integer id = ids.get(object);
+
+            if (id == null) {
+                if (freeIds.isEmpty()) {
+                    id = objects.size();
+                    objects.add(object);
+                    groups.add(new BitSet());
+                }
+                else {
+                    id = freeIds.pop();
+                    objects.set(id, object);
+                }
+
+                ids.put(object, id);
+            }
+
+            return id;
+        }
+
+        private void release(final T object) {
+            final Integer id = ids.remove(object);
+
+            if (id != null) {
+                objects.set(id, null);
+                groups.get(id).clear();
+                freeIds.push(id);
+            }
+        }
+    }
+
+    /**
+     * Document whose membership is indexed.
+     */
+    private final Document document;
+
+    /**
+     * Indicates whether the index has been built and must be maintained.
+     */
+    private boolean built = false;
+
+    /**
+     * Ids of Groups and the Groups each Group belongs to.
+     */
+    private final Ids<Group> groupIds = new Ids<>();
+
+    /**
+     * Ids of Users and the Groups each User belongs to.
+     */
+    private final Ids<User> userIds = new Ids<>();
+
+    /**
+     * Groups nested inside each Group, by Group id.
+     */
+    private final List<BitSet> memberGroups = new ArrayList<>();
+
+    /**
+     * Users nested inside each Group, by Group id.
+     */
+    private final List<BitSet> memberUsers = new ArrayList<>();
+
+    /**
+     * Creates an index for the Document. Nothing is computed until the index is first queried.
+     *
+     * @param document Document whose membership is to be indexed
+     */
+    GroupClosureIndex(@Nonnull final Document document) {
+        this.document = document;
+    }
+
+    /**
+     * Gets all Groups nested inside a Group, at any depth.
+     *
+     * @param group Group whose members are wanted
+     * @return List of Groups, in no particular order
+     */
+    @Nonnull
+    public List<Group> getGroupMembers(@Nonnull final Group group) {
+        build();
+
+        return toList(groupIds.find(group), memberGroups, groupIds);
+    }
+
+    /**
+     * Gets all Groups a Group belongs to, directly or through nested Groups.
+     *
+     * @param group Group whose Groups are wanted
+     * @return List of Groups, in no particular order
+     */
+    @Nonnull
+    public List<Group> getGroups(@Nonnull final Group group) {
+        build();
+
+        return toList(groupIds.find(group), groupIds.groups, groupIds);
+    }
+
+    /**
+     * Gets all Groups a User belongs to, directly or through nested Groups.
+     *
+     * @param user User whose Groups are wanted
+     * @return List of Groups, in no particular order
+     */
+    @Nonnull
+    public List<Group> getGroups(@Nonnull final User user) {
+        build();
+
+        return toList(userIds.find(user), userIds.groups, groupIds);
+    }
+
+    /**
+     * Gets all Users that belong to a Group, directly or through nested Groups.
+     *
+     * @param group Group whose members are wanted
+     * @return List of Users, in no particular order
+     */
+    @Nonnull
+    public List<User> getUserMembers(@Nonnull final Group group) {
+        build();
+
+        return toList(groupIds.find(group), memberUsers, userIds);
+    }
+
+    /**
+     * Checks whether a Group is nested inside another Group at any depth.
+     *
+     * @param member Group that may be nested
+     * @param group  Group that may contain it
+     * @return true if member is inside group
+     */
+    public boolean isMember(@Nonnull final Group member, @Nonnull final Group group) {
+        build();
+
+        final Integer memberId = groupIds.find(member);
+        final Integer id = groupIds.find(group);
+
+        return memberId != null && id != null && groupIds.groups.get(memberId).get(id);
+    }
+
+    /**
+     * Checks whether a User belongs to a Group, directly or through nested Groups.
+     *
+     * @param user  User that may be a member
+     * @param group Group that may contain the User
+     * @return true if user is a member of group
+     */
+    public boolean isMember(@Nonnull final User user, @Nonnull final Group group) {
+        build();
+
+        final Integer userId = userIds.find(user);
+        final Integer id = groupIds.find(group);
+
+        return userId != null && id != null && userIds.groups.get(userId).get(id);
+    }
+
+    /**
+     * Records that a Group has been made a member of another Group.
+     *
+     * @param group  Group the member was added to
+     * @param member New Group member
+     */
+    void addMember(final Group group, final Group member) {
+        if (!built) {
+            return;
+        }
+
+        final int id = groupId(group);
+        final int memberId = groupId(member);
+
+        final BitSet above = (BitSet) groupIds.groups.get(id).clone();
+        above.set(id);
+
+        final BitSet belowGroups = (BitSet) memberGroups.get(memberId).clone();
+        belowGroups.set(memberId);
+
+        final BitSet belowUsers = memberUsers.get(memberId);
+
+        for (int i = belowGroups.nextSetBit(0); i >= 0; i = belowGroups.nextSetBit(i + 1)) {
+            groupIds.groups.get(i).or(above);
+        }
+
+        for (int i = belowUsers.nextSetBit(0); i >= 0; i = belowUsers.nextSetBit(i + 1)) {
+            userIds.groups.get(i).or(above);
+        }
+
+        for (int i = above.nextSetBit(0); i >= 0; i = above.nextSetBit(i + 1)) {
+            memberGroups.get(i).or(belowGroups);
+            memberUsers.get(i).or(belowUsers);
+        }
+    }
+
+    /**
+     * Forgets everything, for example because the Document has been initialized.
+     */
+    void clear() {
+        built = false;
+        groupIds.clear();
+        userIds.clear();
+        memberGroups.clear();
+        memberUsers.clear();
+    }
+
+    /**
+     * Records that a Group has been deleted from the Document.
+     *
+     * @param group Deleted Group
+     */
+    void removeGroup(final Group group) {
+        if (!built) {
+            return;
+        }
+
+        final Integer id = groupIds.find(group);
+
+        if (id == null) {
+            return;
+        }
+
+        final BitSet above = groupIds.groups.get(id);
+        final BitSet belowGroups = memberGroups.get(id);
+        final BitSet belowUsers = memberUsers.get(id);
+
+        for (int i = above.nextSetBit(0); i >= 0; i = above.nextSetBit(i + 1)) {
+            memberGroups.get(i).clear(id);
+        }
+
+        for (int i = belowGroups.nextSetBit(0); i >= 0; i = belowGroups.nextSetBit(i + 1)) {
+            groupIds.groups.get(i).clear(id);
+        }
+
+        for (int i = belowUsers.nextSetBit(0); i >= 0; i = belowUsers.nextSetBit(i + 1)) {
+            userIds.groups.get(i).clear(id);
+        }
+
+        belowGroups.clear();
+        belowUsers.clear();
+        groupIds.release(group);
+    }
+
+    /**
+     * Records that a Group member has been removed from a Group. The member's bean lists must already reflect the
+     * change.
+     *
+     * @param member Group that was removed
+     */
+    void removeMember(final Group member) {
+        if (!built) {
+            return;
+        }
+
+        final int memberId = groupId(member);
+
+        final BitSet belowGroups = (BitSet) memberGroups.get(memberId).clone();
+        belowGroups.set(memberId);
+
+        final List<Group> affected = toList(belowGroups, groupIds);
+        final List<BitSet> before = new ArrayList<>(affected.size());
+
+        for (final Group group : affected) {
+            before.add(groupIds.groups.get(groupId(group)));
+        }
+
+        computeGroups(affected);
+
+        for (int i = 0; i < affected.size(); i++) {
+            final int id = groupId(affected.get(i));
+
+            forgetMember(before.get(i), groupIds.groups.get(id), memberGroups, id);
+        }
+
+        for (final User user : toList(memberUsers.get(memberId), userIds)) {
+            computeUser(user);
+        }
+    }
+
+    /**
+     * Records that a User has been deleted from the Document.
+     *
+     * @param user Deleted User
+     */
+    void removeUser(final User user) {
+        if (!built) {
+            return;
+        }
+
+        final Integer id = userIds.find(user);
+
+        if (id != null) {
+            final BitSet above = userIds.groups.get(id);
+
+            for (int i = above.nextSetBit(0); i >= 0; i = above.nextSetBit(i + 1)) {
+                memberUsers.get(i).clear(id);
+            }
+
+            userIds.release(user);
+        }
+    }
+
+    /**
+     * Records that the Groups of a User have changed. The User's bean lists must already reflect the change.
+     *
+     * @param user User that joined or left Groups
+     */
+    void updateUser(final User user) {
+        if (built) {
+            computeUser(user);
+        }
+    }
+
+    /**
+     * Builds the index from the bean lists of the Document, unless it has already been built.
+     */
+    private void build() {
+        if (built) {
+            return;
+        }
+
+        clear();
+        built = true;
+
+        final List<Group> groups = new ArrayList<>(document.getGroups());
+
+        for (final Group group : groups) {
+            groupId(group);
+        }
+
+        computeGroups(groups);
+
+        for (int id = 0; id < groupIds.objects.size(); id++) {
+            final BitSet above = groupIds.groups.get(id);
+
+            for (int i = above.nextSetBit(0); i >= 0; i = above.nextSetBit(i + 1)) {
+                memberGroups.get(i).set(id);
+            }
+        }
+
+        for (final User user : document.getUsers()) {
+            computeUser(user);
+        }
+    }
+
+    /**
+     * Recomputes the Groups of each of the Groups from their direct Groups. Groups higher up are computed before the
+     * Groups nested inside them; the Groups of any Group not in the collection must already be correct.
+     *
+     * @param groups Groups to recompute
+     */
+    private void computeGroups(final Collection<Group> groups) {
+        final Set<Group> pending = newIdentitySet();
+        final Set<Group> visited = newIdentitySet();
+        final Deque<Group> stack = new ArrayDeque<>();
+
+        pending.addAll(groups);
+
+        for (final Group start : groups) {
+            stack.push(start);
+
+            while (!stack.isEmpty()) {
+                final Group group = stack.peek();
+
+                if (!pending.contains(group)) {
+                    stack.pop();
+                }
+                else if (visited.add(group)) {
+                    // Compute the Groups above first, ignoring any that are part of a cycle
+                    for (final Group parent : group.getGroups()) {
+                        if (pending.contains(parent) && !visited.contains(parent)) {
+                            stack.push(parent);
+                        }
+                    }
+                }
+                else {
+                    stack.pop();
+                    pending.remove(group);
+
+                    final BitSet above = new BitSet();
+
+                    for (final Group parent : group.getGroups()) {
+                        final int parentId = groupId(parent);
+
+                        above.set(parentId);
+                        above.or(groupIds.groups.get(parentId));
+                    }
+
+                    groupIds.groups.set(groupId(group), above);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes the Groups of a User from its direct Groups and updates the member sets of the Groups it has left or
+     * joined.
+     *
+     * @param user User to recompute
+     */
+    private void computeUser(final User user) {
+        final int id = userIds.idOf(user);
+        final BitSet before = userIds.groups.get(id);
+        final BitSet above = new BitSet();
+
+        for (final Group group : user.getGroups()) {
+            final int groupId = groupId(group);
+
+            above.set(groupId);
+            above.or(groupIds.groups.get(groupId));
+        }
+
+        userIds.groups.set(id, above);
+        forgetMember(before, above, memberUsers, id);
+
+        for (int i = above.nextSetBit(0); i >= 0; i = above.nextSetBit(i + 1)) {
+            memberUsers.get(i).set(id);
+        }
+    }
+
+    /**
+     * Clears a principal from the member sets of the Groups it no longer belongs to.
+     */
+    private static void forgetMember(final BitSet before, final BitSet after, final List<BitSet> members,
+                                     final int id) {
+        for (int i = before.nextSetBit(0); i >= 0; i = before.nextSetBit(i + 1)) {
+            if (!after.get(i)) {
+                members.get(i).clear(id);
+            }
+        }
+    }
+
+    private int groupId(final Group group) {
+        final int id = groupIds.idOf(group);
+
+        while (memberGroups.size() <= id) {
+            memberGroups.add(new BitSet());
+            memberUsers.add(new BitSet());
+        }
+
+        return id;
+    }
+
+    private static <T> Set<T> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private static <T> List<T> toList(final Integer id, final List<BitSet> sets, final Ids<T> ids) {
+        return (id == null) ? new ArrayList<>() : toList(sets.get(id), ids);
+    }
+
+    private static <T> List<T> toList(final BitSet bits, final Ids<T> ids) {
+        final List<T> found = new ArrayList<>(bits.cardinality());
+
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            found.add(ids.objects.get(i));
+        }
+
+        return found;
+    }
+}
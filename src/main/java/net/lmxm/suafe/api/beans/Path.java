@@ -18,7 +18,6 @@
  */
 package net.lmxm.suafe.api.beans;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -42,7 +41,7 @@ public final class Path implements Comparable<Path> {
     /**
      * List of AccessRules in which the Path is referenced.
      */
-    private List<AccessRule> accessRules = new ArrayList<>();
+    private List<AccessRule> accessRules = new SortableList<>();
 
     /**
      * Default Constructor.
@@ -124,7 +123,7 @@ public final class Path implements Comparable<Path> {
      * @param accessRule AccessRule to be removed.
      */
     public void removeAccessRule(final AccessRule accessRule) {
-        accessRules.remove(accessRule);
+        accessRules.removeIf(rule -> rule == accessRule);
     }
 
     /**
@@ -32,13 +32,36 @@ public final class PathComparator implements Comparator<Path> {
      */
     @Override
     public int compare(final Path path1, final Path path2) {
-        final String string1 = ((path1.getRepository() == null) ? "" : path1.getRepository().toString()) + ":" +
-                ((path1.getPath() == null) ? "" : path1.getPath());
+        return SortKeys.compare(path1, path2, PathComparator::getSortKeyPiece);
+    }
+
+    /**
+     * All PathComparators order Paths the same way, so lists sorted by one are known to be sorted by any other.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        return o instanceof PathComparator;
+    }
 
-        final String string2 = ((path2.getRepository() == null) ? "" : path2.getRepository().toString()) + ":" +
-                ((path2.getPath() == null) ? "" : path2.getPath());
+    @Override
+    public int hashCode() {
+        return PathComparator.class.hashCode();
+    }
 
-        return string1.compareTo(string2);
+    /**
+     * Gets a piece of the string "repository:path" for a Path without building the string.
+     */
+    private static String getSortKeyPiece(final Path path, final int index) {
+        switch (index) {
+            case 0:
+                return (path.getRepository() == null) ? "" : path.getRepository().toString();
+            case 1:
+                return ":";
+            case 2:
+                return (path.getPath() == null) ? "" : path.getPath();
+            default:
+                return null;
+        }
     }
 
 }
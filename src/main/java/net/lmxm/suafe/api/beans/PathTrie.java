@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.beans;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of Path objects keyed on the segments of their relative path. Each Repository owns one of these and the
+ * Document owns another for server level paths.
+ * <p>
+ * The path "/" is the root node, "/trunk/src" is stored two levels below it. Path strings that do not start with a
+ * slash cannot be split into segments and are kept in a separate map so that exact lookups still work for them.
+ *
+ * @author Shaun Johnson
+ */
+public final class PathTrie {
+    /**
+     * Single node of the trie.
+     */
+    private static final class Node {
+        /**
+         * Child nodes keyed by path segment, created on demand.
+         */
+        private Map<String, Node> children;
+
+        /**
+         * Path stored at this node, null if the node only exists to reach its children.
+         */
+        private Path path;
+
+        private boolean isEmpty() {
+            return path == null && (children == null || children.isEmpty());
+        }
+    }
+
+    /**
+     * Node for the path "/".
+     */
+    private final Node root = new Node();
+
+    /**
+     * Paths that do not start with a slash.
+     */
+    private final Map<String, Path> unrooted = new HashMap<>();
+
+    /**
+     * Number of Paths in the trie.
+     */
+    private int size = 0;
+
+    /**
+     * Adds a Path to the trie, replacing any Path stored with the same path string.
+     *
+     * @param path Path to add
+     */
+    public void add(@Nonnull final Path path) {
+        final String pathString = path.getPath();
+        final Path previous;
+
+        if (isRooted(pathString)) {
+            Node node = root;
+            int start = 1;
+
+            while (start <= pathString.length() && !isRoot(pathString)) {
+                final int end = segmentEnd(pathString, start);
+                final String segment = pathString.substring(start, end);
+
+                if (node.children == null) {
+                    node.children = new HashMap<>();
+                }
+
+                node = node.children.computeIfAbsent(segment, key -> new Node());
+                start = end + 1;
+            }
+
+            previous = node.path;
+            node.path = path;
+        }
+        else {
+            previous = unrooted.put(pathString, path);
+        }
+
+        if (previous == null) {
+            size++;
+        }
+    }
+
+    /**
+     * Removes all Paths from the trie.
+     */
+    public void clear() {
+        root.children = null;
+        root.path = null;
+        unrooted.clear();
+        size = 0;
+    }
+
+    /**
+     * Locates the Path with exactly the specified path string. Costs one hash lookup per path segment.
+     *
+     * @param pathString Path string to find
+     * @return Found Path, or null if no Path matches
+     */
+    @CheckForNull
+    public Path find(@Nonnull final String pathString) {
+        if (!isRooted(pathString)) {
+            return unrooted.get(pathString);
+        }
+
+        final Node node = findNode(pathString);
+
+        return (node == null) ? null : node.path;
+    }
+
+    /**
+     * Locates the Path with the specified path string and all Paths below it. The Paths are not returned in any
+     * particular order.
+     *
+     * @param pathString Path string of the top of the subtree, "/" returns every rooted Path
+     * @return List of matching Paths, empty if none match
+     */
+    @Nonnull
+    public List<Path> findAllUnder(@Nonnull final String pathString) {
+        final List<Path> found = new ArrayList<>();
+
+        if (!isRooted(pathString)) {
+            final Path path = unrooted.get(pathString);
+
+            if (path != null) {
+                found.add(path);
+            }
+        }
+        else {
+            final Node node = findNode(pathString);
+
+            if (node != null) {
+                collect(node, found);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Gets all Paths in the trie. The Paths are not returned in any particular order.
+     *
+     * @return List of all Paths
+     */
+    @Nonnull
+    public List<Path> getAll() {
+        final List<Path> found = new ArrayList<>(size);
+
+        collect(root, found);
+        found.addAll(unrooted.values());
+
+        return found;
+    }
+
+    /**
+     * Removes a Path from the trie. Nothing is removed if a different Path object is stored under the same path
+     * string.
+     *
+     * @param path Path to remove
+     */
+    public void remove(@Nonnull final Path path) {
+        final String pathString = path.getPath();
+
+        if (!isRooted(pathString)) {
+            if (unrooted.remove(pathString, path)) {
+                size--;
+            }
+        }
+        else if (remove(root, pathString, 1, path)) {
+            size--;
+        }
+    }
+
+    /**
+     * Gets the number of Paths in the trie.
+     *
+     * @return Number of Paths
+     */
+    public int size() {
+        return size;
+    }
+
+    private static void collect(final Node node, final List<Path> found) {
+        if (node.path != null) {
+            found.add(node.path);
+        }
+
+        if (node.children != null) {
+            for (final Node child : node.children.values()) {
+                collect(child, found);
+            }
+        }
+    }
+
+    private Node findNode(final String pathString) {
+        if (isRoot(pathString)) {
+            return root;
+        }
+
+        Node node = root;
+        int start = 1;
+
+        while (node != null && start <= pathString.length()) {
+            final int end = segmentEnd(pathString, start);
+
+            node = (node.children == null) ? null : node.children.get(pathString.substring(start, end));
+            start = end + 1;
+        }
+
+        return node;
+    }
+
+    private static boolean isRoot(final String pathString) {
+        return pathString.length() == 1;
+    }
+
+    private static boolean isRooted(final String pathString) {
+        return pathString != null && pathString.length() > 0 && pathString.charAt(0) == '/';
+    }
+
+    /**
+     * Removes the Path below the node, pruning nodes that no longer lead anywhere.
+     *
+     * @return true if the Path was found and removed
+     */
+    private static boolean remove(final Node node, final String pathString, final int start, final Path path) {
+        if (start > pathString.length() || isRoot(pathString)) {
+            if (node.path != path) {
+                return false;
+            }
+
+            node.path = null;
+
+            return true;
+        }
+
+        final int end = segmentEnd(pathString, start);
+        final String segment = pathString.substring(start, end);
+        final Node child = (node.children == null) ? null : node.children.get(segment);
+
+        if (child == null || !remove(child, pathString, end + 1, path)) {
+            return false;
+        }
+
+        if (child.isEmpty()) {
+            node.children.remove(segment);
+        }
+
+        return true;
+    }
+
+    private static int segmentEnd(final String pathString, final int start) {
+        final int end = pathString.indexOf('/', start);
+
+        return (end == -1) ? pathString.length() : end;
+    }
+}
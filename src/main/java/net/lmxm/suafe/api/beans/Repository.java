@@ -18,7 +18,6 @@
  */
 package net.lmxm.suafe.api.beans;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -40,7 +39,12 @@ public final class Repository implements Comparable<Repository> {
     /**
      * List of paths in which the Repository is referenced.
      */
-    protected List<Path> paths = new ArrayList<>();
+    protected List<Path> paths = new SortableList<>();
+
+    /**
+     * Paths indexed by relative path.
+     */
+    private final PathTrie pathIndex = new PathTrie();
 
     /**
      * Default Constructor.
@@ -93,6 +97,27 @@ public final class Repository implements Comparable<Repository> {
      */
     public void addPath(final Path path) {
         paths.add(path);
+        pathIndex.add(path);
+    }
+
+    /**
+     * Locates a Path in the Repository by its relative path.
+     *
+     * @param pathString Relative path to find.
+     * @return Found Path, or null if the Repository has no such Path.
+     */
+    public Path findPath(final String pathString) {
+        return pathIndex.find(pathString);
+    }
+
+    /**
+     * Locates a Path in the Repository and all Paths below it.
+     *
+     * @param pathString Relative path of the top of the subtree.
+     * @return Found Paths, in no particular order.
+     */
+    public List<Path> findPathsUnder(final String pathString) {
+        return pathIndex.findAllUnder(pathString);
     }
 
     /**
@@ -103,6 +128,7 @@ public final class Repository implements Comparable<Repository> {
      */
     public void removePath(final Path path) {
         paths.remove(path);
+        pathIndex.remove(path);
     }
 
     /**
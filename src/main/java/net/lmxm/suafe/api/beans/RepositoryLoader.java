@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.beans;
+
+import net.lmxm.suafe.exceptions.AppException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Loads the Paths and AccessRules of a Repository into a Document that was only partly parsed. The Document asks for
+ * a Repository the first time it is looked up by name.
+ *
+ * @author Shaun Johnson
+ */
+public interface RepositoryLoader {
+    /**
+     * Adds a Repository, with its Paths and AccessRules, to the Document. Does nothing if the Repository has already
+     * been loaded or does not exist.
+     *
+     * @param document       Document to load into
+     * @param repositoryName Name of the Repository
+     * @throws AppException if the Repository cannot be loaded
+     */
+    void loadRepository(@Nonnull Document document, @Nonnull String repositoryName) throws AppException;
+
+    /**
+     * Adds every Repository that has not been loaded yet to the Document.
+     *
+     * @param document Document to load into
+     * @throws AppException if a Repository cannot be loaded
+     */
+    void loadAllRepositories(@Nonnull Document document) throws AppException;
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.beans;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * ArrayList that remembers when it was last sorted. Sorting it again with the same order does nothing unless the
+ * list has been modified since, so read paths can call Collections.sort freely without re-sorting unchanged data.
+ * <p>
+ * The list cannot see its elements change. Whoever renames an element, or otherwise changes its sort key, must call
+ * markUnsorted on each list that holds it. Document does this for all renames.
+ * <p>
+ * Readers that must not reorder the list, such as FileGenerator, use sortedView instead of sorting it.
+ *
+ * @param <E> Type of element
+ * @author Shaun Johnson
+ */
+public final class SortableList<E> extends ArrayList<E> {
+    /**
+     * Serial ID.
+     */
+    private static final long serialVersionUID = 8137434374014862424L;
+
+    /**
+     * modCount after the last sort, or -1 if the list is not known to be sorted.
+     */
+    private int sortedModCount = -1;
+
+    /**
+     * Comparator used by the last sort, null for natural ordering.
+     */
+    private Comparator<? super E> sortedBy;
+
+    /**
+     * Sorted copy returned by sortedView while the list is out of order, null if there is none.
+     */
+    private List<E> view;
+
+    /**
+     * modCount when view was made.
+     */
+    private int viewModCount;
+
+    /**
+     * Comparator that view was sorted by, null for natural ordering.
+     */
+    private Comparator<? super E> viewSortedBy;
+
+    /**
+     * Default constructor.
+     */
+    public SortableList() {
+        super();
+    }
+
+    /**
+     * Creates a list containing the elements of a collection.
+     *
+     * @param collection Elements to copy
+     */
+    public SortableList(final Collection<? extends E> collection) {
+        super(collection);
+    }
+
+    /**
+     * Forgets that the list is sorted, because the sort key of one of its elements has changed.
+     */
+    public void markUnsorted() {
+        sortedModCount = -1;
+        view = null;
+    }
+
+    /**
+     * Forgets that a list is sorted, if it is a SortableList or AccessRuleList.
+     *
+     * @param list List whose elements have changed
+     */
+    static void markUnsorted(final List<?> list) {
+        if (list instanceof SortableList) {
+            ((SortableList<?>) list).markUnsorted();
+        }
+        else if (list instanceof AccessRuleList) {
+            ((AccessRuleList) list).markUnsorted();
+        }
+    }
+
+    @Override
+    public E set(final int index, final E element) {
+        sortedModCount = -1;
+        view = null;
+
+        return super.set(index, element);
+    }
+
+    /**
+     * Sorts the list, unless it is already sorted by the same comparator and has not changed since.
+     *
+     * @param comparator Comparator to sort by, null for natural ordering
+     */
+    @Override
+    public void sort(final Comparator<? super E> comparator) {
+        if (sortedModCount == modCount && Objects.equals(sortedBy, comparator)) {
+            return;
+        }
+
+        super.sort(comparator);
+
+        sortedModCount = modCount;
+        sortedBy = comparator;
+    }
+
+    /**
+     * Gets the elements of the list in sorted order without reordering the list. If the list is already in order it
+     * is returned as it is, behind an unmodifiable wrapper. Otherwise a sorted copy is made and kept until the list
+     * changes, so asking again for an unchanged list costs nothing.
+     *
+     * @param comparator Comparator to sort by, null for natural ordering
+     * @return Unmodifiable list of the elements in sorted order
+     */
+    public List<E> sortedView(final Comparator<? super E> comparator) {
+        if (sortedModCount == modCount && Objects.equals(sortedBy, comparator)) {
+            return Collections.unmodifiableList(this);
+        }
+
+        if (view != null && viewModCount == modCount && Objects.equals(viewSortedBy, comparator)) {
+            return view;
+        }
+
+        if (isInOrder(comparator)) {
+            sortedModCount = modCount;
+            sortedBy = comparator;
+            view = null;
+
+            return Collections.unmodifiableList(this);
+        }
+
+        final List<E> copy = new ArrayList<>(this);
+
+        copy.sort(comparator);
+
+        view = Collections.unmodifiableList(copy);
+        viewModCount = modCount;
+        viewSortedBy = comparator;
+
+        return view;
+    }
+
+    /**
+     * Gets the elements of a list in sorted order without reordering the list.
+     *
+     * @param list       List to read
+     * @param comparator Comparator to sort by, null for natural ordering
+     * @param <E>        Type of element
+     * @return Unmodifiable list of the elements in sorted order
+     */
+    public static <E> List<E> sortedView(final List<E> list, final Comparator<? super E> comparator) {
+        if (list instanceof SortableList) {
+            return ((SortableList<E>) list).sortedView(comparator);
+        }
+
+        final List<E> copy = new ArrayList<>(list);
+
+        copy.sort(comparator);
+
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Checks whether the elements are already in sorted order, which is common for documents that were loaded from
+     * files this application saved.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean isInOrder(final Comparator<? super E> comparator) {
+        for (int i = 1; i < size(); i++) {
+            final E previous = get(i - 1);
+            final E current = get(i);
+            final int result = (comparator == null) ?
+                    ((Comparable<? super E>) previous).compareTo(current) : comparator.compare(previous, current);
+
+            if (result > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -21,7 +21,6 @@ package net.lmxm.suafe.api.beans;
 import net.lmxm.suafe.api.SubversionConstants;
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -37,7 +36,7 @@ public final class User extends GroupMemberObject implements Comparable<User> {
     /**
      * List of AccessRules in which the User is referenced.
      */
-    private List<AccessRule> accessRules = new ArrayList<>();
+    private List<AccessRule> accessRules = new SortableList<>();
 
     /**
      * The User's alias. This field must be unique.
@@ -47,7 +46,7 @@ public final class User extends GroupMemberObject implements Comparable<User> {
     /**
      * List of Groups to which the User is assigned.
      */
-    protected List<Group> groups = new ArrayList<>();
+    protected List<Group> groups = new SortableList<>();
 
     /**
      * The User's name. This field must contain a unique value.
@@ -147,7 +146,7 @@ public final class User extends GroupMemberObject implements Comparable<User> {
      * @param accessRule AccessRule which to remove from the list.
      */
     public void removeAccessRule(final AccessRule accessRule) {
-        accessRules.remove(accessRule);
+        accessRules.removeIf(rule -> rule == accessRule);
     }
 
     /**
@@ -200,7 +199,7 @@ public final class User extends GroupMemberObject implements Comparable<User> {
      */
     @Override
     public int compareTo(final User otherUser) {
-        return this.toString().compareTo(otherUser.toString());
+        return SortKeys.compare(this, otherUser, User::getSortKeyPiece);
     }
 
     @Override
@@ -221,6 +220,31 @@ public final class User extends GroupMemberObject implements Comparable<User> {
         return Objects.hash(name);
     }
 
+    /**
+     * Gets a piece of the User's display string, as returned by toString, without building the string.
+     *
+     * @param user  User to read
+     * @param index Index of the piece
+     * @return Piece of the display string, or null when there are no more pieces
+     */
+    static String getSortKeyPiece(final User user, final int index) {
+        final boolean hasAlias = StringUtils.isNotBlank(user.alias);
+        final boolean hasName = StringUtils.isNotBlank(user.name);
+
+        switch (index) {
+            case 0:
+                return hasAlias ? user.alias : (hasName ? user.name : "");
+            case 1:
+                return (hasAlias && hasName) ? "[" : "";
+            case 2:
+                return (hasAlias && hasName) ? user.name : "";
+            case 3:
+                return (hasAlias && hasName) ? "]" : "";
+            default:
+                return null;
+        }
+    }
+
     /**
      * Returns the User object as a String.
      */
@@ -34,12 +34,25 @@ public final class ParserException extends AppException {
     private static final long serialVersionUID = 3638514503455900657L;
 
     /**
-     * Constructor that an error message.
+     * Line number where the error occurred.
+     */
+    private final int lineNumber;
+
+    /**
+     * Error message, without the line number.
+     */
+    private final String detail;
+
+    /**
+     * Constructor that accepts a line number and error message.
      *
-     * @param message Error message
+     * @param lineNumber Line number where error occurred.
+     * @param detail     Error message
      */
-    private ParserException(String key, Object argument1, Object argument2) {
-        super(key, argument1, argument2);
+    private ParserException(int lineNumber, String detail) {
+        super("parser.exception", lineNumber, String.valueOf(detail));
+        this.lineNumber = lineNumber;
+        this.detail = String.valueOf(detail);
     }
 
     /**
@@ -52,8 +65,7 @@ public final class ParserException extends AppException {
      * @return ParserException with localized error message.
      */
     public static ParserException generateException(int lineNumber, String key) {
-        return new ParserException("parser.exception", lineNumber, ResourceUtil
-                .getString(key));
+        return new ParserException(lineNumber, ResourceUtil.getString(key));
     }
 
     /**
@@ -68,8 +80,7 @@ public final class ParserException extends AppException {
      */
     public static ParserException generateException(int lineNumber, String key,
                                                     String argument) {
-        return new ParserException("parser.exception", lineNumber, ResourceUtil
-                .getFormattedString(key, argument));
+        return new ParserException(lineNumber, ResourceUtil.getFormattedString(key, argument));
     }
 
     /**
@@ -84,8 +95,7 @@ public final class ParserException extends AppException {
      */
     public static ParserException generateException(int lineNumber, String key,
                                                     Object[] arguments) {
-        return new ParserException("parser.exception", lineNumber, ResourceUtil
-                .getFormattedString(key, arguments));
+        return new ParserException(lineNumber, ResourceUtil.getFormattedString(key, arguments));
     }
 
     /**
@@ -98,6 +108,25 @@ public final class ParserException extends AppException {
      * @return ParserException with localized error message.
      */
     public static ParserException generateException(int lineNumber, Exception e) {
-        return new ParserException("parser.exception", lineNumber, e.getMessage());
+        return new ParserException(lineNumber, e.getMessage());
+    }
+
+    /**
+     * Gets the error message without the line number.
+     *
+     * @return Error message
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    /**
+     * Gets the line number where the error occurred. Errors that are not about a particular line, such as a file that
+     * cannot be read, have line number 0 or -1.
+     *
+     * @return Line number
+     */
+    public int getLineNumber() {
+        return lineNumber;
     }
 }
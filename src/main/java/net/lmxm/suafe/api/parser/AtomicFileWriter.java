@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.exceptions.AppException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replaces the contents of a file so that nothing reading it ever sees a partly written file, and so that a crash
+ * leaves either the old contents or the new ones. Subversion reads the authz file on every request, so writing it in
+ * place risks refusing access to everyone for as long as the write takes, or for good if the write is cut short.
+ * <p>
+ * The new contents are written to a hidden temporary file next to the file and forced to disk. The file is then
+ * replaced by renaming the temporary file over it, which the file system does in one step, and the directory is
+ * forced to disk so that the rename survives a crash too. If the file is a symbolic link, the file it links to is
+ * replaced, and the link is left alone.
+ * <p>
+ * The temporary file takes the permissions, owner and group of the file it replaces, as far as the platform and the
+ * user allow, so that the server can still read the file after an administrator saves it. A new file gets the
+ * permissions that any other new file would. If backups are kept, the old contents are first copied to file.1, after
+ * file.1 has moved to file.2 and so on, and the oldest backup is deleted.
+ *
+ * @author Shaun Johnson
+ */
+public final class AtomicFileWriter {
+    private static final Log LOGGER = LogFactory.getLog(AtomicFileWriter.class);
+
+    /**
+     * Most symbolic links followed to find the file, the same limit as Linux places on a path.
+     */
+    private static final int MAXIMUM_LINKS = 40;
+
+    /**
+     * Writes the new contents of a file.
+     */
+    @FunctionalInterface
+    public interface Content {
+        /**
+         * Writes the contents. The channel is forced to disk and closed afterwards, so it must not be closed here.
+         *
+         * @param channel Channel of the temporary file, positioned at its start
+         * @throws AppException
+         * @throws IOException
+         */
+        void write(FileChannel channel) throws AppException, IOException;
+    }
+
+    /**
+     * File being replaced.
+     */
+    private final File file;
+
+    /**
+     * Number of backups to keep.
+     */
+    private final int backupCount;
+
+    /**
+     * Creates a writer that keeps no backups.
+     *
+     * @param file File to be replaced, which need not exist yet
+     */
+    public AtomicFileWriter(@Nonnull final File file) {
+        this(file, 0);
+    }
+
+    /**
+     * Creates a writer.
+     *
+     * @param file        File to be replaced, which need not exist yet
+     * @param backupCount Number of backups of the old contents to keep, 0 for none
+     */
+    public AtomicFileWriter(@Nonnull final File file, final int backupCount) {
+        if (backupCount < 0) {
+            throw new IllegalArgumentException("Backup count must not be negative: " + backupCount);
+        }
+
+        this.file = file.getAbsoluteFile();
+        this.backupCount = backupCount;
+    }
+
+    /**
+     * Gets a backup file, whether or not it exists. Backups are kept next to the file that is replaced, which is the
+     * file a symbolic link points to rather than the link.
+     *
+     * @param number Number of the backup, 1 for the newest
+     * @return Backup file
+     */
+    public File getBackupFile(final int number) {
+        try {
+            return getBackupFile(resolveTarget(), number).toFile();
+        }
+        catch (final IOException ioe) {
+            return getBackupFile(file.toPath(), number).toFile();
+        }
+    }
+
+    /**
+     * Replaces the contents of the file. If the new contents cannot be written, the file is left as it was.
+     *
+     * @param content Writer of the new contents
+     * @throws AppException
+     */
+    public void write(@Nonnull final Content content) throws AppException {
+        Path target = file.toPath();
+        Path temporaryFile = null;
+
+        try {
+            target = resolveTarget();
+
+            final Path directory = target.getParent();
+            final PosixFileAttributes attributes = readPosixAttributes(target);
+
+            temporaryFile = createTemporaryFile(target, attributes);
+
+            if (attributes != null) {
+                copyOwnership(attributes, temporaryFile);
+            }
+
+            try (final FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                content.write(channel);
+                channel.force(true);
+            }
+
+            if (backupCount > 0 && Files.exists(target)) {
+                rotateBackups(target);
+            }
+
+            try {
+                Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final AtomicMoveNotSupportedException amnse) {
+                LOGGER.warn("Unable to replace " + target + " atomically");
+
+                Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            temporaryFile = null;
+
+            forceDirectory(directory);
+        }
+        catch (final NoSuchFileException | AccessDeniedException e) {
+            throw new AppException("generator.filenotfound");
+        }
+        catch (final IOException ioe) {
+            LOGGER.error("Unable to write " + target, ioe);
+
+            throw new AppException("generator.error");
+        }
+        finally {
+            if (temporaryFile != null) {
+                try {
+                    Files.deleteIfExists(temporaryFile);
+                }
+                catch (final IOException ioe) {
+                    // Do nothing
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives the temporary file the owner and group of the file it replaces, then its permissions, which the umask may
+     * have narrowed when the temporary file was created. Only the owner of a file, or root, can change its group, and
+     * only root can change its owner, so a change that is not allowed leaves the temporary file as it is.
+     */
+    private static void copyOwnership(final PosixFileAttributes attributes, final Path temporaryFile)
+            throws IOException {
+        final PosixFileAttributeView view = Files.getFileAttributeView(temporaryFile, PosixFileAttributeView.class);
+
+        try {
+            if (!attributes.owner().equals(Files.getOwner(temporaryFile))) {
+                view.setOwner(attributes.owner());
+            }
+        }
+        catch (final IOException ioe) {
+            LOGGER.warn("Unable to give " + temporaryFile + " the owner " + attributes.owner().getName());
+        }
+
+        try {
+            if (!attributes.group().equals(view.readAttributes().group())) {
+                view.setGroup(attributes.group());
+            }
+        }
+        catch (final IOException ioe) {
+            LOGGER.warn("Unable to give " + temporaryFile + " the group " + attributes.group().getName());
+        }
+
+        view.setPermissions(attributes.permissions());
+    }
+
+    /**
+     * Creates a hidden temporary file next to the file being replaced. Unlike Files.createTempFile(), which makes the
+     * file readable by its owner only, the file is created with the permissions of the file it replaces, or with the
+     * default permissions for a new file, so it is never readable by more users than the file it replaces.
+     *
+     * @param target     File being replaced
+     * @param attributes Attributes of the file being replaced, null if it does not exist or the platform is not POSIX
+     * @return Temporary file
+     */
+    private static Path createTemporaryFile(final Path target, final PosixFileAttributes attributes)
+            throws IOException {
+        final FileAttribute<?>[] fileAttributes = (attributes == null) ? new FileAttribute<?>[0]
+                : new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(attributes.permissions())};
+
+        while (true) {
+            final Path temporaryFile = target.resolveSibling("." + target.getFileName() + "."
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+
+            try {
+                return Files.createFile(temporaryFile, fileAttributes);
+            }
+            catch (final FileAlreadyExistsException faee) {
+                // Try another name
+            }
+        }
+    }
+
+    /**
+     * Gets a backup of a file.
+     */
+    private static Path getBackupFile(final Path target, final int number) {
+        return target.resolveSibling(target.getFileName() + "." + number);
+    }
+
+    /**
+     * Reads the POSIX attributes of the file being replaced.
+     *
+     * @return Attributes, null if the file does not exist or the platform is not POSIX
+     */
+    private static PosixFileAttributes readPosixAttributes(final Path target) throws IOException {
+        try {
+            return Files.readAttributes(target, PosixFileAttributes.class);
+        }
+        catch (final NoSuchFileException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the file to be replaced, following symbolic links, including links to files that do not exist yet, so
+     * that the link is kept and the file it points to is replaced.
+     */
+    private Path resolveTarget() throws IOException {
+        Path target = file.toPath();
+
+        for (int links = 0; Files.isSymbolicLink(target); links++) {
+            if (links == MAXIMUM_LINKS) {
+                throw new IOException("Too many levels of symbolic links: " + file);
+            }
+
+            target = target.resolveSibling(Files.readSymbolicLink(target));
+        }
+
+        return target.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Forces the directory entry of the renamed file to disk. Not every platform can open a directory, and those that
+     * cannot are left to flush it in their own time.
+     */
+    private static void forceDirectory(final Path directory) {
+        try (final FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (final IOException ioe) {
+            // Do nothing
+        }
+    }
+
+    /**
+     * Moves each backup up by one, deleting the oldest, and copies the file to the first backup. The copy is forced to
+     * disk before the file is replaced. The file is copied rather than linked, so that an editor that changes the file
+     * in place later cannot change the backup as well.
+     */
+    private void rotateBackups(final Path target) throws IOException {
+        Files.deleteIfExists(getBackupFile(target, backupCount));
+
+        for (int number = backupCount - 1; number >= 1; number--) {
+            final Path backup = getBackupFile(target, number);
+
+            if (Files.exists(backup)) {
+                Files.move(backup, getBackupFile(target, number + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        final Path backup = getBackupFile(target, 1);
+
+        Files.copy(target, backup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+
+        try (final FileChannel channel = FileChannel.open(backup, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+}
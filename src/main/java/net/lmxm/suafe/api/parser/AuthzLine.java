@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Single line of an authz file, as seen by the FileParser. The same instance is refilled for every line, either with
+ * a range of characters of a String or other CharSequence, or with a range of bytes of a memory mapped file, so
+ * reading a line does not create any objects.
+ * <p>
+ * Tab characters read as spaces. Byte ranges are read one byte per character, which the MappedLineReader only does
+ * for lines that are plain ASCII or files that are ISO-8859-1; any other line is decoded into a String first.
+ *
+ * @author Shaun Johnson
+ */
+final class AuthzLine {
+    /**
+     * Bytes of the mapped file, null if the line is held as a String.
+     */
+    private ByteBuffer bytes = null;
+
+    /**
+     * Length of the line.
+     */
+    private int length = 0;
+
+    /**
+     * Position of the first byte or character of the line within bytes or text.
+     */
+    private int offset = 0;
+
+    /**
+     * Characters holding the line, null if the line is held as bytes.
+     */
+    private CharSequence text = null;
+
+    /**
+     * Gets the character at an index, with tabs read as spaces.
+     *
+     * @param index Index of the character
+     * @return Character at the index
+     */
+    char charAt(final int index) {
+        final char character = (text == null) ? (char) (bytes.get(offset + index) & 0xff)
+                : text.charAt(offset + index);
+
+        return (character == '\t') ? ' ' : character;
+    }
+
+    /**
+     * Checks whether the line holds exactly the specified value.
+     *
+     * @param value Value to compare against
+     * @return true if the line and value hold the same characters
+     */
+    boolean contentEquals(final String value) {
+        if (value.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) != value.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the index of the first occurrence of a character.
+     *
+     * @param character Character to find, which must not be a tab
+     * @return Index of the character, or -1 if it does not occur in the line
+     */
+    int indexOf(final char character) {
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) == character) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks whether the line is empty or only holds whitespace, in the same way as StringUtils.isBlank().
+     *
+     * @return true if the line is blank
+     */
+    boolean isBlank() {
+        for (int i = 0; i < length; i++) {
+            if (!Character.isWhitespace(charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the length of the line.
+     *
+     * @return Number of characters in the line
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Fills the line with a range of bytes, one character per byte.
+     *
+     * @param bytes  Bytes holding the line
+     * @param offset Position of the first byte
+     * @param length Number of bytes
+     */
+    void set(final ByteBuffer bytes, final int offset, final int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.text = null;
+    }
+
+    /**
+     * Fills the line with a range of characters. The characters are read in place, so they must not change while the
+     * line is in use.
+     *
+     * @param text   Characters holding the line
+     * @param offset Index of the first character
+     * @param length Number of characters
+     */
+    void set(final CharSequence text, final int offset, final int length) {
+        this.bytes = null;
+        this.offset = offset;
+        this.length = length;
+        this.text = text;
+    }
+
+    /**
+     * Fills the line with a String.
+     *
+     * @param text Characters of the line
+     */
+    void set(final String text) {
+        set(text, 0, text.length());
+    }
+
+    /**
+     * Creates a String holding part of the line, with tabs replaced by spaces.
+     *
+     * @param start Index of the first character
+     * @param end   Index after the last character
+     * @return New String
+     */
+    String substring(final int start, final int end) {
+        final char[] characters = new char[end - start];
+
+        for (int i = start; i < end; i++) {
+            characters[i - start] = charAt(i);
+        }
+
+        return new String(characters);
+    }
+
+    @Override
+    public String toString() {
+        return substring(0, length);
+    }
+}
@@ -24,11 +24,18 @@ import com.ibm.icu.text.CharsetMatch;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 
 /**
- * File encoding detection utility.
+ * File encoding detection utility. Detection only ever looks at the first {@link #PREFIX_LENGTH} bytes of a file, and
+ * a byte order mark at the start of the file decides the encoding without running the detector at all.
  */
 public class FileEncodingUtils {
     private static final Log LOGGER = LogFactory.getLog(FileEncodingUtils.class);
@@ -36,35 +43,89 @@ public class FileEncodingUtils {
     private static final int MINIMAL_CONFIDENCE_LEVEL = 50;
 
     /**
-     * Try to detect the encoding of the provided file. If the encoding cannot be determined or if an error occurs
-     * the provided, default encoding will be returned.
+     * Number of bytes at the start of a file that are examined to detect its encoding.
+     */
+    public static final int PREFIX_LENGTH = 8192;
+
+    /**
+     * Byte order marks, longest first so that UTF-32LE is not mistaken for UTF-16LE.
+     */
+    private static final byte[][] BYTE_ORDER_MARKS = {
+            {0, 0, (byte) 0xFE, (byte) 0xFF},
+            {(byte) 0xFF, (byte) 0xFE, 0, 0},
+            {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF},
+            {(byte) 0xFE, (byte) 0xFF},
+            {(byte) 0xFF, (byte) 0xFE}
+    };
+
+    /**
+     * Encodings identified by each of the BYTE_ORDER_MARKS.
+     */
+    private static final String[] BYTE_ORDER_MARK_ENCODINGS = {"UTF-32BE", "UTF-32LE", "UTF-8", "UTF-16BE", "UTF-16LE"};
+
+    /**
+     * Gets the length of the byte order mark at the start of some bytes, if the mark belongs to the specified
+     * encoding. Encodings such as "UTF-16" that read their own byte order mark have none to skip.
      *
-     * @param file            File to test
+     * @param bytes    Bytes from the start of a file, between their position and limit
+     * @param encoding Encoding the bytes are going to be read in
+     * @return Number of bytes to skip, 0 if there is no byte order mark for the encoding
+     */
+    public static int byteOrderMarkLength(final ByteBuffer bytes, final String encoding) {
+        final int index = findByteOrderMark(bytes);
+
+        return (index != -1 && BYTE_ORDER_MARK_ENCODINGS[index].equalsIgnoreCase(encoding))
+                ? BYTE_ORDER_MARKS[index].length : 0;
+    }
+
+    /**
+     * Try to detect the encoding of some bytes read from the start of a file. Only the first PREFIX_LENGTH bytes are
+     * examined and the buffer position is left unchanged. If the encoding cannot be determined the provided, default
+     * encoding will be returned.
+     *
+     * @param bytes           Bytes from the start of a file, between their position and limit
      * @param defaultEncoding Encoding to return if file encoding cannot be determined
      * @return File encoding
      */
-    public static String detect(final File file, final String defaultEncoding) {
-        BufferedInputStream inputStream = null;
+    public static String detect(final ByteBuffer bytes, final String defaultEncoding) {
+        final int index = findByteOrderMark(bytes);
 
-        try {
-            inputStream = new BufferedInputStream(new FileInputStream(file));
+        if (index != -1 && Charset.isSupported(BYTE_ORDER_MARK_ENCODINGS[index])) {
+            return BYTE_ORDER_MARK_ENCODINGS[index];
+        }
 
-            final CharsetDetector charsetDetector = new CharsetDetector();
-            charsetDetector.setText(inputStream);
+        final byte[] prefix = new byte[Math.min(bytes.remaining(), PREFIX_LENGTH)];
+        bytes.duplicate().get(prefix);
 
-            final CharsetMatch charsetMatch = charsetDetector.detect();
-            if (charsetMatch == null) {
-                return defaultEncoding;
-            }
+        final CharsetDetector charsetDetector = new CharsetDetector();
+        charsetDetector.setText(prefix);
+
+        final CharsetMatch charsetMatch = charsetDetector.detect();
+        if (charsetMatch == null) {
+            return defaultEncoding;
+        }
+
+        final String estimatedEncoding = charsetMatch.getName();
 
-            final String estimatedEncoding = charsetMatch.getName();
+        final boolean isReliable = Charset.isSupported(estimatedEncoding) &&
+                charsetMatch.getConfidence() >= MINIMAL_CONFIDENCE_LEVEL;
 
-            final boolean isReliable = Charset.isSupported(estimatedEncoding) &&
-                    charsetMatch.getConfidence() >= MINIMAL_CONFIDENCE_LEVEL;
+        return isReliable ? estimatedEncoding : defaultEncoding;
+    }
 
-            return isReliable ? estimatedEncoding : defaultEncoding;
+    /**
+     * Try to detect the encoding of the provided file. If the encoding cannot be determined or if an error occurs
+     * the provided, default encoding will be returned.
+     *
+     * @param file            File to test
+     * @param defaultEncoding Encoding to return if file encoding cannot be determined
+     * @return File encoding
+     */
+    public static String detect(final File file, final String defaultEncoding) {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return detect(readPrefix(channel), defaultEncoding);
         }
-        catch (final FileNotFoundException e) {
+        catch (final NoSuchFileException e) {
             LOGGER.error("Unable to find file to test", e);
             return defaultEncoding;
         }
@@ -72,15 +133,75 @@ public class FileEncodingUtils {
             LOGGER.error("Error occurred reading file", e);
             return defaultEncoding;
         }
-        finally {
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                }
-                catch (final IOException ioe) {
-                    // Do nothing
-                }
+    }
+
+    /**
+     * Reads the bytes examined by detect(), starting at the current position of a channel.
+     *
+     * @param channel Channel to read from
+     * @return Buffer holding up to PREFIX_LENGTH bytes, fewer if the channel ends first
+     * @throws IOException if the channel cannot be read
+     */
+    public static ByteBuffer readPrefix(final ReadableByteChannel channel) throws IOException {
+        final byte[] prefix = new byte[PREFIX_LENGTH];
+        int length = 0;
+
+        while (length < prefix.length) {
+            final int count = channel.read(ByteBuffer.wrap(prefix, length, prefix.length - length));
+
+            if (count == -1) {
+                break;
             }
+
+            length += count;
         }
+
+        return ByteBuffer.wrap(prefix, 0, length);
+    }
+
+    /**
+     * Reads the whole of a file into memory, so that it can be indexed without keeping the file mapped or open.
+     *
+     * @param channel Channel of the file, which must not be larger than Integer.MAX_VALUE bytes
+     * @return Buffer holding the contents of the file, fewer bytes if the file shrinks while it is read
+     * @throws IOException if the channel cannot be read
+     */
+    public static ByteBuffer readFully(final FileChannel channel) throws IOException {
+        final byte[] contents = new byte[(int) channel.size()];
+        int length = 0;
+
+        while (length < contents.length) {
+            final int count = channel.read(ByteBuffer.wrap(contents, length, contents.length - length), length);
+
+            if (count == -1) {
+                break;
+            }
+
+            length += count;
+        }
+
+        return ByteBuffer.wrap(contents, 0, length);
+    }
+
+    private static int findByteOrderMark(final ByteBuffer bytes) {
+        for (int i = 0; i < BYTE_ORDER_MARKS.length; i++) {
+            final byte[] mark = BYTE_ORDER_MARKS[i];
+
+            if (bytes.remaining() >= mark.length && startsWith(bytes, mark)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean startsWith(final ByteBuffer bytes, final byte[] mark) {
+        for (int i = 0; i < mark.length; i++) {
+            if (bytes.get(bytes.position() + i) != mark[i]) {
+                return false;
+            }
+        }
+
+        return true;
     }
 }
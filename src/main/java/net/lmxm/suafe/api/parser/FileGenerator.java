@@ -25,8 +25,14 @@ import org.apache.commons.lang3.StringUtils;
 import net.lmxm.suafe.resources.ResourceUtil;
 
 import java.io.*;
-import java.util.Collections;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Provides methods to output the authz file information from memory.
@@ -35,14 +41,66 @@ import java.util.Iterator;
  */
 public final class FileGenerator {
 
-    private final int DEFAULT_MAX_LINE_LENGTH = 80;
+    static final int DEFAULT_MAX_LINE_LENGTH = 80;
+
+    /**
+     * Size of the buffer that content is written to a file through.
+     */
+    static final int WRITE_BUFFER_LENGTH = 1 << 16;
+
+    /**
+     * Smallest number of access rules rendered as one chunk, unless the paths are split more finely to give every
+     * thread of the pool several chunks.
+     */
+    private static final int DEFAULT_CHUNK_RULES = 1 << 14;
 
     private Document document = null;
 
+    /**
+     * Number of backups kept when a file is generated.
+     */
+    private int backupCount = 0;
+
+    /**
+     * Pool that the path sections are rendered on, null to render them on the calling thread.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Smallest number of access rules rendered as one chunk.
+     */
+    private final int minimumChunkRules;
+
     public FileGenerator(Document document) {
+        this(document, null);
+    }
+
+    /**
+     * Creates a generator that renders the path sections of large documents in parallel. The aliases and groups are
+     * written first, then the paths are split into chunks, each holding the sections of one repository or part of
+     * one, that are rendered into separate buffers on the pool and written in PathComparator order, so the content is
+     * the same as sequential generation gives. The Document must not change until generation has finished.
+     *
+     * @param document Document to be generated
+     * @param pool     Pool to render on, null to render on the calling thread
+     */
+    public FileGenerator(Document document, ForkJoinPool pool) {
+        this(document, pool, DEFAULT_CHUNK_RULES);
+    }
+
+    /**
+     * Creates a generator that renders path sections in chunks of at least the specified number of access rules.
+     *
+     * @param document          Document to be generated
+     * @param pool              Pool to render on, null to render on the calling thread
+     * @param minimumChunkRules Smallest number of access rules rendered as one chunk
+     */
+    FileGenerator(Document document, ForkJoinPool pool, int minimumChunkRules) {
         super();
 
         this.document = document;
+        this.pool = pool;
+        this.minimumChunkRules = minimumChunkRules;
     }
 
     private String createPrefix(int length) {
@@ -76,36 +134,31 @@ public final class FileGenerator {
     }
 
     /**
-     * Generates and saves the current authz content in memory.
+     * Generates and saves the current authz content in memory. The content is written to the file as it is generated,
+     * so it is never held in memory as a whole, and the file is replaced through an {@link AtomicFileWriter}, so that
+     * nothing reading it sees it half written.
      *
      * @param file          File where authz content is to be written.
      * @param maxLineLength Maximum line length
      * @throws AppException
      */
     public void generate(File file, int maxLineLength) throws AppException {
-        PrintWriter output = null;
+        final Charset charset;
 
         try {
-            final Writer outputStreamWriter = new OutputStreamWriter(new FileOutputStream(file), document.getEncoding());
-            output = new PrintWriter(new BufferedWriter(outputStreamWriter));
-
-            // Process group definitions
-            output.print(generate(maxLineLength));
-        }
-        catch (FileNotFoundException fne) {
-            throw new AppException("generator.filenotfound");
-        }
-        catch (IOException ioe) {
-            throw new AppException("generator.error");
+            charset = Charset.forName(document.getEncoding());
         }
         catch (Exception e) {
             throw new AppException("generator.error");
         }
-        finally {
-            if (output != null) {
-                output.close();
-            }
-        }
+
+        new AtomicFileWriter(file, backupCount).write(channel -> {
+            final Writer output = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                    charset), WRITE_BUFFER_LENGTH);
+
+            write(output, maxLineLength);
+            output.flush();
+        });
     }
 
     /**
@@ -119,189 +172,347 @@ public final class FileGenerator {
         final StringBuilder output = new StringBuilder();
 
         try {
-            output.append("# ");
-            output.append(ResourceUtil.getString("application.fileheader"));
+            write(output, maxLineLength);
+        }
+        catch (Exception e) {
+            throw new AppException("generator.error");
+        }
+
+        return output.toString();
+    }
+
+    /**
+     * Sets the number of backups of the old contents kept when a file is generated.
+     *
+     * @param backupCount Number of backups, 0 for none
+     */
+    public void setBackupCount(int backupCount) {
+        this.backupCount = backupCount;
+    }
+
+    /**
+     * Generates authz content from the current document in memory and writes it to a Writer section by section, in
+     * the same form as {@link #generate(boolean)} returns it. The Writer is flushed but not closed.
+     *
+     * @param output            Writer that the content is written to
+     * @param allowMultipleLine true to wrap long group definitions over several lines
+     * @throws AppException
+     */
+    public void generate(Writer output, boolean allowMultipleLine) throws AppException {
+        generate(output, allowMultipleLine ? DEFAULT_MAX_LINE_LENGTH : -1);
+    }
+
+    /**
+     * Generates authz content from the current document in memory and writes it to a Writer section by section, in
+     * the same form as {@link #generate(int)} returns it. The Writer is flushed but not closed.
+     *
+     * @param output        Writer that the content is written to
+     * @param maxLineLength Maximum line length
+     * @throws AppException
+     */
+    public void generate(Writer output, int maxLineLength) throws AppException {
+        try {
+            write(output, maxLineLength);
+            output.flush();
+        }
+        catch (Exception e) {
+            throw new AppException("generator.error");
+        }
+    }
+
+    /**
+     * Writes the authz content. The document is only read: its lists are walked through sorted views, which cost
+     * nothing to fetch again while the document is unchanged, rather than being sorted in place. Group definitions
+     * are wrapped once the members on a line would pass the maximum line length, counting from the first member on
+     * the line.
+     *
+     * @param output        Destination of the content
+     * @param maxLineLength Maximum line length, or 0 or less to write each group definition on one line
+     * @throws AppException
+     * @throws IOException
+     */
+    private void write(Appendable output, int maxLineLength) throws AppException, IOException {
+        output.append("# ");
+        output.append(ResourceUtil.getString("application.fileheader"));
+        output.append(Constants.TEXT_NEW_LINE);
+        output.append(Constants.TEXT_NEW_LINE);
+
+        if (writeAliases(output) && document.getGroups().size() > 0) {
             output.append(Constants.TEXT_NEW_LINE);
+        }
+
+        writeGroups(output, maxLineLength);
+
+        if (document.getPaths().size() > 0) {
             output.append(Constants.TEXT_NEW_LINE);
+        }
+
+        final List<Path> paths = SortableList.sortedView(document.getPaths(), new PathComparator());
+
+        // Rendering into buffers on a single thread would only add a copy of the content
+        if (pool != null && pool.getParallelism() > 1 && document.getAccessRules().size() > minimumChunkRules) {
+            writePaths(output, paths);
+            return;
+        }
+
+        // Process access rules
+        for (Path path : paths) {
+            if (path.getAccessRules().size() != 0) {
+                writePath(output, path);
+            }
+        }
+    }
+
+    /**
+     * Writes the sections of sorted Paths, rendered on the pool. A chunk ends where the repository changes, or once it
+     * holds enough access rules, so that a large repository is shared between threads. Only a few chunks ahead of the
+     * one being written are rendered at a time, which bounds the memory that the buffers take.
+     *
+     * @param output Destination of the content
+     * @param paths  Paths in PathComparator order
+     * @throws AppException
+     * @throws IOException
+     */
+    private void writePaths(Appendable output, List<Path> paths) throws AppException, IOException {
+        final int chunkRules = Math.max(minimumChunkRules,
+                document.getAccessRules().size() / (pool.getParallelism() * 4));
+        final Deque<ForkJoinTask<StringBuilder>> pending = new ArrayDeque<>();
+        final int end = paths.size();
+        int chunkStart = 0;
 
-            // Process alias definitions
-            final StringBuilder aliases = new StringBuilder();
+        try {
+            while (chunkStart < end || !pending.isEmpty()) {
+                while (chunkStart < end && pending.size() < pool.getParallelism() * 2) {
+                    final Repository repository = paths.get(chunkStart).getRepository();
+                    int chunkEnd = chunkStart;
+                    int rules = 0;
+
+                    while (chunkEnd < end && rules < chunkRules && paths.get(chunkEnd).getRepository() == repository) {
+                        rules += paths.get(chunkEnd++).getAccessRules().size();
+                    }
 
-            Collections.sort(document.getUsers());
+                    final List<Path> chunk = paths.subList(chunkStart, chunkEnd);
 
-            for (User user : document.getUsers()) {
-                if (StringUtils.isBlank(user.getAlias())) {
-                    continue;
+                    pending.add(pool.submit(() -> renderPaths(chunk)));
+                    chunkStart = chunkEnd;
                 }
 
-                aliases.append(user.getAlias());
-                aliases.append(" = ");
-                aliases.append(user.getName());
-                aliases.append(Constants.TEXT_NEW_LINE);
+                final StringBuilder buffer;
+
+                try {
+                    buffer = pending.remove().join();
+                }
+                catch (RuntimeException re) {
+                    throw new AppException("generator.error");
+                }
+
+                output.append(buffer);
+            }
+        }
+        finally {
+            // A chunk that has started cannot be stopped, and must not read the Document once generating ends
+            for (final ForkJoinTask<StringBuilder> task : pending) {
+                task.quietlyJoin();
+            }
+        }
+    }
+
+    /**
+     * Renders the sections of Paths into a new buffer.
+     *
+     * @param paths Paths in PathComparator order
+     * @return Rendered sections
+     * @throws AppException
+     * @throws IOException
+     */
+    private StringBuilder renderPaths(List<Path> paths) throws AppException, IOException {
+        final StringBuilder buffer = new StringBuilder();
+
+        for (Path path : paths) {
+            if (path.getAccessRules().size() != 0) {
+                writePath(buffer, path);
             }
+        }
+
+        return buffer;
+    }
 
-            if (aliases.length() > 0) {
+    /**
+     * Writes the aliases section, if any User has an alias.
+     *
+     * @param output Destination of the content
+     * @return true if the section was written
+     * @throws IOException
+     */
+    boolean writeAliases(Appendable output) throws IOException {
+        boolean hasAliases = false;
+
+        for (User user : SortableList.sortedView(document.getUsers(), null)) {
+            if (StringUtils.isBlank(user.getAlias())) {
+                continue;
+            }
+
+            if (!hasAliases) {
                 output.append("[aliases]");
                 output.append(Constants.TEXT_NEW_LINE);
-                output.append(aliases);
 
-                if (document.getGroups().size() > 0) {
-                    output.append(Constants.TEXT_NEW_LINE);
-                }
+                hasAliases = true;
             }
 
-            // Process group definitions
-            output.append("[groups]");
+            output.append(user.getAlias());
+            output.append(" = ");
+            output.append(user.getName());
             output.append(Constants.TEXT_NEW_LINE);
+        }
 
-            Collections.sort(document.getGroups());
-
-            for (Group group : document.getGroups()) {
-                output.append(group.getName());
-                output.append(" = ");
+        return hasAliases;
+    }
 
-                String prefix = createPrefix(group.getName().length() + 3);
-                boolean isFirstGroupMember = true;
+    /**
+     * Writes the groups section.
+     *
+     * @param output        Destination of the content
+     * @param maxLineLength Maximum line length, or 0 or less to write each group definition on one line
+     * @throws IOException
+     */
+    void writeGroups(Appendable output, int maxLineLength) throws IOException {
+        output.append("[groups]");
+        output.append(Constants.TEXT_NEW_LINE);
 
-                if (!group.getGroupMembers().isEmpty()) {
-                    Collections.sort(group.getGroupMembers());
+        for (Group group : SortableList.sortedView(document.getGroups(), null)) {
+            output.append(group.getName());
+            output.append(" = ");
 
-                    Iterator<Group> members = group.getGroupMembers().iterator();
+            String prefix = createPrefix(group.getName().length() + 3);
+            boolean isFirstGroupMember = true;
 
-                    StringBuffer groupLine = new StringBuffer();
+            if (!group.getGroupMembers().isEmpty()) {
+                Iterator<Group> members = SortableList.sortedView(group.getGroupMembers(), null).iterator();
 
-                    while (members.hasNext()) {
-                        Group memberGroup = members.next();
+                int lineLength = 0;
 
-                        if (maxLineLength > 0 && !isFirstGroupMember
-                                && (groupLine.length() + memberGroup.getName().length() > maxLineLength)) {
-                            output.append(groupLine);
-                            output.append(Constants.TEXT_NEW_LINE);
-                            output.append(prefix);
+                while (members.hasNext()) {
+                    Group memberGroup = members.next();
 
-                            groupLine = new StringBuffer();
-                        }
+                    if (maxLineLength > 0 && !isFirstGroupMember
+                            && (lineLength + memberGroup.getName().length() > maxLineLength)) {
+                        output.append(Constants.TEXT_NEW_LINE);
+                        output.append(prefix);
 
-                        groupLine.append("@");
-                        groupLine.append(memberGroup.getName());
+                        lineLength = 0;
+                    }
 
-                        // Add comma if more members exist
-                        if (members.hasNext()) {
-                            groupLine.append(", ");
-                        }
+                    output.append("@");
+                    output.append(memberGroup.getName());
+                    lineLength += memberGroup.getName().length() + 1;
 
-                        isFirstGroupMember = false;
+                    // Add comma if more members exist
+                    if (members.hasNext()) {
+                        output.append(", ");
+                        lineLength += 2;
                     }
 
-                    output.append(groupLine);
+                    isFirstGroupMember = false;
                 }
+            }
 
-                if (!group.getUserMembers().isEmpty()) {
-                    if (!group.getGroupMembers().isEmpty()) {
-                        output.append(", ");
-                    }
+            if (!group.getUserMembers().isEmpty()) {
+                if (!group.getGroupMembers().isEmpty()) {
+                    output.append(", ");
+                }
 
-                    Collections.sort(group.getUserMembers());
-                    Iterator<User> members = group.getUserMembers().iterator();
+                Iterator<User> members = SortableList.sortedView(group.getUserMembers(), null).iterator();
 
-                    StringBuffer userLine = new StringBuffer();
+                int lineLength = 0;
 
-                    while (members.hasNext()) {
-                        User memberUser = members.next();
-                        String nameAlias = (StringUtils.isBlank(memberUser.getAlias()) ?
-                                memberUser.getName() : "&" + memberUser.getAlias());
+                while (members.hasNext()) {
+                    User memberUser = members.next();
+                    boolean hasAlias = !StringUtils.isBlank(memberUser.getAlias());
+                    String name = hasAlias ? memberUser.getAlias() : memberUser.getName();
+                    int nameLength = hasAlias ? name.length() + 1 : name.length();
 
-                        if (maxLineLength > 0 && !isFirstGroupMember
-                                && (userLine.length() + nameAlias.length() > maxLineLength)) {
-                            output.append(userLine);
-                            output.append(Constants.TEXT_NEW_LINE);
-                            output.append(prefix);
+                    if (maxLineLength > 0 && !isFirstGroupMember && (lineLength + nameLength > maxLineLength)) {
+                        output.append(Constants.TEXT_NEW_LINE);
+                        output.append(prefix);
 
-                            userLine = new StringBuffer();
-                        }
+                        lineLength = 0;
+                    }
 
-                        userLine.append(nameAlias);
+                    if (hasAlias) {
+                        output.append("&");
+                    }
 
-                        // Add comma if more members exist
-                        if (members.hasNext()) {
-                            userLine.append(", ");
-                        }
+                    output.append(name);
+                    lineLength += nameLength;
 
-                        isFirstGroupMember = false;
+                    // Add comma if more members exist
+                    if (members.hasNext()) {
+                        output.append(", ");
+                        lineLength += 2;
                     }
 
-                    output.append(userLine);
+                    isFirstGroupMember = false;
                 }
-
-                output.append(Constants.TEXT_NEW_LINE);
             }
 
-            if (document.getPaths().size() > 0) {
-                output.append(Constants.TEXT_NEW_LINE);
-            }
+            output.append(Constants.TEXT_NEW_LINE);
+        }
+    }
 
-            // Process access rules
-            Collections.sort(document.getPaths(), new PathComparator());
+    /**
+     * Writes the section of a Path, followed by a blank line.
+     *
+     * @param output Destination of the content
+     * @param path   Path whose AccessRules are written
+     * @throws AppException
+     * @throws IOException
+     */
+    void writePath(Appendable output, Path path) throws AppException, IOException {
+        if (path.getRepository() == null) {
+            // Server permissions
+            output.append("[");
+            output.append(path.getPath());
+            output.append("]");
+            output.append(Constants.TEXT_NEW_LINE);
+        }
+        else {
+            // Path permissions
+            output.append("[");
+            output.append(path.getRepository().getName());
+            output.append(":");
+            output.append(path.getPath());
+            output.append("]");
+            output.append(Constants.TEXT_NEW_LINE);
+        }
 
-            for (Path path : document.getPaths()) {
-                if (path.getAccessRules().size() == 0) {
-                    continue;
-                }
+        for (AccessRule rule : SortableList.sortedView(path.getAccessRules(), null)) {
+            if (rule.getGroup() != null) {
+                output.append("@");
+                output.append(rule.getGroup().getName());
+                output.append(" = ");
+                output.append(rule.getLevel());
+                output.append(Constants.TEXT_NEW_LINE);
+            }
+            else if (rule.getUser() != null) {
+                User user = rule.getUser();
 
-                if (path.getRepository() == null) {
-                    // Server permissions
-                    output.append("[");
-                    output.append(path.getPath());
-                    output.append("]");
-                    output.append(Constants.TEXT_NEW_LINE);
+                if (user.getAlias() == null) {
+                    output.append(user.getName());
                 }
                 else {
-                    // Path permissions
-                    output.append("[");
-                    output.append(path.getRepository().getName());
-                    output.append(":");
-                    output.append(path.getPath());
-                    output.append("]");
-                    output.append(Constants.TEXT_NEW_LINE);
-                }
-
-                Collections.sort(path.getAccessRules());
-
-                for (AccessRule rule : path.getAccessRules()) {
-                    if (rule.getGroup() != null) {
-                        output.append("@");
-                        output.append(rule.getGroup().getName());
-                        output.append(" = ");
-                        output.append(rule.getLevel());
-                        output.append(Constants.TEXT_NEW_LINE);
-                    }
-                    else if (rule.getUser() != null) {
-                        User user = rule.getUser();
-
-                        if (user.getAlias() == null) {
-                            output.append(user.getName());
-                        }
-                        else {
-                            output.append("&");
-                            output.append(user.getAlias());
-                        }
-
-                        output.append(" = ");
-                        output.append(rule.getLevel());
-                        output.append(Constants.TEXT_NEW_LINE);
-                    }
-                    else {
-                        throw new AppException("generator.error");
-                    }
+                    output.append("&");
+                    output.append(user.getAlias());
                 }
 
+                output.append(" = ");
+                output.append(rule.getLevel());
                 output.append(Constants.TEXT_NEW_LINE);
             }
-        }
-        catch (Exception e) {
-            throw new AppException("generator.error");
+            else {
+                throw new AppException("generator.error");
+            }
         }
 
-        return output.toString();
+        output.append(Constants.TEXT_NEW_LINE);
     }
 }
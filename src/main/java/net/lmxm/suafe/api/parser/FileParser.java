@@ -22,17 +22,28 @@ import net.lmxm.suafe.api.beans.Document;
 import net.lmxm.suafe.api.beans.Group;
 import net.lmxm.suafe.api.beans.Path;
 import net.lmxm.suafe.api.beans.Repository;
+import net.lmxm.suafe.api.beans.User;
 import net.lmxm.suafe.api.exceptions.ParserException;
 import net.lmxm.suafe.exceptions.AppException;
 import net.lmxm.suafe.exceptions.ValidatorException;
 
 import javax.annotation.Nonnull;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
-import java.util.StringTokenizer;
-
-import static org.apache.commons.lang3.StringUtils.isBlank;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Subversion user authentication file parser. Reads and parse auth file and populates the Document object.
@@ -40,6 +51,16 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
  * @author Shaun Johnson
  */
 public final class FileParser {
+    /**
+     * Smallest number of bytes of rule sections parsed as one chunk, unless the file is split more finely to give
+     * every thread of the pool several chunks.
+     */
+    private static final int DEFAULT_CHUNK_LENGTH = 1 << 20;
+
+    /**
+     * Number of characters read from a Reader at a time.
+     */
+    private static final int READ_BUFFER_LENGTH = 8192;
 
     private enum State {
         STATE_PROCESS_ALIASES, STATE_PROCESS_GROUPS, STATE_PROCESS_RULES, STATE_PROCESS_SERVER_RULES, STATE_START
@@ -47,6 +68,20 @@ public final class FileParser {
 
     ;
 
+    /**
+     * Source of the lines of an authz file.
+     */
+    private interface LineSource {
+        /**
+         * Reads the next line.
+         *
+         * @param line Line to be filled
+         * @return true if a line was read, false at the end of the input
+         * @throws IOException if the input cannot be read
+         */
+        boolean readLine(AuthzLine line) throws IOException;
+    }
+
     /**
      * Group currently being processed.
      */
@@ -62,64 +97,164 @@ public final class FileParser {
      */
     private State currentState = null;
 
-    public Document parse(final BufferedReader input) throws ParserException, ValidatorException {
-        final Document document = new Document();
-        int lineNumber = 0;
+    /**
+     * Names, paths and access levels read so far, only set while a file is being parsed.
+     */
+    private NamePool names = null;
 
-        currentState = State.STATE_START;
+    /**
+     * Line on which each group that is a member of another group, but has not been defined yet, was first named. Only
+     * set while a file is being checked by lint, since a parse lets groups be used before they are defined.
+     */
+    private Map<String, Integer> undefinedGroups = null;
 
-        try {
-            String line = input.readLine();
-            lineNumber++;
+    /**
+     * Pool that the rule sections of mapped files are parsed on, null to parse them on the calling thread.
+     */
+    private final ForkJoinPool pool;
 
-            document.initialize();
+    /**
+     * Smallest number of bytes of rule sections parsed as one chunk.
+     */
+    private final int minimumChunkLength;
 
-            while (line != null) {
-                parseLine(document, lineNumber, line);
+    /**
+     * Cache of snapshots that files are loaded from when they have not changed, null to always parse them.
+     */
+    private SnapshotCache snapshotCache = null;
 
-                line = input.readLine();
-                lineNumber++;
-            }
-        }
-        catch (final IOException ioe) {
-            throw ParserException.generateException(lineNumber, "parser.error");
-        }
-        catch (final ParserException pe) {
-            throw pe;
-        }
-        catch (final AppException ae) {
-            throw ParserException.generateException(lineNumber, ae);
-        }
-        catch (final Exception e) {
-            throw ParserException.generateException(lineNumber, "parser.error");
-        }
+    /**
+     * Creates a parser that parses on the calling thread.
+     */
+    public FileParser() {
+        this(null);
+    }
 
-        return document;
+    /**
+     * Creates a parser that parses the rule sections of large files in parallel. The aliases and groups are parsed
+     * first, then the rule sections are split into chunks that are parsed on the pool and applied to the Document in
+     * file order, so the Document is the same as the one a sequential parse gives. Only files read by
+     * {@link #parse(File, String)} in an encoding that can be memory mapped are split, any other input is parsed on
+     * the calling thread.
+     *
+     * @param pool Pool to parse on, null to parse on the calling thread
+     */
+    public FileParser(final ForkJoinPool pool) {
+        this(pool, DEFAULT_CHUNK_LENGTH);
+    }
+
+    /**
+     * Creates a parser that parses rule sections in chunks of at least the specified length.
+     *
+     * @param pool               Pool to parse on, null to parse on the calling thread
+     * @param minimumChunkLength Smallest number of bytes parsed as one chunk
+     */
+    FileParser(final ForkJoinPool pool, final int minimumChunkLength) {
+        this.pool = pool;
+        this.minimumChunkLength = minimumChunkLength;
+    }
+
+    public Document parse(final BufferedReader input) throws ParserException, ValidatorException {
+        return parse((Reader) input);
     }
 
     /**
-     * Reads and parses information from the specified authz file.
+     * Parses the text of an authz file held in memory, in place. The text is split into lines and tokenized straight
+     * from the CharSequence, so it is neither copied nor encoded. A byte order mark at the start of the text is
+     * skipped.
+     *
+     * @param input Text to be parsed
+     * @return Populated Document
+     * @throws ParserException
+     */
+    public Document parse(@Nonnull final CharSequence input) throws ParserException {
+        return new StreamingFileParser(this).append(input).finish();
+    }
+
+    /**
+     * Reads and parses information from the specified authz file, detecting its encoding.
      *
      * @param file File to be processed.
      * @throws ParserException
      * @throws ValidatorException
      */
     public Document parse(final File file) throws ParserException, ValidatorException {
+        return parse(file, null);
+    }
+
+    /**
+     * Reads and parses information from the specified authz file. The file is opened once: its encoding is detected
+     * from the first bytes, unless an encoding is specified, and the same bytes are then parsed. Files in an encoding
+     * that MappedLineReader supports are memory mapped and parsed straight from their bytes, and the mapping is
+     * released as soon as parsing ends. Any other file is read through a BufferedReader over the same channel. A byte
+     * order mark is not treated as part of the first line.
+     * <p>
+     * If a SnapshotCache is set and holds a snapshot of the file that matches its contents, the Document is loaded from
+     * the snapshot instead. Otherwise the file is parsed and a snapshot of it is stored for next time.
+     *
+     * @param file     File to be processed.
+     * @param encoding Encoding of the file, or null to detect it
+     * @throws ParserException
+     * @throws ValidatorException
+     */
+    public Document parse(final File file, final String encoding) throws ParserException, ValidatorException {
         Document document = null;
-        BufferedReader input = null;
         final int lineNumber = 0;
 
         currentState = State.STATE_START;
 
         validateReadable(file);
 
+        final Charset charset;
+
         try {
-            final String encoding = FileEncodingUtils.detect(file, "ISO-8859-1");
-            input = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding));
-            document = parse(input);
-            document.setEncoding(encoding);
+            charset = (encoding == null) ? null : Charset.forName(encoding);
+        }
+        catch (final IllegalArgumentException iae) {
+            throw ParserException.generateException(lineNumber, "parser.unsupportedencoding", encoding);
+        }
+
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final boolean mappable = channel.size() <= Integer.MAX_VALUE;
+            final ByteBuffer bytes = mappable ? channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    : FileEncodingUtils.readPrefix(channel);
+
+            try {
+                final String fileEncoding = (charset == null) ? FileEncodingUtils.detect(bytes, "ISO-8859-1")
+                        : encoding;
+                final Charset fileCharset = (charset == null) ? Charset.forName(fileEncoding) : charset;
+                final int byteOrderMarkLength = FileEncodingUtils.byteOrderMarkLength(bytes, fileCharset.name());
+                final boolean cached = mappable && snapshotCache != null && snapshotCache.isCached(bytes.limit());
+
+                if (cached) {
+                    document = snapshotCache.load(file, bytes, fileEncoding);
+                }
+
+                if (document == null) {
+                    if (mappable && MappedLineReader.isSupported(fileCharset)) {
+                        document = parse(bytes, byteOrderMarkLength, fileCharset);
+                    }
+                    else {
+                        channel.position(byteOrderMarkLength);
+
+                        final BufferedReader input = new BufferedReader(new InputStreamReader(
+                                Channels.newInputStream(channel), fileCharset));
+
+                        document = parse(input);
+                    }
+
+                    if (cached) {
+                        snapshotCache.store(file, bytes, fileEncoding, document);
+                    }
+                }
+
+                document.setEncoding(fileEncoding);
+            }
+            finally {
+                MappedFileUnmapper.unmap(bytes);
+            }
         }
-        catch (final FileNotFoundException fne) {
+        catch (final NoSuchFileException fne) {
             throw ParserException.generateException(lineNumber, "parser.filenotfound");
         }
         catch (final ParserException pe) {
@@ -128,6 +263,25 @@ public final class FileParser {
         catch (final Exception e) {
             throw ParserException.generateException(lineNumber, "parser.error");
         }
+
+        return document;
+    }
+
+    public Document parse(@Nonnull final String input) throws ParserException, ValidatorException {
+        return parse((CharSequence) input);
+    }
+
+    public Document parse(final InputStream inputStream) throws ParserException, ValidatorException {
+        Document document = null;
+        BufferedReader input = null;
+
+        currentState = State.STATE_START;
+
+        try {
+            input = new BufferedReader(new InputStreamReader(inputStream));
+
+            document = parse(input);
+        }
         finally {
             if (input != null) {
                 try {
@@ -142,59 +296,639 @@ public final class FileParser {
         return document;
     }
 
-    public Document parse(@Nonnull final String input) throws ParserException, ValidatorException {
-        try (final ByteArrayInputStream stringReader = new ByteArrayInputStream(input.getBytes())) {
-            return parse(stringReader);
+    /**
+     * Parses authz text read from a Reader. The text is read in blocks that are parsed as they arrive, without creating
+     * a String for every line, see {@link StreamingFileParser}. The Reader is not closed.
+     *
+     * @param input Reader of the text to be parsed
+     * @return Populated Document
+     * @throws ParserException
+     */
+    public Document parse(@Nonnull final Reader input) throws ParserException {
+        final StreamingFileParser stream = new StreamingFileParser(this);
+        final char[] buffer = new char[READ_BUFFER_LENGTH];
+
+        try {
+            for (int count = input.read(buffer); count != -1; count = input.read(buffer)) {
+                stream.append(buffer, 0, count);
+            }
         }
-        catch (IOException e) {
-            throw ParserException.generateException(-1, "parser.error");
+        catch (final IOException ioe) {
+            throw ParserException.generateException(stream.getLineNumber(), "parser.error");
         }
+
+        return stream.finish();
     }
 
-    public Document parse(final InputStream inputStream) throws ParserException, ValidatorException {
-        Document document = null;
-        BufferedReader input = null;
+    /**
+     * Parses the aliases, groups and server level sections of an authz file, and leaves the sections of each
+     * repository to be parsed the first time the Document looks the repository up by name. A quick scan of the file
+     * finds where every section starts, so a query about one repository costs time and memory in proportion to that
+     * repository rather than to the whole file. Errors in a repository's sections are reported when it is loaded.
+     * <p>
+     * The file is read into memory to be indexed, and only the positions of the sections of each repository are kept
+     * afterwards. Their sections are read from the file again when the repository is loaded, so the file must not
+     * change in the meantime. Files larger than Integer.MAX_VALUE bytes, or in an encoding that MappedLineReader does
+     * not support, are parsed in full.
+     *
+     * @param file     File to be processed.
+     * @param encoding Encoding of the file, or null to detect it
+     * @return Document holding the aliases, groups and server level Paths of the file
+     * @throws ParserException
+     * @throws ValidatorException
+     * @see Document#isPartiallyLoaded()
+     */
+    public Document parseLazily(final File file, final String encoding) throws ParserException, ValidatorException {
+        final int lineNumber = 0;
+
+        validateReadable(file);
+
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer prefix = FileEncodingUtils.readPrefix(channel);
+            final String fileEncoding = (encoding == null) ? FileEncodingUtils.detect(prefix, "ISO-8859-1") : encoding;
+            final Charset charset = Charset.forName(fileEncoding);
+
+            if (channel.size() > Integer.MAX_VALUE || !MappedLineReader.isSupported(charset)) {
+                return parse(file, encoding);
+            }
+
+            final ByteBuffer bytes = FileEncodingUtils.readFully(channel);
+            final SectionIndex sections = SectionIndex.scan(bytes, FileEncodingUtils.byteOrderMarkLength(bytes,
+                    charset.name()), bytes.limit(), charset);
+            final LazyRepositoryLoader loader = new LazyRepositoryLoader(file, sections);
+            final Document document = new Document();
+            final AuthzLine line = new AuthzLine();
+
+            currentState = State.STATE_START;
+            names = new NamePool();
+
+            document.initialize();
+            document.beginBulkLoad();
+
+            for (int index = 0; index < sections.size(); index++) {
+                final String repositoryName = sections.isRuleSection(index)
+                        ? sections.readRepositoryName(index, line, names) : null;
+
+                if (repositoryName == null) {
+                    parseSection(document, sections, index);
+                }
+                else {
+                    loader.addSection(repositoryName, index);
+                }
+            }
+
+            document.endBulkLoad();
+            document.setEncoding(fileEncoding);
+            sections.release();
+
+            if (!loader.isEmpty()) {
+                document.setRepositoryLoader(loader);
+            }
+
+            return document;
+        }
+        catch (final NoSuchFileException fne) {
+            throw ParserException.generateException(lineNumber, "parser.filenotfound");
+        }
+        catch (final ParserException | ValidatorException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            throw ParserException.generateException(lineNumber, "parser.error");
+        }
+        finally {
+            currentState = null;
+            names = null;
+        }
+    }
+
+    /**
+     * Checks an authz file for errors, carrying on past each one so that every problem in the file is reported in one
+     * run. The file is read the same way as by {@link #parse(File, String)}, but is not loaded from or stored in a
+     * SnapshotCache. After an error in a section header, the rest of that section is skipped, so that its rules are
+     * not reported again as errors against the wrong section.
+     *
+     * @param file     File to be checked.
+     * @param encoding Encoding of the file, or null to detect it
+     * @return Errors found, in line order, empty if the file is valid
+     * @throws ParserException
+     * @throws ValidatorException
+     */
+    public List<ParserException> lint(final File file, final String encoding) throws ParserException,
+            ValidatorException {
+        final int lineNumber = 0;
+
+        validateReadable(file);
+
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final boolean mappable = channel.size() <= Integer.MAX_VALUE;
+            final ByteBuffer bytes = mappable ? channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    : FileEncodingUtils.readPrefix(channel);
+
+            try {
+                final String fileEncoding = (encoding == null) ? FileEncodingUtils.detect(bytes, "ISO-8859-1")
+                        : encoding;
+                final Charset charset = Charset.forName(fileEncoding);
+                final int byteOrderMarkLength = FileEncodingUtils.byteOrderMarkLength(bytes, charset.name());
+
+                if (mappable && MappedLineReader.isSupported(charset)) {
+                    return lint(new MappedLineReader(bytes, byteOrderMarkLength, bytes.limit(), charset)::readLine);
+                }
+
+                channel.position(byteOrderMarkLength);
+
+                final BufferedReader input = new BufferedReader(new InputStreamReader(
+                        Channels.newInputStream(channel), charset));
+
+                return lint(line -> {
+                    final String text = input.readLine();
+
+                    if (text == null) {
+                        return false;
+                    }
+
+                    line.set(text);
+
+                    return true;
+                });
+            }
+            finally {
+                MappedFileUnmapper.unmap(bytes);
+            }
+        }
+        catch (final NoSuchFileException fne) {
+            throw ParserException.generateException(lineNumber, "parser.filenotfound");
+        }
+        catch (final IllegalArgumentException iae) {
+            throw ParserException.generateException(lineNumber, "parser.unsupportedencoding", encoding);
+        }
+        catch (final Exception e) {
+            throw ParserException.generateException(lineNumber, "parser.error");
+        }
+    }
+
+    /**
+     * Parses the contents of a mapped file, in parallel if the parser has a pool.
+     *
+     * @param bytes   File contents
+     * @param start   Position of the first line, after any byte order mark
+     * @param charset Encoding of the file, which MappedLineReader must support
+     * @return Populated Document
+     * @throws ParserException
+     */
+    Document parse(final ByteBuffer bytes, final int start, final Charset charset) throws ParserException {
+        if (pool != null) {
+            return parseParallel(bytes, start, charset);
+        }
+
+        return parse(new MappedLineReader(bytes, start, bytes.limit(), charset)::readLine);
+    }
+
+    /**
+     * Parses every line of the input. Line numbers in errors count from 1, an error while reading counts as being on
+     * the line that could not be read.
+     *
+     * @param input Lines to be parsed
+     * @return Populated Document
+     * @throws ParserException
+     */
+    private Document parse(final LineSource input) throws ParserException {
+        final Document document = new Document();
+        final AuthzLine line = new AuthzLine();
+        int lineNumber = 1;
 
         currentState = State.STATE_START;
+        names = new NamePool();
 
         try {
-            input = new BufferedReader(new InputStreamReader(inputStream));
+            document.initialize();
+            document.beginBulkLoad();
 
-            document = parse(input);
+            while (input.readLine(line)) {
+                parseLine(document, lineNumber, line);
+
+                lineNumber++;
+            }
+
+            document.endBulkLoad();
+        }
+        catch (final Exception e) {
+            throw toParserException(lineNumber, e);
         }
         finally {
-            if (input != null) {
-                try {
-                    input.close();
+            names = null;
+        }
+
+        return document;
+    }
+
+    /**
+     * Parses every line of the input into a scratch Document, collecting errors instead of stopping at the first one.
+     * A line in error leaves any group definition it continued, and the continuation lines after a group line in error
+     * are skipped with it. A section header in error also skips the rest of its section. An error while reading ends the check. Groups that are named as members but never defined are
+     * reported on the line that first names them.
+     *
+     * @param input Lines to be checked
+     * @return Errors found, in line order
+     */
+    private List<ParserException> lint(final LineSource input) {
+        final List<ParserException> errors = new ArrayList<>();
+        final Document document = new Document();
+        final AuthzLine line = new AuthzLine();
+        boolean skipSection = false;
+        boolean skipContinuation = false;
+        int lineNumber = 1;
+
+        currentGroup = null;
+        currentPath = null;
+        currentState = State.STATE_START;
+        names = new NamePool();
+        undefinedGroups = new HashMap<>();
+
+        try {
+            document.initialize();
+            document.beginBulkLoad();
+
+            while (input.readLine(line)) {
+                final boolean header = line.length() > 0 && line.charAt(0) == '[';
+                final boolean continuation = line.length() > 0 && line.charAt(0) == ' ';
+
+                if (!(continuation && skipContinuation) && (header || !skipSection)) {
+                    skipSection = false;
+                    skipContinuation = false;
+
+                    try {
+                        parseLine(document, lineNumber, line);
+                    }
+                    catch (final Exception e) {
+                        errors.add(toParserException(lineNumber, e));
+                        currentGroup = null;
+                        skipSection = header;
+                        skipContinuation = !header && currentState == State.STATE_PROCESS_GROUPS;
+                    }
                 }
-                catch (final IOException ioe) {
-                    // Do nothing
+
+                lineNumber++;
+            }
+        }
+        catch (final Exception e) {
+            errors.add(toParserException(lineNumber, e));
+        }
+
+        for (final Map.Entry<String, Integer> entry : undefinedGroups.entrySet()) {
+            errors.add(ParserException.generateException(entry.getValue(), "parser.syntaxerror.undefinedgroup",
+                    entry.getKey()));
+        }
+
+        errors.sort(Comparator.comparingInt(ParserException::getLineNumber));
+
+        currentGroup = null;
+        currentPath = null;
+        currentState = null;
+        names = null;
+        undefinedGroups = null;
+
+        return errors;
+    }
+
+    /**
+     * Starts a Document for lines that are handed to the parser one at a time through {@link #parseNextLine}, as a
+     * StreamingFileParser does. {@link #endLines} completes the Document.
+     *
+     * @return New Document
+     */
+    Document beginLines() {
+        final Document document = new Document();
+
+        currentGroup = null;
+        currentPath = null;
+        currentState = State.STATE_START;
+        names = new NamePool();
+
+        document.initialize();
+        document.beginBulkLoad();
+
+        return document;
+    }
+
+    /**
+     * Completes a Document started by {@link #beginLines}.
+     *
+     * @param document Document to be completed
+     */
+    void endLines(final Document document) {
+        document.endBulkLoad();
+        names = null;
+    }
+
+    /**
+     * Parses the next line of a Document started by {@link #beginLines}.
+     *
+     * @param document   Document to be updated
+     * @param lineNumber Number of the line
+     * @param line       Line to be parsed
+     * @throws ParserException
+     */
+    void parseNextLine(final Document document, final int lineNumber, final AuthzLine line) throws ParserException {
+        try {
+            parseLine(document, lineNumber, line);
+        }
+        catch (final Exception e) {
+            throw toParserException(lineNumber, e);
+        }
+    }
+
+    /**
+     * Parses one section of a mapped file into an existing Document. The parser carries its state over from one call
+     * to the next, so sections passed in file order are checked the same way as they are in a whole file, and errors
+     * give the line numbers of the whole file.
+     *
+     * @param document Document to be updated
+     * @param sections Index of the file
+     * @param index    Index of the section to be parsed
+     * @throws ParserException
+     */
+    void parseSection(final Document document, final SectionIndex sections, final int index) throws ParserException {
+        parseSection(document, sections.newReader(index), sections.getLineNumber(index));
+    }
+
+    /**
+     * Parses the lines of one section into an existing Document, the same way as
+     * {@link #parseSection(Document, SectionIndex, int)}.
+     *
+     * @param document  Document to be updated
+     * @param reader    Reader for the lines of the section
+     * @param firstLine Line number of the first line of the section
+     * @throws ParserException
+     */
+    void parseSection(final Document document, final MappedLineReader reader, final int firstLine)
+            throws ParserException {
+        final AuthzLine line = new AuthzLine();
+        int lineNumber = firstLine;
+
+        if (currentState == null) {
+            currentState = State.STATE_START;
+        }
+
+        if (names == null) {
+            names = new NamePool();
+        }
+
+        try {
+            while (reader.readLine(line)) {
+                parseLine(document, lineNumber, line);
+
+                lineNumber++;
+            }
+        }
+        catch (final Exception e) {
+            throw toParserException(lineNumber, e);
+        }
+    }
+
+    /**
+     * Parses the contents of a mapped file in two phases. The lines before the first rule section, which hold the
+     * aliases and groups, are parsed on the calling thread. The rest of the file is split into RuleChunks at section
+     * headers, which are parsed on the pool and applied to the Document in file order. Only a few chunks per thread
+     * are parsed ahead of the one being applied, which limits how much memory the parsed chunks hold.
+     *
+     * @param bytes   File contents
+     * @param start   Position of the first line
+     * @param charset Encoding of the file
+     * @return Populated Document
+     * @throws ParserException
+     */
+    private Document parseParallel(final ByteBuffer bytes, final int start, final Charset charset)
+            throws ParserException {
+        final Document document = new Document();
+        final AuthzLine line = new AuthzLine();
+        final MappedLineReader reader = new MappedLineReader(bytes, start, bytes.limit(), charset);
+        int lineNumber = 1;
+
+        currentState = State.STATE_START;
+        names = new NamePool();
+
+        try {
+            document.initialize();
+            document.beginBulkLoad();
+
+            int position = reader.getPosition();
+
+            while (reader.readLine(line)) {
+                if (isRuleSectionHeader(line)) {
+                    parseRuleSections(document, bytes, position, lineNumber, charset);
+                    break;
                 }
+
+                parseLine(document, lineNumber, line);
+
+                lineNumber++;
+                position = reader.getPosition();
             }
+
+            document.endBulkLoad();
+        }
+        catch (final Exception e) {
+            throw toParserException(lineNumber, e);
+        }
+        finally {
+            names = null;
         }
 
         return document;
     }
 
-    private void parseAlias(final Document document, final int lineNumber, final String line) throws AppException {
+    /**
+     * Parses the rule sections of a mapped file on the pool and applies them to the Document in file order.
+     *
+     * @param document        Document holding the aliases and groups
+     * @param bytes           File contents
+     * @param start           Position of the first rule section header
+     * @param firstLineNumber Line number of the first rule section header
+     * @param charset         Encoding of the file
+     * @throws ParserException
+     */
+    private void parseRuleSections(final Document document, final ByteBuffer bytes, final int start,
+                                   final int firstLineNumber, final Charset charset) throws ParserException {
+        final Map<String, Group> groups = new HashMap<>();
+        final Map<String, User> users = new HashMap<>();
+
+        for (final Group group : document.getGroups()) {
+            groups.put(group.getName(), group);
+        }
+
+        for (final User user : document.getUsers()) {
+            // Rules for users with an alias are left to parseUserAccessRule, which reports them as errors
+            if (user.getAlias() == null) {
+                users.put(user.getName(), user);
+            }
+        }
+
+        final int end = bytes.limit();
+        final int chunkLength = Math.max(minimumChunkLength, (end - start) / (pool.getParallelism() * 4));
+        final Deque<ForkJoinTask<RuleChunk>> pending = new ArrayDeque<>();
+        final AuthzLine line = new AuthzLine();
+        int chunkStart = start;
+        int lineNumber = firstLineNumber;
+
+        try {
+            while (chunkStart < end || !pending.isEmpty()) {
+                while (chunkStart < end && pending.size() < pool.getParallelism() * 2) {
+                    final int chunkEnd = findRuleSectionHeader(bytes, (int) Math.min(end, (long) chunkStart
+                            + chunkLength), end);
+
+                    pending.add(pool.submit(new RuleChunk(bytes, chunkStart, chunkEnd, charset, groups,
+                            users)::parse));
+                    chunkStart = chunkEnd;
+                }
+
+                final RuleChunk chunk;
+
+                try {
+                    chunk = pending.remove().join();
+                }
+                catch (final RuntimeException re) {
+                    throw ParserException.generateException(lineNumber, "parser.error");
+                }
+
+                applyChunk(document, chunk, lineNumber, line);
+                lineNumber += chunk.getLineCount();
+            }
+        }
+        finally {
+            // A chunk that has started cannot be stopped, and the file is unmapped once parsing ends
+            for (final ForkJoinTask<RuleChunk> task : pending) {
+                task.quietlyJoin();
+            }
+        }
+    }
+
+    /**
+     * Applies the entries of a parsed RuleChunk to the Document.
+     *
+     * @param document        Document to be updated
+     * @param chunk           Parsed chunk
+     * @param firstLineNumber Line number of the first line of the chunk
+     * @param line            Line to be filled with the text of LINE entries
+     * @throws ParserException
+     */
+    private void applyChunk(final Document document, final RuleChunk chunk, final int firstLineNumber,
+                            final AuthzLine line) throws ParserException {
+        for (int i = 0; i < chunk.getEntryCount(); i++) {
+            final int lineNumber = firstLineNumber + chunk.getLineIndex(i);
+
+            try {
+                switch (chunk.getKind(i)) {
+                    case RuleChunk.LINE:
+                        line.set((String) chunk.getSubject(i));
+                        parseLine(document, lineNumber, line);
+                        break;
+
+                    case RuleChunk.GROUP_RULE:
+                        document.addAccessRuleForGroup(currentPath, (Group) chunk.getSubject(i), chunk.getLevel(i));
+                        break;
+
+                    case RuleChunk.USER_RULE:
+                        document.addAccessRuleForUser(currentPath, (User) chunk.getSubject(i), chunk.getLevel(i));
+                        break;
+
+                    default:
+                        document.addAccessRuleForUser(currentPath, (String) chunk.getSubject(i), chunk.getLevel(i));
+                        break;
+                }
+            }
+            catch (final Exception e) {
+                throw toParserException(lineNumber, e);
+            }
+        }
+    }
+
+    /**
+     * Finds the first rule section header that starts a line after the specified position.
+     *
+     * @param bytes File contents
+     * @param from  Position to search from
+     * @param end   Position after the last byte of the file
+     * @return Position of the header, or the end of the file if there is none
+     */
+    private static int findRuleSectionHeader(final ByteBuffer bytes, final int from, final int end) {
+        int position = from;
+
+        while (position < end) {
+            final byte value = bytes.get(position++);
+
+            if (value == '\r' && position < end && bytes.get(position) == '\n') {
+                position++;
+            }
+
+            if ((value == '\n' || value == '\r') && position < end && bytes.get(position) == '[') {
+                return position;
+            }
+        }
+
+        return end;
+    }
+
+    /**
+     * Checks whether a line is the header of a server or repository rule section. Every line from the first of these
+     * on is part of the rule sections.
+     */
+    private static boolean isRuleSectionHeader(final AuthzLine line) {
+        return line.length() > 0 && line.charAt(0) == '[' && !line.contentEquals("[aliases]")
+                && !line.contentEquals("[groups]");
+    }
+
+    /**
+     * Converts an exception raised while parsing a line into the ParserException reported for that line.
+     */
+    private static ParserException toParserException(final int lineNumber, final Exception e) {
+        if (e instanceof ParserException) {
+            return (ParserException) e;
+        }
+
+        if (e instanceof AppException) {
+            return ParserException.generateException(lineNumber, e);
+        }
+
+        return ParserException.generateException(lineNumber, "parser.error");
+    }
+
+    /**
+     * Checks whether the last character of a line, ignoring trailing whitespace, is a comma.
+     */
+    private static boolean endsWithComma(final AuthzLine line) {
+        int end = line.length();
+
+        while (end > 0 && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        return end > 0 && line.charAt(end - 1) == ',';
+    }
+
+    private static boolean isMemberDelimiter(final char character) {
+        return character == ' ' || character == ',';
+    }
+
+    private void parseAlias(final Document document, final int lineNumber, final AuthzLine line) throws AppException {
         final int index = line.indexOf('=');
 
-        if (index == 0) {
+        if (index <= 0) {
             // Invalid syntax
             throw ParserException.generateException(lineNumber, "parser.syntaxerror.invalidaliasdefinition");
         }
 
         // New Group
-        final String aliasName = line.substring(0, index).trim();
-        final String userName = line.substring(index + 1).trim();
+        final String aliasName = names.internTrimmed(line, 0, index);
+        final String userName = names.internTrimmed(line, index + 1, line.length());
 
         document.addUser(userName, aliasName);
     }
 
-    private void parseGroup(final Document document, final int lineNumber, final String line) throws AppException {
+    private void parseGroup(final Document document, final int lineNumber, final AuthzLine line) throws AppException {
         final int index = line.indexOf('=');
 
-        if (index == 0) {
+        if (index <= 0) {
             // Invalid syntax
             throw ParserException.generateException(lineNumber, "parser.syntaxerror.invalidgroupdefinition");
         }
@@ -205,40 +939,20 @@ public final class FileParser {
         }
 
         // New Group
-        final String name = line.substring(0, index).trim();
-        final String members = line.substring(index + 1).trim();
-        final StringTokenizer tokens = new StringTokenizer(members, " ,");
-        final int memberCount = tokens.countTokens();
+        final String name = names.internTrimmed(line, 0, index);
         final List<String> aliasMembers = new ArrayList<String>();
         final List<String> groupMembers = new ArrayList<String>();
         final List<String> userMembers = new ArrayList<String>();
 
-        for (int i = 0; i < memberCount; i++) {
-            final String member = tokens.nextToken();
-
-            if (member.charAt(0) == '@') {
-                final String memberGroupName = member.substring(1, member.length());
+        parseMembers(line, index + 1, aliasMembers, groupMembers, userMembers);
 
-                if (!groupMembers.contains(memberGroupName)) {
-                    groupMembers.add(memberGroupName);
-                }
-            }
-            else if (member.charAt(0) == '&') {
-                final String memberAliasName = member.substring(1, member.length());
+        Group existingGroup = document.findGroup(name);
 
-                if (!aliasMembers.contains(memberAliasName)) {
-                    aliasMembers.add(memberAliasName);
-                }
-            }
-            else {
-                if (!userMembers.contains(member)) {
-                    userMembers.add(member);
-                }
-            }
+        if (undefinedGroups != null) {
+            undefinedGroups.remove(name);
+            recordUndefinedGroups(document, lineNumber, groupMembers);
         }
 
-        Group existingGroup = document.findGroup(name);
-
         if (existingGroup == null) {
             try {
                 existingGroup = document.addGroupByName(name, groupMembers, userMembers, aliasMembers);
@@ -262,20 +976,22 @@ public final class FileParser {
         }
 
         // Keep group for next line if there are more lines to process
-        final String slimLine = line.trim();
-
-        if (slimLine.charAt(slimLine.length() - 1) == ',') {
+        if (endsWithComma(line)) {
             currentGroup = existingGroup;
         }
     }
 
-    private void parseGroupAccessRule(final Document document, final int lineNumber, final String line)
+    private void parseGroupAccessRule(final Document document, final int lineNumber, final AuthzLine line)
             throws AppException {
         // Group Access
         final int index = line.indexOf('=');
 
-        final String group = line.substring(1, index).trim();
-        final String level = line.substring(index + 1).trim();
+        if (index < 0) {
+            throw ParserException.generateException(lineNumber, "parser.syntaxerror.invalidrule");
+        }
+
+        final String group = names.internTrimmed(line, 1, index);
+        final String level = names.internTrimmed(line, index + 1, line.length());
 
         if (document.findGroup(group) == null) {
             throw ParserException.generateException(lineNumber, "parser.syntaxerror.undefinedgroup", group);
@@ -289,45 +1005,71 @@ public final class FileParser {
         }
     }
 
-    private void parseGroupWrappedLine(final Document document, final int lineNumber, final String line)
+    private void parseGroupWrappedLine(final Document document, final int lineNumber, final AuthzLine line)
             throws AppException {
-        final StringTokenizer tokens = new StringTokenizer(line.trim(), " ,");
-        final int memberCount = tokens.countTokens();
         final List<String> aliasMembers = new ArrayList<String>();
         final List<String> groupMembers = new ArrayList<String>();
         final List<String> userMembers = new ArrayList<String>();
 
-        for (int i = 0; i < memberCount; i++) {
-            final String member = tokens.nextToken();
+        parseMembers(line, 0, aliasMembers, groupMembers, userMembers);
+
+        if (undefinedGroups != null) {
+            recordUndefinedGroups(document, lineNumber, groupMembers);
+        }
 
-            if (member.charAt(0) == '@') {
-                final String memberGroupName = member.substring(1, member.length());
+        document.addMembersByName(currentGroup, groupMembers, userMembers, aliasMembers);
 
-                if (!groupMembers.contains(memberGroupName)) {
-                    groupMembers.add(memberGroupName);
-                }
-            }
-            else if (member.charAt(0) == '&') {
-                final String memberAliasName = member.substring(1, member.length());
+        // Keep group for next line if there are more lines to process
+        if (!endsWithComma(line)) {
+            currentGroup = null;
+        }
+    }
 
-                if (!aliasMembers.contains(memberAliasName)) {
-                    aliasMembers.add(memberAliasName);
-                }
+    /**
+     * Splits a list of group members on spaces and commas, and sorts the members into aliases (&amp;alias), groups
+     * (@group) and users. Members listed more than once, on this line or an earlier line of the same group, are
+     * skipped by the Document once the names are resolved.
+     *
+     * @param line         Line being parsed
+     * @param start        Index of the start of the member list within the line
+     * @param aliasMembers Receives alias names, without the leading &amp;
+     * @param groupMembers Receives group names, without the leading @
+     * @param userMembers  Receives user names
+     */
+    private void parseMembers(final AuthzLine line, final int start, final List<String> aliasMembers,
+                              final List<String> groupMembers, final List<String> userMembers) {
+        final int length = line.length();
+        int index = start;
+
+        while (index < length) {
+            if (isMemberDelimiter(line.charAt(index))) {
+                index++;
+                continue;
             }
-            else {
-                if (!userMembers.contains(member)) {
-                    userMembers.add(member);
-                }
+
+            final int tokenStart = index;
+
+            while (index < length && !isMemberDelimiter(line.charAt(index))) {
+                index++;
             }
-        }
 
-        document.addMembersByName(currentGroup, groupMembers, userMembers, aliasMembers);
+            final char first = line.charAt(tokenStart);
 
-        // Keep group for next line if there are more lines to process
-        final String slimLine = line.trim();
+            if (first == '@') {
+                final String memberGroupName = names.intern(line, tokenStart + 1, index);
 
-        if (slimLine.charAt(slimLine.length() - 1) != ',') {
-            currentGroup = null;
+                groupMembers.add(memberGroupName);
+            }
+            else if (first == '&') {
+                final String memberAliasName = names.intern(line, tokenStart + 1, index);
+
+                aliasMembers.add(memberAliasName);
+            }
+            else {
+                final String member = names.intern(line, tokenStart, index);
+
+                userMembers.add(member);
+            }
         }
     }
 
@@ -340,10 +1082,10 @@ public final class FileParser {
      * @throws ParserException
      * @throws AppException
      */
-    private void parseLine(final Document document, final int lineNumber, String line) throws ParserException,
+    private void parseLine(final Document document, final int lineNumber, final AuthzLine line) throws ParserException,
             AppException {
         // Process non-blank lines
-        if (isBlank(line)) {
+        if (line.isBlank()) {
             if (currentState == State.STATE_PROCESS_GROUPS && currentGroup != null) {
                 // Invalid syntax
                 throw ParserException.generateException(lineNumber, "parser.syntaxerror.invalidgroupdefinition");
@@ -352,9 +1094,6 @@ public final class FileParser {
             return;
         }
 
-        // Replace all "tab" characters with a space
-        line = line.replaceAll("\\t", " ");
-
         switch (line.charAt(0)) {
             case '#':
                 // Ignore comments
@@ -362,14 +1101,14 @@ public final class FileParser {
 
             case '[':
                 // Parse section start
-                if (line.equals("[aliases]")) {
+                if (line.contentEquals("[aliases]")) {
                     if (currentState != State.STATE_START) {
                         throw ParserException.generateException(lineNumber, "parser.syntaxerror.multiplealiassection");
                     }
 
                     currentState = State.STATE_PROCESS_ALIASES;
                 }
-                else if (line.equals("[groups]")) {
+                else if (line.contentEquals("[groups]")) {
                     if (currentState != State.STATE_START && currentState != State.STATE_PROCESS_ALIASES) {
                         throw ParserException.generateException(lineNumber, "parser.syntaxerror.multiplegroupsection");
                     }
@@ -429,10 +1168,27 @@ public final class FileParser {
         }
     }
 
-    private void parseRepositoryPath(final Document document, final int lineNumber, final String line, final int index)
+    /**
+     * Notes the member groups of a group definition that have not been defined yet, while a file is being checked by
+     * lint.
+     *
+     * @param document     Document being checked
+     * @param lineNumber   Number of the line naming the groups
+     * @param groupMembers Names of the member groups
+     */
+    private void recordUndefinedGroups(final Document document, final int lineNumber, final List<String> groupMembers)
+            throws AppException {
+        for (final String groupMember : groupMembers) {
+            if (document.findGroup(groupMember) == null) {
+                undefinedGroups.putIfAbsent(groupMember, lineNumber);
+            }
+        }
+    }
+
+    private void parseRepositoryPath(final Document document, final int lineNumber, final AuthzLine line, final int index)
             throws AppException {
-        final String repository = line.substring(1, index).trim();
-        final String path = line.substring(index + 1, line.length() - 1).trim();
+        final String repository = names.internTrimmed(line, 1, index);
+        final String path = names.internTrimmed(line, index + 1, line.length() - 1);
         Repository repositoryObject = null;
 
         try {
@@ -457,8 +1213,8 @@ public final class FileParser {
         }
     }
 
-    private void parseServerPath(final Document document, final int lineNumber, final String line) throws AppException {
-        final String path = line.substring(1, line.length() - 1).trim();
+    private void parseServerPath(final Document document, final int lineNumber, final AuthzLine line) throws AppException {
+        final String path = names.internTrimmed(line, 1, line.length() - 1);
 
         if (document.findServerPath(path) != null) {
             throw ParserException.generateException(lineNumber, "parser.syntaxerror.duplicatepath", path);
@@ -472,12 +1228,16 @@ public final class FileParser {
         }
     }
 
-    private void parseUserAccessRule(final Document document, final int lineNumber, final String line)
+    private void parseUserAccessRule(final Document document, final int lineNumber, final AuthzLine line)
             throws ParserException {
         final int index = line.indexOf('=');
 
-        final String user = line.substring(0, index).trim();
-        final String level = line.substring(index + 1).trim();
+        if (index <= 0) {
+            throw ParserException.generateException(lineNumber, "parser.syntaxerror.invalidrule");
+        }
+
+        final String user = names.internTrimmed(line, 0, index);
+        final String level = names.internTrimmed(line, index + 1, line.length());
 
         try {
             document.addAccessRuleForUser(currentPath, user, level);
@@ -487,6 +1247,15 @@ public final class FileParser {
         }
     }
 
+    /**
+     * Sets the cache that files read by {@link #parse(File, String)} are loaded from and stored in.
+     *
+     * @param snapshotCache Cache of snapshots, null to always parse files
+     */
+    public void setSnapshotCache(final SnapshotCache snapshotCache) {
+        this.snapshotCache = snapshotCache;
+    }
+
     /**
      * Validates whether the supplied file exists and is readable.
      *
@@ -0,0 +1,1078 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.Constants;
+import net.lmxm.suafe.api.beans.AccessRule;
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.Path;
+import net.lmxm.suafe.api.beans.PathComparator;
+import net.lmxm.suafe.api.beans.Repository;
+import net.lmxm.suafe.api.beans.SortableList;
+import net.lmxm.suafe.api.beans.User;
+import net.lmxm.suafe.api.exceptions.ParserException;
+import net.lmxm.suafe.exceptions.AppException;
+import net.lmxm.suafe.exceptions.ValidatorException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * Keeps a Document in step with an authz file that other people or scripts edit. The file is parsed once and every
+ * section of it is fingerprinted. When the file changes, reparse() fingerprints it again, parses only the sections
+ * whose fingerprint changed, and patches the Document in place: the Paths of changed and removed sections are
+ * removed, the Paths of changed and added sections are added back with their rules, and Group members are brought in
+ * line with the groups section.
+ * <p>
+ * The changed sections are parsed into a scratch Document before the live Document is touched, so a file with an
+ * error leaves the Document as it was, and the error has the same message and line number as a full parse gives. The
+ * whole file is parsed into a new Document instead when patching cannot be trusted to give the same result: when the
+ * content of the Document no longer matches the file as it was last parsed or saved, when the aliases or the lines
+ * before the first section changed, when a section is defined twice, or when the file is too large to be indexed or
+ * is in an encoding that MappedLineReader does not support.
+ * <p>
+ * save() works the other way round. Every section is fingerprinted by the Document content it was parsed into, and a
+ * save writes out of the Document only the sections whose content has changed since, along with sections for new
+ * Paths at the end of the file. Every other section, with its comments and its order, is copied from the file as it
+ * is, straight from one file channel to the other.
+ *
+ * @author Shaun Johnson
+ */
+public final class IncrementalFileParser {
+    private static final Log LOGGER = LogFactory.getLog(IncrementalFileParser.class);
+
+    /**
+     * File being followed.
+     */
+    private final File file;
+
+    /**
+     * Encoding of the file, or null to detect it.
+     */
+    private final String encoding;
+
+    /**
+     * Document parsed from the file, null until the file is parsed.
+     */
+    private Document document = null;
+
+    /**
+     * Sections of the file when it was last parsed, null if it could not be indexed.
+     */
+    private SectionIndex sections = null;
+
+    /**
+     * Number of Users in the Document after it was last parsed, patched or saved.
+     */
+    private int userCount = 0;
+
+    /**
+     * Number of Repositories in the Document after it was last parsed, patched or saved.
+     */
+    private int repositoryCount = 0;
+
+    /**
+     * Fingerprint of the Document content that each section was last in step with, null if sections is null.
+     */
+    private long[] sectionContents = null;
+
+    /**
+     * Length of the file when it was last indexed.
+     */
+    private long fileLength;
+
+    /**
+     * Modification time of the file when it was last indexed.
+     */
+    private long fileLastModified;
+
+    /**
+     * Number of backups kept when the file is saved.
+     */
+    private int backupCount = 0;
+
+    /**
+     * Cache of snapshots that the file is loaded from by parse(), null to always parse it.
+     */
+    private SnapshotCache snapshotCache = null;
+
+    /**
+     * Creates a parser for a file, detecting its encoding.
+     *
+     * @param file File to be parsed
+     */
+    public IncrementalFileParser(@Nonnull final File file) {
+        this(file, null);
+    }
+
+    /**
+     * Creates a parser for a file.
+     *
+     * @param file     File to be parsed
+     * @param encoding Encoding of the file, or null to detect it
+     */
+    public IncrementalFileParser(@Nonnull final File file, final String encoding) {
+        this.file = file;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Gets the Document, which is replaced by a new one after a full parse.
+     *
+     * @return Current Document, null if the file has not been parsed
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Gets the file being followed.
+     *
+     * @return File being followed
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Parses the whole file into a new Document. If a SnapshotCache is set, the Document is loaded from the snapshot
+     * of the file when it matches the file, and a snapshot is stored otherwise.
+     *
+     * @return Populated Document
+     * @throws ParserException
+     * @throws ValidatorException
+     */
+    public Document parse() throws ParserException, ValidatorException {
+        final String fileEncoding = (encoding == null) ? detectEncoding() : encoding;
+        final ByteBuffer bytes = read(fileEncoding);
+
+        if (bytes == null) {
+            document = new FileParser().parse(file, encoding);
+            sections = null;
+        }
+        else {
+            final Charset charset = Charset.forName(fileEncoding);
+            final int start = FileEncodingUtils.byteOrderMarkLength(bytes, charset.name());
+
+            final boolean cached = snapshotCache != null && snapshotCache.isCached(bytes.limit());
+
+            document = cached ? snapshotCache.load(file, bytes, fileEncoding) : null;
+
+            if (document == null) {
+                document = new FileParser().parse(bytes, start, charset);
+                document.setEncoding(fileEncoding);
+
+                if (cached) {
+                    snapshotCache.store(file, bytes, fileEncoding, document);
+                }
+            }
+
+            sections = SectionIndex.scan(bytes, start, bytes.limit(), charset);
+
+            recordPaths(document.getPaths());
+        }
+
+        recordSections();
+
+        return document;
+    }
+
+    /**
+     * Brings the Document up to date with the file, parsing only the sections that changed since the file was last
+     * parsed. If the file has an error, the Document is left as it was and the error is thrown.
+     *
+     * @return Summary of the changes
+     * @throws ParserException
+     * @throws ValidatorException
+     */
+    public ReparseSummary reparse() throws ParserException, ValidatorException {
+        if (document == null || sections == null || !documentInStep()) {
+            return fullReparse();
+        }
+
+        final String fileEncoding = document.getEncoding();
+        final ByteBuffer bytes = read(fileEncoding);
+
+        if (bytes == null) {
+            return fullReparse();
+        }
+
+        final Charset charset = Charset.forName(fileEncoding);
+        final SectionIndex newSections = SectionIndex.scan(bytes, FileEncodingUtils.byteOrderMarkLength(bytes,
+                charset.name()), bytes.limit(), charset);
+
+        if (newSections.hasDuplicateDefinitions()) {
+            return fullReparse();
+        }
+
+        final ReparseSummary summary = new ReparseSummary(false);
+        final List<Integer> parsedSections = new ArrayList<>();
+        final List<String> parsedKeys = new ArrayList<>();
+        final List<Integer> droppedSections = new ArrayList<>();
+
+        try {
+            if (!compare(newSections, summary, parsedSections, parsedKeys, droppedSections)) {
+                return fullReparse();
+            }
+        }
+        catch (final AppException ae) {
+            return fullReparse();
+        }
+
+        if (!summary.hasChanges()) {
+            sections = newSections;
+            recordSections();
+
+            return summary;
+        }
+
+        final boolean groupsChanged = summary.getAddedSections().contains(SectionIndex.GROUPS)
+                || summary.getChangedSections().contains(SectionIndex.GROUPS)
+                || summary.getRemovedSections().contains(SectionIndex.GROUPS);
+
+        if (parsedKeys.contains(SectionIndex.PREAMBLE) || parsedKeys.contains(SectionIndex.ALIASES)
+                || summary.getRemovedSections().contains(SectionIndex.ALIASES)
+                || (groupsChanged && !definitionsComeFirst(newSections))) {
+            return fullReparse();
+        }
+
+        final Document scratch = parseScratch(newSections, parsedSections, groupsChanged);
+        final Set<Path> droppedPaths = newIdentitySet();
+
+        for (final int index : droppedSections) {
+            if (sections.isRuleSection(index)) {
+                droppedPaths.add(sections.getPath(index));
+            }
+        }
+
+        try {
+            if (groupsChanged && removesReferencedGroup(scratch, droppedPaths)) {
+                // The file refers to a Group it no longer defines, let the full parse report where
+                return fullReparse();
+            }
+
+            document.beginBulkLoad();
+
+            final Set<User> touchedUsers = newIdentitySet();
+            final Set<Repository> touchedRepositories = newIdentitySet();
+
+            for (final Path path : droppedPaths) {
+                summary.addRules(0, removePath(path, touchedUsers, touchedRepositories));
+            }
+
+            if (groupsChanged) {
+                patchGroups(scratch, summary, touchedUsers);
+            }
+
+            for (int i = 0; i < parsedSections.size(); i++) {
+                final int index = parsedSections.get(i);
+
+                if (newSections.isRuleSection(index)) {
+                    final Path path = addPath(findPath(scratch, parsedKeys.get(i)));
+
+                    newSections.setPath(index, path);
+                    summary.addRules(path.getAccessRules().size(), 0);
+                }
+            }
+
+            removeUnused(touchedUsers, touchedRepositories);
+
+            document.endBulkLoad();
+            document.clearUndoStack();
+        }
+        catch (final AppException ae) {
+            // The scratch parse accepted the changes, so this is not expected. Start again from the file.
+            LOGGER.error("Unable to patch document", ae);
+
+            return fullReparse();
+        }
+
+        sections = newSections;
+        recordSections();
+
+        LOGGER.info(summary);
+
+        return summary;
+    }
+
+    /**
+     * Saves the Document to the file. Only the sections whose content changed since the file was last parsed or saved
+     * are written out of the Document, each in the place of the old one, and sections for new Paths are added at the
+     * end of the file in PathComparator order. The sections of deleted and emptied Paths are left out. Everything
+     * else is copied byte for byte, so the cost of a save follows the size of the edit rather than of the file, and
+     * the file keeps its comments and its order.
+     * <p>
+     * The whole file is generated by FileGenerator instead if it could not be indexed, if it changed on disk since it
+     * was last parsed or saved, or if aliases or groups were added to a file without an aliases or groups section.
+     * Either way the file is replaced through an {@link AtomicFileWriter}.
+     *
+     * @param allowMultipleLine true to wrap long group definitions over several lines
+     * @return true if unchanged sections were copied from the file, false if the whole file was generated
+     * @throws AppException
+     */
+    public boolean save(final boolean allowMultipleLine) throws AppException {
+        if (document == null) {
+            throw new IllegalStateException("The file has not been parsed");
+        }
+
+        final int maxLineLength = allowMultipleLine ? FileGenerator.DEFAULT_MAX_LINE_LENGTH : -1;
+
+        if (!canSaveIncrementally()) {
+            final FileGenerator generator = new FileGenerator(document);
+
+            generator.setBackupCount(backupCount);
+            generator.generate(file, maxLineLength);
+
+            final List<Path> writtenPaths = new ArrayList<>();
+
+            for (final Path path : SortableList.sortedView(document.getPaths(), new PathComparator())) {
+                if (!path.getAccessRules().isEmpty()) {
+                    writtenPaths.add(path);
+                }
+            }
+
+            reindex(writtenPaths, null, 0);
+
+            return false;
+        }
+
+        final List<Path> writtenPaths = new ArrayList<>();
+        final long[] writtenContents = new long[sections.size() + document.getPaths().size()];
+        final int[] writtenCount = new int[1];
+
+        new AtomicFileWriter(file, backupCount).write(channel -> {
+            writtenCount[0] = writeSections(channel, maxLineLength, writtenPaths, writtenContents);
+        });
+
+        reindex(writtenPaths, writtenContents, writtenCount[0]);
+
+        return true;
+    }
+
+    /**
+     * Sets the number of backups of the old contents kept when the file is saved.
+     *
+     * @param backupCount Number of backups, 0 for none
+     */
+    public void setBackupCount(final int backupCount) {
+        this.backupCount = backupCount;
+    }
+
+    /**
+     * Sets the cache that parse() loads the file from and stores it in.
+     *
+     * @param snapshotCache Cache of snapshots, null to always parse the file
+     */
+    public void setSnapshotCache(final SnapshotCache snapshotCache) {
+        this.snapshotCache = snapshotCache;
+    }
+
+    /**
+     * Adds a Path parsed into the scratch Document to the Document, with its AccessRules.
+     *
+     * @return Path in the Document
+     */
+    private Path addPath(final Path scratchPath) throws AppException {
+        final Repository repository = (scratchPath.getRepository() == null) ? null
+                : document.addRepository(scratchPath.getRepository().getName());
+        final Path path = document.addPath(repository, scratchPath.getPath());
+
+        for (final AccessRule rule : scratchPath.getAccessRules()) {
+            if (rule.getGroup() != null) {
+                document.addAccessRuleForGroup(path, document.findGroup(rule.getGroup().getName()), rule.getLevel());
+            }
+            else {
+                document.addAccessRuleForUser(path, findOrAddUser(rule.getUser()), rule.getLevel());
+            }
+        }
+
+        return path;
+    }
+
+    /**
+     * Checks whether the sections of the file can still be copied, and whether the file has a place for every section
+     * that the Document needs.
+     */
+    private boolean canSaveIncrementally() {
+        if (sections == null || file.length() != fileLength || file.lastModified() != fileLastModified
+                || document.getEncoding() == null
+                || !sections.getCharset().equals(Charset.forName(document.getEncoding()))) {
+            return false;
+        }
+
+        if (sections.getAliasesIndex() == -1 && SectionFingerprints.aliases(document) != 0) {
+            return false;
+        }
+
+        return sections.getGroupsIndex() != -1 || document.getGroups().isEmpty();
+    }
+
+    /**
+     * Compares the new sections with the old ones. Sections at the start and end of the file that kept their
+     * fingerprint are matched up by position, without working out their keys, since an edit rarely touches more than
+     * a few sections. The sections in between are matched up by key, so that moving a section is not taken for a
+     * change. Unchanged sections take over the Path of the old section.
+     *
+     * @return false if a section is defined twice, which needs a full parse to report
+     */
+    private boolean compare(final SectionIndex newSections, final ReparseSummary summary,
+                            final List<Integer> parsedSections, final List<String> parsedKeys,
+                            final List<Integer> droppedSections) throws AppException {
+        final int oldSize = sections.size();
+        final int newSize = newSections.size();
+        final int limit = Math.min(oldSize, newSize);
+        int prefix = 0;
+        int suffix = 0;
+
+        while (prefix < limit && sections.getHash(prefix) == newSections.getHash(prefix)) {
+            newSections.setPath(prefix, sections.getPath(prefix));
+            prefix++;
+        }
+
+        while (suffix < limit - prefix
+                && sections.getHash(oldSize - 1 - suffix) == newSections.getHash(newSize - 1 - suffix)) {
+            newSections.setPath(newSize - 1 - suffix, sections.getPath(oldSize - 1 - suffix));
+            suffix++;
+        }
+
+        final Map<String, Integer> oldIndexes = new HashMap<>();
+
+        for (int index = prefix; index < oldSize - suffix; index++) {
+            oldIndexes.put(sections.isRuleSection(index) ? sectionKey(sections.getPath(index))
+                    : sections.readKey(index), index);
+        }
+
+        final Set<String> newKeys = new HashSet<>();
+
+        for (int index = prefix; index < newSize - suffix; index++) {
+            final String key = newSections.readKey(index);
+            final Integer oldIndex = oldIndexes.remove(key);
+
+            if (!newKeys.add(key)) {
+                return false;
+            }
+
+            if (oldIndex == null) {
+                if (newSections.isRuleSection(index) && findPath(document, key) != null) {
+                    return false;
+                }
+
+                summary.addAddedSection(key);
+                parsedSections.add(index);
+                parsedKeys.add(key);
+            }
+            else if (sections.getHash(oldIndex) == newSections.getHash(index)) {
+                newSections.setPath(index, sections.getPath(oldIndex));
+            }
+            else {
+                summary.addChangedSection(key);
+                parsedSections.add(index);
+                parsedKeys.add(key);
+                droppedSections.add(oldIndex);
+            }
+        }
+
+        for (final Map.Entry<String, Integer> entry : oldIndexes.entrySet()) {
+            summary.addRemovedSection(entry.getKey());
+            droppedSections.add(entry.getValue());
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks that the preamble, aliases and groups come before every rule section, so that they can be parsed on
+     * their own with the same result as in the whole file.
+     */
+    private static boolean definitionsComeFirst(final SectionIndex sections) {
+        boolean ruleSectionFound = false;
+
+        for (int index = 0; index < sections.size(); index++) {
+            if (sections.isRuleSection(index)) {
+                ruleSectionFound = true;
+            }
+            else if (ruleSectionFound) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Copies a range of bytes from the file, after whatever has been written to the Writer so far.
+     */
+    private static void copy(final FileChannel source, final long start, final long end, final Writer output,
+                             final FileChannel target) throws IOException {
+        output.flush();
+
+        long position = start;
+
+        while (position < end) {
+            final long count = source.transferTo(position, end - position, target);
+
+            if (count <= 0) {
+                throw new IOException("File ended before position " + end);
+            }
+
+            position += count;
+        }
+    }
+
+    /**
+     * Checks whether the Document still holds what the file held when it was last parsed, patched or saved, so that
+     * patching the changed sections gives the same Document as a full parse. The aliases, the groups and every rule
+     * section are compared by the fingerprint of their content, rather than trusting a modification count, and the
+     * Document must have no Path, User or Repository that the file did not give it.
+     */
+    private boolean documentInStep() {
+        if (sectionContents == null || document.getUsers().size() != userCount
+                || document.getRepositories().size() != repositoryCount) {
+            return false;
+        }
+
+        if ((sections.getAliasesIndex() == -1 && SectionFingerprints.aliases(document) != 0)
+                || (sections.getGroupsIndex() == -1 && !document.getGroups().isEmpty())) {
+            return false;
+        }
+
+        final Set<Path> livePaths = newIdentitySet();
+        int pathCount = 0;
+
+        livePaths.addAll(document.getPaths());
+
+        for (int index = 1; index < sections.size(); index++) {
+            if (sections.isRuleSection(index)) {
+                if (!livePaths.contains(sections.getPath(index))) {
+                    return false;
+                }
+
+                pathCount++;
+            }
+
+            if (fingerprint(index) != sectionContents[index]) {
+                return false;
+            }
+        }
+
+        return pathCount == livePaths.size();
+    }
+
+    private String detectEncoding() {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return FileEncodingUtils.detect(FileEncodingUtils.readPrefix(channel), "ISO-8859-1");
+        }
+        catch (final IOException ioe) {
+            return null;
+        }
+    }
+
+    private User findOrAddUser(final User scratchUser) throws AppException {
+        final User user = document.findUser(scratchUser.getName());
+
+        return (user == null) ? document.addUser(scratchUser.getName(), scratchUser.getAlias()) : user;
+    }
+
+    /**
+     * Finds the Path of a rule section by its key.
+     */
+    private static Path findPath(final Document document, final String key) throws AppException {
+        final int index = key.indexOf(':');
+
+        if (index == -1) {
+            return document.findServerPath(key);
+        }
+
+        final Repository repository = document.findRepository(key.substring(0, index));
+
+        return (repository == null) ? null : repository.findPath(key.substring(index + 1));
+    }
+
+    private ReparseSummary fullReparse() throws ParserException, ValidatorException {
+        parse();
+
+        final ReparseSummary summary = new ReparseSummary(true);
+
+        LOGGER.info(summary);
+
+        return summary;
+    }
+
+    /**
+     * Fingerprints the Document content of a section.
+     */
+    private long fingerprint(final int index) {
+        if (index == sections.getAliasesIndex()) {
+            return SectionFingerprints.aliases(document);
+        }
+
+        if (index == sections.getGroupsIndex()) {
+            return SectionFingerprints.groups(document);
+        }
+
+        return sections.isRuleSection(index) ? SectionFingerprints.path(sections.getPath(index)) : 0;
+    }
+
+    /**
+     * Reads the file into memory. It is read rather than mapped, so that the file is not held open or mapped once it
+     * has been indexed, which would stop it from being replaced when it is saved on some platforms.
+     *
+     * @param fileEncoding Encoding of the file
+     * @return File contents, or null if the file cannot be indexed and must be left to FileParser
+     */
+    private ByteBuffer read(final String fileEncoding) {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (fileEncoding == null || channel.size() > Integer.MAX_VALUE
+                    || !MappedLineReader.isSupported(Charset.forName(fileEncoding))) {
+                return null;
+            }
+
+            return FileEncodingUtils.readFully(channel);
+        }
+        catch (final IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static <T> Set<T> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+    }
+
+    /**
+     * Parses the aliases, the groups if they changed, and every changed or added rule section into a new Document.
+     * When the groups did not change, the scratch Document is given empty Groups with the same names instead, which is
+     * all that rules are checked against.
+     */
+    private Document parseScratch(final SectionIndex newSections, final List<Integer> parsedSections,
+                                  final boolean groupsChanged) throws ParserException, ValidatorException {
+        final Document scratch = new Document();
+        final FileParser parser = new FileParser();
+
+        scratch.beginBulkLoad();
+
+        if (newSections.getAliasesIndex() != -1) {
+            parser.parseSection(scratch, newSections, newSections.getAliasesIndex());
+        }
+
+        if (!groupsChanged) {
+            try {
+                for (final Group group : document.getGroups()) {
+                    scratch.addGroup(group.getName());
+                }
+            }
+            catch (final AppException ae) {
+                throw new ValidatorException(ae.getMessage());
+            }
+        }
+        else if (newSections.getGroupsIndex() != -1) {
+            parser.parseSection(scratch, newSections, newSections.getGroupsIndex());
+        }
+
+        for (final int index : parsedSections) {
+            if (newSections.isRuleSection(index)) {
+                parser.parseSection(scratch, newSections, index);
+            }
+        }
+
+        return scratch;
+    }
+
+    /**
+     * Brings the Groups of the Document in line with the Groups parsed into the scratch Document. The members of
+     * every changed Group are cleared before any are added back, so that moving a Group from one parent to another
+     * never looks like a circular reference half way through.
+     */
+    private void patchGroups(final Document scratch, final ReparseSummary summary, final Set<User> touchedUsers)
+            throws AppException {
+        final List<Group> changedGroups = new ArrayList<>();
+        final List<Group> removedGroups = new ArrayList<>();
+        int addedGroups = 0;
+        int existingGroupsChanged = 0;
+
+        for (final Group scratchGroup : scratch.getGroups()) {
+            Group group = document.findGroup(scratchGroup.getName());
+
+            if (group == null) {
+                group = document.addGroup(scratchGroup.getName());
+                addedGroups++;
+            }
+            else if (!sameMembers(group, scratchGroup)) {
+                existingGroupsChanged++;
+            }
+
+            if (!sameMembers(group, scratchGroup)) {
+                touchedUsers.addAll(group.getUserMembers());
+                document.changeGroupMembers(group, new Vector<Group>(), new Vector<User>());
+                changedGroups.add(scratchGroup);
+            }
+        }
+
+        for (final Group scratchGroup : changedGroups) {
+            final Vector<Group> groupMembers = new Vector<>(scratchGroup.getGroupMembers().size());
+            final Vector<User> userMembers = new Vector<>(scratchGroup.getUserMembers().size());
+
+            for (final Group member : scratchGroup.getGroupMembers()) {
+                groupMembers.add(document.findGroup(member.getName()));
+            }
+
+            for (final User member : scratchGroup.getUserMembers()) {
+                userMembers.add(findOrAddUser(member));
+            }
+
+            document.changeGroupMembers(document.findGroup(scratchGroup.getName()), groupMembers, userMembers);
+        }
+
+        for (final Group group : document.getGroups()) {
+            if (scratch.findGroup(group.getName()) == null) {
+                touchedUsers.addAll(group.getUserMembers());
+                removedGroups.add(group);
+            }
+        }
+
+        if (!removedGroups.isEmpty()) {
+            document.deleteGroups(removedGroups);
+        }
+
+        summary.addGroups(addedGroups, existingGroupsChanged, removedGroups.size());
+    }
+
+    /**
+     * Records the Path that each rule section of a freshly parsed or written file defines. The parser adds one Path
+     * per rule section, in file order, and save() writes them in a known order, so they can be matched up without
+     * working out the section keys.
+     *
+     * @param paths Paths of the rule sections, in file order
+     */
+    private void recordPaths(final List<Path> paths) {
+        int pathIndex = 0;
+
+        for (int index = 0; index < sections.size(); index++) {
+            if (sections.isRuleSection(index)) {
+                if (pathIndex == paths.size()) {
+                    sections = null;
+                    return;
+                }
+
+                sections.setPath(index, paths.get(pathIndex++));
+            }
+        }
+
+        if (pathIndex != paths.size()) {
+            sections = null;
+        }
+    }
+
+    /**
+     * Records that the Document and the file are in step: the number of Users and Repositories in the Document, the
+     * size and time of the file, and the content of each section. The section index lets go of the file contents, as
+     * it only needs their positions and fingerprints from here on.
+     */
+    private void recordSections() {
+        recordSections(null, 0);
+    }
+
+    /**
+     * Records that the Document and the file are in step.
+     *
+     * @param contents Fingerprints of the sections that were just written, or null to take them now
+     * @param count    Number of sections written
+     */
+    private void recordSections(final long[] contents, final int count) {
+        userCount = document.getUsers().size();
+        repositoryCount = document.getRepositories().size();
+        fileLength = file.length();
+        fileLastModified = file.lastModified();
+
+        if (sections == null) {
+            sectionContents = null;
+            return;
+        }
+
+        sections.release();
+
+        if (contents != null && count == sections.size()) {
+            sectionContents = Arrays.copyOf(contents, count);
+            return;
+        }
+
+        sectionContents = new long[sections.size()];
+
+        for (int index = 0; index < sections.size(); index++) {
+            sectionContents[index] = fingerprint(index);
+        }
+    }
+
+    /**
+     * Indexes the file again after it has been saved.
+     *
+     * @param paths    Paths of the rule sections that were written, in file order
+     * @param contents Fingerprints of the sections that were written, or null if they are not known
+     * @param count    Number of sections written
+     */
+    private void reindex(final List<Path> paths, final long[] contents, final int count) {
+        final String fileEncoding = document.getEncoding();
+        final ByteBuffer bytes = (fileEncoding == null) ? null : read(fileEncoding);
+
+        if (bytes == null) {
+            sections = null;
+        }
+        else {
+            final Charset charset = Charset.forName(fileEncoding);
+
+            sections = SectionIndex.scan(bytes, FileEncodingUtils.byteOrderMarkLength(bytes, charset.name()),
+                    bytes.limit(), charset);
+
+            recordPaths(paths);
+        }
+
+        recordSections(contents, count);
+    }
+
+    /**
+     * Checks whether a Group that the groups section no longer defines still has AccessRules in a section that is not
+     * being parsed again.
+     */
+    private boolean removesReferencedGroup(final Document scratch, final Set<Path> droppedPaths) throws AppException {
+        for (final Group group : document.getGroups()) {
+            if (scratch.findGroup(group.getName()) != null) {
+                continue;
+            }
+
+            for (final AccessRule rule : group.getAccessRules()) {
+                if (!droppedPaths.contains(rule.getPath())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes a Path from the Document, with all of its AccessRules.
+     *
+     * @return Number of AccessRules removed
+     */
+    private int removePath(final Path path, final Set<User> touchedUsers, final Set<Repository> touchedRepositories)
+            throws AppException {
+        final int ruleCount = path.getAccessRules().size();
+
+        for (final AccessRule rule : path.getAccessRules()) {
+            if (rule.getUser() != null) {
+                touchedUsers.add(rule.getUser());
+            }
+        }
+
+        if (path.getRepository() != null) {
+            touchedRepositories.add(path.getRepository());
+        }
+
+        document.deletePath(path);
+
+        return ruleCount;
+    }
+
+    /**
+     * Removes the Users and Repositories that the patch left unused. A full parse only creates a User for a name that
+     * the file mentions, and a Repository for a section header, so these would not exist after one.
+     */
+    private void removeUnused(final Set<User> touchedUsers, final Set<Repository> touchedRepositories)
+            throws AppException {
+        for (final User user : touchedUsers) {
+            if (StringUtils.isBlank(user.getAlias()) && user.getGroups().isEmpty() && user.getAccessRules().isEmpty()
+                    && document.findUser(user.getName()) == user) {
+                document.deleteUser(user);
+            }
+        }
+
+        for (final Repository repository : touchedRepositories) {
+            if (repository.getPaths().isEmpty()) {
+                document.deleteRepository(repository);
+            }
+        }
+    }
+
+    /**
+     * Checks whether two Groups have members with the same names, in any order.
+     */
+    private static boolean sameMembers(final Group group, final Group scratchGroup) {
+        if (group.getGroupMembers().size() != scratchGroup.getGroupMembers().size()
+                || group.getUserMembers().size() != scratchGroup.getUserMembers().size()) {
+            return false;
+        }
+
+        final Set<String> names = new HashSet<>();
+
+        for (final Group member : group.getGroupMembers()) {
+            names.add("@" + member.getName());
+        }
+
+        for (final User member : group.getUserMembers()) {
+            names.add(member.getName());
+        }
+
+        for (final Group member : scratchGroup.getGroupMembers()) {
+            if (!names.contains("@" + member.getName())) {
+                return false;
+            }
+        }
+
+        for (final User member : scratchGroup.getUserMembers()) {
+            if (!names.contains(member.getName())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the new contents of the file. Runs of sections whose content has not changed are copied from the file
+     * with one transfer each, the other sections are written out of the Document.
+     *
+     * @param writtenPaths    Receives the Paths of the rule sections written, in file order
+     * @param writtenContents Receives the fingerprint of each section written, in file order
+     * @return Number of sections written
+     */
+    private int writeSections(final FileChannel target, final int maxLineLength, final List<Path> writtenPaths,
+                              final long[] writtenContents) throws AppException, IOException {
+        final FileGenerator generator = new FileGenerator(document);
+        final Set<Path> livePaths = newIdentitySet();
+        final Set<Path> sectionPaths = newIdentitySet();
+
+        int count = 0;
+
+        livePaths.addAll(document.getPaths());
+
+        try (final FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final Writer output = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(target),
+                    sections.getCharset()), FileGenerator.WRITE_BUFFER_LENGTH);
+            long copyStart = 0;
+            long copyEnd = 0;
+            boolean lineStart = true;
+
+            for (int index = 0; index < sections.size(); index++) {
+                final Path path = sections.isRuleSection(index) ? sections.getPath(index) : null;
+
+                if (path != null) {
+                    sectionPaths.add(path);
+
+                    if (!livePaths.contains(path) || path.getAccessRules().isEmpty()) {
+                        continue;
+                    }
+
+                    writtenPaths.add(path);
+                }
+
+                final long content = (index == 0) ? 0 : fingerprint(index);
+
+                if (content == sectionContents[index]) {
+                    // The preamble includes any byte order mark
+                    final int start = (index == 0) ? 0 : sections.getStart(index);
+
+                    if (start != copyEnd) {
+                        copy(source, copyStart, copyEnd, output, target);
+                        copyStart = start;
+                    }
+
+                    copyEnd = sections.getEnd(index);
+                    lineStart = sections.endsLine(index);
+                    writtenContents[count++] = content;
+
+                    continue;
+                }
+
+                copy(source, copyStart, copyEnd, output, target);
+                copyStart = 0;
+                copyEnd = 0;
+
+                if (!lineStart) {
+                    output.append(Constants.TEXT_NEW_LINE);
+                }
+
+                if (index == sections.getAliasesIndex()) {
+                    if (generator.writeAliases(output)) {
+                        output.append(Constants.TEXT_NEW_LINE);
+                        writtenContents[count++] = content;
+                    }
+                }
+                else if (index == sections.getGroupsIndex()) {
+                    generator.writeGroups(output, maxLineLength);
+                    output.append(Constants.TEXT_NEW_LINE);
+                    writtenContents[count++] = content;
+                }
+                else {
+                    generator.writePath(output, path);
+                    writtenContents[count++] = content;
+                }
+
+                lineStart = true;
+            }
+
+            copy(source, copyStart, copyEnd, output, target);
+
+            for (final Path path : SortableList.sortedView(document.getPaths(), new PathComparator())) {
+                if (!sectionPaths.contains(path) && !path.getAccessRules().isEmpty()) {
+                    if (!lineStart) {
+                        output.append(Constants.TEXT_NEW_LINE);
+                        lineStart = true;
+                    }
+
+                    generator.writePath(output, path);
+                    writtenPaths.add(path);
+                    writtenContents[count++] = SectionFingerprints.path(path);
+                }
+            }
+
+            output.flush();
+        }
+
+        return count;
+    }
+
+    /**
+     * Builds the key of the section that defines a Path, the same way SectionIndex builds it from a header.
+     */
+    private static String sectionKey(final Path path) {
+        return (path.getRepository() == null) ? path.getPath() : path.getRepository().getName() + ":" + path.getPath();
+    }
+}
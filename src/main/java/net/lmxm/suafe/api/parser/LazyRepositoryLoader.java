@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.RepositoryLoader;
+import net.lmxm.suafe.api.exceptions.ParserException;
+import net.lmxm.suafe.exceptions.AppException;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads the sections of one repository at a time from an authz file. The sections of each repository are chained
+ * together through an array of section indexes, in file order, so that the index costs two ints per section rather
+ * than an object. The file is not kept open: the sections of a repository are read from it again when the repository
+ * is loaded.
+ *
+ * @author Shaun Johnson
+ */
+final class LazyRepositoryLoader implements RepositoryLoader {
+    /**
+     * File that the sections are read from.
+     */
+    private final File file;
+
+    /**
+     * Sections of the file, which need not hold the file contents.
+     */
+    private final SectionIndex sections;
+
+    /**
+     * First and last section of each repository that has not been loaded yet.
+     */
+    private final Map<String, int[]> repositories = new HashMap<>();
+
+    /**
+     * Next section of the same repository for each section, -1 for the last one.
+     */
+    private final int[] next;
+
+    /**
+     * Parser that the sections are parsed with.
+     */
+    private final FileParser parser = new FileParser();
+
+    /**
+     * Creates a loader with no repositories.
+     *
+     * @param file     File that was indexed
+     * @param sections Sections of the file
+     */
+    LazyRepositoryLoader(final File file, final SectionIndex sections) {
+        this.file = file;
+        this.sections = sections;
+        this.next = new int[sections.size()];
+
+        Arrays.fill(next, -1);
+    }
+
+    /**
+     * Adds a rule section to the sections of its repository.
+     *
+     * @param repositoryName Name of the repository
+     * @param index          Index of the section, higher than any added before
+     */
+    void addSection(final String repositoryName, final int index) {
+        final int[] range = repositories.get(repositoryName);
+
+        if (range == null) {
+            repositories.put(repositoryName, new int[]{index, index});
+        }
+        else {
+            next[range[1]] = index;
+            range[1] = index;
+        }
+    }
+
+    /**
+     * Checks whether there are repositories left to load.
+     *
+     * @return true if no repositories are waiting to be loaded
+     */
+    boolean isEmpty() {
+        return repositories.isEmpty();
+    }
+
+    @Override
+    public void loadAllRepositories(@Nonnull final Document document) throws AppException {
+        for (final String repositoryName : new ArrayList<>(repositories.keySet())) {
+            loadRepository(document, repositoryName);
+        }
+    }
+
+    @Override
+    public void loadRepository(@Nonnull final Document document, @Nonnull final String repositoryName)
+            throws AppException {
+        final int[] range = repositories.remove(repositoryName);
+
+        if (range == null) {
+            return;
+        }
+
+        if (repositories.isEmpty()) {
+            document.setRepositoryLoader(null);
+        }
+
+        document.beginBulkLoad();
+
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int index = range[0]; index != -1; index = next[index]) {
+                parser.parseSection(document, sections.readSection(channel, index), sections.getLineNumber(index));
+            }
+        }
+        catch (final IOException e) {
+            throw ParserException.generateException(sections.getLineNumber(range[0]), "parser.error");
+        }
+        finally {
+            document.endBulkLoad();
+        }
+    }
+}
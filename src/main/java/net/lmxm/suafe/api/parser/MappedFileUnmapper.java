@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.parser;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Releases the mapping of a memory mapped file as soon as it has been parsed, rather than whenever the garbage
+ * collector gets round to it. Until then the mapping holds on to the address space and the page cache of the file,
+ * and on Windows it stops the file from being replaced or deleted.
+ * <p>
+ * Java has no public API for this, so the cleaner of the buffer is run through reflection: through
+ * sun.misc.Unsafe.invokeCleaner() from Java 9 on, and through the cleaner() method of the buffer on Java 8. When
+ * neither can be used, the mapping is left to the garbage collector as before.
+ *
+ * @author Shaun Johnson
+ */
+final class MappedFileUnmapper {
+    private static final Log LOGGER = LogFactory.getLog(MappedFileUnmapper.class);
+
+    private MappedFileUnmapper() {
+    }
+
+    /**
+     * Releases the mapping of a buffer. Nothing may read the buffer, or any duplicate or slice of it, afterwards: the
+     * memory is gone, and reading it crashes the virtual machine.
+     *
+     * @param bytes Buffer returned by FileChannel.map(), or a heap buffer, which is left alone
+     * @return true if the mapping was released
+     */
+    static boolean unmap(final ByteBuffer bytes) {
+        if (!(bytes instanceof MappedByteBuffer)) {
+            return false;
+        }
+
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleaner;
+
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            }
+            catch (final NoSuchMethodException e) {
+                return unmapJava8(bytes);
+            }
+
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), bytes);
+
+            return true;
+        }
+        catch (final ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Unable to unmap file, leaving it to the garbage collector", e);
+
+            return false;
+        }
+    }
+
+    private static boolean unmapJava8(final ByteBuffer bytes) throws ReflectiveOperationException {
+        final Method cleanerMethod = bytes.getClass().getMethod("cleaner");
+
+        cleanerMethod.setAccessible(true);
+
+        final Object cleaner = cleanerMethod.invoke(bytes);
+
+        if (cleaner != null) {
+            cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Splits the bytes of a memory mapped authz file into lines, with the same line breaks as BufferedReader.readLine():
+ * a line ends at "\n", "\r" or "\r\n", and a line break at the very end of the file does not start another line.
+ * <p>
+ * Only encodings in which every ASCII character is a single byte of the same value can be read this way, see
+ * {@link #isSupported(Charset)}. Lines that only hold ASCII bytes are handed to the parser as bytes. Other lines are
+ * decoded on their own, which works because a line break byte cannot be part of a multi-byte character in any of
+ * the supported encodings.
+ *
+ * @author Shaun Johnson
+ */
+final class MappedLineReader {
+    /**
+     * File contents.
+     */
+    private final ByteBuffer bytes;
+
+    /**
+     * Encoding of the file.
+     */
+    private final Charset charset;
+
+    /**
+     * Position after the last byte to be read.
+     */
+    private final int end;
+
+    /**
+     * True if every byte is one character, so that lines never need decoding.
+     */
+    private final boolean latin1;
+
+    /**
+     * Position of the start of the next line.
+     */
+    private int position;
+
+    /**
+     * Creates a reader for part of the contents of a file. The start must be the start of a line.
+     *
+     * @param bytes   File contents
+     * @param start   Position of the first byte to be read
+     * @param end     Position after the last byte to be read
+     * @param charset Encoding of the file, which must be supported
+     */
+    MappedLineReader(final ByteBuffer bytes, final int start, final int end, final Charset charset) {
+        this.bytes = bytes;
+        this.charset = charset;
+        this.end = end;
+        this.latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+        this.position = start;
+    }
+
+    /**
+     * Gets the position of the start of the next line.
+     *
+     * @return Position of the next line, or of the end if every line has been read
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * Checks whether files in an encoding can be split into lines by this reader.
+     *
+     * @param charset Encoding to check
+     * @return true if the encoding is supported
+     */
+    static boolean isSupported(final Charset charset) {
+        final String name = charset.name().toUpperCase(Locale.ENGLISH);
+
+        return name.equals("UTF-8") || name.equals("US-ASCII") || name.startsWith("ISO-8859-")
+                || name.startsWith("WINDOWS-125");
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * @param line Line to be filled
+     * @return true if a line was read, false at the end of the file
+     */
+    boolean readLine(final AuthzLine line) {
+        if (position >= end) {
+            return false;
+        }
+
+        final int start = position;
+        int lineEnd = start;
+        boolean ascii = true;
+
+        while (lineEnd < end) {
+            final byte value = bytes.get(lineEnd);
+
+            if (value == '\n' || value == '\r') {
+                break;
+            }
+
+            ascii &= value >= 0;
+            lineEnd++;
+        }
+
+        position = lineEnd + 1;
+
+        if (lineEnd < end && bytes.get(lineEnd) == '\r' && position < end && bytes.get(position) == '\n') {
+            position++;
+        }
+
+        if (ascii || latin1) {
+            line.set(bytes, start, lineEnd - start);
+        }
+        else {
+            final byte[] encoded = new byte[lineEnd - start];
+
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = bytes.get(start + i);
+            }
+
+            line.set(new String(encoded, charset));
+        }
+
+        return true;
+    }
+}
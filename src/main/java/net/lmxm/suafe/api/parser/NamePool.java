@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.api.SubversionConstants;
+
+/**
+ * Pool of the names, paths and access levels read while parsing one file. Each distinct value is kept as a single
+ * String instance, which every later occurrence shares, and the value is looked up straight from the characters of
+ * the line so that a repeated name does not create a new String at all.
+ * <p>
+ * The pool starts out holding the SubversionConstants access levels, so AccessRules read from a file share those
+ * constants rather than holding a copy of "r" or "rw" each. It is only meant to live for a single parse.
+ *
+ * @author Shaun Johnson
+ */
+final class NamePool {
+    /**
+     * Open addressing hash table, sized to a power of two.
+     */
+    private String[] table = new String[1024];
+
+    /**
+     * Number of Strings in the table.
+     */
+    private int size = 0;
+
+    /**
+     * Creates a pool holding the access level constants.
+     */
+    NamePool() {
+        add(SubversionConstants.SVN_ACCESS_LEVEL_DENY_ACCESS);
+        add(SubversionConstants.SVN_ACCESS_LEVEL_READONLY);
+        add(SubversionConstants.SVN_ACCESS_LEVEL_READWRITE);
+    }
+
+    /**
+     * Gets the pooled String for part of a line.
+     *
+     * @param line  Line being parsed
+     * @param start Index of the first character
+     * @param end   Index after the last character
+     * @return Pooled String equal to line.substring(start, end)
+     */
+    String intern(final AuthzLine line, final int start, final int end) {
+        int hash = 0;
+
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+
+        final int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+
+        for (String candidate = table[slot]; candidate != null; candidate = table[slot]) {
+            if (candidate.hashCode() == hash && matches(line, start, end, candidate)) {
+                return candidate;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        final String value = line.substring(start, end);
+
+        insert(slot, value);
+
+        return value;
+    }
+
+    /**
+     * Gets the pooled String for part of a line, with leading and trailing whitespace removed in the same way as
+     * String.trim().
+     *
+     * @param line  Line being parsed
+     * @param start Index of the first character
+     * @param end   Index after the last character
+     * @return Pooled String equal to line.substring(start, end).trim()
+     */
+    String internTrimmed(final AuthzLine line, int start, int end) {
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        return intern(line, start, end);
+    }
+
+    private void add(final String value) {
+        final int mask = table.length - 1;
+        int slot = spread(value.hashCode()) & mask;
+
+        while (table[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+
+        insert(slot, value);
+    }
+
+    private void insert(final int slot, final String value) {
+        table[slot] = value;
+        size++;
+
+        if (size * 2 > table.length) {
+            final String[] old = table;
+
+            table = new String[old.length * 2];
+            size = 0;
+
+            for (final String entry : old) {
+                if (entry != null) {
+                    add(entry);
+                }
+            }
+        }
+    }
+
+    private static boolean matches(final AuthzLine line, final int start, final int end, final String candidate) {
+        if (candidate.length() != end - start) {
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) != candidate.charAt(i - start)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
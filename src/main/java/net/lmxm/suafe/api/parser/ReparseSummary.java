@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.resources.ResourceUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes what an {@link IncrementalFileParser} changed when it brought its Document up to date with the file.
+ * Sections are named by their key: "[aliases]", "[groups]", the path of a server section, or the repository and path
+ * of a repository section separated by a colon.
+ *
+ * @author Shaun Johnson
+ */
+public final class ReparseSummary {
+    private final boolean fullReparse;
+
+    private final List<String> addedSections = new ArrayList<>();
+
+    private final List<String> changedSections = new ArrayList<>();
+
+    private final List<String> removedSections = new ArrayList<>();
+
+    private int addedRules = 0;
+
+    private int removedRules = 0;
+
+    private int addedGroups = 0;
+
+    private int changedGroups = 0;
+
+    private int removedGroups = 0;
+
+    /**
+     * Creates an empty summary.
+     *
+     * @param fullReparse true if the whole file was parsed into a new Document
+     */
+    ReparseSummary(final boolean fullReparse) {
+        this.fullReparse = fullReparse;
+    }
+
+    void addAddedSection(final String key) {
+        addedSections.add(key);
+    }
+
+    void addChangedSection(final String key) {
+        changedSections.add(key);
+    }
+
+    void addRemovedSection(final String key) {
+        removedSections.add(key);
+    }
+
+    void addRules(final int added, final int removed) {
+        addedRules += added;
+        removedRules += removed;
+    }
+
+    void addGroups(final int added, final int changed, final int removed) {
+        addedGroups += added;
+        changedGroups += changed;
+        removedGroups += removed;
+    }
+
+    /**
+     * Gets the number of Groups that were defined by the file for the first time.
+     *
+     * @return Number of added Groups
+     */
+    public int getAddedGroups() {
+        return addedGroups;
+    }
+
+    /**
+     * Gets the number of AccessRules added while patching the changed and added sections. A changed section has all
+     * of its rules removed and added again, so this counts its unchanged rules too.
+     *
+     * @return Number of added AccessRules
+     */
+    public int getAddedRules() {
+        return addedRules;
+    }
+
+    /**
+     * Gets the keys of the sections that are new in the file.
+     *
+     * @return Unmodifiable list of section keys
+     */
+    public List<String> getAddedSections() {
+        return Collections.unmodifiableList(addedSections);
+    }
+
+    /**
+     * Gets the number of existing Groups whose members changed.
+     *
+     * @return Number of changed Groups
+     */
+    public int getChangedGroups() {
+        return changedGroups;
+    }
+
+    /**
+     * Gets the keys of the sections whose contents changed.
+     *
+     * @return Unmodifiable list of section keys
+     */
+    public List<String> getChangedSections() {
+        return Collections.unmodifiableList(changedSections);
+    }
+
+    /**
+     * Gets the number of Groups that are no longer in the file.
+     *
+     * @return Number of removed Groups
+     */
+    public int getRemovedGroups() {
+        return removedGroups;
+    }
+
+    /**
+     * Gets the number of AccessRules removed while patching the changed and removed sections.
+     *
+     * @return Number of removed AccessRules
+     */
+    public int getRemovedRules() {
+        return removedRules;
+    }
+
+    /**
+     * Gets the keys of the sections that are no longer in the file.
+     *
+     * @return Unmodifiable list of section keys
+     */
+    public List<String> getRemovedSections() {
+        return Collections.unmodifiableList(removedSections);
+    }
+
+    /**
+     * Checks whether any section of the file changed.
+     *
+     * @return true if the Document was patched or replaced
+     */
+    public boolean hasChanges() {
+        return fullReparse || !addedSections.isEmpty() || !changedSections.isEmpty() || !removedSections.isEmpty();
+    }
+
+    /**
+     * Checks whether the whole file was parsed into a new Document, rather than the existing Document being patched.
+     *
+     * @return true after a full parse
+     */
+    public boolean isFullReparse() {
+        return fullReparse;
+    }
+
+    /**
+     * Describes the changes in one line, for logging.
+     *
+     * @return Description of the changes
+     */
+    @Override
+    public String toString() {
+        if (fullReparse) {
+            return ResourceUtil.getString("parser.reparse.full");
+        }
+
+        final Object[] args = {addedSections.size(), changedSections.size(), removedSections.size(), addedRules,
+                removedRules, addedGroups, changedGroups, removedGroups};
+
+        return ResourceUtil.getFormattedString("parser.reparse.summary", args);
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.User;
+import net.lmxm.suafe.exceptions.ValidatorException;
+import net.lmxm.suafe.validators.Validator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Part of the rule sections of a mapped authz file, parsed on its own so that the parts of a file can be parsed in
+ * parallel. Parsing a chunk never touches the Document: it splits the lines, pools the names, validates the access
+ * rules and resolves them against the Groups and Users that existed before the rule sections began. FileParser then
+ * applies the chunks to the Document one after another, in file order.
+ * <p>
+ * Each line that is not blank or a comment becomes one entry. An access rule that was validated becomes a rule
+ * entry. Any other line, such as a section header, an invalid rule or a rule naming a Group that is not known yet, is
+ * kept as text and parsed by FileParser when the chunk is applied, so that it raises the same errors, with the same
+ * line numbers, as it would in a sequential parse.
+ *
+ * @author Shaun Johnson
+ */
+final class RuleChunk {
+    /**
+     * Entry holding the text of a line to be parsed when the chunk is applied.
+     */
+    static final byte LINE = 0;
+
+    /**
+     * Entry holding an access rule for a Group.
+     */
+    static final byte GROUP_RULE = 1;
+
+    /**
+     * Entry holding an access rule for an existing User.
+     */
+    static final byte USER_RULE = 2;
+
+    /**
+     * Entry holding an access rule for a User that is referred to by name, because it does not exist yet.
+     */
+    static final byte USER_NAME_RULE = 3;
+
+    /**
+     * File contents.
+     */
+    private final ByteBuffer bytes;
+
+    /**
+     * Encoding of the file.
+     */
+    private final Charset charset;
+
+    /**
+     * Position of the first byte of the chunk, which is the start of a line.
+     */
+    private final int start;
+
+    /**
+     * Position after the last byte of the chunk.
+     */
+    private final int end;
+
+    /**
+     * Groups by name. Only read, so it may be shared by chunks parsed at the same time.
+     */
+    private final Map<String, Group> groups;
+
+    /**
+     * Users without an alias by name. Only read, so it may be shared by chunks parsed at the same time.
+     */
+    private final Map<String, User> users;
+
+    /**
+     * Kind of each entry.
+     */
+    private byte[] kinds = new byte[256];
+
+    /**
+     * Line of each entry, counted from 0 at the start of the chunk.
+     */
+    private int[] lineIndexes = new int[256];
+
+    /**
+     * Line text, Group, User or user name of each entry.
+     */
+    private Object[] subjects = new Object[256];
+
+    /**
+     * Access level of each rule entry.
+     */
+    private String[] levels = new String[256];
+
+    /**
+     * Number of entries.
+     */
+    private int size = 0;
+
+    /**
+     * Number of lines in the chunk.
+     */
+    private int lineCount = 0;
+
+    /**
+     * Creates a chunk that is ready to be parsed.
+     *
+     * @param bytes   File contents
+     * @param start   Position of the first byte of the chunk, which must be the start of a line
+     * @param end     Position after the last byte of the chunk, which must be the end of a line or of the file
+     * @param charset Encoding of the file
+     * @param groups  Groups by name
+     * @param users   Users without an alias by name
+     */
+    RuleChunk(final ByteBuffer bytes, final int start, final int end, final Charset charset,
+              final Map<String, Group> groups, final Map<String, User> users) {
+        this.bytes = bytes;
+        this.charset = charset;
+        this.start = start;
+        this.end = end;
+        this.groups = groups;
+        this.users = users;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return Number of entries
+     */
+    int getEntryCount() {
+        return size;
+    }
+
+    /**
+     * Gets the kind of an entry: LINE, GROUP_RULE, USER_RULE or USER_NAME_RULE.
+     *
+     * @param index Index of the entry
+     * @return Kind of the entry
+     */
+    byte getKind(final int index) {
+        return kinds[index];
+    }
+
+    /**
+     * Gets the access level of a rule entry.
+     *
+     * @param index Index of the entry
+     * @return Access level, null for a LINE entry
+     */
+    String getLevel(final int index) {
+        return levels[index];
+    }
+
+    /**
+     * Gets the number of lines in the chunk, including blank lines and comments.
+     *
+     * @return Number of lines
+     */
+    int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Gets the line of an entry, counted from 0 at the start of the chunk.
+     *
+     * @param index Index of the entry
+     * @return Line index
+     */
+    int getLineIndex(final int index) {
+        return lineIndexes[index];
+    }
+
+    /**
+     * Gets the subject of an entry: the line text for LINE, the Group for GROUP_RULE, the User for USER_RULE or the
+     * user name for USER_NAME_RULE.
+     *
+     * @param index Index of the entry
+     * @return Subject of the entry
+     */
+    Object getSubject(final int index) {
+        return subjects[index];
+    }
+
+    /**
+     * Parses every line of the chunk.
+     *
+     * @return This chunk
+     */
+    RuleChunk parse() {
+        final MappedLineReader reader = new MappedLineReader(bytes, start, end, charset);
+        final NamePool names = new NamePool();
+        final AuthzLine line = new AuthzLine();
+
+        while (reader.readLine(line)) {
+            if (!line.isBlank()) {
+                switch (line.charAt(0)) {
+                    case '#':
+                        // Ignore comments
+                        break;
+
+                    case '@':
+                        parseGroupAccessRule(names, line);
+                        break;
+
+                    case '[':
+                    case ' ':
+                        add(LINE, line.toString(), null);
+                        break;
+
+                    default:
+                        parseUserAccessRule(names, line);
+                        break;
+                }
+            }
+
+            lineCount++;
+        }
+
+        return this;
+    }
+
+    private void add(final byte kind, final Object subject, final String level) {
+        if (size == kinds.length) {
+            final int length = size * 2;
+
+            kinds = Arrays.copyOf(kinds, length);
+            lineIndexes = Arrays.copyOf(lineIndexes, length);
+            subjects = Arrays.copyOf(subjects, length);
+            levels = Arrays.copyOf(levels, length);
+        }
+
+        kinds[size] = kind;
+        lineIndexes[size] = lineCount;
+        subjects[size] = subject;
+        levels[size] = level;
+        size++;
+    }
+
+    private void parseGroupAccessRule(final NamePool names, final AuthzLine line) {
+        final int index = line.indexOf('=');
+        final Group group = (index == -1) ? null : groups.get(names.internTrimmed(line, 1, index));
+
+        if (group == null) {
+            add(LINE, line.toString(), null);
+            return;
+        }
+
+        final String level = names.internTrimmed(line, index + 1, line.length());
+
+        try {
+            Validator.validateLevelOfAccess(level);
+        }
+        catch (final ValidatorException ve) {
+            add(LINE, line.toString(), null);
+            return;
+        }
+
+        add(GROUP_RULE, group, level);
+    }
+
+    private void parseUserAccessRule(final NamePool names, final AuthzLine line) {
+        final int index = line.indexOf('=');
+
+        if (index == -1) {
+            add(LINE, line.toString(), null);
+            return;
+        }
+
+        final String userName = names.internTrimmed(line, 0, index);
+        final String level = names.internTrimmed(line, index + 1, line.length());
+
+        try {
+            Validator.validateUserName(userName);
+            Validator.validateLevelOfAccess(level);
+        }
+        catch (final ValidatorException ve) {
+            add(LINE, line.toString(), null);
+            return;
+        }
+
+        final User user = users.get(userName);
+
+        if (user == null) {
+            add(USER_NAME_RULE, userName, level);
+        }
+        else {
+            add(USER_RULE, user, level);
+        }
+    }
+}
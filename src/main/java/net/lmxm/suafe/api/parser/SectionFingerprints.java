@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.api.beans.AccessRule;
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.Path;
+import net.lmxm.suafe.api.beans.User;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Fingerprints the part of a Document that each section of an authz file is generated from: the aliases, the groups,
+ * or the AccessRules of one Path. Two fingerprints of a section differ whenever FileGenerator would write the section
+ * differently, other than in the order of its lines or the wrapping of group definitions, so IncrementalFileParser
+ * can tell which sections an edit touched without the Document having to report its edits.
+ * <p>
+ * Lines are fingerprinted one by one and added up, since the Document keeps its lists in no particular order. A
+ * fingerprint has to be taken of every section on every save, so names are not hashed character by character: a name
+ * is hashed by its String.hashCode, which the String caches, together with the identity of the String. Renaming an
+ * object always gives it a new String, so a rename to a name with the same hash code, such as "Aa" to "BB", still
+ * changes the fingerprint. A new String with the same name only makes a section look changed, which costs no more
+ * than writing it.
+ *
+ * @author Shaun Johnson
+ */
+final class SectionFingerprints {
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Mixed into the hash of a Group reference, so that "@name" and "name" differ.
+     */
+    private static final long GROUP_REFERENCE = 0x5BD1E9955BD1E995L;
+
+    private SectionFingerprints() {
+    }
+
+    /**
+     * Fingerprints the aliases section.
+     *
+     * @param document Document to read
+     * @return Fingerprint, 0 if no User has an alias
+     */
+    static long aliases(final Document document) {
+        long fingerprint = 0;
+
+        for (final User user : document.getUsers()) {
+            if (!StringUtils.isBlank(user.getAlias())) {
+                fingerprint += mix(hash(user.getAlias()) + mix(hash(user.getName())));
+            }
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * Fingerprints the groups section.
+     *
+     * @param document Document to read
+     * @return Fingerprint
+     */
+    static long groups(final Document document) {
+        long fingerprint = 0;
+
+        for (final Group group : document.getGroups()) {
+            long members = 0;
+
+            for (final Group member : group.getGroupMembers()) {
+                members += reference(member);
+            }
+
+            for (final User member : group.getUserMembers()) {
+                members += reference(member);
+            }
+
+            fingerprint += mix(hash(group.getName()) + mix(members));
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * Fingerprints the section of a Path.
+     *
+     * @param path Path to read
+     * @return Fingerprint
+     */
+    static long path(final Path path) {
+        long fingerprint = mix(hash((path.getRepository() == null) ? null : path.getRepository().getName())
+                + mix(hash(path.getPath())));
+
+        for (final AccessRule rule : path.getAccessRules()) {
+            final long principal = (rule.getGroup() != null) ? reference(rule.getGroup()) : reference(rule.getUser());
+
+            fingerprint += mix(principal + mix(hash(rule.getLevel())));
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * Hashes a String by its contents and its identity.
+     */
+    private static long hash(final String string) {
+        if (string == null) {
+            return 0;
+        }
+
+        return ((long) string.hashCode() << 32) ^ System.identityHashCode(string);
+    }
+
+    private static long mix(final long value) {
+        final long product = value * MULTIPLIER;
+
+        return product ^ (product >>> 29);
+    }
+
+    private static long reference(final Group group) {
+        return mix(hash(group.getName()) ^ GROUP_REFERENCE);
+    }
+
+    private static long reference(final User user) {
+        return (user == null) ? 0 : mix(hash(user.getName()) + mix(hash(user.getAlias())));
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.api.beans.Path;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits a memory mapped authz file into its sections and fingerprints each of them, so that a later version of the
+ * file can be compared with this one section by section. A section runs from its header line up to the next header
+ * line, blank lines and comments included. The lines before the first header form section 0, the preamble, which is
+ * empty if the file starts with a header.
+ * <p>
+ * The file is scanned eight bytes at a time for line breaks and for headers, and each section is then hashed eight
+ * bytes at a time, so indexing is limited by memory bandwidth rather than by parsing. Nothing is allocated per
+ * section apart from array slots: section keys are only worked out on request, for the few sections that differ
+ * between two versions of a file, and rule sections are otherwise identified by the Path that parsing them created.
+ * <p>
+ * Once the sections that are needed straight away have been read, the index can let go of the file contents with
+ * {@link #release()}. It then holds only positions, fingerprints and Paths, and sections are read again from the
+ * file with {@link #readSection(FileChannel, int)}.
+ *
+ * @author Shaun Johnson
+ */
+final class SectionIndex {
+    /**
+     * Key of the preamble.
+     */
+    static final String PREAMBLE = "";
+
+    /**
+     * Key of the aliases section.
+     */
+    static final String ALIASES = "[aliases]";
+
+    /**
+     * Key of the groups section.
+     */
+    static final String GROUPS = "[groups]";
+
+    private static final long LINE_FEEDS = 0x0A0A0A0A0A0A0A0AL;
+
+    private static final long CARRIAGE_RETURNS = 0x0D0D0D0D0D0D0D0DL;
+
+    private static final long BRACKETS = 0x5B5B5B5B5B5B5B5BL;
+
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * File contents, read in big endian order, null once they have been released.
+     */
+    private ByteBuffer bytes;
+
+    /**
+     * Encoding of the file.
+     */
+    private final Charset charset;
+
+    /**
+     * Position after the last byte indexed.
+     */
+    private final int end;
+
+    /**
+     * True if the last section is empty or ends with a line break.
+     */
+    private boolean endsWithLineBreak = true;
+
+    /**
+     * Position of the first byte of each section, followed by the position after the last byte of the file.
+     */
+    private int[] starts;
+
+    /**
+     * Line number of the first line of each section.
+     */
+    private int[] lineNumbers;
+
+    /**
+     * Fingerprint of each section, header included.
+     */
+    private long[] hashes;
+
+    /**
+     * Path defined by each rule section, once it is known.
+     */
+    private Path[] paths;
+
+    /**
+     * Number of sections, including the preamble.
+     */
+    private int size = 0;
+
+    /**
+     * Index of the aliases section, -1 if there is none.
+     */
+    private int aliasesIndex = -1;
+
+    /**
+     * Index of the groups section, -1 if there is none.
+     */
+    private int groupsIndex = -1;
+
+    /**
+     * True if there is more than one aliases or groups section.
+     */
+    private boolean duplicateDefinitions = false;
+
+    private SectionIndex(final ByteBuffer bytes, final int end, final Charset charset) {
+        this.bytes = bytes;
+        this.end = end;
+        this.charset = charset;
+        this.starts = new int[1024];
+        this.lineNumbers = new int[1024];
+    }
+
+    /**
+     * Indexes the sections of part of a file.
+     *
+     * @param bytes   File contents
+     * @param start   Position of the first line, after any byte order mark
+     * @param end     Position after the last byte
+     * @param charset Encoding of the file, which MappedLineReader must support
+     * @return Index of the sections
+     */
+    static SectionIndex scan(final ByteBuffer bytes, final int start, final int end, final Charset charset) {
+        final SectionIndex index = new SectionIndex(bytes.duplicate().order(ByteOrder.BIG_ENDIAN), end, charset);
+
+        index.findSections(start);
+        index.hashSections();
+
+        if (end > start) {
+            final byte value = index.bytes.get(end - 1);
+
+            index.endsWithLineBreak = value == '\n' || value == '\r';
+        }
+
+        return index;
+    }
+
+    /**
+     * Gets the index of the aliases section.
+     *
+     * @return Index of the section, -1 if there is none
+     */
+    int getAliasesIndex() {
+        return aliasesIndex;
+    }
+
+    /**
+     * Checks whether the text that follows a section starts on a new line, which it does unless the section is the
+     * last one and the file does not end with a line break.
+     *
+     * @param index Index of the section
+     * @return true if the section is empty or ends with a line break
+     */
+    boolean endsLine(final int index) {
+        return index != size - 1 || starts[index] == starts[index + 1] || endsWithLineBreak;
+    }
+
+    /**
+     * Gets the encoding of the file.
+     *
+     * @return Encoding
+     */
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Gets the position after the last byte of a section.
+     *
+     * @param index Index of the section
+     * @return End position
+     */
+    int getEnd(final int index) {
+        return starts[index + 1];
+    }
+
+    /**
+     * Gets the index of the groups section.
+     *
+     * @return Index of the section, -1 if there is none
+     */
+    int getGroupsIndex() {
+        return groupsIndex;
+    }
+
+    /**
+     * Gets the fingerprint of the bytes of a section.
+     *
+     * @param index Index of the section
+     * @return Hash of the section
+     */
+    long getHash(final int index) {
+        return hashes[index];
+    }
+
+    /**
+     * Gets the line number of the first line of a section.
+     *
+     * @param index Index of the section
+     * @return Line number
+     */
+    int getLineNumber(final int index) {
+        return lineNumbers[index];
+    }
+
+    /**
+     * Gets the Path defined by a rule section.
+     *
+     * @param index Index of the section
+     * @return Path, null if it is not known
+     */
+    Path getPath(final int index) {
+        return (paths == null) ? null : paths[index];
+    }
+
+    /**
+     * Gets the position of the first byte of a section.
+     *
+     * @param index Index of the section
+     * @return Start position
+     */
+    int getStart(final int index) {
+        return starts[index];
+    }
+
+    /**
+     * Checks whether there is more than one aliases or groups section. Such a file is not valid, but it is indexed
+     * anyway so that the parser can report the error.
+     *
+     * @return true if the aliases or groups are defined twice
+     */
+    boolean hasDuplicateDefinitions() {
+        return duplicateDefinitions;
+    }
+
+    /**
+     * Checks whether a section is a server or repository rule section.
+     *
+     * @param index Index of the section
+     * @return true for a rule section
+     */
+    boolean isRuleSection(final int index) {
+        return index != 0 && index != aliasesIndex && index != groupsIndex;
+    }
+
+    /**
+     * Creates a reader for the lines of a section. The file contents must not have been released.
+     *
+     * @param index Index of the section
+     * @return Line reader
+     */
+    MappedLineReader newReader(final int index) {
+        return new MappedLineReader(bytes, starts[index], starts[index + 1], charset);
+    }
+
+    /**
+     * Works out the key of a section from its header: PREAMBLE, ALIASES, GROUPS, the path of a server section, or the
+     * repository and path of a repository section separated by a colon. Names are trimmed the way FileParser trims
+     * them, so two sections have the same key exactly when they define the same Path. The file contents must not have
+     * been released if the section is a rule section.
+     *
+     * @param index Index of the section
+     * @return Section key
+     */
+    String readKey(final int index) {
+        if (index == 0) {
+            return PREAMBLE;
+        }
+
+        if (index == aliasesIndex) {
+            return ALIASES;
+        }
+
+        if (index == groupsIndex) {
+            return GROUPS;
+        }
+
+        final AuthzLine line = new AuthzLine();
+        final NamePool names = new NamePool();
+
+        newReader(index).readLine(line);
+
+        final int colon = line.indexOf(':');
+
+        if (colon == -1) {
+            return names.internTrimmed(line, 1, line.length() - 1);
+        }
+
+        return names.internTrimmed(line, 1, colon) + ":" + names.internTrimmed(line, colon + 1, line.length() - 1);
+    }
+
+    /**
+     * Works out the repository of a rule section from its header, trimmed the way FileParser trims it. The file
+     * contents must not have been released.
+     *
+     * @param index Index of a rule section
+     * @param line  Line to read the header into
+     * @param names Pool to take the name from, so that the sections of a repository share one String
+     * @return Repository name, or null for a server section
+     */
+    String readRepositoryName(final int index, final AuthzLine line, final NamePool names) {
+        newReader(index).readLine(line);
+
+        final int colon = line.indexOf(':');
+
+        return (colon == -1) ? null : names.internTrimmed(line, 1, colon);
+    }
+
+    /**
+     * Reads a section from the file again and creates a reader for its lines, for use after the file contents have
+     * been released. The file must still have the contents it had when it was indexed.
+     *
+     * @param channel Channel of the file
+     * @param index   Index of the section
+     * @return Line reader
+     * @throws IOException if the file cannot be read
+     */
+    MappedLineReader readSection(final FileChannel channel, final int index) throws IOException {
+        final byte[] section = new byte[starts[index + 1] - starts[index]];
+        int length = 0;
+
+        while (length < section.length) {
+            final int count = channel.read(ByteBuffer.wrap(section, length, section.length - length),
+                    starts[index] + length);
+
+            if (count == -1) {
+                break;
+            }
+
+            length += count;
+        }
+
+        return new MappedLineReader(ByteBuffer.wrap(section), 0, length, charset);
+    }
+
+    /**
+     * Lets go of the file contents, so that the index does not keep the file in memory, or keep it mapped, for as
+     * long as the index is kept. Only the positions, fingerprints and Paths of the sections can be used afterwards.
+     */
+    void release() {
+        bytes = null;
+    }
+
+    /**
+     * Records the Path defined by a rule section.
+     *
+     * @param index Index of the section
+     * @param path  Path defined by the section
+     */
+    void setPath(final int index, final Path path) {
+        if (paths == null) {
+            paths = new Path[size];
+        }
+
+        paths[index] = path;
+    }
+
+    /**
+     * Gets the number of sections, including the preamble.
+     *
+     * @return Number of sections
+     */
+    int size() {
+        return size;
+    }
+
+    private void addSection(final int start, final int lineNumber) {
+        if (size + 1 == starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+            lineNumbers = Arrays.copyOf(lineNumbers, lineNumbers.length * 2);
+        }
+
+        if (size > 0 && isHeader(start, ALIASES)) {
+            duplicateDefinitions |= aliasesIndex != -1;
+            aliasesIndex = size;
+        }
+        else if (size > 0 && isHeader(start, GROUPS)) {
+            duplicateDefinitions |= groupsIndex != -1;
+            groupsIndex = size;
+        }
+
+        starts[size] = start;
+        lineNumbers[size] = lineNumber;
+        size++;
+    }
+
+    /**
+     * Finds the line breaks and headers. A word without a carriage return, which is nearly every word, is handled
+     * with a few mask operations: its line feeds are counted, and a header starts at every bracket that follows a
+     * line feed. Words with a carriage return are checked a byte at a time.
+     */
+    private void findSections(final int start) {
+        int lineNumber = 1;
+        boolean lineStart = true;
+        int position = start;
+
+        addSection(start, lineNumber);
+
+        for (; position + 8 <= end; position += 8) {
+            final long word = bytes.getLong(position);
+            final long lineFeeds = zeroBytes(word ^ LINE_FEEDS);
+
+            if (zeroBytes(word ^ CARRIAGE_RETURNS) != 0) {
+                for (int i = position; i < position + 8; i++) {
+                    if (lineStart && bytes.get(i) == '[') {
+                        addSection(i, lineNumber);
+                    }
+
+                    lineStart = isLineBreak(i);
+
+                    if (lineStart) {
+                        lineNumber++;
+                    }
+                }
+
+                continue;
+            }
+
+            long headers = zeroBytes(word ^ BRACKETS) & ((lineFeeds >>> 8) | (lineStart ? Long.MIN_VALUE : 0));
+
+            while (headers != 0) {
+                final int leadingZeros = Long.numberOfLeadingZeros(headers);
+                final long header = Long.MIN_VALUE >>> leadingZeros;
+                final int headerPosition = position + (leadingZeros >>> 3);
+
+                headers ^= header;
+
+                addSection(headerPosition, lineNumber + Long.bitCount(lineFeeds & ~((header << 1) - 1)));
+            }
+
+            lineNumber += Long.bitCount(lineFeeds);
+            lineStart = (lineFeeds & 0x80L) != 0;
+        }
+
+        for (; position < end; position++) {
+            if (lineStart && bytes.get(position) == '[') {
+                addSection(position, lineNumber);
+            }
+
+            lineStart = isLineBreak(position);
+
+            if (lineStart) {
+                lineNumber++;
+            }
+        }
+
+        starts[size] = end;
+    }
+
+    private void hashSections() {
+        hashes = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            long hash = starts[i + 1] - starts[i];
+            int position = starts[i];
+
+            for (; position + 8 <= starts[i + 1]; position += 8) {
+                hash = mix(hash ^ bytes.getLong(position));
+            }
+
+            long tail = 0;
+
+            for (; position < starts[i + 1]; position++) {
+                tail = (tail << 8) | (bytes.get(position) & 0xFF);
+            }
+
+            hashes[i] = mix(mix(hash ^ tail));
+        }
+    }
+
+    /**
+     * Checks whether the line at a position is exactly the specified header.
+     */
+    private boolean isHeader(final int position, final String header) {
+        final int headerEnd = position + header.length();
+
+        if (headerEnd > end || (headerEnd < end && bytes.get(headerEnd) != '\n' && bytes.get(headerEnd) != '\r')) {
+            return false;
+        }
+
+        for (int i = 0; i < header.length(); i++) {
+            if (bytes.get(position + i) != header.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether the byte at a position ends a line: a "\n", or a "\r" that is not followed by "\n".
+     */
+    private boolean isLineBreak(final int position) {
+        final byte value = bytes.get(position);
+
+        return value == '\n' || (value == '\r' && (position + 1 == end || bytes.get(position + 1) != '\n'));
+    }
+
+    private static long mix(final long value) {
+        final long product = value * MULTIPLIER;
+
+        return product ^ (product >>> 29);
+    }
+
+    /**
+     * Sets the top bit of every byte of the value that is zero, and clears every other bit.
+     */
+    private static long zeroBytes(final long value) {
+        return ~(((value & LOW_BITS) + LOW_BITS) | value | LOW_BITS);
+    }
+}
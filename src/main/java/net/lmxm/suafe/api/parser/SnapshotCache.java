@@ -0,0 +1,673 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.api.beans.AccessRule;
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.GroupMemberObject;
+import net.lmxm.suafe.api.beans.Path;
+import net.lmxm.suafe.api.beans.Repository;
+import net.lmxm.suafe.api.beans.User;
+import net.lmxm.suafe.exceptions.AppException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Directory of binary snapshots of parsed Documents, one per authz file. Loading a snapshot skips splitting lines,
+ * pooling names and validating rules, which is most of the cost of parsing a large file.
+ * <p>
+ * A snapshot records the length, modification time and CRC-32 checksum of the file it was made from, and the encoding
+ * the file was read in, and is only used while all of them still match. Snapshots that are stale, damaged, or written
+ * by another version of the format are ignored and replaced by the next parse, so the text parse is always the
+ * fallback. Files smaller than the minimum length are never cached, since they parse faster than a snapshot loads.
+ * <p>
+ * Snapshots hold every rule of the files they are made from, so the directory and the snapshots in it are created
+ * readable by their owner only where the file system supports POSIX permissions. The cache keeps the snapshots of
+ * the most recently used files up to a maximum count, and deletes the least recently used ones after each store.
+ *
+ * @author Shaun Johnson
+ */
+public final class SnapshotCache {
+    private static final Log LOGGER = LogFactory.getLog(SnapshotCache.class);
+
+    /**
+     * Files shorter than this are parsed without a snapshot by default.
+     */
+    public static final long DEFAULT_MINIMUM_LENGTH = 1 << 20;
+
+    /**
+     * Number of snapshots kept by default.
+     */
+    public static final int DEFAULT_MAXIMUM_SNAPSHOTS = 8;
+
+    /**
+     * Temporary files left behind by a store that did not finish are deleted once they are older than this, in
+     * milliseconds.
+     */
+    private static final long TEMPORARY_FILE_AGE = 24L * 60 * 60 * 1000;
+
+    /**
+     * First bytes of every snapshot, "SUAF".
+     */
+    private static final int MAGIC = 0x53554146;
+
+    /**
+     * Version of the snapshot format, raised whenever the layout changes.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Rule kinds.
+     */
+    private static final int RULE_FOR_USER = 0;
+
+    private static final int RULE_FOR_GROUP = 1;
+
+    /**
+     * Directory that snapshots are stored in.
+     */
+    private final File directory;
+
+    /**
+     * Shortest file that is cached.
+     */
+    private final long minimumLength;
+
+    /**
+     * Number of snapshots kept.
+     */
+    private final int maximumSnapshots;
+
+    /**
+     * Creates a cache of snapshots in a directory, which is created when the first snapshot is stored.
+     *
+     * @param directory Directory to store snapshots in
+     */
+    public SnapshotCache(@Nonnull final File directory) {
+        this(directory, DEFAULT_MINIMUM_LENGTH);
+    }
+
+    /**
+     * Creates a cache of snapshots in a directory, for files of at least the specified length.
+     *
+     * @param directory     Directory to store snapshots in
+     * @param minimumLength Shortest file that is cached, in bytes
+     */
+    public SnapshotCache(@Nonnull final File directory, final long minimumLength) {
+        this(directory, minimumLength, DEFAULT_MAXIMUM_SNAPSHOTS);
+    }
+
+    /**
+     * Creates a cache of snapshots in a directory, for files of at least the specified length, which keeps at most
+     * the specified number of snapshots.
+     *
+     * @param directory        Directory to store snapshots in
+     * @param minimumLength    Shortest file that is cached, in bytes
+     * @param maximumSnapshots Number of snapshots kept, at least 1
+     */
+    public SnapshotCache(@Nonnull final File directory, final long minimumLength, final int maximumSnapshots) {
+        if (maximumSnapshots < 1) {
+            throw new IllegalArgumentException("At least one snapshot must be kept");
+        }
+
+        this.directory = directory;
+        this.minimumLength = minimumLength;
+        this.maximumSnapshots = maximumSnapshots;
+    }
+
+    /**
+     * Creates a cache in the .suafe/cache directory of the user's home directory.
+     *
+     * @return Cache in the user's home directory
+     */
+    public static SnapshotCache inUserHome() {
+        return new SnapshotCache(new File(new File(System.getProperty("user.home"), ".suafe"), "cache"));
+    }
+
+    /**
+     * Gets the directory that snapshots are stored in.
+     *
+     * @return Snapshot directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Checks whether a file is long enough to be cached.
+     *
+     * @param length Length of the file, in bytes
+     * @return true if a snapshot is worth loading or storing
+     */
+    public boolean isCached(final long length) {
+        return length >= minimumLength;
+    }
+
+    /**
+     * Loads the snapshot of a file, if there is one that matches the file's current contents.
+     *
+     * @param file     Authz file
+     * @param bytes    Contents of the file
+     * @param encoding Encoding the file is read in
+     * @return Document read from the snapshot, or null if there is no valid snapshot
+     */
+    @CheckForNull
+    public Document load(@Nonnull final File file, @Nonnull final ByteBuffer bytes, @Nonnull final String encoding) {
+        final File snapshotFile;
+        final byte[] snapshot;
+
+        try {
+            snapshotFile = snapshotFile(file);
+            snapshot = Files.readAllBytes(snapshotFile.toPath());
+        }
+        catch (final NoSuchFileException nsfe) {
+            return null;
+        }
+        catch (final IOException | SecurityException e) {
+            LOGGER.warn("Unable to read snapshot of " + file, e);
+
+            return null;
+        }
+
+        try {
+            final Input input = new Input(snapshot);
+
+            if (input.readInt() != MAGIC || input.readInt() != VERSION
+                    || !input.readString().equals(file.getCanonicalPath()) || input.readLong() != bytes.limit()
+                    || input.readLong() != file.lastModified() || input.readLong() != checksum(bytes)
+                    || !input.readString().equals(encoding)) {
+                return null;
+            }
+
+            final Document document = read(input);
+
+            document.setEncoding(encoding);
+
+            // Mark the snapshot as recently used, so that it is the last to be pruned
+            snapshotFile.setLastModified(System.currentTimeMillis());
+
+            return document;
+        }
+        catch (final AppException | IOException | RuntimeException e) {
+            LOGGER.warn("Ignoring damaged snapshot of " + file, e);
+
+            return null;
+        }
+    }
+
+    /**
+     * Stores the snapshot of a file, replacing any older one, and then deletes the least recently used snapshots
+     * beyond the maximum count. Failing to store a snapshot is logged and otherwise ignored, since the file can always
+     * be parsed instead.
+     *
+     * @param file     Authz file
+     * @param bytes    Contents of the file
+     * @param encoding Encoding the file was read in
+     * @param document Document parsed from the file
+     */
+    public void store(@Nonnull final File file, @Nonnull final ByteBuffer bytes, @Nonnull final String encoding,
+                      @Nonnull final Document document) {
+        File temporaryFile = null;
+
+        try {
+            final File snapshotFile = snapshotFile(file);
+
+            createDirectory();
+
+            // Unlike File.createTempFile(), this creates the file readable by its owner only
+            temporaryFile = Files.createTempFile(directory.toPath(), "snapshot", ".tmp").toFile();
+
+            try (final Output output = new Output(Files.newOutputStream(temporaryFile.toPath()))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeString(file.getCanonicalPath());
+                output.writeLong(bytes.limit());
+                output.writeLong(file.lastModified());
+                output.writeLong(checksum(bytes));
+                output.writeString(encoding);
+
+                write(output, document);
+            }
+
+            try {
+                Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final AtomicMoveNotSupportedException amnse) {
+                Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            prune();
+        }
+        catch (final IOException | SecurityException e) {
+            LOGGER.warn("Unable to store snapshot of " + file, e);
+
+            if (temporaryFile != null) {
+                temporaryFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Creates the directory, and any missing parents, readable by their owner only where the file system supports
+     * POSIX permissions.
+     */
+    private void createDirectory() throws IOException {
+        if (directory.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            final FileAttribute<?> ownerOnly = PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rwx------"));
+
+            Files.createDirectories(directory.toPath(), ownerOnly);
+        }
+        else {
+            Files.createDirectories(directory.toPath());
+        }
+    }
+
+    /**
+     * Deletes the least recently used snapshots beyond the maximum count, and temporary files left behind by stores
+     * that did not finish.
+     */
+    private void prune() {
+        final File[] snapshots = directory.listFiles((dir, name) -> name.endsWith(".snapshot"));
+        final File[] temporaryFiles = directory.listFiles((dir, name) -> name.startsWith("snapshot")
+                && name.endsWith(".tmp"));
+
+        if (snapshots != null && snapshots.length > maximumSnapshots) {
+            Arrays.sort(snapshots, Comparator.comparingLong(File::lastModified).reversed());
+
+            for (int i = maximumSnapshots; i < snapshots.length; i++) {
+                if (!snapshots[i].delete()) {
+                    LOGGER.warn("Unable to delete snapshot " + snapshots[i]);
+                }
+            }
+        }
+
+        if (temporaryFiles != null) {
+            final long cutoff = System.currentTimeMillis() - TEMPORARY_FILE_AGE;
+
+            for (final File temporaryFile : temporaryFiles) {
+                if (temporaryFile.lastModified() < cutoff) {
+                    temporaryFile.delete();
+                }
+            }
+        }
+    }
+
+    private static long checksum(final ByteBuffer bytes) {
+        final CRC32 crc = new CRC32();
+
+        crc.update(bytes.duplicate());
+
+        return crc.getValue();
+    }
+
+    /**
+     * Reads the Users, Groups, Repositories and Paths of a snapshot into a new Document, in the order they were
+     * written, so that the Document lists them in the same order as the Document that was stored.
+     */
+    private static Document read(final Input input) throws AppException, IOException {
+        final Document document = new Document();
+
+        document.initialize();
+        document.beginBulkLoad();
+
+        final User[] users = new User[input.readCount()];
+
+        for (int i = 0; i < users.length; i++) {
+            final String name = input.readString();
+            final String alias = input.readNullableString();
+
+            users[i] = document.addUser(name, alias);
+        }
+
+        final Group[] groups = new Group[input.readCount()];
+
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = document.addGroup(input.readString());
+        }
+
+        for (final Group group : groups) {
+            final List<GroupMemberObject> members = new ArrayList<>();
+            final int groupMemberCount = input.readCount();
+
+            for (int i = 0; i < groupMemberCount; i++) {
+                members.add(groups[input.readIndex(groups.length)]);
+            }
+
+            final int userMemberCount = input.readCount();
+
+            for (int i = 0; i < userMemberCount; i++) {
+                members.add(users[input.readIndex(users.length)]);
+            }
+
+            if (!members.isEmpty()) {
+                document.addGroupMembers(group, members);
+            }
+        }
+
+        final Repository[] repositories = new Repository[input.readCount()];
+
+        for (int i = 0; i < repositories.length; i++) {
+            repositories[i] = document.addRepository(input.readString());
+        }
+
+        final String[] levels = new String[input.readCount()];
+
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = input.readString();
+        }
+
+        final int pathCount = input.readCount();
+
+        for (int i = 0; i < pathCount; i++) {
+            final int repositoryIndex = input.readVarInt() - 1;
+            final Repository repository = (repositoryIndex == -1) ? null
+                    : repositories[input.checkIndex(repositoryIndex, repositories.length)];
+            final Path path = document.addPath(repository, input.readString());
+            final int ruleCount = input.readCount();
+
+            for (int j = 0; j < ruleCount; j++) {
+                final int kind = input.readVarInt();
+                final int index = input.readVarInt();
+                final String level = levels[input.readIndex(levels.length)];
+
+                if (kind == RULE_FOR_USER) {
+                    document.addAccessRuleForUser(path, users[input.checkIndex(index, users.length)], level);
+                }
+                else if (kind == RULE_FOR_GROUP) {
+                    document.addAccessRuleForGroup(path, groups[input.checkIndex(index, groups.length)], level);
+                }
+                else {
+                    throw new IOException("Unknown rule kind " + kind);
+                }
+            }
+        }
+
+        if (!input.isAtEnd()) {
+            throw new IOException("Trailing bytes in snapshot");
+        }
+
+        document.endBulkLoad();
+
+        return document;
+    }
+
+    /**
+     * Finds the snapshot file of an authz file. The name is derived from the full path of the authz file, which is
+     * also stored in the snapshot in case two paths give the same name.
+     */
+    private File snapshotFile(final File file) throws IOException {
+        final String canonicalPath = file.getCanonicalPath();
+        final CRC32 crc = new CRC32();
+
+        crc.update(canonicalPath.getBytes(StandardCharsets.UTF_8));
+
+        return new File(directory, file.getName() + "-" + Long.toHexString(crc.getValue()) + ".snapshot");
+    }
+
+    /**
+     * Writes the Users, Groups, Repositories and Paths of a Document. Names are written once, everything that refers
+     * to a User, Group or Repository refers to it by its position in the Document's list.
+     */
+    private static void write(final Output output, final Document document) throws IOException {
+        final Map<User, Integer> users = indexes(document.getUsers());
+        final Map<Group, Integer> groups = indexes(document.getGroups());
+        final Map<Repository, Integer> repositories = indexes(document.getRepositories());
+        final Map<String, Integer> levels = new HashMap<>();
+
+        output.writeVarInt(users.size());
+
+        for (final User user : document.getUsers()) {
+            output.writeString(user.getName());
+            output.writeNullableString(user.getAlias());
+        }
+
+        output.writeVarInt(groups.size());
+
+        for (final Group group : document.getGroups()) {
+            output.writeString(group.getName());
+        }
+
+        for (final Group group : document.getGroups()) {
+            output.writeVarInt(group.getGroupMembers().size());
+
+            for (final Group member : group.getGroupMembers()) {
+                output.writeVarInt(groups.get(member));
+            }
+
+            output.writeVarInt(group.getUserMembers().size());
+
+            for (final User member : group.getUserMembers()) {
+                output.writeVarInt(users.get(member));
+            }
+        }
+
+        output.writeVarInt(repositories.size());
+
+        for (final Repository repository : document.getRepositories()) {
+            output.writeString(repository.getName());
+        }
+
+        for (final AccessRule rule : document.getAccessRules()) {
+            levels.putIfAbsent(rule.getLevel(), levels.size());
+        }
+
+        final String[] levelNames = new String[levels.size()];
+
+        for (final Map.Entry<String, Integer> entry : levels.entrySet()) {
+            levelNames[entry.getValue()] = entry.getKey();
+        }
+
+        output.writeVarInt(levelNames.length);
+
+        for (final String level : levelNames) {
+            output.writeString(level);
+        }
+
+        output.writeVarInt(document.getPaths().size());
+
+        for (final Path path : document.getPaths()) {
+            output.writeVarInt((path.getRepository() == null) ? 0 : repositories.get(path.getRepository()) + 1);
+            output.writeString(path.getPath());
+            output.writeVarInt(path.getAccessRules().size());
+
+            for (final AccessRule rule : path.getAccessRules()) {
+                if (rule.getGroup() != null) {
+                    output.writeVarInt(RULE_FOR_GROUP);
+                    output.writeVarInt(groups.get(rule.getGroup()));
+                }
+                else {
+                    output.writeVarInt(RULE_FOR_USER);
+                    output.writeVarInt(users.get(rule.getUser()));
+                }
+
+                output.writeVarInt(levels.get(rule.getLevel()));
+            }
+        }
+    }
+
+    private static <T> Map<T, Integer> indexes(final List<T> list) {
+        final Map<T, Integer> indexes = new IdentityHashMap<>(list.size() * 2);
+
+        for (final T element : list) {
+            indexes.put(element, indexes.size());
+        }
+
+        return indexes;
+    }
+
+    /**
+     * Reads the values that Output writes from the bytes of a snapshot.
+     */
+    private static final class Input {
+        private final byte[] bytes;
+
+        private int position = 0;
+
+        private Input(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private int checkIndex(final int index, final int length) throws IOException {
+            if (index < 0 || index >= length) {
+                throw new IOException("Index " + index + " out of range");
+            }
+
+            return index;
+        }
+
+        private boolean isAtEnd() {
+            return position == bytes.length;
+        }
+
+        private int readCount() throws IOException {
+            return checkIndex(readVarInt(), bytes.length - position + 1);
+        }
+
+        private int readIndex(final int length) throws IOException {
+            return checkIndex(readVarInt(), length);
+        }
+
+        private int readInt() {
+            return (int) readFixed(4);
+        }
+
+        private long readLong() {
+            return readFixed(8);
+        }
+
+        private long readFixed(final int length) {
+            long value = 0;
+
+            for (int i = 0; i < length; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+
+            return value;
+        }
+
+        private String readNullableString() throws IOException {
+            return (bytes[position++] == 0) ? null : readString();
+        }
+
+        private String readString() throws IOException {
+            final int length = readCount();
+            final String string = new String(bytes, position, length, StandardCharsets.UTF_8);
+
+            position += length;
+
+            return string;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+
+            for (int shift = 0; ; shift += 7) {
+                final byte b = bytes[position++];
+
+                value |= (b & 0x7F) << shift;
+
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes fixed length numbers, variable length counts and indexes, and UTF-8 strings.
+     */
+    private static final class Output implements AutoCloseable {
+        private final OutputStream output;
+
+        private Output(final OutputStream output) {
+            this.output = new BufferedOutputStream(output, 1 << 16);
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+
+        private void writeFixed(final long value, final int length) throws IOException {
+            for (int shift = (length - 1) * 8; shift >= 0; shift -= 8) {
+                output.write((int) (value >>> shift));
+            }
+        }
+
+        private void writeInt(final int value) throws IOException {
+            writeFixed(value, 4);
+        }
+
+        private void writeLong(final long value) throws IOException {
+            writeFixed(value, 8);
+        }
+
+        private void writeNullableString(final String string) throws IOException {
+            if (string == null) {
+                output.write(0);
+            }
+            else {
+                output.write(1);
+                writeString(string);
+            }
+        }
+
+        private void writeString(final String string) throws IOException {
+            final byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+
+            writeVarInt(encoded.length);
+            output.write(encoded);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                output.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            output.write(value);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.exceptions.ParserException;
+
+import javax.annotation.Nonnull;
+import java.nio.CharBuffer;
+
+/**
+ * Parses the text of an authz file that arrives in chunks, such as the body of a network response, without waiting
+ * for the whole text. Each complete line is parsed as soon as its chunk is appended, straight from the chunk, so only
+ * a line that is split between two chunks is copied. Lines end at "\n", "\r" or "\r\n", the same as for
+ * BufferedReader.readLine(), even if the "\r" and "\n" arrive in different chunks. A byte order mark at the start of
+ * the text is skipped.
+ * <p>
+ * Errors are reported with the line number in the whole text. Once an error has been thrown, the parser must not be
+ * used again.
+ *
+ * @author Shaun Johnson
+ */
+public final class StreamingFileParser {
+    /**
+     * Byte order mark, as decoded into a character.
+     */
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * Start of a line that began in an earlier chunk and has not ended yet.
+     */
+    private final StringBuilder carry = new StringBuilder();
+
+    /**
+     * Document being populated, null once the parse has finished.
+     */
+    private Document document;
+
+    /**
+     * Line being parsed.
+     */
+    private final AuthzLine line = new AuthzLine();
+
+    /**
+     * Number of the next line to be parsed.
+     */
+    private int lineNumber = 1;
+
+    /**
+     * Parser that the lines are handed to.
+     */
+    private final FileParser parser;
+
+    /**
+     * True if the last chunk ended with "\r", so that a "\n" at the start of the next chunk ends no line.
+     */
+    private boolean skipLineFeed = false;
+
+    /**
+     * True until the first character has been read.
+     */
+    private boolean start = true;
+
+    /**
+     * Creates a parser for a new Document.
+     */
+    public StreamingFileParser() {
+        this(new FileParser());
+    }
+
+    /**
+     * Creates a parser that hands lines to an existing FileParser, which must not be used for anything else until the
+     * parse has finished.
+     *
+     * @param parser Parser that the lines are handed to
+     */
+    StreamingFileParser(@Nonnull final FileParser parser) {
+        this.parser = parser;
+        this.document = parser.beginLines();
+    }
+
+    /**
+     * Parses every line that ends within a range of characters. The characters are not kept once the call returns, so
+     * the caller may reuse the array for the next chunk.
+     *
+     * @param chunk  Array holding the next characters of the text
+     * @param offset Index of the first character
+     * @param length Number of characters
+     * @return This parser
+     * @throws ParserException
+     */
+    public StreamingFileParser append(@Nonnull final char[] chunk, final int offset, final int length)
+            throws ParserException {
+        return append(CharBuffer.wrap(chunk, offset, length));
+    }
+
+    /**
+     * Parses every line that ends within a chunk of characters. The chunk is not kept once the call returns, so the
+     * caller may change it afterwards.
+     *
+     * @param chunk Next characters of the text
+     * @return This parser
+     * @throws ParserException
+     */
+    public StreamingFileParser append(@Nonnull final CharSequence chunk) throws ParserException {
+        if (document == null) {
+            throw new IllegalStateException("The parse has finished");
+        }
+
+        final int end = chunk.length();
+        int position = 0;
+
+        if (start && end > 0) {
+            start = false;
+
+            if (chunk.charAt(0) == BYTE_ORDER_MARK) {
+                position++;
+            }
+        }
+
+        if (skipLineFeed && position < end) {
+            skipLineFeed = false;
+
+            if (chunk.charAt(position) == '\n') {
+                position++;
+            }
+        }
+
+        while (position < end) {
+            int lineEnd = position;
+
+            while (lineEnd < end && chunk.charAt(lineEnd) != '\n' && chunk.charAt(lineEnd) != '\r') {
+                lineEnd++;
+            }
+
+            if (lineEnd == end) {
+                carry.append(chunk, position, end);
+                break;
+            }
+
+            if (carry.length() == 0) {
+                line.set(chunk, position, lineEnd - position);
+            }
+            else {
+                carry.append(chunk, position, lineEnd);
+                line.set(carry, 0, carry.length());
+            }
+
+            parser.parseNextLine(document, lineNumber++, line);
+            carry.setLength(0);
+
+            position = lineEnd + 1;
+
+            if (chunk.charAt(lineEnd) == '\r') {
+                if (position == end) {
+                    skipLineFeed = true;
+                }
+                else if (chunk.charAt(position) == '\n') {
+                    position++;
+                }
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Parses the last line, if the text does not end with a line break, and completes the Document.
+     *
+     * @return Populated Document
+     * @throws ParserException
+     */
+    public Document finish() throws ParserException {
+        if (document == null) {
+            throw new IllegalStateException("The parse has finished");
+        }
+
+        if (carry.length() > 0) {
+            line.set(carry, 0, carry.length());
+            parser.parseNextLine(document, lineNumber++, line);
+            carry.setLength(0);
+        }
+
+        final Document result = document;
+
+        document = null;
+        parser.endLines(result);
+
+        return result;
+    }
+
+    /**
+     * Gets the number of the next line to be parsed, which is the line being read if reading the text fails.
+     *
+     * @return Line number, counting from 1
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
@@ -66,6 +66,8 @@ public final class ActionConstants {
 
     public static final String EXIT_ACTION = "EXIT_ACTION";
 
+    public static final String KEEP_BACKUPS_ACTION = "KEEP_BACKUPS_ACTION";
+
     public static final String MONOSPACED_ACTION = "MONOSPACED_ACTION";
 
     public static final String MULTIPLE_LINE_GROUP_DEFINITION_ACTION = "MULTIPLE_LINE_GROUP_DEFINITION_ACTION";
@@ -102,6 +104,8 @@ public final class ActionConstants {
 
     public static final String SERIF_ACTION = "SERIF_ACTION";
 
+    public static final String SNAPSHOT_CACHE_ACTION = "SNAPSHOT_CACHE_ACTION";
+
     public static final String STATISTICS_REPORT_ACTION = "STATISTICS_REPORT_ACTION";
 
     public static final String SUMMARY_REPORT_ACTION = "SUMMARY_REPORT_ACTION";
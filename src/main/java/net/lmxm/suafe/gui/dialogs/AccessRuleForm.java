@@ -274,6 +274,7 @@ public final class AccessRuleForm extends JPanel implements ActionListener {
 
                 accessRule.setUser(null);
                 accessRule.setLevel(levelOfAccess);
+                document.invalidateSortOrder(accessRule);
             }
             else {
                 throw new AppException("editaccessrule.error.grouprulealreadyexists");
@@ -295,6 +296,7 @@ public final class AccessRuleForm extends JPanel implements ActionListener {
                 accessRule.setUser(user);
                 user.addAccessRule(accessRule);
                 accessRule.setLevel(levelOfAccess);
+                document.invalidateSortOrder(accessRule);
             }
             else {
                 throw new AppException("editaccessrule.error.userrulealreadyexists");
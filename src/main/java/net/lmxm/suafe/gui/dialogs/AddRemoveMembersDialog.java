@@ -417,6 +417,10 @@ public final class AddRemoveMembersDialog extends ParentDialog implements Action
 
                 // Remove the group being edited.
                 groupNonMembers.remove(group);
+
+                // Remove groups that contain the group being edited, since adding them would create a cycle.
+                final GroupClosureIndex groupClosureIndex = document.getGroupClosureIndex();
+                groupNonMembers.removeIf(candidate -> groupClosureIndex.isMember(group, candidate));
             }
             else {
                 groupNonMembers = new Vector<>();
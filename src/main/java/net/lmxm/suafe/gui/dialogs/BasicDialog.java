@@ -308,7 +308,7 @@ public final class BasicDialog extends ParentDialog implements ActionListener {
         Path existingPath = document.findPath(path.getRepository(), pathString);
 
         if (existingPath == null || existingPath == path) {
-            path.setPath(pathString);
+            document.movePath(path, path.getRepository(), pathString);
             message.setUserObject(path);
             message.setState(Message.SUCCESS);
             dispose();
@@ -327,7 +327,7 @@ public final class BasicDialog extends ParentDialog implements ActionListener {
         final Repository existingRepository = document.findRepository(repositoryName);
 
         if (existingRepository == null || existingRepository == repository) {
-            repository.setName(repositoryName);
+            document.renameRepository(repository, repositoryName);
             message.setUserObject(repository);
             message.setState(Message.SUCCESS);
             dispose();
@@ -19,9 +19,12 @@
 package net.lmxm.suafe.gui.frames;
 
 import net.lmxm.suafe.*;
+import net.lmxm.suafe.api.access.AccessResolver;
+import net.lmxm.suafe.api.access.EffectiveAccess;
 import net.lmxm.suafe.api.beans.*;
 import net.lmxm.suafe.api.parser.FileGenerator;
-import net.lmxm.suafe.api.parser.FileParser;
+import net.lmxm.suafe.api.parser.IncrementalFileParser;
+import net.lmxm.suafe.api.parser.SnapshotCache;
 import net.lmxm.suafe.gui.*;
 import net.lmxm.suafe.gui.dialogs.*;
 import net.lmxm.suafe.exceptions.AppException;
@@ -60,6 +63,7 @@ import java.awt.print.PrinterException;
 import java.awt.print.PrinterJob;
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Stack;
@@ -81,8 +85,15 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
 
     private JPanel contentPane;
 
+    private AccessResolver accessResolver;
+
     private Document document = new Document();
 
+    /**
+     * Parser of the open file, kept so that reloading only parses the sections that changed.
+     */
+    private IncrementalFileParser fileParser = null;
+
     private Stack<String> fileStack;
 
     private FileTransferHandler fileTransferHandler;
@@ -113,6 +124,8 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
 
     private Object[] userAccessRulesColumnNames;
 
+    private Object[] userEffectiveAccessColumnNames;
+
     private UsersPane usersPane;
 
     private UsersPopupMenu usersPopupMenu;
@@ -151,6 +164,12 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
         else if (action.equals(ActionConstants.MULTIPLE_LINE_GROUP_DEFINITION_ACTION)) {
             multilineGroupDefinitionsSettingChange();
         }
+        else if (action.equals(ActionConstants.KEEP_BACKUPS_ACTION)) {
+            keepBackupsSettingChange();
+        }
+        else if (action.equals(ActionConstants.SNAPSHOT_CACHE_ACTION)) {
+            snapshotCacheSettingChange();
+        }
         else if (action.equals(ActionConstants.PRINT_ACTION)) {
             filePrint();
         }
@@ -474,6 +493,7 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
         getGroupsPane().getGroupList().setFont(UserPreferences.getUserFont());
         getGroupsPane().getGroupMemberList().setFont(UserPreferences.getUserFont());
         getUsersPane().getUserAccessRulesTable().setFont(UserPreferences.getUserFont());
+        getUsersPane().getUserEffectiveAccessTable().setFont(UserPreferences.getUserFont());
         getUsersPane().getUserGroupList().setFont(UserPreferences.getUserFont());
         getUsersPane().getUserList().setFont(UserPreferences.getUserFont());
     }
@@ -1052,7 +1072,8 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
         if (returnVal == JFileChooser.APPROVE_OPTION) {
             try {
                 final File file = fcOpen.getSelectedFile();
-                document = new FileParser().parse(file);
+                fileParser = newFileParser(file);
+                document = fileParser.parse();
                 getUsersPane().getUserList().setListData(document.getUserObjects());
                 getGroupsPane().getGroupList().setListData(document.getGroupObjects());
 
@@ -1079,7 +1100,8 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
         checkForUnsavedChanges();
 
         try {
-            document = new FileParser().parse(file);
+            fileParser = newFileParser(file);
+            document = fileParser.parse();
             getUsersPane().getUserList().setListData(document.getUserObjects());
             getGroupsPane().getGroupList().setListData(document.getGroupObjects());
 
@@ -1164,7 +1186,7 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
                 try {
                     final File file = fcSave.getSelectedFile();
 
-                    new FileGenerator(document).generate(file, UserPreferences.getMultipleLineGroupDefinitions());
+                    newFileGenerator().generate(file, UserPreferences.getMultipleLineGroupDefinitions());
 
                     document.setFile(file);
 
@@ -1179,8 +1201,15 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
         }
         else {
             try {
-                new FileGenerator(document).generate(document.getFile(), UserPreferences
-                        .getMultipleLineGroupDefinitions());
+                if (fileParser != null && fileParser.getDocument() == document
+                        && document.getFile().equals(fileParser.getFile())) {
+                    // Rewrite only the sections that changed, keeping the comments and order of the rest
+                    fileParser.setBackupCount(UserPreferences.getBackupCount());
+                    fileParser.save(UserPreferences.getMultipleLineGroupDefinitions());
+                }
+                else {
+                    newFileGenerator().generate(document.getFile(), UserPreferences.getMultipleLineGroupDefinitions());
+                }
 
                 document.resetUnsavedChangesFlag();
                 updateTitle();
@@ -1212,7 +1241,7 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
             try {
                 final File file = fcSaveAs.getSelectedFile();
 
-                new FileGenerator(document).generate(file, UserPreferences.getMultipleLineGroupDefinitions());
+                newFileGenerator().generate(file, UserPreferences.getMultipleLineGroupDefinitions());
 
                 document.setFile(file);
 
@@ -1226,6 +1255,19 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
         }
     }
 
+    /**
+     * Gets the resolver for the current document, creating a new one whenever a different document is opened.
+     *
+     * @return AccessResolver
+     */
+    private AccessResolver getAccessResolver() {
+        if (accessResolver == null || accessResolver.getDocument() != document) {
+            accessResolver = new AccessResolver(document);
+        }
+
+        return accessResolver;
+    }
+
     /**
      * This method initializes accessRulesPane.
      *
@@ -1465,6 +1507,23 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
         return userAccessRulesColumnNames;
     }
 
+    /**
+     * This method initializes userEffectiveAccessColumnNames.
+     *
+     * @return Object[]
+     */
+    private Object[] getUserEffectiveAccessColumnNames() {
+        if (userEffectiveAccessColumnNames == null) {
+            userEffectiveAccessColumnNames = new String[]{
+                    ResourceUtil.getString("mainframe.accessrulestable.repository"),
+                    ResourceUtil.getString("mainframe.accessrulestable.path"),
+                    ResourceUtil.getString("mainframe.accessrulestable.level"),
+                    ResourceUtil.getString("mainframe.accessrulestable.decidedby")};
+        }
+
+        return userEffectiveAccessColumnNames;
+    }
+
     /**
      * This method initializes usersPane.
      *
@@ -1626,6 +1685,8 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
         getAccessRulesPane().loadUserPreferences();
 
         menuBar.getOpenLastFileMenuItem().setSelected(UserPreferences.getOpenLastFile());
+        menuBar.getKeepBackupsMenuItem().setSelected(UserPreferences.getBackupCount() > 0);
+        menuBar.getSnapshotCacheMenuItem().setSelected(UserPreferences.getSnapshotCache());
 
         this.setVisible(true);
     }
@@ -1696,12 +1757,43 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
         // Not used
     }
 
+    private void keepBackupsSettingChange() {
+        final boolean selected = menuBar.getKeepBackupsMenuItem().isSelected();
+
+        UserPreferences.setBackupCount(selected ? UserPreferences.DEFAULT_BACKUP_COUNT : 0);
+    }
+
     private void multilineGroupDefinitionsSettingChange() {
         final boolean selected = menuBar.getMultiLineGroupDefinitionsMenuItem().isSelected();
 
         UserPreferences.setMultipleLineGroupDefinitions(selected);
     }
 
+    /**
+     * Creates the generator for saving the Document, which keeps backups of the old file if that setting is enabled.
+     */
+    private FileGenerator newFileGenerator() {
+        final FileGenerator generator = new FileGenerator(document);
+
+        generator.setBackupCount(UserPreferences.getBackupCount());
+
+        return generator;
+    }
+
+    /**
+     * Creates the parser for an opened file. If the snapshot cache setting is enabled, large files are loaded from a
+     * snapshot when they have not changed since they were last opened.
+     */
+    private IncrementalFileParser newFileParser(final File file) {
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+
+        if (UserPreferences.getSnapshotCache()) {
+            parser.setSnapshotCache(SnapshotCache.inUserHome());
+        }
+
+        return parser;
+    }
+
     private void openLastEditedFileSettingChange() {
         final boolean selected = menuBar.getOpenLastFileMenuItem().isSelected();
 
@@ -1947,6 +2039,44 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
 
         getUsersPane().getUserAccessRulesTable().setModel(model);
         AutofitTableColumns.autoResizeTable(getUsersPane().getUserAccessRulesTable(), true);
+
+        refreshUserEffectiveAccess(user);
+    }
+
+    /**
+     * Refreshes the effective access table with the access the user has to every path in the document.
+     *
+     * @param user User currently selected.
+     */
+    private void refreshUserEffectiveAccess(final User user) {
+        final DefaultTableModel model = new NonEditableTableModel();
+        Object[][] rows = new Object[0][];
+
+        if (user != null) {
+            try {
+                final List<Path> paths = new ArrayList<>(document.getPaths());
+                paths.sort(new PathComparator());
+
+                rows = new Object[paths.size()][];
+
+                for (int i = 0; i < rows.length; i++) {
+                    final Path path = paths.get(i);
+                    final EffectiveAccess access = getAccessResolver().getEffectiveAccess(user, path.getRepository(),
+                            path.getPath());
+
+                    rows[i] = new Object[]{path.getRepository(), path, access.getLevelFullName(), access.getPath()};
+                }
+            }
+            catch (final AppException ae) {
+                displayError(ResourceUtil.getString("mainframe.error.errorloadingeffectiveaccessforuser"));
+                rows = new Object[0][];
+            }
+        }
+
+        model.setDataVector(rows, getUserEffectiveAccessColumnNames());
+
+        getUsersPane().getUserEffectiveAccessTable().setModel(model);
+        AutofitTableColumns.autoResizeTable(getUsersPane().getUserEffectiveAccessTable(), true);
     }
 
     /**
@@ -1981,7 +2111,16 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
 
         try {
             final File file = document.getFile();
-            document = new FileParser().parse(file);
+
+            if (fileParser == null || !file.equals(fileParser.getFile())) {
+                fileParser = newFileParser(file);
+                fileParser.parse();
+            }
+            else {
+                fileParser.reparse();
+            }
+
+            document = fileParser.getDocument();
             getUsersPane().getUserList().setListData(document.getUserObjects());
             getGroupsPane().getGroupList().setListData(document.getGroupObjects());
 
@@ -2220,6 +2359,12 @@ public final class MainFrame extends BaseFrame implements ActionListener, FileOp
         jfrmHelp.setDefaultCloseOperation(DISPOSE_ON_CLOSE);
     }
 
+    private void snapshotCacheSettingChange() {
+        final boolean selected = menuBar.getSnapshotCacheMenuItem().isSelected();
+
+        UserPreferences.setSnapshotCache(selected);
+    }
+
     /**
      * Statistics Report action handler.
      */
@@ -76,6 +76,10 @@ public final class MainFrameMenuBar extends JMenuBar {
 
     private JMenuItem multiLineGroupDefinitionsMenuItem;
 
+    private JMenuItem keepBackupsMenuItem;
+
+    private JMenuItem snapshotCacheMenuItem;
+
     private JMenuItem previewMenuItem;
 
     private JMenuItem printMenuItem;
@@ -430,6 +434,40 @@ public final class MainFrameMenuBar extends JMenuBar {
         return multiLineGroupDefinitionsMenuItem;
     }
 
+    /**
+     * This method initializes keepBackupsMenuItem.
+     *
+     * @return javax.swing.JMenuItem
+     */
+    public JMenuItem getKeepBackupsMenuItem() {
+        if (keepBackupsMenuItem == null) {
+            keepBackupsMenuItem = new JCheckBoxMenuItem();
+            keepBackupsMenuItem.setText(ResourceUtil.getString("menu.settings.keepbackups"));
+            keepBackupsMenuItem.addActionListener(actionListener);
+            keepBackupsMenuItem.setActionCommand(ActionConstants.KEEP_BACKUPS_ACTION);
+            keepBackupsMenuItem.setSelected(UserPreferences.getBackupCount() > 0);
+        }
+
+        return keepBackupsMenuItem;
+    }
+
+    /**
+     * This method initializes snapshotCacheMenuItem.
+     *
+     * @return javax.swing.JMenuItem
+     */
+    public JMenuItem getSnapshotCacheMenuItem() {
+        if (snapshotCacheMenuItem == null) {
+            snapshotCacheMenuItem = new JCheckBoxMenuItem();
+            snapshotCacheMenuItem.setText(ResourceUtil.getString("menu.settings.snapshotcache"));
+            snapshotCacheMenuItem.addActionListener(actionListener);
+            snapshotCacheMenuItem.setActionCommand(ActionConstants.SNAPSHOT_CACHE_ACTION);
+            snapshotCacheMenuItem.setSelected(UserPreferences.getSnapshotCache());
+        }
+
+        return snapshotCacheMenuItem;
+    }
+
     /**
      * This method initializes previewMenuItem
      *
@@ -615,6 +653,8 @@ public final class MainFrameMenuBar extends JMenuBar {
             settingsMenu.setText(ResourceUtil.getString("menu.settings"));
             settingsMenu.add(getOpenLastFileMenuItem());
             settingsMenu.add(getMultiLineGroupDefinitionsMenuItem());
+            settingsMenu.add(getKeepBackupsMenuItem());
+            settingsMenu.add(getSnapshotCacheMenuItem());
             settingsMenu.add(new JSeparator());
             settingsMenu.add(getMonospacedRadioButtonMenuItem());
             settingsMenu.add(getSansSerifRadioButtonMenuItem());
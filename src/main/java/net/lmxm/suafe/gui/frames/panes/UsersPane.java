@@ -57,10 +57,16 @@ public final class UsersPane extends BaseSplitPane {
 
     private JTable userAccessRulesTable;
 
+    private JTabbedPane userAccessTabbedPane;
+
     private JPanel userActionsPanel;
 
     private JPanel userDetailsPanel;
 
+    private JScrollPane userEffectiveAccessScrollPane;
+
+    private JTable userEffectiveAccessTable;
+
     private JSplitPane userDetailsSplitPanel;
 
     private JList<Group> userGroupList;
@@ -184,8 +190,7 @@ public final class UsersPane extends BaseSplitPane {
         if (userAccessRulesFormatPanel == null) {
             userAccessRulesFormatPanel = new JPanel(new BorderLayout());
             userAccessRulesFormatPanel.setBorder(BorderFactory.createEmptyBorder(7, 0, 0, 0));
-            userAccessRulesFormatPanel.add(createLabel("mainframe.tabs.accessrules"), BorderLayout.NORTH);
-            userAccessRulesFormatPanel.add(getUserAccessRulesScrollPane(), BorderLayout.CENTER);
+            userAccessRulesFormatPanel.add(getUserAccessTabbedPane(), BorderLayout.CENTER);
         }
 
         return userAccessRulesFormatPanel;
@@ -221,6 +226,24 @@ public final class UsersPane extends BaseSplitPane {
         return userAccessRulesTable;
     }
 
+    /**
+     * This method initializes userAccessTabbedPane.
+     *
+     * @return javax.swing.JTabbedPane
+     */
+    private JTabbedPane getUserAccessTabbedPane() {
+        if (userAccessTabbedPane == null) {
+            userAccessTabbedPane = new JTabbedPane();
+            userAccessTabbedPane.addTab(ResourceUtil.getString("mainframe.tabs.accessrules"),
+                    getUserAccessRulesScrollPane());
+            userAccessTabbedPane.addTab(ResourceUtil.getString("mainframe.tabs.effectiveaccess"),
+                    getUserEffectiveAccessScrollPane());
+            userAccessTabbedPane.setToolTipTextAt(1, ResourceUtil.getString("mainframe.tabs.effectiveaccess.tooltip"));
+        }
+
+        return userAccessTabbedPane;
+    }
+
     /**
      * This method initializes userActionsPanel.
      *
@@ -270,6 +293,36 @@ public final class UsersPane extends BaseSplitPane {
         return userDetailsSplitPanel;
     }
 
+    /**
+     * This method initializes userEffectiveAccessScrollPane.
+     *
+     * @return javax.swing.JScrollPane
+     */
+    private JScrollPane getUserEffectiveAccessScrollPane() {
+        if (userEffectiveAccessScrollPane == null) {
+            userEffectiveAccessScrollPane = new JScrollPane(getUserEffectiveAccessTable());
+        }
+
+        return userEffectiveAccessScrollPane;
+    }
+
+    /**
+     * This method initializes userEffectiveAccessTable.
+     *
+     * @return javax.swing.JTable
+     */
+    public JTable getUserEffectiveAccessTable() {
+        if (userEffectiveAccessTable == null) {
+            userEffectiveAccessTable = new JTable();
+            userEffectiveAccessTable.setDefaultRenderer(Object.class, new MyTableCellRenderer());
+            userEffectiveAccessTable.setRowHeight(ApplicationDefaultsConstants.DEFAULT_ACCESS_RULE_TABLE_ROW_HEIGHT);
+            userEffectiveAccessTable.setSelectionMode(javax.swing.ListSelectionModel.SINGLE_SELECTION);
+            userEffectiveAccessTable.setAutoCreateRowSorter(true);
+        }
+
+        return userEffectiveAccessTable;
+    }
+
     /**
      * This method initializes userGroupList.
      *
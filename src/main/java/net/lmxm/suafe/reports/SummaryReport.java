@@ -188,17 +188,12 @@ public final class SummaryReport extends GenericReport {
 
         report.append("<h2>").append(ResourceUtil.getString("summaryreport.serverrules")).append("</h2>");
 
-        final List<Path> serverPaths = document.getPaths();
-        Collections.sort(serverPaths, new PathComparator());
+        final List<Path> serverPaths = document.getServerPaths();
 
         if (serverPaths.size() > 0) {
             report.append("<blockquote>");
 
             for (final Path path : serverPaths) {
-                if (path.getRepository() != null) {
-                    continue;
-                }
-
                 final List<AccessRule> rules = path.getAccessRules();
                 Collections.sort(rules);
 
@@ -23,6 +23,7 @@ import com.martiansoftware.jsap.FlaggedOption;
 import com.martiansoftware.jsap.JSAP;
 import com.martiansoftware.jsap.JSAPException;
 import com.martiansoftware.jsap.Switch;
+import com.martiansoftware.jsap.UnflaggedOption;
 import net.lmxm.suafe.resources.ResourceUtil;
 
 import javax.annotation.Nonnull;
@@ -79,6 +80,28 @@ public final class ArgumentParser extends JSAP {
         registerParameter(opt);
     }
 
+    /**
+     * Adds a flagged option that takes a whole number, using the provided name, short flag,
+     * long flag and help resource key.
+     *
+     * @param name      Flagged option name
+     * @param shortFlag Option short flag
+     * @param longFlag  Option long flag
+     * @param help      Resource file key for option help
+     * @throws JSAPException if error occurs
+     */
+    public void addIntegerOption(@Nonnull final String name, @Nullable final Character shortFlag,
+                                 @Nonnull final String longFlag, @Nonnull final String help) throws JSAPException {
+        final FlaggedOption opt = new FlaggedOption(name)
+                .setStringParser(JSAP.INTEGER_PARSER)
+                .setShortFlag(shortFlag == null ? JSAP.NO_SHORTFLAG : shortFlag)
+                .setLongFlag(longFlag);
+
+        opt.setHelp(ResourceUtil.getString("application.args." + help + ".help"));
+
+        registerParameter(opt);
+    }
+
     /**
      * Adds a list option using the provided name, short flag, long flag and help resource
      * key.
@@ -102,4 +125,23 @@ public final class ArgumentParser extends JSAP {
 
         registerParameter(opt);
     }
+
+    /**
+     * Adds an optional unflagged option that takes all of the remaining arguments, using
+     * the provided name and help resource key.
+     *
+     * @param name Unflagged option name
+     * @param help Resource file key for option help
+     * @throws JSAPException if error occurs
+     */
+    public void addUnflaggedListOption(@Nonnull final String name, @Nonnull final String help) throws JSAPException {
+        final UnflaggedOption opt = new UnflaggedOption(name)
+                .setStringParser(JSAP.STRING_PARSER)
+                .setRequired(false)
+                .setGreedy(true);
+
+        opt.setHelp(ResourceUtil.getString("application.args." + help + ".help"));
+
+        registerParameter(opt);
+    }
 }
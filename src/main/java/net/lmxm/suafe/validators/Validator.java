@@ -23,8 +23,6 @@ import net.lmxm.suafe.exceptions.ValidatorException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Utility class containing application data validators.
@@ -50,10 +48,7 @@ public final class Validator {
         }
 
         // Check group name for invalid characters
-        final Pattern pattern = Pattern.compile("=");
-        final Matcher matcher = pattern.matcher(value);
-
-        if (matcher.find()) {
+        if (value.indexOf('=') != -1) {
             throw new ValidatorException("application.error.groupinvalidcharacters");
         }
     }
@@ -112,10 +107,7 @@ public final class Validator {
         }
 
         // Check repository name for invalid characters
-        final Pattern pattern = Pattern.compile(":");
-        final Matcher matcher = pattern.matcher(value);
-
-        if (matcher.find()) {
+        if (value.indexOf(':') != -1) {
             throw new ValidatorException("application.error.repositoryinvalidcharacters");
         }
     }
@@ -138,10 +130,7 @@ public final class Validator {
         }
 
         // Check user name for invalid characters
-        final Pattern pattern = Pattern.compile("=");
-        final Matcher matcher = pattern.matcher(value);
-
-        if (matcher.find()) {
+        if (value.indexOf('=') != -1) {
             throw new ValidatorException("application.error.aliasinvalidcharacters");
         }
     }
@@ -164,10 +153,7 @@ public final class Validator {
         }
 
         // Check user name for invalid characters
-        final Pattern pattern = Pattern.compile("=");
-        final Matcher matcher = pattern.matcher(value);
-
-        if (matcher.find()) {
+        if (value.indexOf('=') != -1) {
             throw new ValidatorException("application.error.userinvalidcharacters");
         }
     }
@@ -215,10 +201,7 @@ public final class Validator {
         }
 
         // Check path for invalid characters
-        final Pattern pattern = Pattern.compile("=");
-        final Matcher matcher = pattern.matcher(value);
-
-        if (matcher.find()) {
+        if (value.indexOf('=') != -1) {
             throw new ValidatorException("application.error.pathinvalidcharacters");
         }
 
@@ -21,12 +21,22 @@ package net.lmxm.suafe;
 
 import net.lmxm.suafe.api.beans.Document;
 import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.Repository;
 import net.lmxm.suafe.api.beans.User;
+import net.lmxm.suafe.api.parser.FileGenerator;
 import net.lmxm.suafe.api.parser.FileParser;
 import net.lmxm.suafe.exceptions.AppException;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
 
 import static net.lmxm.suafe.CommandLineApplication.*;
 import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READWRITE;
@@ -35,6 +45,7 @@ import static net.lmxm.suafe.test.Assert.assertGroupsExist;
 import static net.lmxm.suafe.test.Assert.assertUsersExist;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -44,6 +55,9 @@ public final class CommandLineApplicationTest {
     @Rule
     public final ExpectedException thrown = ExpectedException.none();
 
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void setAddGroup() throws Exception {
         final Document document = new Document();
@@ -52,7 +66,9 @@ public final class CommandLineApplicationTest {
         assertThat(document.getGroups().size(), is(0));
         assertThat(document.getAccessRules().size(), is(0));
 
-        final Document output = new FileParser().parse(addGroup(document, "groupName"));
+        addGroup(document, "groupName");
+
+        final Document output = new FileParser().parse(new FileGenerator(document).generate(true));
 
         assertThat(document.getUsers().size(), is(0));
 
@@ -80,7 +96,9 @@ public final class CommandLineApplicationTest {
         assertGroupsExist(document.getGroups(), groupNames);
         assertThat(document.getAccessRules().size(), is(0));
 
-        final Document output = new FileParser().parse(addGroups(document, userName, groupNames));
+        addGroups(document, userName, groupNames);
+
+        final Document output = new FileParser().parse(new FileGenerator(document).generate(true));
 
         assertThat(document.getUsers().size(), is(1));
 
@@ -169,7 +187,9 @@ public final class CommandLineApplicationTest {
         assertThat(memberGroupBefore.getUserMembers().size(), is(0));
         assertThat(memberGroupBefore.getGroupMembers().size(), is(0));
 
-        final Document output = new FileParser().parse(addMembers(document, groupName, userNames, groupNames));
+        addMembers(document, groupName, userNames, groupNames);
+
+        final Document output = new FileParser().parse(new FileGenerator(document).generate(true));
 
         assertThat(output.getUsers().size(), is(2));
         assertUsersExist(output.getUsers(), userNames);
@@ -293,4 +313,113 @@ public final class CommandLineApplicationTest {
         thrown.expect(hasKey("application.error.accessrequired"));
         addRule(new Document(), "repositoryName", "/", "userName", null, null);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getEffectiveAccess_throughGroup() throws Exception {
+        final Document document = new Document();
+        final User user = document.addUser("userName");
+        final Group group = document.addGroup("groupName", null, Collections.singletonList(user));
+        document.addAccessRuleForGroup(document.addRepository("repositoryName"), "/", group,
+                SVN_ACCESS_LEVEL_READWRITE);
+
+        assertThat(getEffectiveAccess(document, "userName", "repositoryName", "/trunk"), is("rw\n"));
+        assertThat(getEffectiveAccess(document, "userName", null, "/trunk"), is("none\n"));
+    }
+
+    @Test
+    public void getRepositoryRules_underPath() throws Exception {
+        final Document document = new Document();
+        final User user = document.addUser("userName");
+        final Repository repository = document.addRepository("repositoryName");
+
+        for (final String pathString : new String[]{"/", "/trunk", "/trunk/src", "/trunk2"}) {
+            document.addAccessRuleForUser(repository, pathString, user, SVN_ACCESS_LEVEL_READWRITE);
+        }
+
+        final String[] lines = getRepositoryRules(document, "repositoryName", "/trunk").split("\n");
+
+        assertThat(lines.length, is(2));
+        assertThat(lines[0], startsWith("repositoryName /trunk userName "));
+        assertThat(lines[1], startsWith("repositoryName /trunk/src userName "));
+        assertThat(getRepositoryRules(document, "repositoryName", null).split("\n").length, is(4));
+    }
+
+    /**
+     * The lint report lists every error of every file, in the order the files were given.
+     */
+    @Test
+    public void lint_files() throws Exception {
+        final File valid = folder.newFile("valid.authz");
+        final File invalid = folder.newFile("invalid.authz");
+        final File missing = new File(folder.getRoot(), "missing.authz");
+
+        Files.write(valid.toPath(), "[groups]\neng = alice\n[/]\n@eng = r\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(invalid.toPath(), "[/]\n@eng = r\nbob\n".getBytes(StandardCharsets.UTF_8));
+
+        final String report = lint(Arrays.asList(invalid, valid, missing), null, new ForkJoinPool(2));
+        final String[] lines = report.split("\n");
+
+        assertThat(lines.length, is(3));
+        assertThat(lines[0], is(invalid.getPath() + "\t2\tGroup \"eng\" is not defined."));
+        assertThat(lines[1], startsWith(invalid.getPath() + "\t3\t"));
+        assertThat(lines[2], startsWith(missing.getPath() + "\t0\t"));
+        assertThat(lint(Collections.singletonList(valid), null, new ForkJoinPool(2)), is(""));
+    }
+
+    @Test
+    public void lint_files_empty() throws Exception {
+        thrown.expect(hasKey("application.error.inputfilerequired"));
+
+        lint(Collections.emptyList(), null, new ForkJoinPool(2));
+    }
+
+    /**
+     * A User who is only named in the rules of a Repository is found once the Repository is loaded.
+     */
+    @Test
+    public void getEffectiveAccess_partiallyLoaded() throws Exception {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), "[repository1:/]\nalice = r\n[repository2:/trunk]\nbob = rw\n"
+                .getBytes(StandardCharsets.UTF_8));
+        final Document document = new FileParser().parseLazily(file, null);
+
+        assertThat(getEffectiveAccess(document, "bob", "repository2", "/trunk/src"), is("rw\n"));
+        assertThat(document.findUser("alice"), is(nullValue()));
+    }
+
+    /**
+     * A User who is only named in the rules of a Repository that has not been loaded is found, and gets the access
+     * that a full parse gives, whether or not the query names a Repository.
+     */
+    @Test
+    public void run_getEffectiveAccess_userOnlyInRepositorySection() throws Exception {
+        final File input = folder.newFile("authz");
+        final File output = new File(folder.getRoot(), "output");
+        Files.write(input.toPath(), "[/]\n* = r\n[repository1:/]\nbob = rw\n[repository2:/]\nalice = rw\n"
+                .getBytes(StandardCharsets.UTF_8));
+
+        new CommandLineApplication().run(new String[]{"--geteffectiveaccess", "--name", "bob", "--path", "/x",
+                "-i", input.getPath(), "-o", output.getPath()});
+
+        assertThat(new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8), is("r\n"));
+
+        new CommandLineApplication().run(new String[]{"--geteffectiveaccess", "--name", "bob", "--repos",
+                "repository2", "--path", "/x", "-i", input.getPath(), "-o", output.getPath()});
+
+        assertThat(new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8), is("r\n"));
+    }
+
+    @Test
+    public void getEffectiveAccess_userName_null() throws Exception {
+        thrown.expect(AppException.class);
+        thrown.expect(hasKey("application.error.userrequired"));
+        getEffectiveAccess(new Document(), null, "repositoryName", "/");
+    }
+
+    @Test
+    public void getEffectiveAccess_path_null() throws Exception {
+        thrown.expect(AppException.class);
+        thrown.expect(hasKey("application.error.pathrequired"));
+        getEffectiveAccess(new Document(), "userName", "repositoryName", null);
+    }
+}
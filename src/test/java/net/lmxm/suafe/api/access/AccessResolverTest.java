@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.access;
+
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.Repository;
+import net.lmxm.suafe.api.beans.User;
+import net.lmxm.suafe.exceptions.AppException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_DENY_ACCESS;
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READONLY;
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READWRITE;
+import static net.lmxm.suafe.test.AppExceptionMatcher.hasKey;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * AccessResolver unit tests.
+ */
+public final class AccessResolverTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void userRule() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        document.addAccessRuleForUser(repository, "/trunk", user, SVN_ACCESS_LEVEL_READWRITE);
+
+        final EffectiveAccess access = new AccessResolver(document).getEffectiveAccess(user, repository, "/trunk");
+
+        assertThat(access.getLevel(), is(SVN_ACCESS_LEVEL_READWRITE));
+        assertThat(access.canRead(), is(true));
+        assertThat(access.canWrite(), is(true));
+        assertThat(access.getPath(), is(sameInstance(document.findPath(repository, "/trunk"))));
+        assertThat(access.getAccessRules().size(), is(1));
+    }
+
+    @Test
+    public void nestedGroup() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        final Group inner = document.addGroup("inner", null, Collections.singletonList(user));
+        final Group outer = document.addGroup("outer", Collections.singletonList(inner), null);
+        document.addAccessRuleForGroup(repository, "/", outer, SVN_ACCESS_LEVEL_READONLY);
+
+        final AccessResolver resolver = new AccessResolver(document);
+
+        assertThat(resolver.getEffectiveAccess(user, repository, "/trunk").getLevel(), is(SVN_ACCESS_LEVEL_READONLY));
+    }
+
+    @Test
+    public void allUsers() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        document.addAccessRuleForUser(repository, "/", document.addUser("*"), SVN_ACCESS_LEVEL_READONLY);
+
+        assertThat(new AccessResolver(document).getEffectiveAccess(user, repository, "/").getLevel(),
+                is(SVN_ACCESS_LEVEL_READONLY));
+    }
+
+    @Test
+    public void mostSpecificPathWins() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        document.addAccessRuleForUser(repository, "/", user, SVN_ACCESS_LEVEL_READWRITE);
+        document.addAccessRuleForUser(repository, "/secret", user, SVN_ACCESS_LEVEL_DENY_ACCESS);
+
+        final AccessResolver resolver = new AccessResolver(document);
+        final EffectiveAccess access = resolver.getEffectiveAccess(user, repository, "/secret/file.txt");
+
+        assertThat(access.canRead(), is(false));
+        assertThat(access.getPath().getPath(), is("/secret"));
+        assertThat(resolver.getEffectiveAccess(user, repository, "/secretive").canWrite(), is(true));
+    }
+
+    @Test
+    public void repositorySectionBeforeServerSection() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        document.addAccessRuleForUser(repository, "/trunk", user, SVN_ACCESS_LEVEL_READONLY);
+        document.addAccessRuleForUser((Repository) null, "/trunk", user, SVN_ACCESS_LEVEL_READWRITE);
+
+        final AccessResolver resolver = new AccessResolver(document);
+
+        assertThat(resolver.getEffectiveAccess(user, repository, "/trunk").getLevel(), is(SVN_ACCESS_LEVEL_READONLY));
+        assertThat(resolver.getEffectiveAccess(user, null, "/trunk").getLevel(), is(SVN_ACCESS_LEVEL_READWRITE));
+    }
+
+    @Test
+    public void serverSectionWhenRepositoryHasNone() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        document.addAccessRuleForUser((Repository) null, "/", user, SVN_ACCESS_LEVEL_READONLY);
+
+        final EffectiveAccess access = new AccessResolver(document).getEffectiveAccess(user, repository, "/trunk");
+
+        assertThat(access.getLevel(), is(SVN_ACCESS_LEVEL_READONLY));
+        assertThat(access.getPath().getRepository(), is(nullValue()));
+    }
+
+    @Test
+    public void rulesInSectionCombine() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        final Group group = document.addGroup("groupName", null, Collections.singletonList(user));
+        document.addAccessRuleForUser(repository, "/", user, SVN_ACCESS_LEVEL_READONLY);
+        document.addAccessRuleForGroup(repository, "/", group, SVN_ACCESS_LEVEL_READWRITE);
+
+        final EffectiveAccess access = new AccessResolver(document).getEffectiveAccess(user, repository, "/");
+
+        assertThat(access.getLevel(), is(SVN_ACCESS_LEVEL_READWRITE));
+        assertThat(access.getAccessRules().size(), is(2));
+    }
+
+    @Test
+    public void noAccess() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        document.addAccessRuleForUser(repository, "/", document.addUser("otherName"), SVN_ACCESS_LEVEL_READWRITE);
+
+        final EffectiveAccess access = new AccessResolver(document).getEffectiveAccess(user, repository, "/");
+
+        assertThat(access.canRead(), is(false));
+        assertThat(access.getPath(), is(nullValue()));
+        assertThat(access.getAccessRules().size(), is(0));
+    }
+
+    @Test
+    public void cacheDiscardedWhenDocumentChanges() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        final AccessResolver resolver = new AccessResolver(document);
+
+        assertThat(resolver.getEffectiveAccess(user, repository, "/trunk").canRead(), is(false));
+
+        document.addAccessRuleForUser(repository, "/", user, SVN_ACCESS_LEVEL_READONLY);
+
+        assertThat(resolver.getEffectiveAccess(user, repository, "/trunk").canRead(), is(true));
+
+        document.deletePath(document.findPath(repository, "/"));
+
+        assertThat(resolver.getEffectiveAccess(user, repository, "/trunk").canRead(), is(false));
+    }
+
+    @Test
+    public void cacheDiscardedWhenMembershipChanges() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User alice = document.addUser("alice");
+        final User bob = document.addUser("bob");
+        final Group group = document.addGroup("eng", null, Arrays.asList(alice, bob));
+        document.addAccessRuleForGroup(repository, "/", group, SVN_ACCESS_LEVEL_READWRITE);
+
+        final AccessResolver resolver = new AccessResolver(document);
+
+        assertThat(resolver.getEffectiveAccess(alice, repository, "/").getLevel(), is(SVN_ACCESS_LEVEL_READWRITE));
+        assertThat(resolver.getEffectiveAccess(bob, repository, "/").getLevel(), is(SVN_ACCESS_LEVEL_READWRITE));
+
+        document.removeGroupMembers(group, Collections.singletonList(alice));
+
+        assertThat(resolver.getEffectiveAccess(alice, repository, "/").canRead(), is(false));
+
+        document.removeFromGroups(bob, Collections.singletonList(group));
+
+        assertThat(resolver.getEffectiveAccess(bob, repository, "/").canRead(), is(false));
+    }
+
+    @Test
+    public void cacheDiscardedWhenUserRenamed() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        document.addAccessRuleForUser(repository, "/", user, SVN_ACCESS_LEVEL_READONLY);
+
+        final AccessResolver resolver = new AccessResolver(document);
+
+        assertThat(resolver.getEffectiveAccess("userName", "repositoryName", "/").canRead(), is(true));
+
+        document.renameUser(user, "newName", null);
+
+        assertThat(resolver.getEffectiveAccess("newName", "repositoryName", "/").canRead(), is(true));
+        thrown.expect(hasKey("application.error.unabletofinduser"));
+        resolver.getEffectiveAccess("userName", "repositoryName", "/");
+    }
+
+    @Test
+    public void byName() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        document.addAccessRuleForUser(repository, "/", document.addUser("userName"), SVN_ACCESS_LEVEL_READONLY);
+
+        assertThat(new AccessResolver(document).getEffectiveAccess("userName", "repositoryName", "/").getLevel(),
+                is(SVN_ACCESS_LEVEL_READONLY));
+    }
+
+    @Test
+    public void byName_unknownUser() throws Exception {
+        thrown.expect(AppException.class);
+        thrown.expect(hasKey("application.error.unabletofinduser"));
+        new AccessResolver(new Document()).getEffectiveAccess("userName", null, "/");
+    }
+
+    @Test
+    public void byName_unknownRepository() throws Exception {
+        final Document document = new Document();
+        document.addUser("userName");
+
+        thrown.expect(AppException.class);
+        thrown.expect(hasKey("application.error.unabletofindrepository"));
+        new AccessResolver(document).getEffectiveAccess("userName", "repositoryName", "/");
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.access;
+
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.Repository;
+import net.lmxm.suafe.api.beans.User;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_DENY_ACCESS;
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READONLY;
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READWRITE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * AuthzSnapshot unit tests.
+ */
+public final class AuthzSnapshotTest {
+    @Test
+    public void check() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User bob = document.addUser("bob");
+        final Group backend = document.addGroup("backend", null, Collections.singletonList(bob));
+        final Group eng = document.addGroup("eng", Collections.singletonList(backend), null);
+        document.addAccessRuleForUser(repository, "/", document.addUser("*"), SVN_ACCESS_LEVEL_READONLY);
+        document.addAccessRuleForGroup(repository, "/trunk", eng, SVN_ACCESS_LEVEL_READWRITE);
+        document.addAccessRuleForUser(repository, "/trunk/secret", bob, SVN_ACCESS_LEVEL_DENY_ACCESS);
+        document.addAccessRuleForUser((Repository) null, "/tags", bob, SVN_ACCESS_LEVEL_READWRITE);
+
+        final AuthzSnapshot snapshot = AuthzSnapshot.compile(document);
+
+        assertThat(snapshot.canWrite("bob", "repositoryName", "/trunk/src/Main.java"), is(true));
+        assertThat(snapshot.canRead("bob", "repositoryName", "/trunk/secret/key"), is(false));
+        assertThat(snapshot.canRead("bob", "repositoryName", "/trunk/secretive"), is(true));
+        assertThat(snapshot.canWrite("bob", "repositoryName", "/tags/1.0"), is(true));
+        assertThat(snapshot.canWrite("bob", "repositoryName", "trunk/"), is(true));
+        assertThat(snapshot.canWrite("alice", "repositoryName", "/trunk"), is(false));
+        assertThat(snapshot.canRead("alice", "repositoryName", "/trunk"), is(true));
+        assertThat(snapshot.canRead("alice", "otherRepository", "/trunk"), is(false));
+        assertThat(snapshot.canWrite("bob", null, "/tags"), is(true));
+        assertThat(snapshot.findUser("alice"), is(-1));
+        assertThat(snapshot.getLevel(snapshot.findUser("bob"), snapshot.findRepository("repositoryName"), "/"),
+                is(SVN_ACCESS_LEVEL_READONLY));
+    }
+
+    @Test
+    public void unaffectedByLaterChanges() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User bob = document.addUser("bob");
+        document.addAccessRuleForUser(repository, "/", bob, SVN_ACCESS_LEVEL_READONLY);
+
+        final AuthzSnapshot snapshot = AuthzSnapshot.compile(document);
+        document.deleteUser(bob);
+
+        assertThat(snapshot.canRead("bob", "repositoryName", "/"), is(true));
+        assertThat(AuthzSnapshot.compile(document).canRead("bob", "repositoryName", "/"), is(false));
+    }
+
+    /**
+     * Compares the snapshot with AccessResolver on randomly generated documents.
+     */
+    @Test
+    public void matchesAccessResolver() throws Exception {
+        final String[] levels = {SVN_ACCESS_LEVEL_DENY_ACCESS, SVN_ACCESS_LEVEL_READONLY, SVN_ACCESS_LEVEL_READWRITE};
+        final String[] pathStrings = {"/", "/trunk", "/trunk/src", "/trunk/src/main", "/branches", "/branches/b1",
+                "/tags"};
+        final Random random = new Random(7);
+
+        for (int round = 0; round < 20; round++) {
+            final Document document = new Document();
+            final List<User> users = new ArrayList<>();
+            final List<Group> groups = new ArrayList<>();
+            final List<Repository> repositories = new ArrayList<>();
+
+            for (int i = 0; i < 10; i++) {
+                users.add(document.addUser("user" + i));
+            }
+
+            for (int i = 0; i < 6; i++) {
+                final Group group = document.addGroup("group" + i);
+
+                document.addGroupMembers(group, Collections.singletonList(users.get(random.nextInt(users.size()))));
+
+                if (i > 0) {
+                    document.addGroupMembers(group, Collections.singletonList(groups.get(random.nextInt(i))));
+                }
+
+                groups.add(group);
+            }
+
+            for (int i = 0; i < 3; i++) {
+                repositories.add(document.addRepository("repository" + i));
+            }
+
+            users.add(document.addUser("*"));
+
+            for (int i = 0; i < 40; i++) {
+                final Repository repository = (random.nextInt(4) == 0) ? null :
+                        repositories.get(random.nextInt(repositories.size()));
+                final String pathString = pathStrings[random.nextInt(pathStrings.length)];
+                final String level = levels[random.nextInt(levels.length)];
+
+                if (random.nextBoolean()) {
+                    final User user = users.get(random.nextInt(users.size()));
+
+                    if (document.findUserAccessRule(repository, pathString, user) == null) {
+                        document.addAccessRuleForUser(repository, pathString, user, level);
+                    }
+                }
+                else {
+                    final Group group = groups.get(random.nextInt(groups.size()));
+
+                    if (document.findGroupAccessRule(repository, pathString, group) == null) {
+                        document.addAccessRuleForGroup(repository, pathString, group, level);
+                    }
+                }
+            }
+
+            final AccessResolver resolver = new AccessResolver(document);
+            final AuthzSnapshot snapshot = AuthzSnapshot.compile(document);
+
+            for (final User user : users.subList(0, users.size() - 1)) {
+                for (final Repository repository : repositories) {
+                    for (final String pathString : pathStrings) {
+                        final String query = ("/".equals(pathString) ? "" : pathString) + "/file";
+
+                        assertThat(user + " " + repository + " " + query,
+                                snapshot.getLevel(snapshot.findUser(user.getName()),
+                                        snapshot.findRepository(repository.getName()), query),
+                                is(resolver.getEffectiveAccess(user, repository, query).getLevel()));
+                    }
+                }
+            }
+        }
+    }
+}
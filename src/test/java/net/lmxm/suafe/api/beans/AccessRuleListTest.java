@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.lmxm.suafe.api.beans;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * AccessRuleList unit tests.
+ */
+public final class AccessRuleListTest {
+    @Test
+    public void add() {
+        final AccessRuleList list = new AccessRuleList();
+        final AccessRule rule = rule("a");
+
+        assertThat(list.add(rule), is(true));
+        assertThat(list.add(rule), is(false));
+        assertThat(list.size(), is(1));
+        assertThat(list.get(0), is(sameInstance(rule)));
+    }
+
+    @Test
+    public void add_growsPastInitialCapacity() {
+        final AccessRuleList list = new AccessRuleList();
+
+        for (int i = 0; i < 100; i++) {
+            list.add(rule("path" + i));
+        }
+
+        assertThat(list.size(), is(100));
+        assertThat(list.get(99).getPath().getPath(), is("path99"));
+    }
+
+    @Test
+    public void clear() {
+        final AccessRuleList list = new AccessRuleList();
+        final AccessRule first = rule("a");
+        final AccessRule second = rule("b");
+        list.addAll(Arrays.asList(first, second));
+
+        list.clear();
+
+        assertThat(list.size(), is(0));
+        assertThat(list.contains(first), is(false));
+        assertThat(list.add(second), is(true));
+        assertThat(list.add(first), is(true));
+        assertThat(list.get(0), is(sameInstance(second)));
+        assertThat(list.removeRule(first), is(true));
+        assertThat(list.size(), is(1));
+    }
+
+    @Test
+    public void removeRule() {
+        final AccessRuleList list = new AccessRuleList();
+        final AccessRule first = rule("a");
+        final AccessRule second = rule("b");
+        final AccessRule third = rule("c");
+        list.addAll(Arrays.asList(first, second, third));
+
+        assertThat(list.removeRule(second), is(true));
+        assertThat(list.removeRule(second), is(false));
+
+        assertThat(list.size(), is(2));
+        assertThat(list.get(0), is(sameInstance(first)));
+        assertThat(list.get(1), is(sameInstance(third)));
+        assertThat(list.contains(second), is(false));
+    }
+
+    @Test
+    public void removeRule_equalButDifferentInstance() {
+        final AccessRuleList list = new AccessRuleList();
+        final AccessRule rule = rule("a");
+        list.add(rule);
+
+        assertThat(list.remove(rule("a")), is(false));
+        assertThat(list.size(), is(1));
+    }
+
+    @Test
+    public void removeRules() {
+        final AccessRuleList list = new AccessRuleList();
+        final AccessRule first = rule("a");
+        final AccessRule second = rule("b");
+        final AccessRule third = rule("c");
+        list.addAll(Arrays.asList(first, second, third));
+
+        list.removeRules(Arrays.asList(first, third));
+
+        assertThat(list.size(), is(1));
+        assertThat(list.get(0), is(sameInstance(second)));
+
+        list.add(first);
+
+        assertThat(list.size(), is(2));
+        assertThat(list.get(1), is(sameInstance(first)));
+    }
+
+    @Test
+    public void sort() {
+        final AccessRuleList list = new AccessRuleList();
+        final AccessRule first = rule("a");
+        final AccessRule second = rule("b");
+        final AccessRule third = rule("c");
+        list.addAll(Arrays.asList(third, second, first));
+        list.removeRule(second);
+
+        list.sort(Comparator.comparing(rule -> rule.getPath().getPath()));
+
+        assertThat(list.size(), is(2));
+        assertThat(list.get(0), is(sameInstance(first)));
+        assertThat(list.get(1), is(sameInstance(third)));
+        assertThat(list.removeRule(first), is(true));
+        assertThat(list.get(0), is(sameInstance(third)));
+    }
+
+    /**
+     * The list records the slot of each rule, which must follow the rule when removed slots are squeezed out.
+     */
+    @Test
+    public void removeRule_afterCompaction() {
+        final AccessRuleList list = new AccessRuleList();
+        final AccessRule[] rules = new AccessRule[40];
+
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = rule("path" + i);
+            list.add(rules[i]);
+        }
+
+        for (int i = 0; i < rules.length; i += 2) {
+            list.removeRule(rules[i]);
+        }
+
+        assertThat(list.get(0), is(sameInstance(rules[1])));
+
+        for (int i = 1; i < rules.length; i += 2) {
+            assertThat(list.contains(rules[i]), is(true));
+            assertThat(list.removeRule(rules[i]), is(true));
+        }
+
+        assertThat(list.size(), is(0));
+        assertThat(list.isEmpty(), is(true));
+    }
+
+    /**
+     * Removed slots are only squeezed out once they make up a quarter of the list, so reading past them must find the
+     * same rules as a plain list would.
+     */
+    @Test
+    public void get_withRemovedSlots() {
+        final AccessRuleList list = new AccessRuleList();
+        final List<AccessRule> expected = new ArrayList<>();
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 1000; i++) {
+            final AccessRule rule = rule("path" + i);
+            list.add(rule);
+            expected.add(rule);
+        }
+
+        for (int round = 0; round < 600; round++) {
+            final AccessRule rule = expected.remove(random.nextInt(expected.size()));
+
+            assertThat(list.removeRule(rule), is(true));
+
+            if (round % 7 == 0) {
+                final AccessRule added = rule("added" + round);
+                list.add(added);
+                expected.add(added);
+            }
+
+            final int index = random.nextInt(expected.size());
+
+            assertThat(list.get(index), is(sameInstance(expected.get(index))));
+        }
+
+        assertThat(list.size(), is(expected.size()));
+        assertThat(new ArrayList<>(list), is(expected));
+    }
+
+    /**
+     * Slots are kept by each list rather than by the rule, so one rule can be in two lists at once.
+     */
+    @Test
+    public void ruleInTwoLists() {
+        final AccessRuleList first = new AccessRuleList();
+        final AccessRuleList second = new AccessRuleList();
+        final AccessRule rule = rule("a");
+        first.addAll(Arrays.asList(rule("b"), rule));
+        second.add(rule);
+
+        assertThat(first.removeRule(rule), is(true));
+        assertThat(second.contains(rule), is(true));
+        assertThat(second.get(0), is(sameInstance(rule)));
+        assertThat(second.removeRule(rule), is(true));
+        assertThat(second.isEmpty(), is(true));
+    }
+
+    private static AccessRule rule(final String pathString) {
+        return new AccessRule(new Path(null, pathString), new User("userName"), "r");
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.lmxm.suafe.api.beans;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READONLY;
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READWRITE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Document access rule deletion unit tests.
+ */
+public final class DocumentDeleteTest {
+    @Test
+    public void deleteUsers() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user1 = document.addUser("userName1");
+        final User user2 = document.addUser("userName2");
+        final User user3 = document.addUser("userName3");
+        final Group group = document.addGroupByName("groupName", null, Arrays.asList("userName1", "userName3"),
+                null);
+
+        document.addAccessRuleForUser(repository, "/trunk", user1, SVN_ACCESS_LEVEL_READONLY);
+        document.addAccessRuleForUser(repository, "/trunk", user2, SVN_ACCESS_LEVEL_READONLY);
+        document.addAccessRuleForUser(repository, "/branches", user2, SVN_ACCESS_LEVEL_READWRITE);
+        final AccessRule kept = document.addAccessRuleForUser(repository, "/branches", user3,
+                SVN_ACCESS_LEVEL_READONLY);
+
+        document.deleteUsers(Arrays.asList(user1, user2));
+
+        assertThat(document.getUsers().size(), is(1));
+        assertThat(document.findUser("userName1"), is(nullValue()));
+        assertThat(document.findUser("userName2"), is(nullValue()));
+        assertThat(document.getAccessRules().size(), is(1));
+        assertThat(document.getAccessRules().get(0), is(sameInstance(kept)));
+        assertThat(document.findPath(repository, "/trunk").getAccessRules().size(), is(0));
+        assertThat(document.findPath(repository, "/branches").getAccessRules().size(), is(1));
+        assertThat(group.getUserMembers().size(), is(1));
+        assertThat(group.getUserMembers().get(0), is(sameInstance(user3)));
+    }
+
+    @Test
+    public void deleteGroups() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        final Group group1 = document.addGroupByName("groupName1", null, Arrays.asList("userName"), null);
+        final Group group2 = document.addGroupByName("groupName2", null, Arrays.asList("userName"), null);
+        final Group group3 = document.addGroup("groupName3");
+
+        document.addAccessRuleForGroup(repository, "/trunk", group1, SVN_ACCESS_LEVEL_READONLY);
+        document.addAccessRuleForGroup(repository, "/trunk", group2, SVN_ACCESS_LEVEL_READONLY);
+        final AccessRule kept = document.addAccessRuleForGroup(repository, "/trunk", group3,
+                SVN_ACCESS_LEVEL_READWRITE);
+
+        document.deleteGroups(Arrays.asList(group1, group2));
+
+        assertThat(document.getGroups().size(), is(1));
+        assertThat(document.findGroup("groupName1"), is(nullValue()));
+        assertThat(document.getAccessRules().size(), is(1));
+        assertThat(document.getAccessRules().get(0), is(sameInstance(kept)));
+        assertThat(document.findPath(repository, "/trunk").getAccessRules().size(), is(1));
+        assertThat(user.getGroups().size(), is(0));
+    }
+
+    @Test
+    public void deleteRepository() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        final Group group = document.addGroup("groupName");
+
+        document.addAccessRuleForUser(repository, "/trunk", user, SVN_ACCESS_LEVEL_READONLY);
+        document.addAccessRuleForGroup(repository, "/branches", group, SVN_ACCESS_LEVEL_READONLY);
+        final AccessRule kept = document.addAccessRuleForUser(null, "/trunk", user, SVN_ACCESS_LEVEL_READONLY);
+
+        document.deleteRepository(repository);
+
+        assertThat(document.getAccessRules().size(), is(1));
+        assertThat(document.getAccessRules().get(0), is(sameInstance(kept)));
+        assertThat(document.getPaths().size(), is(1));
+        assertThat(user.getAccessRules().size(), is(1));
+        assertThat(group.getAccessRules().size(), is(0));
+    }
+
+    @Test
+    public void deleteAccessRule() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user = document.addUser("userName");
+        final AccessRule rule = document.addAccessRuleForUser(repository, "/trunk", user, SVN_ACCESS_LEVEL_READONLY);
+
+        document.deleteAccessRule("repositoryName", "/trunk", null, user);
+
+        assertThat(document.getAccessRules().size(), is(0));
+        assertThat(user.getAccessRules().size(), is(0));
+        assertThat(rule.getPath().getAccessRules().size(), is(0));
+    }
+
+    @Test
+    public void findUserAccessRule() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final User user1 = document.addUser("userName1");
+        final User user2 = document.addUser("userName2");
+        final Group group = document.addGroup("groupName");
+
+        for (int i = 0; i < 10; i++) {
+            document.addAccessRuleForUser(repository, "/path" + i, user1, SVN_ACCESS_LEVEL_READONLY);
+        }
+
+        final AccessRule userRule = document.addAccessRuleForUser(repository, "/path5", user2,
+                SVN_ACCESS_LEVEL_READONLY);
+        final AccessRule groupRule = document.addAccessRuleForGroup(repository, "/path5", group,
+                SVN_ACCESS_LEVEL_READONLY);
+
+        assertThat(document.findUserAccessRule(repository, "/path5", user2), is(sameInstance(userRule)));
+        assertThat(document.findGroupAccessRule(repository, "/path5", group), is(sameInstance(groupRule)));
+        assertThat(document.findUserAccessRule(repository, "/path9", user2), is(nullValue()));
+        assertThat(document.findUserAccessRule(repository, "/path9", user1).getPath().getPath(), is("/path9"));
+    }
+
+    @Test
+    public void deleteUsers_empty() throws Exception {
+        final Document document = new Document();
+        document.addUser("userName");
+
+        document.deleteUsers(new ArrayList<>());
+
+        assertThat(document.getUsers().size(), is(1));
+    }
+}
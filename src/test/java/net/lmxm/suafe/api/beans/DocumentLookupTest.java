@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.beans;
+
+import net.lmxm.suafe.exceptions.AppException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.List;
+
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READONLY;
+import static net.lmxm.suafe.test.AppExceptionMatcher.hasKey;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Document name lookup unit tests.
+ */
+public final class DocumentLookupTest {
+    /**
+     * Number of distinct names looked up, whatever the size of the document.
+     */
+    private static final int LOOKUP_NAMES = 1000;
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void findUser() throws Exception {
+        final Document document = new Document();
+        final User user = document.addUser("userName", "aliasName");
+
+        assertThat(document.findUser("userName"), is(sameInstance(user)));
+        assertThat(document.findUserByAlias("aliasName"), is(sameInstance(user)));
+        assertThat(document.findUser("otherName"), is(nullValue()));
+        assertThat(document.findUserByAlias("otherAlias"), is(nullValue()));
+    }
+
+    @Test
+    public void findUser_renamed() throws Exception {
+        final Document document = new Document();
+        final User user = document.addUser("userName", "aliasName");
+
+        document.renameUser(user, "newUserName", "newAliasName");
+
+        assertThat(document.findUser("userName"), is(nullValue()));
+        assertThat(document.findUserByAlias("aliasName"), is(nullValue()));
+        assertThat(document.findUser("newUserName"), is(sameInstance(user)));
+        assertThat(document.findUserByAlias("newAliasName"), is(sameInstance(user)));
+    }
+
+    @Test
+    public void renameUser_nameTaken() throws Exception {
+        final Document document = new Document();
+        final User user = document.addUser("userName");
+        document.addUser("otherName");
+
+        assertThat(document.renameUser(user, "userName", "aliasName"), is(sameInstance(user)));
+
+        thrown.expect(AppException.class);
+        thrown.expect(hasKey("renameuser.error.useralreadyexists"));
+        document.renameUser(user, "otherName", null);
+    }
+
+    @Test
+    public void findUser_cloned() throws Exception {
+        final Document document = new Document();
+        final User user = document.addUser("userName");
+        final User clone = document.cloneUser(user, "cloneName");
+
+        assertThat(document.findUser("userName"), is(sameInstance(user)));
+        assertThat(document.findUser("cloneName"), is(sameInstance(clone)));
+    }
+
+    @Test
+    public void findUser_deleted() throws Exception {
+        final Document document = new Document();
+        document.addUser("userName", "aliasName");
+
+        document.deleteUser("userName");
+
+        assertThat(document.findUser("userName"), is(nullValue()));
+        assertThat(document.findUserByAlias("aliasName"), is(nullValue()));
+    }
+
+    @Test
+    public void findUser_undone() throws Exception {
+        final Document document = new Document();
+        document.addUser("userName");
+
+        document.undoLastAction();
+
+        assertThat(document.findUser("userName"), is(nullValue()));
+        assertThat(document.getUsers().size(), is(0));
+    }
+
+    @Test
+    public void findUser_excludeAllUsers() throws Exception {
+        final Document document = new Document();
+        final User allUsers = document.addUser("*");
+
+        assertThat(document.getUserObjectsExcludeAllUsers().length, is(0));
+        assertThat(document.findUser("*"), is(sameInstance(allUsers)));
+        assertThat(document.getUsers().size(), is(1));
+    }
+
+    @Test
+    public void findGroup() throws Exception {
+        final Document document = new Document();
+        final Group group = document.addGroup("groupName");
+
+        assertThat(document.findGroup("groupName"), is(sameInstance(group)));
+        assertThat(document.findGroup("otherName"), is(nullValue()));
+    }
+
+    @Test
+    public void findGroup_renamed() throws Exception {
+        final Document document = new Document();
+        final Group group = document.addGroup("groupName");
+
+        document.renameGroup(group, "newGroupName");
+
+        assertThat(document.findGroup("groupName"), is(nullValue()));
+        assertThat(document.findGroup("newGroupName"), is(sameInstance(group)));
+    }
+
+    @Test
+    public void renameGroup_nameTaken() throws Exception {
+        final Document document = new Document();
+        final Group group = document.addGroup("groupName");
+        document.addGroup("otherName");
+
+        thrown.expect(AppException.class);
+        thrown.expect(hasKey("renamegroup.error.groupalreadyexists"));
+        document.renameGroup(group, "otherName");
+    }
+
+    @Test
+    public void findGroup_cloned() throws Exception {
+        final Document document = new Document();
+        final Group group = document.addGroup("groupName");
+        final Group clone = document.cloneGroup(group, "cloneName");
+
+        assertThat(document.findGroup("groupName"), is(sameInstance(group)));
+        assertThat(document.findGroup("cloneName"), is(sameInstance(clone)));
+    }
+
+    @Test
+    public void findGroup_deletedAndUndone() throws Exception {
+        final Document document = new Document();
+        document.addGroup("groupName1");
+        document.addGroup("groupName2");
+
+        document.deleteGroup("groupName1");
+        document.undoLastAction();
+
+        assertThat(document.findGroup("groupName1"), is(nullValue()));
+        assertThat(document.findGroup("groupName2"), is(nullValue()));
+        assertThat(document.getGroups().size(), is(0));
+    }
+
+    @Test
+    public void findRepository() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        document.addAccessRuleForUser(repository, "/", document.addUser("userName"), SVN_ACCESS_LEVEL_READONLY);
+
+        assertThat(document.findRepository("repositoryName"), is(sameInstance(repository)));
+
+        document.renameRepository(repository, "newRepositoryName");
+
+        assertThat(document.findRepository("repositoryName"), is(nullValue()));
+        assertThat(document.findRepository("newRepositoryName"), is(sameInstance(repository)));
+
+        document.deleteRepository("newRepositoryName");
+
+        assertThat(document.findRepository("newRepositoryName"), is(nullValue()));
+    }
+
+    @Test
+    public void renameRepository_nameTaken() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        document.addRepository("otherName");
+
+        thrown.expect(AppException.class);
+        thrown.expect(hasKey("renamerepository.error.repositoryalreadyexists"));
+        document.renameRepository(repository, "otherName");
+    }
+
+    @Test
+    public void findRepository_initialized() throws Exception {
+        final Document document = new Document();
+        document.addRepository("repositoryName");
+
+        document.initialize();
+
+        assertThat(document.findRepository("repositoryName"), is(nullValue()));
+    }
+
+    @Test
+    public void findPath() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final Path repositoryPath = document.addPath(repository, "/trunk");
+        final Path serverPath = document.addPath(null, "/trunk");
+
+        assertThat(document.findPath(repository, "/trunk"), is(sameInstance(repositoryPath)));
+        assertThat(document.findPath("repositoryName", "/trunk"), is(sameInstance(repositoryPath)));
+        assertThat(document.findPath((Repository) null, "/trunk"), is(sameInstance(serverPath)));
+        assertThat(document.findServerPath("/trunk"), is(sameInstance(serverPath)));
+        assertThat(document.findPath(repository, "/branches"), is(nullValue()));
+
+        document.deletePath(serverPath);
+
+        assertThat(document.findServerPath("/trunk"), is(nullValue()));
+        assertThat(document.findPath(repository, "/trunk"), is(sameInstance(repositoryPath)));
+    }
+
+    @Test
+    public void findPathsUnder() throws Exception {
+        final Document document = new Document();
+        final Repository repository = document.addRepository("repositoryName");
+        final Path trunk = document.addPath(repository, "/trunk");
+        final Path src = document.addPath(repository, "/trunk/src");
+        document.addPath(repository, "/trunk2");
+        document.addPath(null, "/trunk/src");
+
+        final List<Path> paths = document.findPathsUnder(repository, "/trunk");
+
+        assertThat(paths.size(), is(2));
+        assertThat(paths.get(0), is(sameInstance(trunk)));
+        assertThat(paths.get(1), is(sameInstance(src)));
+        assertThat(document.findPathsUnder(null, "/").size(), is(1));
+        assertThat(document.getServerPaths().size(), is(1));
+    }
+
+    @Test
+    public void movePath() throws Exception {
+        final Document document = new Document();
+        final Repository repository1 = document.addRepository("repositoryName1");
+        final Repository repository2 = document.addRepository("repositoryName2");
+        final Path path = document.addPath(repository1, "/trunk");
+
+        document.movePath(path, repository2, "/branches");
+
+        assertThat(document.findPath(repository1, "/trunk"), is(nullValue()));
+        assertThat(document.findPath(repository2, "/branches"), is(sameInstance(path)));
+        assertThat(repository1.getPaths().size(), is(0));
+        assertThat(repository2.getPaths().size(), is(1));
+    }
+
+    /**
+     * Lookup time must not grow with the size of the document. A linear scan would make the large document about 100
+     * times slower than the small one, so allowing a factor of 10 leaves plenty of room for timer noise. Both sizes
+     * look up the same names, so that the large document is not slowed by looking up more names than fit in the cache.
+     */
+    @Test
+    public void lookupsDoNotScaleWithDocumentSize() throws Exception {
+        final long smallTime = timeLookups(1000);
+        final long largeTime = timeLookups(100000);
+
+        assertTrue("Lookups in a large document took " + largeTime + "ns versus " + smallTime + "ns",
+                largeTime < smallTime * 10);
+    }
+
+    private static long timeLookups(final int size) throws Exception {
+        final Document document = new Document();
+        document.disableUndo();
+
+        final String[] names = new String[size];
+
+        for (int i = 0; i < size; i++) {
+            names[i] = "user" + i;
+            document.addUser(names[i], "alias" + i);
+            document.addGroup("group" + i);
+        }
+
+        long best = Long.MAX_VALUE;
+
+        for (int run = 0; run < 5; run++) {
+            final long start = System.nanoTime();
+
+            for (int i = 0; i < 20000; i++) {
+                final int index = (i * 7919) % LOOKUP_NAMES;
+                final String name = names[index];
+
+                if (document.findUser(name) == null || document.findGroup("group" + index) == null) {
+                    throw new AssertionError(name);
+                }
+            }
+
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return best;
+    }
+}
@@ -1885,7 +1885,101 @@ public class DocumentTest {
 
     @Test
     public void testCheckForCircularReference() {
+        try {
+            document.initialize();
+            document.checkForCircularReference(null, new ArrayList<>());
+            fail();
+        }
+        catch (AppException e) {
+        }
+
+        try {
+            document.initialize();
+            document.checkForCircularReference(document.addGroup(groupName), null);
+            fail();
+        }
+        catch (AppException e) {
+        }
+
+        // Group added to itself
+        try {
+            document.initialize();
+            final Group group = document.addGroup(groupName);
+            final List<Group> members = new ArrayList<>();
+            members.add(group);
+
+            document.checkForCircularReference(group, members);
+            fail();
+        }
+        catch (AppException e) {
+            assertTrue(e.getKey().equals("application.error.circularreference"));
+            assertTrue(e.getMessage().endsWith("Cycle: " + groupName + " -> " + groupName));
+        }
+
+        // Group added to a group nested within it
+        try {
+            document.initialize();
+            final Group top = document.addGroup("top");
+            final Group middle = document.addGroup("middle");
+            final Group bottom = document.addGroup("bottom");
+            final Group other = document.addGroup("other");
+            top.addGroupMember(middle);
+            middle.addGroupMember(bottom);
+
+            final List<Group> members = new ArrayList<>();
+            members.add(other);
+            members.add(top);
 
+            document.checkForCircularReference(bottom, members);
+            fail();
+        }
+        catch (AppException e) {
+            assertTrue(e.getMessage().endsWith("Cycle: bottom -> top -> middle -> bottom"));
+        }
+
+        // No cycle
+        try {
+            document.initialize();
+            final Group top = document.addGroup("top");
+            final Group middle = document.addGroup("middle");
+            final Group bottom = document.addGroup("bottom");
+            middle.addGroupMember(bottom);
+
+            final List<Group> members = new ArrayList<>();
+            members.add(middle);
+
+            document.checkForCircularReference(top, members);
+        }
+        catch (AppException e) {
+            fail();
+        }
+
+        // Deep diamond shaped nesting, visiting every path would take 2^40 steps
+        try {
+            document.initialize();
+            final Group top = document.addGroup("top");
+            Group[] level = new Group[]{top};
+
+            for (int depth = 0; depth < 40; depth++) {
+                final Group left = document.addGroup("left" + depth);
+                final Group right = document.addGroup("right" + depth);
+
+                for (final Group group : level) {
+                    group.addGroupMember(left);
+                    group.addGroupMember(right);
+                }
+
+                level = new Group[]{left, right};
+            }
+
+            final List<Group> members = new ArrayList<>();
+            members.add(top);
+
+            document.checkForCircularReference(document.addGroup(groupName), members);
+        }
+        catch (AppException e) {
+            fail();
+        }
     }
 
     @Test
@@ -65,6 +65,44 @@ public class DocumentUndoTest {
         }
     }
 
+    @Test
+    public void testBulkLoad() {
+        try {
+            Document document = new Document();
+
+            document.beginBulkLoad();
+            document.addUser(userName);
+            document.addGroup(groupName);
+            document.addAccessRuleForUser(document.addRepository(repositoryName), pathString,
+                    document.findUser(userName), accessLevel);
+
+            final long modificationCount = document.getModificationCount();
+            assertTrue(!document.hasUnsavedChanges());
+
+            document.endBulkLoad();
+
+            assertTrue(document.hasUnsavedChanges());
+            assertTrue(document.getModificationCount() == modificationCount + 1);
+            assertTrue(!document.hasUndoActions());
+
+            document.addUser(userName2);
+            assertTrue(document.hasUndoActions());
+        }
+        catch (AppException e) {
+            fail();
+        }
+    }
+
+    @Test
+    public void testBulkLoadWithoutChanges() {
+        Document document = new Document();
+
+        document.beginBulkLoad();
+        document.endBulkLoad();
+
+        assertTrue(!document.hasUnsavedChanges());
+    }
+
     @Test
     public void testHasUndoActions() {
         try {
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.beans;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.Vector;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * GroupClosureIndex unit tests.
+ */
+public final class GroupClosureIndexTest {
+    @Test
+    public void isMember_nested() throws Exception {
+        final Document document = new Document();
+        final User bob = document.addUser("bob");
+        final Group backend = document.addGroup("backend", null, Collections.singletonList(bob));
+        final Group eng = document.addGroup("eng", Collections.singletonList(backend), null);
+        final Group sales = document.addGroup("sales");
+
+        final GroupClosureIndex index = document.getGroupClosureIndex();
+
+        assertThat(index.isMember(bob, backend), is(true));
+        assertThat(index.isMember(bob, eng), is(true));
+        assertThat(index.isMember(bob, sales), is(false));
+        assertThat(index.isMember(backend, eng), is(true));
+        assertThat(index.isMember(eng, backend), is(false));
+        assertThat(index.getGroups(bob), hasItems(backend, eng));
+        assertThat(index.getUserMembers(eng), hasItems(bob));
+        assertThat(index.getGroupMembers(eng), hasItems(backend));
+    }
+
+    @Test
+    public void addMember_afterBuild() throws Exception {
+        final Document document = new Document();
+        final User bob = document.addUser("bob");
+        final Group backend = document.addGroup("backend", null, Collections.singletonList(bob));
+        final Group eng = document.addGroup("eng");
+        final GroupClosureIndex index = document.getGroupClosureIndex();
+
+        assertThat(index.isMember(bob, eng), is(false));
+
+        document.addGroupMembers(eng, Collections.singletonList(backend));
+
+        assertThat(index.isMember(bob, eng), is(true));
+        assertThat(index.getUserMembers(eng), hasItems(bob));
+    }
+
+    @Test
+    public void removeMember_afterBuild() throws Exception {
+        final Document document = new Document();
+        final User bob = document.addUser("bob");
+        final Group backend = document.addGroup("backend", null, Collections.singletonList(bob));
+        final Group eng = document.addGroup("eng", Collections.singletonList(backend), null);
+        final Group staff = document.addGroup("staff", Collections.singletonList(eng), Collections.singletonList(bob));
+        final GroupClosureIndex index = document.getGroupClosureIndex();
+
+        document.removeGroupMembers(eng, Collections.singletonList(backend));
+
+        assertThat(index.isMember(bob, eng), is(false));
+        assertThat(index.isMember(backend, staff), is(false));
+        assertThat(index.isMember(bob, staff), is(true));
+        assertThat(index.getUserMembers(eng).size(), is(0));
+        assertThat(index.getGroupMembers(staff), is(Collections.singletonList(eng)));
+    }
+
+    @Test
+    public void deleteGroupAndUser() throws Exception {
+        final Document document = new Document();
+        final User bob = document.addUser("bob");
+        final Group backend = document.addGroup("backend", null, Collections.singletonList(bob));
+        final Group eng = document.addGroup("eng", Collections.singletonList(backend), null);
+        final GroupClosureIndex index = document.getGroupClosureIndex();
+
+        document.deleteGroup(backend);
+
+        assertThat(index.isMember(bob, eng), is(false));
+        assertThat(index.getGroupMembers(eng).size(), is(0));
+
+        document.deleteUser(bob);
+        final User alice = document.addUser("alice");
+        document.changeUserMembership(alice, new Vector<>(Collections.singletonList(eng)));
+
+        assertThat(index.getUserMembers(eng), is(Collections.singletonList(alice)));
+        assertThat(index.isMember(bob, eng), is(false));
+    }
+
+    @Test
+    public void initialize() throws Exception {
+        final Document document = new Document();
+        final User bob = document.addUser("bob");
+        final Group eng = document.addGroup("eng", null, Collections.singletonList(bob));
+
+        assertThat(document.getGroupClosureIndex().isMember(bob, eng), is(true));
+
+        document.initialize();
+
+        assertThat(document.getGroupClosureIndex().isMember(bob, eng), is(false));
+    }
+
+    /**
+     * Applies random membership changes to a document whose index has already been built, and compares the index
+     * with a walk over the bean lists after each change.
+     */
+    @Test
+    public void randomChanges() throws Exception {
+        final Random random = new Random(42);
+        final Document document = new Document();
+        final List<User> users = new ArrayList<>();
+        final List<Group> groups = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            users.add(document.addUser("user" + i));
+            groups.add(document.addGroup("group" + i));
+        }
+
+        final GroupClosureIndex index = document.getGroupClosureIndex();
+
+        for (int step = 0; step < 500; step++) {
+            final Group group = groups.get(random.nextInt(groups.size()));
+            final Group otherGroup = groups.get(random.nextInt(groups.size()));
+            final User user = users.get(random.nextInt(users.size()));
+
+            switch (random.nextInt(6)) {
+                case 0:
+                    if (otherGroup != group && !index.isMember(group, otherGroup)) {
+                        document.addGroupMembers(group, Collections.singletonList(otherGroup));
+                    }
+                    break;
+                case 1:
+                    document.addGroupMembers(group, Collections.singletonList(user));
+                    break;
+                case 2:
+                    document.removeGroupMembers(group, Collections.singletonList(otherGroup));
+                    break;
+                case 3:
+                    document.removeFromGroups(user, Collections.singletonList(group));
+                    break;
+                case 4:
+                    document.addToGroups(user, Arrays.asList(group, otherGroup));
+                    break;
+                default:
+                    document.changeGroupMembers(group, new Vector<>(), new Vector<>(Collections.singletonList(user)));
+                    break;
+            }
+
+            for (final User each : users) {
+                assertThat("step " + step + " " + each, new HashSet<>(index.getGroups(each)),
+                        is(walk(each.getGroups())));
+            }
+
+            for (final Group each : groups) {
+                assertThat("step " + step + " " + each, new HashSet<>(index.getGroups(each)),
+                        is(walk(each.getGroups())));
+            }
+        }
+    }
+
+    private static Set<Group> walk(final List<Group> direct) {
+        final Set<Group> found = new HashSet<>();
+        final List<Group> pending = new ArrayList<>(direct);
+
+        while (!pending.isEmpty()) {
+            final Group group = pending.remove(pending.size() - 1);
+
+            if (found.add(group)) {
+                pending.addAll(group.getGroups());
+            }
+        }
+
+        return found;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.beans;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * PathTrie unit tests.
+ */
+public final class PathTrieTest {
+    @Test
+    public void find() {
+        final PathTrie trie = new PathTrie();
+        final Path root = add(trie, "/");
+        final Path trunk = add(trie, "/trunk");
+        final Path src = add(trie, "/trunk/src");
+
+        assertThat(trie.size(), is(3));
+        assertThat(trie.find("/"), is(sameInstance(root)));
+        assertThat(trie.find("/trunk"), is(sameInstance(trunk)));
+        assertThat(trie.find("/trunk/src"), is(sameInstance(src)));
+        assertThat(trie.find("/trunk/src/main"), is(nullValue()));
+        assertThat(trie.find("/branches"), is(nullValue()));
+        assertThat(trie.find("/trunk/"), is(nullValue()));
+    }
+
+    @Test
+    public void find_intermediateNode() {
+        final PathTrie trie = new PathTrie();
+        add(trie, "/trunk/src");
+
+        assertThat(trie.find("/trunk"), is(nullValue()));
+        assertThat(trie.find("/"), is(nullValue()));
+    }
+
+    @Test
+    public void find_unrooted() {
+        final PathTrie trie = new PathTrie();
+        final Path path = add(trie, "trunk");
+
+        assertThat(trie.find("trunk"), is(sameInstance(path)));
+        assertThat(trie.find("/trunk"), is(nullValue()));
+        assertThat(trie.find(""), is(nullValue()));
+    }
+
+    @Test
+    public void findAllUnder() {
+        final PathTrie trie = new PathTrie();
+        final Path root = add(trie, "/");
+        final Path trunk = add(trie, "/trunk");
+        final Path src = add(trie, "/trunk/src");
+        final Path main = add(trie, "/trunk/src/main");
+        final Path trunk2 = add(trie, "/trunk2");
+
+        final List<Path> underTrunk = trie.findAllUnder("/trunk");
+        assertThat(underTrunk.size(), is(3));
+        assertThat(underTrunk, hasItems(trunk, src, main));
+
+        final List<Path> underRoot = trie.findAllUnder("/");
+        assertThat(underRoot.size(), is(5));
+        assertThat(underRoot, hasItems(root, trunk, src, main, trunk2));
+
+        assertThat(trie.findAllUnder("/tags").size(), is(0));
+    }
+
+    @Test
+    public void remove() {
+        final PathTrie trie = new PathTrie();
+        final Path trunk = add(trie, "/trunk");
+        final Path src = add(trie, "/trunk/src");
+
+        trie.remove(src);
+
+        assertThat(trie.size(), is(1));
+        assertThat(trie.find("/trunk/src"), is(nullValue()));
+        assertThat(trie.find("/trunk"), is(sameInstance(trunk)));
+        assertThat(trie.getAll().size(), is(1));
+    }
+
+    @Test
+    public void remove_otherInstance() {
+        final PathTrie trie = new PathTrie();
+        final Path trunk = add(trie, "/trunk");
+
+        trie.remove(new Path(null, "/trunk"));
+
+        assertThat(trie.size(), is(1));
+        assertThat(trie.find("/trunk"), is(sameInstance(trunk)));
+    }
+
+    private static Path add(final PathTrie trie, final String pathString) {
+        final Path path = new Path(null, pathString);
+
+        trie.add(path);
+
+        return path;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.lmxm.suafe.api.beans;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READONLY;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Verifies that AccessRule, User and PathComparator order objects exactly as comparing their display strings does.
+ */
+public final class SortKeysTest {
+    private static final String[] NAMES = {null, "", " ", "a", "a:", "a:b", "ab", "b", "A", "a[b]", "[", "/", "/a",
+            "/a/b", "/a:b", "z"};
+
+    @Test
+    public void accessRuleOrdering() {
+        final List<AccessRule> rules = new ArrayList<>();
+        final Random random = new Random(1);
+
+        for (int i = 0; i < 2000; i++) {
+            final Repository repository = random.nextBoolean() ? null : new Repository(name(random));
+            final Path path = random.nextInt(10) == 0 ? null : new Path(repository, name(random));
+
+            rules.add(random.nextBoolean() ?
+                    new AccessRule(path, random.nextBoolean() ? null : new Group(name(random)),
+                            SVN_ACCESS_LEVEL_READONLY) :
+                    new AccessRule(path, random.nextBoolean() ? null : user(random), SVN_ACCESS_LEVEL_READONLY));
+        }
+
+        for (final AccessRule rule1 : rules.subList(0, 200)) {
+            for (final AccessRule rule2 : rules) {
+                assertThat(rule1 + " vs " + rule2, rule1.compareTo(rule2), is(rule1.toString().compareTo(rule2
+                        .toString())));
+            }
+        }
+    }
+
+    @Test
+    public void pathOrdering() {
+        final PathComparator comparator = new PathComparator();
+        final Random random = new Random(2);
+        final List<Path> paths = new ArrayList<>();
+
+        for (int i = 0; i < 500; i++) {
+            paths.add(new Path(random.nextBoolean() ? null : new Repository(name(random)), name(random)));
+        }
+
+        for (final Path path1 : paths) {
+            for (final Path path2 : paths) {
+                assertThat(comparator.compare(path1, path2), is(legacyKey(path1).compareTo(legacyKey(path2))));
+            }
+        }
+    }
+
+    @Test
+    public void userOrdering() {
+        final Random random = new Random(3);
+        final List<User> users = new ArrayList<>();
+
+        for (int i = 0; i < 500; i++) {
+            users.add(user(random));
+        }
+
+        for (final User user1 : users) {
+            for (final User user2 : users) {
+                assertThat(user1.compareTo(user2), is(user1.toString().compareTo(user2.toString())));
+            }
+        }
+    }
+
+    private static String legacyKey(final Path path) {
+        return ((path.getRepository() == null) ? "" : path.getRepository().toString()) + ":" +
+                ((path.getPath() == null) ? "" : path.getPath());
+    }
+
+    private static String name(final Random random) {
+        return NAMES[random.nextInt(NAMES.length)];
+    }
+
+    private static User user(final Random random) {
+        return new User(name(random), name(random));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.lmxm.suafe.api.beans;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READONLY;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * SortableList unit tests.
+ */
+public final class SortableListTest {
+    @Test
+    public void sort_skippedWhenUnchanged() {
+        final CountingComparator comparator = new CountingComparator();
+        final SortableList<String> list = new SortableList<>();
+        list.add("c");
+        list.add("a");
+        list.add("b");
+
+        list.sort(comparator);
+        final int comparisons = comparator.count;
+        list.sort(comparator);
+
+        assertThat(comparator.count, is(comparisons));
+        assertThat(list.get(0), is("a"));
+    }
+
+    @Test
+    public void sort_afterModification() {
+        final SortableList<String> list = new SortableList<>();
+        list.add("b");
+        Collections.sort(list);
+
+        list.add("a");
+        Collections.sort(list);
+        assertThat(list.get(0), is("a"));
+
+        list.set(0, "c");
+        Collections.sort(list);
+        assertThat(list.get(0), is("b"));
+    }
+
+    @Test
+    public void sort_differentComparator() {
+        final SortableList<String> list = new SortableList<>();
+        list.add("a");
+        list.add("b");
+
+        Collections.sort(list);
+        list.sort(Comparator.reverseOrder());
+
+        assertThat(list.get(0), is("b"));
+    }
+
+    @Test
+    public void sort_markUnsorted() {
+        final CountingComparator comparator = new CountingComparator();
+        final SortableList<String> list = new SortableList<>();
+        list.add("a");
+        list.add("b");
+
+        list.sort(comparator);
+        final int comparisons = comparator.count;
+        list.markUnsorted();
+        list.sort(comparator);
+
+        assertThat(comparator.count > comparisons, is(true));
+    }
+
+    @Test
+    public void sortedView_leavesListInPlace() {
+        final CountingComparator comparator = new CountingComparator();
+        final SortableList<String> list = new SortableList<>();
+        list.add("c");
+        list.add("a");
+        list.add("b");
+
+        final List<String> view = list.sortedView(comparator);
+        final int comparisons = comparator.count;
+
+        assertThat(view, is(Arrays.asList("a", "b", "c")));
+        assertThat(list, is(Arrays.asList("c", "a", "b")));
+        assertThat(list.sortedView(comparator), is(sameInstance(view)));
+        assertThat(comparator.count, is(comparisons));
+    }
+
+    @Test
+    public void sortedView_afterModification() {
+        final SortableList<String> list = new SortableList<>();
+        list.add("b");
+        list.add("a");
+        assertThat(list.sortedView(null), is(Arrays.asList("a", "b")));
+
+        list.add("0");
+        assertThat(list.sortedView(null), is(Arrays.asList("0", "a", "b")));
+
+        list.set(2, "c");
+        assertThat(list.sortedView(null), is(Arrays.asList("a", "b", "c")));
+
+        list.markUnsorted();
+        assertThat(list.sortedView(Comparator.reverseOrder()), is(Arrays.asList("c", "b", "a")));
+    }
+
+    @Test
+    public void sortedView_inOrder() {
+        final SortableList<String> list = new SortableList<>();
+        list.add("a");
+        list.add("b");
+
+        final List<String> view = list.sortedView(null);
+        list.add("c");
+
+        // A list that is already in order is not copied, so the view follows it
+        assertThat(view, is(Arrays.asList("a", "b", "c")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void sortedView_unmodifiable() {
+        final SortableList<String> list = new SortableList<>();
+        list.add("b");
+        list.add("a");
+
+        list.sortedView(null).add("c");
+    }
+
+    @Test
+    public void renameUser_resortsUsersAndMembers() throws Exception {
+        final Document document = new Document();
+        final User userA = document.addUser("a");
+        final User userB = document.addUser("b");
+        final Group group = document.addGroup("group");
+        group.addUserMember(userA);
+        group.addUserMember(userB);
+        userA.addGroup(group);
+        userB.addGroup(group);
+
+        assertThat(document.getUserObjects()[0], is(sameInstance(userA)));
+        assertThat(document.getGroupMemberUsers(group)[0], is(sameInstance(userA)));
+
+        document.renameUser(userA, "c", null);
+
+        assertThat(document.getUserObjects()[0], is(sameInstance(userB)));
+        assertThat(document.getGroupMemberUsers(group)[0], is(sameInstance(userB)));
+    }
+
+    @Test
+    public void renameRepository_resortsRules() throws Exception {
+        final Document document = new Document();
+        final Repository repositoryA = document.addRepository("a");
+        final Repository repositoryB = document.addRepository("b");
+        final User user = document.addUser("user");
+        final AccessRule ruleA = document.addAccessRuleForUser(repositoryA, "/", user, SVN_ACCESS_LEVEL_READONLY);
+        final AccessRule ruleB = document.addAccessRuleForUser(repositoryB, "/", user, SVN_ACCESS_LEVEL_READONLY);
+
+        Collections.sort(document.getAccessRules());
+        Collections.sort(user.getAccessRules());
+        assertThat(document.getAccessRules().get(0), is(sameInstance(ruleA)));
+
+        document.renameRepository(repositoryA, "c");
+
+        Collections.sort(document.getAccessRules());
+        Collections.sort(user.getAccessRules());
+        assertThat(document.getAccessRules().get(0), is(sameInstance(ruleB)));
+        assertThat(user.getAccessRules().get(0), is(sameInstance(ruleB)));
+        assertThat(document.getRepositoryObjects()[0], is(sameInstance(repositoryB)));
+    }
+
+    private static final class CountingComparator implements Comparator<String> {
+        private int count;
+
+        @Override
+        public int compare(final String string1, final String string2) {
+            count++;
+            return string1.compareTo(string2);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.exceptions.AppException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+
+import static net.lmxm.suafe.test.AppExceptionMatcher.hasKey;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * AtomicFileWriter unit tests.
+ */
+public final class AtomicFileWriterTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void write_newFile() throws Exception {
+        final File file = new File(folder.getRoot(), "authz");
+
+        write(new AtomicFileWriter(file, 2), "new");
+
+        assertThat(read(file), is("new"));
+        assertThat(new AtomicFileWriter(file, 2).getBackupFile(1).exists(), is(false));
+        assertThat(folder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void write_replacesFile() throws Exception {
+        final File file = folder.newFile("authz");
+
+        Files.write(file.toPath(), "old contents".getBytes(StandardCharsets.UTF_8));
+        write(new AtomicFileWriter(file), "new");
+
+        assertThat(read(file), is("new"));
+        assertThat(folder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void write_rotatesBackups() throws Exception {
+        final File file = folder.newFile("authz");
+        final AtomicFileWriter writer = new AtomicFileWriter(file, 2);
+
+        Files.write(file.toPath(), "1".getBytes(StandardCharsets.UTF_8));
+        write(writer, "2");
+        write(writer, "3");
+        write(writer, "4");
+
+        assertThat(read(file), is("4"));
+        assertThat(read(writer.getBackupFile(1)), is("3"));
+        assertThat(read(writer.getBackupFile(2)), is("2"));
+        assertThat(writer.getBackupFile(3).exists(), is(false));
+        assertThat(folder.getRoot().list().length, is(3));
+    }
+
+    @Test
+    public void write_failureLeavesFile() throws Exception {
+        final File file = folder.newFile("authz");
+        final AtomicFileWriter writer = new AtomicFileWriter(file, 1);
+
+        Files.write(file.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            writer.write(channel -> {
+                channel.write(ByteBuffer.wrap("partial".getBytes(StandardCharsets.UTF_8)));
+
+                throw new IOException();
+            });
+            fail("Expected an AppException");
+        }
+        catch (final AppException ae) {
+            assertThat(ae.getKey(), is("generator.error"));
+        }
+
+        assertThat(read(file), is("old"));
+        assertThat(writer.getBackupFile(1).exists(), is(false));
+        assertThat(folder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void write_missingDirectory() throws Exception {
+        final File file = new File(new File(folder.getRoot(), "missing"), "authz");
+
+        thrown.expect(AppException.class);
+        thrown.expect(hasKey("generator.filenotfound"));
+        write(new AtomicFileWriter(file), "new");
+    }
+
+    /**
+     * A new file gets the same permissions as any other new file, rather than those of a private temporary file.
+     */
+    @Test
+    public void write_newFilePermissions() throws Exception {
+        assumePosix();
+
+        final File file = new File(folder.getRoot(), "authz");
+        final File other = folder.newFile("other");
+
+        write(new AtomicFileWriter(file), "new");
+
+        assertThat(Files.getPosixFilePermissions(file.toPath()), is(Files.getPosixFilePermissions(other.toPath())));
+    }
+
+    /**
+     * A replaced file keeps its permissions, owner and group.
+     */
+    @Test
+    public void write_keepsAttributes() throws Exception {
+        assumePosix();
+
+        final File file = folder.newFile("authz");
+        final PosixFileAttributeView view = Files.getFileAttributeView(file.toPath(), PosixFileAttributeView.class);
+
+        Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rw-r-----"));
+
+        // Root can hand the file to another owner and group, as an administrator saving the file would
+        try {
+            final UserPrincipal owner = FileSystems.getDefault().getUserPrincipalLookupService()
+                    .lookupPrincipalByName("1234");
+            final GroupPrincipal group = FileSystems.getDefault().getUserPrincipalLookupService()
+                    .lookupPrincipalByGroupName("1234");
+
+            view.setOwner(owner);
+            view.setGroup(group);
+        }
+        catch (final IOException | UnsupportedOperationException e) {
+            // The file keeps the owner and group of the current user
+        }
+
+        final PosixFileAttributes before = view.readAttributes();
+
+        write(new AtomicFileWriter(file), "new");
+
+        final PosixFileAttributes after = Files.readAttributes(file.toPath(), PosixFileAttributes.class);
+
+        assertThat(read(file), is("new"));
+        assertThat(PosixFilePermissions.toString(after.permissions()), is("rw-r-----"));
+        assertThat(after.owner(), is(before.owner()));
+        assertThat(after.group(), is(before.group()));
+    }
+
+    /**
+     * Writing through a symbolic link replaces the file it points to, keeps the link and keeps backups next to the
+     * file, including when the file does not exist yet.
+     */
+    @Test
+    public void write_symbolicLink() throws Exception {
+        final File real = new File(folder.newFolder("real"), "real.authz");
+        final File link = new File(folder.getRoot(), "link.authz");
+
+        try {
+            Files.createSymbolicLink(link.toPath(), real.toPath());
+        }
+        catch (final IOException | UnsupportedOperationException e) {
+            assumeTrue(false);
+        }
+
+        final AtomicFileWriter writer = new AtomicFileWriter(link, 1);
+
+        write(writer, "first");
+        write(writer, "second");
+
+        assertThat(Files.isSymbolicLink(link.toPath()), is(true));
+        assertThat(read(real), is("second"));
+        assertThat(read(link), is("second"));
+        assertThat(writer.getBackupFile(1), is(new File(real.getPath() + ".1")));
+        assertThat(read(writer.getBackupFile(1)), is("first"));
+        assertThat(Files.exists(new File(link.getPath() + ".1").toPath(), LinkOption.NOFOLLOW_LINKS), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_negativeBackupCount() throws Exception {
+        new AtomicFileWriter(folder.newFile("authz"), -1);
+    }
+
+    private static void assumePosix() {
+        assumeThat(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"), is(true));
+    }
+
+    private static String read(final File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(final AtomicFileWriter writer, final String contents) throws Exception {
+        writer.write(channel -> channel.write(ByteBuffer.wrap(contents.getBytes(StandardCharsets.UTF_8))));
+    }
+}
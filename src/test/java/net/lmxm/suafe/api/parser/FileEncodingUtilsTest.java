@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.parser;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * FileEncodingUtils unit tests.
+ */
+public final class FileEncodingUtilsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void detect_byteOrderMark() {
+        assertThat(FileEncodingUtils.detect(bytes("\ufeff[/]", "UTF-8"), "ISO-8859-1"), is("UTF-8"));
+        assertThat(FileEncodingUtils.detect(bytes("\ufeff[/]", "UTF-16BE"), "ISO-8859-1"), is("UTF-16BE"));
+        assertThat(FileEncodingUtils.detect(bytes("\ufeff[/]", "UTF-16LE"), "ISO-8859-1"), is("UTF-16LE"));
+        assertThat(FileEncodingUtils.detect(bytes("\ufeff[/]", "UTF-32LE"), "ISO-8859-1"), is("UTF-32LE"));
+    }
+
+    @Test
+    public void detect_leavesPosition() {
+        final ByteBuffer bytes = bytes("[groups]\neng = alice\n", "ISO-8859-1");
+
+        FileEncodingUtils.detect(bytes, "ISO-8859-1");
+
+        assertThat(bytes.position(), is(0));
+    }
+
+    @Test
+    public void byteOrderMarkLength() {
+        assertThat(FileEncodingUtils.byteOrderMarkLength(bytes("\ufeff[/]", "UTF-8"), "UTF-8"), is(3));
+        assertThat(FileEncodingUtils.byteOrderMarkLength(bytes("\ufeff[/]", "UTF-8"), "ISO-8859-1"), is(0));
+        assertThat(FileEncodingUtils.byteOrderMarkLength(bytes("\ufeff[/]", "UTF-16LE"), "UTF-16LE"), is(2));
+        assertThat(FileEncodingUtils.byteOrderMarkLength(bytes("[/]", "UTF-8"), "UTF-8"), is(0));
+    }
+
+    @Test
+    public void readFully() throws Exception {
+        final File file = folder.newFile();
+        final byte[] contents = "[groups]\neng = alice\n".getBytes(StandardCharsets.ISO_8859_1);
+
+        Files.write(file.toPath(), contents);
+
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.position(4);
+
+            final ByteBuffer bytes = FileEncodingUtils.readFully(channel);
+
+            assertThat(bytes.remaining(), is(contents.length));
+            assertThat(bytes, is(ByteBuffer.wrap(contents)));
+        }
+    }
+
+    private static ByteBuffer bytes(final String text, final String encoding) {
+        return ByteBuffer.wrap(text.getBytes(Charset.forName(encoding)));
+    }
+}
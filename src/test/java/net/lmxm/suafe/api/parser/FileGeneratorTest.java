@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.Constants;
+import net.lmxm.suafe.api.beans.AccessRule;
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.Path;
+import net.lmxm.suafe.api.beans.User;
+import net.lmxm.suafe.exceptions.AppException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static net.lmxm.suafe.test.AppExceptionMatcher.hasKey;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * FileGenerator unit tests.
+ */
+public final class FileGeneratorTest {
+    private static final String INPUT = "[aliases]\n"
+            + "admin = ren\u00e9e\n"
+            + "[groups]\n"
+            + "g1 = u1\n"
+            + "g2 = u2\n"
+            + "g3 = u3\n"
+            + "everyone = @g1, @g2, @g3, alice, bob, &admin, carol, dave, erin, frank, grace, heidi, ivan, judy\n"
+            + "[/]\n"
+            + "* = r\n"
+            + "[repository1:/trunk]\n"
+            + "@everyone = rw\n"
+            + "&admin = rw\n";
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Content written to a Writer is the same as the content returned as a String, with and without wrapped group
+     * definitions.
+     */
+    @Test
+    public void generate_writer() throws Exception {
+        final Document document = new FileParser().parse(INPUT);
+
+        for (final int maxLineLength : new int[]{-1, 10, 80}) {
+            final StringWriter output = new StringWriter();
+
+            new FileGenerator(document).generate(output, maxLineLength);
+
+            assertThat(output.toString(), is(new FileGenerator(document).generate(maxLineLength)));
+        }
+
+        assertThat(new FileGenerator(document).generate(-1), containsString("= @g1, @g2, @g3, &admin, alice, "));
+        assertThat(new FileGenerator(document).generate(10), containsString("= @g1, @g2, " + Constants.TEXT_NEW_LINE
+                + "           @g3, &admin, " + Constants.TEXT_NEW_LINE));
+    }
+
+    /**
+     * A file holds the generated content in the encoding of the Document.
+     */
+    @Test
+    public void generate_file() throws Exception {
+        final Document document = new FileParser().parse(INPUT);
+        final File file = folder.newFile();
+
+        document.setEncoding("UTF-8");
+        new FileGenerator(document).generate(file, true);
+
+        assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8),
+                is(new FileGenerator(document).generate(true)));
+    }
+
+    /**
+     * Path sections rendered on a pool, in chunks of any size, give the same content as sequential generation, both
+     * as a String and through a Writer.
+     */
+    @Test
+    public void generate_parallel() throws Exception {
+        final StringBuilder input = new StringBuilder(INPUT);
+
+        for (int repository = 3; repository > 0; repository--) {
+            for (int path = 0; path < 5; path++) {
+                input.append("[repository").append(repository).append(":/path").append(path).append("]\n");
+
+                for (int rule = 0; rule < path; rule++) {
+                    input.append("user").append(rule).append(" = r\n");
+                }
+            }
+        }
+
+        final Document document = new FileParser().parse(input.toString());
+        final String sequential = new FileGenerator(document).generate(true);
+
+        for (final int minimumChunkRules : new int[]{1, 3, 7}) {
+            final FileGenerator generator = new FileGenerator(document, new ForkJoinPool(4), minimumChunkRules);
+            final StringWriter output = new StringWriter();
+
+            generator.generate(output, true);
+
+            assertThat(generator.generate(true), is(sequential));
+            assertThat(output.toString(), is(sequential));
+        }
+    }
+
+    /**
+     * Generating reads the Document without reordering any of its lists.
+     */
+    @Test
+    public void generate_leavesDocumentOrder() throws Exception {
+        final Document document = new FileParser().parse("[groups]\n"
+                + "b = carol, alice\n"
+                + "a = @b, bob\n"
+                + "[repository1:/z]\n"
+                + "@a = rw\n"
+                + "bob = r\n"
+                + "[repository1:/a]\n"
+                + "carol = r\n");
+        final List<User> users = new ArrayList<>(document.getUsers());
+        final List<Group> groups = new ArrayList<>(document.getGroups());
+        final List<Path> paths = new ArrayList<>(document.getPaths());
+        final Group group = document.findGroup("b");
+        final List<User> members = new ArrayList<>(group.getUserMembers());
+        final Path path = document.findPath(document.findRepository("repository1"), "/z");
+        final List<AccessRule> rules = new ArrayList<>(path.getAccessRules());
+
+        final String content = new FileGenerator(document).generate(true);
+
+        assertThat(content, containsString("a = @b, bob" + Constants.TEXT_NEW_LINE
+                + "b = alice, carol" + Constants.TEXT_NEW_LINE));
+        assertThat(content, containsString("[repository1:/a]" + Constants.TEXT_NEW_LINE + "carol = r"
+                + Constants.TEXT_NEW_LINE + Constants.TEXT_NEW_LINE + "[repository1:/z]" + Constants.TEXT_NEW_LINE
+                + "bob = r" + Constants.TEXT_NEW_LINE + "@a = rw" + Constants.TEXT_NEW_LINE));
+        assertThat(document.getUsers(), is(users));
+        assertThat(document.getGroups(), is(groups));
+        assertThat(document.getPaths(), is(paths));
+        assertThat(group.getUserMembers(), is(members));
+        assertThat(path.getAccessRules(), is(rules));
+        assertThat(new FileGenerator(document).generate(true), is(content));
+    }
+
+    @Test
+    public void generate_writerError() throws Exception {
+        final Writer output = new Writer() {
+            @Override
+            public void write(final char[] buffer, final int offset, final int length) throws IOException {
+                throw new IOException();
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        final FileGenerator generator = new FileGenerator(new FileParser().parse(INPUT));
+
+        thrown.expect(AppException.class);
+        thrown.expect(hasKey("generator.error"));
+        generator.generate(output, true);
+    }
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.api.beans.AccessRule;
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.Repository;
+import net.lmxm.suafe.api.exceptions.ParserException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READONLY;
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READWRITE;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * FileParser unit tests.
+ */
+public final class FileParserTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parseGroups() throws Exception {
+        final Document document = new FileParser().parse("[aliases]\n"
+                + "admin = carol\n"
+                + "[groups]\n"
+                + "backend = alice,bob , alice\n"
+                + "eng = @backend, &admin,\n"
+                + "\tdave,\n"
+                + "  erin\n");
+
+        final Group backend = document.findGroup("backend");
+        final Group eng = document.findGroup("eng");
+
+        assertThat(backend.getUserMembers().size(), is(2));
+        assertThat(eng.getGroupMembers().size(), is(1));
+        assertThat(eng.getGroupMembers().get(0), is(sameInstance(backend)));
+        assertThat(eng.getUserMembers().size(), is(3));
+        assertThat(document.findUserByAlias("admin").getName(), is("carol"));
+        assertThat(document.findUser("erin").getGroups().get(0), is(sameInstance(eng)));
+    }
+
+    @Test
+    public void parseGroups_repeatedMembers() throws Exception {
+        final Document document = new FileParser().parse("[aliases]\n"
+                + "admin = carol\n"
+                + "[groups]\n"
+                + "backend = bob\n"
+                + "eng = alice, @backend, &admin,\n"
+                + "  alice, dave, @backend,\n"
+                + "  &admin, dave\n");
+
+        final Group eng = document.findGroup("eng");
+
+        assertThat(eng.getGroupMembers().size(), is(1));
+        assertThat(eng.getUserMembers().size(), is(3));
+        assertThat(document.findUser("alice").getGroups().size(), is(1));
+        assertThat(document.findGroup("backend").getGroups().size(), is(1));
+        assertThat(document.findUserByAlias("admin").getGroups().size(), is(1));
+    }
+
+    @Test
+    public void parseRules() throws Exception {
+        final Document document = new FileParser().parse("[groups]\n"
+                + "eng = alice\n"
+                + "[/]\n"
+                + "* = r\n"
+                + "[repository1:/trunk]\n"
+                + "@eng = rw\n"
+                + "bob = r\n"
+                + "[repository2: /trunk ]\n"
+                + "bob=rw\n");
+
+        assertThat(document.getAccessRules().size(), is(4));
+        assertThat(document.findServerPath("/").getAccessRules().size(), is(1));
+        assertThat(document.findPath("repository1", "/trunk").getAccessRules().size(), is(2));
+        assertThat(document.findUserAccessRule(document.findRepository("repository2"), "/trunk",
+                document.findUser("bob")).getLevel(), is(SVN_ACCESS_LEVEL_READWRITE));
+    }
+
+    /**
+     * Loading a file is not something to undo piece by piece, but it does leave the document changed.
+     */
+    @Test
+    public void parseBulkLoads() throws Exception {
+        final String input = "[groups]\neng = alice\n[repository1:/trunk]\n@eng = rw\n";
+
+        final Document fromString = new FileParser().parse(input);
+        final Document parallel = new FileParser(new ForkJoinPool(2), 1).parse(write(input));
+        final Document empty = new FileParser().parse("");
+
+        assertThat(fromString.hasUndoActions(), is(false));
+        assertThat(fromString.hasUnsavedChanges(), is(true));
+        assertThat(parallel.hasUndoActions(), is(false));
+        assertThat(parallel.hasUnsavedChanges(), is(true));
+        assertThat(empty.hasUnsavedChanges(), is(false));
+    }
+
+    /**
+     * Values that occur many times in a file are shared rather than copied for each occurrence.
+     */
+    @Test
+    public void parseSharesRepeatedValues() throws Exception {
+        final Document document = new FileParser().parse("[repository1:/trunk]\n"
+                + "alice = r\n"
+                + "bob = rw\n"
+                + "[repository2:/trunk]\n"
+                + "alice = r\n");
+
+        for (final AccessRule rule : document.getAccessRules()) {
+            final String expected = rule.getLevel().equals(SVN_ACCESS_LEVEL_READONLY) ? SVN_ACCESS_LEVEL_READONLY :
+                    SVN_ACCESS_LEVEL_READWRITE;
+
+            assertThat(rule.getLevel(), is(sameInstance(expected)));
+        }
+
+        assertThat(document.findPath("repository1", "/trunk").getPath(),
+                is(sameInstance(document.findPath("repository2", "/trunk").getPath())));
+    }
+
+    @Test
+    public void parseErrors() throws Exception {
+        assertParserError("[groups]\nbackend = alice\nbackend = bob\n", 3, "backend");
+        assertParserError("[/trunk]\n@eng = r\n", 2, "eng");
+        assertParserError("[groups]\n= alice\n", 2, "");
+        assertParserError("[/trunk]\nalice = r\n[/trunk]\n", 3, "/trunk");
+    }
+
+    /**
+     * Files are memory mapped and parsed from their bytes, which must give the same Document as reading the same text
+     * line by line, whatever the line breaks.
+     */
+    @Test
+    public void parseFile_matchesReader() throws Exception {
+        final String input = "[groups]\r\n"
+                + "backend\t=\talice,\r\n"
+                + "\tbob\r"
+                + "eng = @backend\n"
+                + "\r\n"
+                + "[repository1:/trunk]\r"
+                + "@eng\t= rw\n"
+                + "carol\t= r";
+
+        final Document fromFile = new FileParser().parse(write(input));
+        final Document fromString = new FileParser().parse(input);
+
+        assertThat(new FileGenerator(fromFile).generate(false), is(new FileGenerator(fromString).generate(false)));
+        assertThat(fromFile.findGroup("backend").getUserMembers().size(), is(2));
+        assertThat(fromFile.findUser("carol"), is(notNullValue()));
+        assertThat(fromFile.getAccessRules().size(), is(2));
+    }
+
+    @Test
+    public void parseFile_nonAsciiNames() throws Exception {
+        final String input = "[groups]\nbackend = andr\u00e9, bob\n[/]\nandr\u00e9 = rw\n";
+        final Document document = new FileParser().parse(write(input));
+
+        assertThat(document.findUser("andr\u00e9").getAccessRules().size(), is(1));
+    }
+
+    @Test
+    public void parseFile_errors() throws Exception {
+        assertParserError(write("[groups]\r\nbackend = alice\r\nbackend = bob\r\n"), 3, "backend");
+        assertParserError(write("[/trunk]\r\r@eng = r\r"), 3, "eng");
+        assertParserError(write("[/trunk]\nalice = r\n\n[/trunk]"), 4, "/trunk");
+    }
+
+    @Test
+    public void parseFile_byteOrderMark() throws Exception {
+        final String input = "\ufeff[groups]\neng = andr\u00e9\n[/]\n@eng = r\n";
+
+        final Document utf8 = new FileParser().parse(write(input.getBytes(StandardCharsets.UTF_8)));
+        final Document utf16 = new FileParser().parse(write(input.getBytes(StandardCharsets.UTF_16LE)));
+
+        assertThat(utf8.getEncoding(), is("UTF-8"));
+        assertThat(utf8.findGroup("eng").getUserMembers().get(0).getName(), is("andr\u00e9"));
+        assertThat(utf16.getEncoding(), is("UTF-16LE"));
+        assertThat(utf16.findGroup("eng").getUserMembers().get(0).getName(), is("andr\u00e9"));
+    }
+
+    @Test
+    public void parseFile_encodingOverride() throws Exception {
+        final File file = write("[/]\nandr\u00e9 = r\n".getBytes(StandardCharsets.UTF_8));
+
+        final Document utf8 = new FileParser().parse(file, "UTF-8");
+        final Document latin1 = new FileParser().parse(file, "ISO-8859-1");
+
+        assertThat(utf8.getEncoding(), is("UTF-8"));
+        assertThat(utf8.findUser("andr\u00e9"), is(notNullValue()));
+        assertThat(latin1.getEncoding(), is("ISO-8859-1"));
+        assertThat(latin1.findUser("andr\u00c3\u00a9"), is(notNullValue()));
+    }
+
+    @Test
+    public void parseFile_unsupportedEncoding() throws Exception {
+        try {
+            new FileParser().parse(write("[/]\n"), "no-such-encoding");
+            fail("Expected a ParserException");
+        }
+        catch (final ParserException pe) {
+            assertThat(pe.getMessage(), containsString("no-such-encoding"));
+        }
+    }
+
+    /**
+     * A parallel parse, split into chunks as small as possible, gives the same Document as a sequential parse.
+     */
+    @Test
+    public void parseParallel_matchesSequential() throws Exception {
+        final StringBuilder input = new StringBuilder("[aliases]\nadmin = carol\n[groups]\n"
+                + "backend = alice, bob\neng = @backend, &admin,\n");
+
+        for (int i = 0; i < 50; i++) {
+            input.append((i > 0) ? "\r\n" : "").append("[repository").append(i % 7).append(":/trunk/module").append(i).append("]\r\n")
+                    .append("# comment\n")
+                    .append("@backend = r\n")
+                    .append("@eng\t=\trw\r")
+                    .append("user").append(i).append(" = r\n")
+                    .append("alice = ").append((i % 2 == 0) ? "rw" : "").append("\n");
+
+            if (i == 0) {
+                // Continues the members of eng, which ended in a comma before the first rule section
+                input.append("  dave\n");
+            }
+        }
+
+        input.append("[/]\n* = r");
+
+        final File file = write(input.toString());
+        final Document sequential = new FileParser().parse(file);
+        final Document parallel = new FileParser(new ForkJoinPool(4), 1).parse(file);
+
+        assertThat(parallel.getAccessRules().size(), is(sequential.getAccessRules().size()));
+        assertThat(new FileGenerator(parallel).generate(false), is(new FileGenerator(sequential).generate(false)));
+        assertThat(parallel.findGroup("eng").getUserMembers().size(), is(2));
+    }
+
+    /**
+     * Errors in any chunk of a parallel parse are reported with the same message and line number as in a sequential
+     * parse, and only the first error in the file is reported.
+     */
+    @Test
+    public void parseParallel_errors() throws Exception {
+        final String head = "[aliases]\nadmin = carol\n[groups]\neng = alice\n";
+        final StringBuilder body = new StringBuilder();
+
+        for (int i = 0; i < 20; i++) {
+            body.append("[repository:/trunk/module").append(i).append("]\n@eng = r\nbob = rw\n");
+        }
+
+        final String[] errors = {"@other = r\n", "@eng = w\n", "bob = x\n", "carol = r\n", "bob r\n",
+                "[repository:/trunk/module3]\n", "[groups]\n", "[repository:trunk]\n", " erin\n"};
+
+        for (final String error : errors) {
+            final File file = write(head + body + error + body.toString().replace("module", "other") + error);
+
+            final String sequential = parseError(new FileParser(), file);
+            final String parallel = parseError(new FileParser(new ForkJoinPool(4), 1), file);
+
+            assertThat(error, parallel, is(sequential));
+            assertThat(error, parallel, containsString("Line: 65 "));
+        }
+    }
+
+    /**
+     * Only the aliases, groups and server level sections are parsed up front. Each repository is parsed when it is
+     * first looked up, and ends up the same as in a full parse.
+     */
+    @Test
+    public void parseLazily() throws Exception {
+        final File file = write("[aliases]\nadmin = carol\n[groups]\neng = alice, &admin\n[/]\n* = r\n"
+                + "[repository1:/trunk]\n@eng = rw\nbob = r\n[repository2:/]\ndave = rw\n"
+                + "[repository1:/branches]\nerin = r\n");
+        final Document expected = new FileParser().parse(file);
+        final Document document = new FileParser().parseLazily(file, null);
+        document.resetUnsavedChangesFlag();
+
+        assertThat(document.isPartiallyLoaded(), is(true));
+        assertThat(document.getRepositories().size(), is(0));
+        assertThat(document.getServerPaths().size(), is(1));
+        assertThat(document.findGroup("eng").getUserMembers().size(), is(2));
+        assertThat(document.findUser("bob"), is(nullValue()));
+
+        final Repository repository = document.findRepository("repository1");
+
+        assertThat(repository.getPaths().size(), is(2));
+        assertThat(document.findUser("bob").getAccessRules().size(), is(1));
+        assertThat(document.findUser("dave"), is(nullValue()));
+        assertThat(document.findRepository("repository3"), is(nullValue()));
+        assertThat(document.hasUnsavedChanges(), is(false));
+
+        document.findRepository("repository2");
+
+        assertThat(document.isPartiallyLoaded(), is(false));
+        assertThat(document.getAccessRules().size(), is(expected.getAccessRules().size()));
+        assertThat(new FileGenerator(document).generate(false), is(new FileGenerator(expected).generate(false)));
+    }
+
+    /**
+     * Errors in a repository's sections are only found when the repository is loaded, with the same line number as
+     * a full parse gives. Errors in the other sections are found when the file is opened.
+     */
+    @Test
+    public void parseLazily_errors() throws Exception {
+        final File file = write("[groups]\neng = alice\n[repository1:/]\n@eng = r\n[repository2:/]\n@other = r\n");
+        final Document document = new FileParser().parseLazily(file, null);
+
+        assertThat(document.findRepository("repository1").getPaths().size(), is(1));
+
+        try {
+            document.findRepository("repository2");
+            fail("Expected a ParserException");
+        }
+        catch (final ParserException pe) {
+            assertThat(pe.getMessage(), containsString("Line: 6 "));
+            assertThat(pe.getMessage(), containsString("other"));
+        }
+
+        try {
+            new FileParser().parseLazily(write("[groups]\neng = alice\neng = bob\n[repository1:/]\n@eng = r\n"), null);
+            fail("Expected a ParserException");
+        }
+        catch (final ParserException pe) {
+            assertThat(pe.getMessage(), containsString("Line: 3 "));
+        }
+    }
+
+    /**
+     * Text held in memory is parsed as characters, so names outside ASCII do not depend on the platform encoding.
+     */
+    @Test
+    public void parse_charSequence() throws Exception {
+        final StringBuilder input = new StringBuilder("[groups]\nd\u00e9v = ren\u00e9e\n[/]\n@d\u00e9v = r\n");
+        final Document document = new FileParser().parse(input);
+
+        assertThat(document.findGroup("d\u00e9v").getUserMembers().get(0).getName(), is("ren\u00e9e"));
+        assertThat(new FileParser().parse(input.toString()).getAccessRules().size(), is(1));
+    }
+
+    @Test
+    public void parse_reader() throws Exception {
+        final StringBuilder input = new StringBuilder("[groups]\n");
+
+        for (int i = 0; i < 5000; i++) {
+            input.append("group").append(i).append(" = user").append(i).append("\r\n");
+        }
+
+        final Document document = new FileParser().parse(new StringReader(input.toString()));
+
+        assertThat(document.getGroups().size(), is(5000));
+        assertThat(document.findGroup("group4999").getUserMembers().get(0).getName(), is("user4999"));
+    }
+
+    /**
+     * Lint carries on past each error, so every error in the file is reported with its own line number.
+     */
+    @Test
+    public void lint() throws Exception {
+        final File file = write("[aliases]\nbad\n[groups]\neng = alice\neng = bob\nops = @missing, @later\n"
+                + "later = carol\n[/]\n@nogroup = r\nalice\n[/]\nbob = r\n* = rw\n[repository1:/trunk]\nalice = x\n"
+                + "@eng = r\n");
+        final List<ParserException> errors = new FileParser().lint(file, null);
+
+        assertThat(errors.size(), is(7));
+        assertLintError(errors.get(0), 2, "alias");
+        assertLintError(errors.get(1), 5, "\"eng\"");
+        assertLintError(errors.get(2), 6, "\"missing\"");
+        assertLintError(errors.get(3), 9, "\"nogroup\"");
+        assertLintError(errors.get(4), 10, "rule");
+        assertLintError(errors.get(5), 11, "\"/\"");
+        assertLintError(errors.get(6), 15, "level");
+    }
+
+    /**
+     * The continuation lines of a group definition in error are skipped along with it.
+     */
+    @Test
+    public void lint_skipsContinuationOfGroupInError() throws Exception {
+        final File file = write("[groups]\nbad=group = a,\n  b,\n  c\nops = bob,\n  @missing\n");
+        final List<ParserException> errors = new FileParser().lint(file, null);
+
+        assertThat(errors.size(), is(2));
+        assertLintError(errors.get(0), 2, "User");
+        assertLintError(errors.get(1), 6, "\"missing\"");
+    }
+
+    /**
+     * A valid file has no lint errors, and the first error lint reports is the one a parse stops at.
+     */
+    @Test
+    public void lint_agreesWithParse() throws Exception {
+        assertThat(new FileParser().lint(write("[groups]\neng = alice, @ops\nops = bob\n[/]\n@eng = r\n"), null)
+                .size(), is(0));
+
+        final File file = write("[groups]\neng = alice\n[/trunk]\n@eng = r\n@ops = r\n[/trunk]\nbob = r\n");
+        final List<ParserException> errors = new FileParser().lint(file, null);
+
+        assertThat(errors.size(), is(2));
+        assertParserError(file, errors.get(0).getLineNumber(), errors.get(0).getDetail());
+    }
+
+    private static void assertLintError(final ParserException error, final int lineNumber, final String text) {
+        assertThat(error.getLineNumber(), is(lineNumber));
+        assertThat(error.getDetail(), containsString(text));
+    }
+
+    private static String parseError(final FileParser parser, final File file) {
+        try {
+            parser.parse(file);
+            fail("Expected a ParserException");
+
+            return null;
+        }
+        catch (final ParserException pe) {
+            return pe.getMessage();
+        }
+        catch (final Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private File write(final String input) throws Exception {
+        return write(input.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private File write(final byte[] input) throws Exception {
+        final File file = folder.newFile();
+
+        Files.write(file.toPath(), input);
+
+        return file;
+    }
+
+    private static void assertParserError(final File input, final int lineNumber, final String text) {
+        try {
+            new FileParser().parse(input);
+            fail("Expected a ParserException for " + input);
+        }
+        catch (final ParserException pe) {
+            assertThat(pe.getMessage(), containsString("Line: " + lineNumber + " "));
+            assertThat(pe.getMessage(), containsString(text));
+        }
+        catch (final Exception e) {
+            fail("Unexpected exception " + e);
+        }
+    }
+
+    private static void assertParserError(final String input, final int lineNumber, final String text) {
+        try {
+            new FileParser().parse(input);
+            fail("Expected a ParserException for " + input);
+        }
+        catch (final ParserException pe) {
+            assertThat(pe.getMessage(), containsString("Line: " + lineNumber + " "));
+            assertThat(pe.getMessage(), containsString(text));
+        }
+        catch (final Exception e) {
+            fail("Unexpected exception " + e);
+        }
+    }
+}
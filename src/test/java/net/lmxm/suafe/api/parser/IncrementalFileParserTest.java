@@ -0,0 +1,427 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Path;
+import net.lmxm.suafe.api.exceptions.ParserException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READWRITE;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * IncrementalFileParser unit tests.
+ */
+public final class IncrementalFileParserTest {
+    private static final String INPUT = "[aliases]\n"
+            + "admin = carol\n"
+            + "[groups]\n"
+            + "backend = alice, bob\n"
+            + "eng = @backend, &admin\n"
+            + "[/]\n"
+            + "* = r\n"
+            + "[repository1:/trunk]\n"
+            + "@eng = rw\n"
+            + "dave = r\n"
+            + "[repository1:/branches]\n"
+            + "@backend = r\n"
+            + "[repository2:/]\n"
+            + "erin = rw\n";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reparse_changedRule() throws Exception {
+        final File file = write(INPUT);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        final Document document = parser.parse();
+        final Path branches = document.findRepository("repository1").findPath("/branches");
+
+        write(file, INPUT.replace("dave = r\n", "dave = rw\n"));
+
+        final ReparseSummary summary = parser.reparse();
+
+        assertThat(summary.isFullReparse(), is(false));
+        assertThat(summary.getChangedSections().size(), is(1));
+        assertThat(summary.getChangedSections().contains("repository1:/trunk"), is(true));
+        assertThat(summary.getAddedRules(), is(2));
+        assertThat(summary.getRemovedRules(), is(2));
+        assertThat(parser.getDocument(), is(sameInstance(document)));
+        assertThat(document.findRepository("repository1").findPath("/branches"), is(sameInstance(branches)));
+        assertThat(document.findUser("dave").getAccessRules().get(0).getLevel(), is(SVN_ACCESS_LEVEL_READWRITE));
+        assertMatchesFullParse(parser, file);
+    }
+
+    @Test
+    public void reparse_addedAndRemovedSections() throws Exception {
+        final File file = write(INPUT);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        parser.parse();
+
+        write(file, INPUT.replace("[repository2:/]\nerin = rw\n", "[repository3:/tags]\nfrank = r\n"));
+
+        final ReparseSummary summary = parser.reparse();
+
+        assertThat(summary.isFullReparse(), is(false));
+        assertThat(summary.getAddedSections().contains("repository3:/tags"), is(true));
+        assertThat(summary.getRemovedSections().contains("repository2:/"), is(true));
+        assertThat(parser.getDocument().findUser("erin"), is(nullValue()));
+        assertThat(parser.getDocument().findRepository("repository2"), is(nullValue()));
+        assertMatchesFullParse(parser, file);
+    }
+
+    /**
+     * Moving a section without changing it is not a change, and the section keeps its Path.
+     */
+    @Test
+    public void reparse_movedSection() throws Exception {
+        final File file = write(INPUT);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        final Document document = parser.parse();
+        final Path trunk = document.findRepository("repository1").findPath("/trunk");
+
+        write(file, INPUT.replace("[repository1:/trunk]\n@eng = rw\ndave = r\n", "")
+                + "[repository1:/trunk]\n@eng = rw\ndave = r\n");
+
+        final ReparseSummary summary = parser.reparse();
+
+        assertThat(summary.isFullReparse(), is(false));
+        assertThat(summary.hasChanges(), is(false));
+        assertThat(document.findRepository("repository1").findPath("/trunk"), is(sameInstance(trunk)));
+    }
+
+    @Test
+    public void reparse_changedGroups() throws Exception {
+        final File file = write(INPUT);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        parser.parse();
+
+        write(file, INPUT.replace("backend = alice, bob\n", "backend = alice, frank\nqa = bob\n"));
+
+        final ReparseSummary summary = parser.reparse();
+
+        assertThat(summary.isFullReparse(), is(false));
+        assertThat(summary.getAddedGroups(), is(1));
+        assertThat(summary.getChangedGroups(), is(1));
+        assertThat(summary.getRemovedGroups(), is(0));
+        assertThat(parser.getDocument().findGroup("backend").getUserMembers().size(), is(2));
+        assertMatchesFullParse(parser, file);
+
+        write(file, INPUT);
+
+        assertThat(parser.reparse().getRemovedGroups(), is(1));
+        assertMatchesFullParse(parser, file);
+    }
+
+    /**
+     * A file with an error leaves the Document alone, and reports the line number that a full parse would.
+     */
+    @Test
+    public void reparse_errors() throws Exception {
+        final File file = write(INPUT);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        final Document document = parser.parse();
+        final String before = new FileGenerator(document).generate(false);
+
+        write(file, INPUT.replace("erin = rw\n", "erin = rw\n@missing = r\n"));
+
+        try {
+            parser.reparse();
+            fail("Expected a ParserException");
+        }
+        catch (final ParserException pe) {
+            assertThat(pe.getMessage(), containsString("Line: 15 "));
+            assertThat(pe.getMessage(), containsString("missing"));
+        }
+
+        assertThat(parser.getDocument(), is(sameInstance(document)));
+        assertThat(new FileGenerator(document).generate(false), is(before));
+
+        write(file, INPUT.replace("dave = r\n", "dave = r\nerin = x\n"));
+
+        try {
+            parser.reparse();
+            fail("Expected a ParserException");
+        }
+        catch (final ParserException pe) {
+            assertThat(pe.getMessage(), containsString("Line: 11 "));
+        }
+
+        assertThat(new FileGenerator(document).generate(false), is(before));
+    }
+
+    /**
+     * Changes that cannot be patched in reliably fall back to parsing the whole file.
+     */
+    @Test
+    public void reparse_fullReparse() throws Exception {
+        final File file = write(INPUT);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        final Document document = parser.parse();
+
+        write(file, INPUT.replace("admin = carol\n", "admin = carl\n"));
+
+        assertThat(parser.reparse().isFullReparse(), is(true));
+        assertThat(parser.getDocument(), is(not(sameInstance(document))));
+        assertMatchesFullParse(parser, file);
+
+        parser.getDocument().addUser("frank");
+
+        assertThat(parser.reparse().isFullReparse(), is(true));
+        assertThat(parser.getDocument().findUser("frank"), is(nullValue()));
+
+        write(file, INPUT + "[repository1:/trunk]\ngrace = r\n");
+
+        try {
+            parser.reparse();
+            fail("Expected a ParserException");
+        }
+        catch (final ParserException pe) {
+            assertThat(pe.getMessage(), containsString("Line: 15 "));
+        }
+    }
+
+    /**
+     * Edits made to the Document are found by its content, so the file is parsed again in full after any of them,
+     * whether or not it changed the modification count.
+     */
+    @Test
+    public void reparse_documentEdited() throws Exception {
+        final File file = write(INPUT);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        Document document = parser.parse();
+
+        document.removeGroupMembers(document.findGroup("backend"), Collections.singletonList(
+                document.findUser("alice")));
+        write(file, INPUT.replace("erin = rw\n", "erin = r\n"));
+
+        assertThat(parser.reparse().isFullReparse(), is(true));
+        assertThat(parser.getDocument().findGroup("backend").getUserMembers().size(), is(2));
+        assertMatchesFullParse(parser, file);
+
+        document = parser.getDocument();
+        document.findPath(document.findRepository("repository1"), "/trunk").getAccessRules().get(0)
+                .setLevel("r");
+        write(file, INPUT);
+
+        assertThat(parser.reparse().isFullReparse(), is(true));
+        assertMatchesFullParse(parser, file);
+
+        document = parser.getDocument();
+        document.deletePath(document.findPath(document.findRepository("repository1"), "/branches"));
+        write(file, INPUT.replace("erin = rw\n", "erin = r\n"));
+
+        assertThat(parser.reparse().isFullReparse(), is(true));
+        assertMatchesFullParse(parser, file);
+
+        write(file, INPUT);
+
+        assertThat(parser.reparse().isFullReparse(), is(false));
+        assertMatchesFullParse(parser, file);
+    }
+
+    /**
+     * Patches made one after another must keep matching a full parse of the file.
+     */
+    @Test
+    public void reparse_repeated() throws Exception {
+        final StringBuilder input = new StringBuilder("[groups]\n");
+
+        for (int i = 0; i < 20; i++) {
+            input.append("group").append(i).append(" = user").append(i).append(", user").append(i + 1).append('\n');
+        }
+
+        for (int i = 0; i < 50; i++) {
+            input.append("[repository").append(i % 5).append(":/trunk/module").append(i).append("]\n@group")
+                    .append(i % 20).append(" = r\nuser").append(i).append(" = rw\n\n");
+        }
+
+        String text = input.toString();
+        final File file = write(text);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        parser.parse();
+
+        final String[][] edits = {{"user7 = rw\n", "user7 = r\n"},
+                {"[repository3:/trunk/module8]\n@group8 = r\nuser8 = rw\n", ""},
+                {"group4 = user4, user5\n", "group4 = user5, @group3\n"},
+                {"user30 = rw\n", "user30 = rw\nuser99 = r\n"},
+                {"group19 = user19, user20\n", ""},
+                {"[repository0:/trunk/module0]\n", "[repository9:/trunk/module0]\n"}};
+
+        for (final String[] edit : edits) {
+            text = text.replace(edit[0], edit[1]).replace("@group19 = r\n", "");
+            write(file, text);
+
+            assertThat(edit[0], parser.reparse().isFullReparse(), is(false));
+            assertMatchesFullParse(parser, file);
+        }
+    }
+
+    /**
+     * Only the changed section is written out of the Document. The other sections keep their comments, even when the
+     * change was made through the beans rather than the Document.
+     */
+    @Test
+    public void save_changedSection() throws Exception {
+        final String input = "# Managed by hand\n"
+                + INPUT.replace("[repository2:/]\n", "# Release manager\n[repository2:/]\n");
+        final File file = write(input);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        final Document document = parser.parse();
+        final Path trunk = document.findRepository("repository1").findPath("/trunk");
+
+        document.findUser("dave").getAccessRules().get(0).setLevel(SVN_ACCESS_LEVEL_READWRITE);
+
+        assertThat(parser.save(true), is(true));
+        assertThat(read(file), is(input.replace("[repository1:/trunk]\n@eng = rw\ndave = r\n",
+                render(parser, trunk))));
+        assertMatchesFullParse(parser, file);
+    }
+
+    @Test
+    public void save_unchanged() throws Exception {
+        final String input = "\uFEFF# Managed by hand\r\n" + INPUT;
+        final File file = write(input);
+        final IncrementalFileParser parser = new IncrementalFileParser(file, "UTF-8");
+        parser.parse();
+
+        assertThat(parser.save(true), is(true));
+        assertThat(read(file), is(input));
+    }
+
+    /**
+     * Sections of deleted Paths are left out, and sections of new Paths are added at the end.
+     */
+    @Test
+    public void save_addedAndDeletedPaths() throws Exception {
+        final String input = INPUT.substring(0, INPUT.length() - 1);
+        final File file = write(input);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        final Document document = parser.parse();
+
+        document.deletePath(document.findRepository("repository1").findPath("/branches"));
+
+        final Path tags = document.addAccessRuleForUser(document.addRepository("repository3"), "/tags",
+                document.addUser("frank"), SVN_ACCESS_LEVEL_READWRITE).getPath();
+
+        assertThat(parser.save(true), is(true));
+        assertThat(read(file), is(input.replace("[repository1:/branches]\n@backend = r\n", "") + "\n"
+                + render(parser, tags)));
+        assertMatchesFullParse(parser, file);
+    }
+
+    /**
+     * Renaming a User rewrites the sections that name it, and the saved file can be followed on from there.
+     */
+    @Test
+    public void save_renamedUser() throws Exception {
+        final File file = write(INPUT);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        final Document document = parser.parse();
+
+        document.renameUser(document.findUser("alice"), "alicia", null);
+        document.renameUser(document.findUser("erin"), "erik", null);
+
+        assertThat(parser.save(false), is(true));
+
+        final String saved = read(file);
+
+        assertThat(saved, containsString("backend = alicia, bob\n"));
+        assertThat(saved, containsString("[repository1:/trunk]\n@eng = rw\ndave = r\n[repository1:/branches]\n"));
+        assertThat(saved, containsString("[repository2:/]\nerik = rw\n"));
+        assertThat(saved, not(containsString("erin")));
+        assertMatchesFullParse(parser, file);
+
+        write(file, saved.replace("dave = r\n", "dave = rw\n"));
+
+        assertThat(parser.reparse().isFullReparse(), is(false));
+        assertMatchesFullParse(parser, file);
+    }
+
+    /**
+     * A file that changed on disk since it was parsed is generated in full.
+     */
+    @Test
+    public void save_changedOnDisk() throws Exception {
+        final File file = write(INPUT);
+        final IncrementalFileParser parser = new IncrementalFileParser(file);
+        final Document document = parser.parse();
+
+        write(file, INPUT + "[repository3:/]\nfrank = r\n");
+
+        assertThat(parser.save(true), is(false));
+        assertThat(read(file), is(new FileGenerator(document).generate(true)));
+
+        document.findUser("dave").getAccessRules().get(0).setLevel(SVN_ACCESS_LEVEL_READWRITE);
+
+        assertThat(parser.save(true), is(true));
+        assertThat(read(file), is(new FileGenerator(document).generate(true)));
+    }
+
+    private static void assertMatchesFullParse(final IncrementalFileParser parser, final File file)
+            throws Exception {
+        final Document document = parser.getDocument();
+        final Document expected = new FileParser().parse(file);
+
+        assertThat(new FileGenerator(document).generate(false), is(new FileGenerator(expected).generate(false)));
+        assertThat(document.getUsers().size(), is(expected.getUsers().size()));
+        assertThat(document.getGroups().size(), is(expected.getGroups().size()));
+        assertThat(document.getRepositories().size(), is(expected.getRepositories().size()));
+        assertThat(document.getPaths().size(), is(expected.getPaths().size()));
+        assertThat(document.getAccessRules().size(), is(expected.getAccessRules().size()));
+    }
+
+    private static String read(final File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static String render(final IncrementalFileParser parser, final Path path) throws Exception {
+        final StringBuilder output = new StringBuilder();
+
+        new FileGenerator(parser.getDocument()).writePath(output, path);
+
+        return output.toString();
+    }
+
+    private File write(final String input) throws Exception {
+        return write(folder.newFile(), input);
+    }
+
+    private static File write(final File file, final String input) throws Exception {
+        Files.write(file.toPath(), input.getBytes(StandardCharsets.UTF_8));
+
+        return file;
+    }
+}
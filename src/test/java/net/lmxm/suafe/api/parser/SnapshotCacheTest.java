@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.User;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * SnapshotCache unit tests.
+ */
+public final class SnapshotCacheTest {
+    private static final String INPUT = "[aliases]\n"
+            + "admin = carol\n"
+            + "[groups]\n"
+            + "backend = alice, bob\n"
+            + "eng = @backend, &admin, dave\n"
+            + "empty =\n"
+            + "[/]\n"
+            + "* = r\n"
+            + "[repository1:/trunk]\n"
+            + "@eng = rw\n"
+            + "erin = \n"
+            + "[repository1:/branches]\n"
+            + "@backend = r\n"
+            + "[repository2:/]\n"
+            + "andr\u00e9 = rw\n";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void load() throws Exception {
+        final File file = write(folder.newFile(), INPUT);
+        final SnapshotCache cache = new SnapshotCache(folder.newFolder(), 0);
+        final Document parsed = new FileParser().parse(file);
+
+        cache.store(file, map(file), "UTF-8", parsed);
+
+        final Document loaded = cache.load(file, map(file), "UTF-8");
+
+        assertThat(loaded, is(notNullValue()));
+        assertThat(new FileGenerator(loaded).generate(false), is(new FileGenerator(parsed).generate(false)));
+        assertThat(loaded.getEncoding(), is("UTF-8"));
+        assertThat(loaded.getAccessRules().size(), is(parsed.getAccessRules().size()));
+        assertThat(loaded.findUserByAlias("admin").getName(), is("carol"));
+        assertThat(loaded.findGroup("eng").getGroupMembers().get(0).getName(), is("backend"));
+        assertThat(loaded.findGroup("eng").getUserMembers().size(), is(2));
+        assertThat(loaded.findUser("alice").getGroups().get(0).getName(), is("backend"));
+
+        for (int i = 0; i < parsed.getUsers().size(); i++) {
+            assertThat(loaded.getUsers().get(i).getName(), is(parsed.getUsers().get(i).getName()));
+        }
+
+        for (int i = 0; i < parsed.getPaths().size(); i++) {
+            assertThat(loaded.getPaths().get(i).toString(), is(parsed.getPaths().get(i).toString()));
+        }
+    }
+
+    @Test
+    public void load_changedFile() throws Exception {
+        final File file = write(folder.newFile(), INPUT);
+        final SnapshotCache cache = new SnapshotCache(folder.newFolder(), 0);
+        final long lastModified = file.lastModified();
+
+        cache.store(file, map(file), "UTF-8", new FileParser().parse(file));
+
+        // Same length and modification time, different contents
+        write(file, INPUT.replace("alice", "alina"));
+        file.setLastModified(lastModified);
+
+        assertThat(cache.load(file, map(file), "UTF-8"), is(nullValue()));
+        assertThat(cache.load(file, map(write(file, INPUT)), "UTF-8"), is(nullValue()));
+    }
+
+    @Test
+    public void load_otherEncoding() throws Exception {
+        final File file = write(folder.newFile(), INPUT);
+        final SnapshotCache cache = new SnapshotCache(folder.newFolder(), 0);
+
+        cache.store(file, map(file), "UTF-8", new FileParser().parse(file));
+
+        assertThat(cache.load(file, map(file), "ISO-8859-1"), is(nullValue()));
+        assertThat(cache.load(folder.newFile(), map(file), "UTF-8"), is(nullValue()));
+    }
+
+    @Test
+    public void load_damagedSnapshot() throws Exception {
+        final File file = write(folder.newFile(), INPUT);
+        final File directory = folder.newFolder();
+        final SnapshotCache cache = new SnapshotCache(directory, 0);
+
+        cache.store(file, map(file), "UTF-8", new FileParser().parse(file));
+
+        final File snapshot = directory.listFiles()[0];
+
+        try (final RandomAccessFile output = new RandomAccessFile(snapshot, "rw")) {
+            output.setLength(snapshot.length() - 3);
+        }
+
+        assertThat(cache.load(file, map(file), "UTF-8"), is(nullValue()));
+
+        Files.write(snapshot.toPath(), new byte[]{1, 2, 3});
+
+        assertThat(cache.load(file, map(file), "UTF-8"), is(nullValue()));
+    }
+
+    /**
+     * FileParser stores a snapshot the first time it parses a file, and loads it after that until the file changes.
+     */
+    @Test
+    public void parse() throws Exception {
+        final File file = write(folder.newFile(), INPUT);
+        final File directory = folder.newFolder();
+        final FileParser parser = new FileParser();
+        parser.setSnapshotCache(new SnapshotCache(directory, 0));
+
+        final Document parsed = parser.parse(file);
+
+        assertThat(directory.listFiles().length, is(1));
+
+        final Document loaded = parser.parse(file);
+
+        assertThat(new FileGenerator(loaded).generate(false), is(new FileGenerator(parsed).generate(false)));
+        assertThat(loaded.getEncoding(), is(parsed.getEncoding()));
+
+        write(file, INPUT + "[repository3:/]\nfrank = r\n");
+
+        final Document changed = parser.parse(file);
+        final User frank = changed.findUser("frank");
+
+        assertThat(frank.getAccessRules().size(), is(1));
+        assertThat(directory.listFiles().length, is(1));
+        assertThat(parser.parse(file).findUser("frank"), is(notNullValue()));
+    }
+
+    /**
+     * Snapshots hold every rule of a file, so only their owner may read them, whatever the umask.
+     */
+    @Test
+    public void store_ownerOnly() throws Exception {
+        final File file = write(folder.newFile(), INPUT);
+        final File directory = new File(folder.getRoot(), "cache");
+
+        assumeTrue(directory.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+
+        new SnapshotCache(directory, 0).store(file, map(file), "UTF-8", new FileParser().parse(file));
+
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.toPath())),
+                is("rwx------"));
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(snapshotOf(directory, file)
+                .toPath())), is("rw-------"));
+    }
+
+    /**
+     * Once there are more snapshots than the maximum, the least recently stored or loaded ones are deleted.
+     */
+    @Test
+    public void store_prunesLeastRecentlyUsed() throws Exception {
+        final File directory = folder.newFolder();
+        final SnapshotCache cache = new SnapshotCache(directory, 0, 2);
+        final File first = write(folder.newFile(), INPUT);
+        final File second = write(folder.newFile(), INPUT);
+        final File third = write(folder.newFile(), INPUT);
+        final Document document = new FileParser().parse(first);
+        final long now = System.currentTimeMillis();
+
+        cache.store(first, map(first), "UTF-8", document);
+        snapshotOf(directory, first).setLastModified(now - 20000);
+        cache.store(second, map(second), "UTF-8", document);
+        snapshotOf(directory, second).setLastModified(now - 10000);
+
+        assertThat(cache.load(first, map(first), "UTF-8"), is(notNullValue()));
+
+        cache.store(third, map(third), "UTF-8", document);
+
+        assertThat(directory.listFiles().length, is(2));
+        assertThat(snapshotOf(directory, second), is(nullValue()));
+        assertThat(cache.load(first, map(first), "UTF-8"), is(notNullValue()));
+        assertThat(cache.load(third, map(third), "UTF-8"), is(notNullValue()));
+    }
+
+    @Test
+    public void parse_smallFile() throws Exception {
+        final File file = write(folder.newFile(), INPUT);
+        final File directory = folder.newFolder();
+        final FileParser parser = new FileParser();
+        parser.setSnapshotCache(new SnapshotCache(directory));
+
+        final Group group = parser.parse(file).findGroup("empty");
+
+        assertThat(group.getUserMembers().size(), is(0));
+        assertThat(directory.listFiles().length, is(0));
+    }
+
+    private static File snapshotOf(final File directory, final File file) {
+        final File[] snapshots = directory.listFiles((dir, name) -> name.startsWith(file.getName() + "-"));
+
+        return (snapshots.length == 0) ? null : snapshots[0];
+    }
+
+    private static ByteBuffer map(final File file) throws Exception {
+        return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    }
+
+    private static File write(final File file, final String input) throws Exception {
+        Files.write(file.toPath(), input.getBytes(StandardCharsets.UTF_8));
+
+        return file;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.api.parser;
+
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.exceptions.ParserException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * StreamingFileParser unit tests.
+ */
+public final class StreamingFileParserTest {
+    private static final String INPUT = "[aliases]\r\n"
+            + "admin = carol\r\n"
+            + "[groups]\n"
+            + "backend = alice, bob\r"
+            + "eng = @backend, &admin\r\n"
+            + "\n"
+            + "[/]\r"
+            + "* = r\n"
+            + "[repository1:/trunk]\n"
+            + "@eng = rw\r\n"
+            + "dave = r";
+
+    /**
+     * Splitting the text into two chunks at any point, including between "\r" and "\n", gives the same Document as
+     * parsing it in one piece.
+     */
+    @Test
+    public void append_split() throws Exception {
+        final String expected = generate(new FileParser().parse(INPUT));
+
+        for (int split = 0; split <= INPUT.length(); split++) {
+            final Document document = new StreamingFileParser()
+                    .append(INPUT.substring(0, split))
+                    .append(INPUT.substring(split))
+                    .finish();
+
+            assertThat("Split at " + split, generate(document), is(expected));
+        }
+    }
+
+    /**
+     * Chunks of a single character, passed through a reused array.
+     */
+    @Test
+    public void append_characters() throws Exception {
+        final StreamingFileParser parser = new StreamingFileParser();
+        final char[] buffer = new char[4];
+
+        for (int i = 0; i < INPUT.length(); i++) {
+            buffer[2] = INPUT.charAt(i);
+            parser.append(buffer, 2, 1);
+        }
+
+        assertThat(generate(parser.finish()), is(generate(new FileParser().parse(INPUT))));
+    }
+
+    @Test
+    public void append_byteOrderMark() throws Exception {
+        final Document document = new StreamingFileParser().append("\uFEFF[groups]\neng = alice\n").finish();
+
+        assertThat(document.findGroup("eng"), is(notNullValue()));
+    }
+
+    /**
+     * Errors give the line number in the whole text, counting a "\r\n" split between chunks as one line break.
+     */
+    @Test
+    public void append_error() throws Exception {
+        final StreamingFileParser parser = new StreamingFileParser()
+                .append("[groups]\r")
+                .append("\neng = alice\r\n[/]\r\n@e");
+
+        try {
+            parser.append("ng = r\n@ops = r\n");
+            fail("Expected a ParserException");
+        }
+        catch (final ParserException pe) {
+            assertThat(pe.getMessage(), containsString("Line: 5 "));
+            assertThat(pe.getMessage(), containsString("ops"));
+        }
+    }
+
+    @Test
+    public void finish_error() throws Exception {
+        try {
+            new StreamingFileParser().append("[/]\nalice = r\n@ops").append(" = r").finish();
+            fail("Expected a ParserException");
+        }
+        catch (final ParserException pe) {
+            assertThat(pe.getMessage(), containsString("Line: 3 "));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void append_finished() throws Exception {
+        final StreamingFileParser parser = new StreamingFileParser();
+
+        parser.finish();
+        parser.append("[/]\n");
+    }
+
+    /**
+     * A Reader that fails is reported as an error on the line being read.
+     */
+    @Test
+    public void parse_readerError() throws Exception {
+        final Reader reader = new Reader() {
+            private final Reader input = new StringReader("[/]\nalice = r\nbob");
+
+            @Override
+            public int read(final char[] buffer, final int offset, final int length) throws IOException {
+                final int count = input.read(buffer, offset, Math.min(length, 4));
+
+                if (count == -1) {
+                    throw new IOException();
+                }
+
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try {
+            new FileParser().parse(reader);
+            fail("Expected a ParserException");
+        }
+        catch (final ParserException pe) {
+            assertThat(pe.getMessage(), containsString("Line: 3 "));
+        }
+    }
+
+    private static String generate(final Document document) throws Exception {
+        return new FileGenerator(document).generate(false);
+    }
+}
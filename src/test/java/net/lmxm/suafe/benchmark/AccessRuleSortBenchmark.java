@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.lmxm.suafe.benchmark;
+
+import net.lmxm.suafe.api.beans.AccessRule;
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.Path;
+import net.lmxm.suafe.api.beans.PathComparator;
+import net.lmxm.suafe.api.beans.Repository;
+import net.lmxm.suafe.api.beans.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READONLY;
+
+/**
+ * Compares sorting access rules and paths by their joined display strings, as was done before, with the current
+ * comparators that walk the fields in place. Run with the GC profiler to see the allocation rate of each:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=net.lmxm.suafe.benchmark.AccessRuleSortBenchmark
+ * </pre>
+ * The "gc.alloc.rate.norm" figure for the field comparators should be close to the cost of the sort's own scratch
+ * array, while the string based comparators allocate several strings per comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccessRuleSortBenchmark {
+    private static final Comparator<AccessRule> LEGACY_RULE_COMPARATOR =
+            (rule1, rule2) -> rule1.toString().compareTo(rule2.toString());
+
+    private static final Comparator<Path> LEGACY_PATH_COMPARATOR = (path1, path2) -> {
+        final String string1 = ((path1.getRepository() == null) ? "" : path1.getRepository().toString()) + ":" +
+                ((path1.getPath() == null) ? "" : path1.getPath());
+        final String string2 = ((path2.getRepository() == null) ? "" : path2.getRepository().toString()) + ":" +
+                ((path2.getPath() == null) ? "" : path2.getPath());
+
+        return string1.compareTo(string2);
+    };
+
+    @Param({"300000"})
+    public int ruleCount;
+
+    private List<AccessRule> rules;
+
+    private List<Path> paths;
+
+    @Setup
+    public void setUp() throws Exception {
+        final Document document = new Document();
+        document.disableUndo();
+
+        final int repositoryCount = 100;
+        final int userCount = 1000;
+        final int groupCount = 100;
+
+        for (int i = 0; i < userCount; i++) {
+            document.addUser("user" + i, (i % 3 == 0) ? "alias" + i : null);
+        }
+
+        for (int i = 0; i < groupCount; i++) {
+            document.addGroup("group" + i);
+        }
+
+        for (int i = 0; i < ruleCount; i++) {
+            final Repository repository = document.addRepository("repository" + (i % repositoryCount));
+            final String pathString = "/trunk/module" + (i / repositoryCount % 300);
+
+            if (i % 2 == 0) {
+                final User user = document.findUser("user" + (i / 7 % userCount));
+
+                if (document.findUserAccessRule(repository, pathString, user) == null) {
+                    document.addAccessRuleForUser(repository, pathString, user, SVN_ACCESS_LEVEL_READONLY);
+                }
+            }
+            else {
+                final Group group = document.findGroup("group" + (i / 7 % groupCount));
+
+                if (document.findGroupAccessRule(repository, pathString, group) == null) {
+                    document.addAccessRuleForGroup(repository, pathString, group, SVN_ACCESS_LEVEL_READONLY);
+                }
+            }
+        }
+
+        rules = new ArrayList<>(document.getAccessRules());
+        paths = new ArrayList<>(document.getPaths());
+
+        Collections.shuffle(rules, new Random(1));
+        Collections.shuffle(paths, new Random(1));
+    }
+
+    @Benchmark
+    public List<AccessRule> sortRulesByString() {
+        final List<AccessRule> sorted = new ArrayList<>(rules);
+        sorted.sort(LEGACY_RULE_COMPARATOR);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<AccessRule> sortRulesByFields() {
+        final List<AccessRule> sorted = new ArrayList<>(rules);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<Path> sortPathsByString() {
+        final List<Path> sorted = new ArrayList<>(paths);
+        sorted.sort(LEGACY_PATH_COMPARATOR);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<Path> sortPathsByFields() {
+        final List<Path> sorted = new ArrayList<>(paths);
+        sorted.sort(new PathComparator());
+        return sorted;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(AccessRuleSortBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.benchmark;
+
+import net.lmxm.suafe.api.access.AccessResolver;
+import net.lmxm.suafe.api.access.AuthzSnapshot;
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.beans.Group;
+import net.lmxm.suafe.api.beans.Repository;
+import net.lmxm.suafe.api.beans.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_DENY_ACCESS;
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READONLY;
+import static net.lmxm.suafe.api.SubversionConstants.SVN_ACCESS_LEVEL_READWRITE;
+
+/**
+ * Measures access checks per second against a compiled AuthzSnapshot, with AccessResolver over the live Document for
+ * comparison. Run with the GC profiler to confirm that snapshot checks do not allocate:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=net.lmxm.suafe.benchmark.AuthzSnapshotBenchmark
+ * </pre>
+ * The "gc.alloc.rate.norm" figure for the snapshot benchmarks should be zero. The resolver is given the User and
+ * Repository objects and still allocates for paths it has not seen before.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthzSnapshotBenchmark {
+    private static final int QUERY_COUNT = 4096;
+
+    private AuthzSnapshot snapshot;
+
+    private AccessResolver resolver;
+
+    private String[] userNames;
+
+    private String[] repositoryNames;
+
+    private String[] pathStrings;
+
+    private User[] users;
+
+    private Repository[] repositories;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        final Random random = new Random(1);
+        final Document document = new Document();
+        document.disableUndo();
+
+        final int userCount = 5000;
+        final int groupCount = 300;
+        final int repositoryCount = 200;
+        final String[] levels = {SVN_ACCESS_LEVEL_DENY_ACCESS, SVN_ACCESS_LEVEL_READONLY, SVN_ACCESS_LEVEL_READWRITE};
+
+        for (int i = 0; i < userCount; i++) {
+            document.addUser("user" + i);
+        }
+
+        for (int i = 0; i < groupCount; i++) {
+            final Group group = document.addGroup("group" + i);
+
+            for (int j = 0; j < 40; j++) {
+                document.addGroupMembers(group,
+                        Collections.singletonList(document.findUser("user" + random.nextInt(userCount))));
+            }
+
+            if (i > 0) {
+                document.addGroupMembers(group,
+                        Collections.singletonList(document.findGroup("group" + random.nextInt(i))));
+            }
+        }
+
+        for (int i = 0; i < repositoryCount; i++) {
+            final Repository repository = document.addRepository("repository" + i);
+
+            document.addAccessRuleForGroup(repository, "/", document.findGroup("group" + random.nextInt(groupCount)),
+                    SVN_ACCESS_LEVEL_READONLY);
+
+            for (int j = 0; j < 20; j++) {
+                final String pathString = "/trunk/module" + j;
+                final Group group = document.findGroup("group" + random.nextInt(groupCount));
+
+                if (document.findGroupAccessRule(repository, pathString, group) == null) {
+                    document.addAccessRuleForGroup(repository, pathString, group, levels[random.nextInt(3)]);
+                }
+            }
+        }
+
+        document.addServerAccessRuleForUser("*", SVN_ACCESS_LEVEL_READONLY);
+
+        snapshot = AuthzSnapshot.compile(document);
+        resolver = new AccessResolver(document);
+
+        userNames = new String[QUERY_COUNT];
+        repositoryNames = new String[QUERY_COUNT];
+        pathStrings = new String[QUERY_COUNT];
+        users = new User[QUERY_COUNT];
+        repositories = new Repository[QUERY_COUNT];
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            userNames[i] = "user" + random.nextInt(userCount);
+            repositoryNames[i] = "repository" + random.nextInt(repositoryCount);
+            pathStrings[i] = "/trunk/module" + random.nextInt(25) + "/src/main/File" + i + ".java";
+            users[i] = document.findUser(userNames[i]);
+            repositories[i] = document.findRepository(repositoryNames[i]);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean snapshotByName(final Cursor cursor) {
+        final int i = cursor.next++ & (QUERY_COUNT - 1);
+
+        return snapshot.canWrite(userNames[i], repositoryNames[i], pathStrings[i]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean snapshotByNameFourThreads(final Cursor cursor) {
+        final int i = cursor.next++ & (QUERY_COUNT - 1);
+
+        return snapshot.canWrite(userNames[i], repositoryNames[i], pathStrings[i]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean resolver(final Cursor cursor) throws Exception {
+        final int i = cursor.next++ & (QUERY_COUNT - 1);
+
+        return resolver.getEffectiveAccess(users[i], repositories[i], pathStrings[i]).canWrite();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(AuthzSnapshotBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Writes large, realistic looking authz files for benchmarks. Users belong to several groups, groups nest, and each
+ * repository has the same layout of paths, so that names and paths repeat the way they do in real files.
+ */
+final class GeneratedAuthzFile {
+    private GeneratedAuthzFile() {
+    }
+
+    /**
+     * Writes a file with roughly the requested number of access rules.
+     *
+     * @param file      File to write
+     * @param ruleCount Number of access rules
+     * @return The file
+     * @throws IOException if the file cannot be written
+     */
+    static File write(final File file, final int ruleCount) throws IOException {
+        final Random random = new Random(1);
+        final int userCount = Math.max(100, ruleCount / 50);
+        final int groupCount = Math.max(10, ruleCount / 500);
+        final int rulesPerPath = 10;
+        final int pathsPerRepository = 100;
+        final int repositoryCount = Math.max(1, ruleCount / (rulesPerPath * pathsPerRepository));
+
+        try (final BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("[groups]\n");
+
+            for (int group = 0; group < groupCount; group++) {
+                writer.write("group" + group + " = ");
+
+                if (group > 0) {
+                    writer.write("@group" + random.nextInt(group) + ", ");
+                }
+
+                for (int member = 0; member < 20; member++) {
+                    writer.write((member > 0 ? ", " : "") + "user" + random.nextInt(userCount));
+                }
+
+                writer.write("\n");
+            }
+
+            for (int repository = 0; repository < repositoryCount; repository++) {
+                for (int path = 0; path < pathsPerRepository; path++) {
+                    writer.write("\n[repository" + repository + ":/trunk/component" + (path / 10) + "/module" + path
+                            + "]\n");
+
+                    for (int rule = 0; rule < rulesPerPath; rule++) {
+                        final String level = (rule % 3 == 0) ? "rw" : "r";
+
+                        if (rule % 2 == 0) {
+                            writer.write("@group" + random.nextInt(groupCount) + " = " + level + "\n");
+                        }
+                        else {
+                            writer.write("user" + random.nextInt(userCount) + " = " + level + "\n");
+                        }
+                    }
+                }
+            }
+        }
+
+        return file;
+    }
+}
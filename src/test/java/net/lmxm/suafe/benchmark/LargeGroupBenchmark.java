@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.benchmark;
+
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.parser.FileParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to parse a single group with a very large number of members, written on one line and
+ * wrapped over many continuation lines:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=net.lmxm.suafe.benchmark.LargeGroupBenchmark
+ * </pre>
+ * Every tenth member is listed twice, so that repeats are skipped on both layouts. The time should grow in step with
+ * the member count, and the two layouts should take about as long as each other.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LargeGroupBenchmark {
+    @Param({"5000", "50000"})
+    private int memberCount;
+
+    private String singleLine;
+
+    private String wrapped;
+
+    @Setup
+    public void setUp() {
+        singleLine = generate(memberCount, Integer.MAX_VALUE);
+        wrapped = generate(memberCount, 10);
+    }
+
+    @Benchmark
+    public Document singleLine() throws Exception {
+        return new FileParser().parse(singleLine);
+    }
+
+    @Benchmark
+    public Document wrapped() throws Exception {
+        return new FileParser().parse(wrapped);
+    }
+
+    private static String generate(final int memberCount, final int membersPerLine) {
+        final StringBuilder builder = new StringBuilder("[groups]\nstaff = ");
+
+        for (int member = 0; member < memberCount; member++) {
+            if (member > 0) {
+                builder.append(member % membersPerLine == 0 ? ",\n  " : ", ");
+            }
+
+            builder.append("user").append(member % 10 == 9 ? member - 9 : member);
+        }
+
+        return builder.append("\n[/]\n@staff = r\n").toString();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(LargeGroupBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.benchmark;
+
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.parser.FileParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to parse a large generated authz file sequentially, and in parallel on pools of
+ * increasing size:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=net.lmxm.suafe.benchmark.ParallelParserBenchmark
+ * </pre>
+ * The parallel parse should get faster as threads are added, up to the number of cores. Building the Document stays
+ * on one thread, so the gain levels off once splitting lines, pooling names and validating rules no longer dominate.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ParallelParserBenchmark {
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    @Param("1000000")
+    private int ruleCount;
+
+    private File file;
+
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() throws Exception {
+        file = File.createTempFile("authz", ".txt");
+        file.deleteOnExit();
+
+        GeneratedAuthzFile.write(file, ruleCount);
+
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        file.delete();
+    }
+
+    @Benchmark
+    public Document parallel() throws Exception {
+        return new FileParser(pool).parse(file);
+    }
+
+    @Benchmark
+    public Document sequential() throws Exception {
+        return new FileParser().parse(file);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ParallelParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
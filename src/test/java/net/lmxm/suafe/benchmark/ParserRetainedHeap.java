@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.lmxm.suafe.benchmark;
+
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.parser.FileParser;
+
+import java.io.File;
+
+/**
+ * Reports how much heap a parsed Document keeps alive. JMH does not measure retained memory, so this is a plain
+ * program that parses a generated file and compares used heap, after garbage collection, before and after:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=net.lmxm.suafe.benchmark.ParserRetainedHeap -Dexec.args=1000000
+ * </pre>
+ * Give the JVM enough heap for the chosen number of rules, roughly 3 GB for a million.
+ */
+public final class ParserRetainedHeap {
+    private ParserRetainedHeap() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int ruleCount = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        final File file = File.createTempFile("authz", ".txt");
+        file.deleteOnExit();
+
+        GeneratedAuthzFile.write(file, ruleCount);
+
+        final long before = usedHeap();
+        final Document document = new FileParser().parse(file);
+        final long after = usedHeap();
+
+        System.out.printf("%,d rules in %,d bytes of file: %,d bytes retained%n", document.getAccessRules().size(),
+                file.length(), after - before);
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
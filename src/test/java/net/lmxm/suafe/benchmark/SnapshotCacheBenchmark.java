@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2006-2017 by LMXM LLC <suafe@lmxm.net>
+ *
+ * This file is part of Suafe.
+ *
+ * Suafe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Suafe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Suafe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.lmxm.suafe.benchmark;
+
+import net.lmxm.suafe.api.beans.Document;
+import net.lmxm.suafe.api.parser.FileParser;
+import net.lmxm.suafe.api.parser.SnapshotCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to open a large generated authz file by parsing its text, and by loading the snapshot
+ * that an earlier parse stored:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=net.lmxm.suafe.benchmark.SnapshotCacheBenchmark
+ * </pre>
+ * Both build the same Document, so the snapshot only saves the cost of reading the text. Checking the snapshot against
+ * the file costs one CRC-32 pass over the file.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class SnapshotCacheBenchmark {
+    @Param({"100000", "1000000"})
+    private int ruleCount;
+
+    private File file;
+
+    private File directory;
+
+    private FileParser textParser;
+
+    private FileParser snapshotParser;
+
+    @Setup
+    public void setUp() throws Exception {
+        file = File.createTempFile("authz", ".txt");
+        file.deleteOnExit();
+        directory = Files.createTempDirectory("snapshots").toFile();
+
+        GeneratedAuthzFile.write(file, ruleCount);
+
+        textParser = new FileParser();
+        snapshotParser = new FileParser();
+        snapshotParser.setSnapshotCache(new SnapshotCache(directory, 0));
+        snapshotParser.parse(file);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+
+        for (final File snapshot : directory.listFiles()) {
+            snapshot.delete();
+        }
+
+        directory.delete();
+    }
+
+    @Benchmark
+    public Document snapshot() throws Exception {
+        return snapshotParser.parse(file);
+    }
+
+    @Benchmark
+    public Document text() throws Exception {
+        return textParser.parse(file);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(SnapshotCacheBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}